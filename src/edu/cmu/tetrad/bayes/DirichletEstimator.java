@@ -22,8 +22,6 @@
 package edu.cmu.tetrad.bayes;
 
 import edu.cmu.tetrad.data.DataSet;
-import edu.cmu.tetrad.data.DiscreteVariable;
-import edu.cmu.tetrad.graph.Node;
 
 /**
  * Estimates a DirichletBayesIm from a DirichletBayesIm (the prior) and a data
@@ -54,75 +52,11 @@ public final class DirichletEstimator {
         BayesPm bayesPm = prior.getBayesPm();
         DirichletBayesIm posterior = DirichletBayesIm.blankDirichletIm(bayesPm);
 
-        // Number of rows of data
-        int numPoints = dataSet.getNumRows();
-
-        // Loop over all nodes in prior.
-        for (int n = 0; n < prior.getNumNodes(); ++n) {
-
-            // Make any easy access table of node data @ 0 and parent data @ p+1.
-            int[] varIndices = new int[prior.getNumParents(n) + 1];
-
-            Node node = prior.getNode(n);
-            String name = node.getName();
-            varIndices[0] = dataSet.getColumn(dataSet.getVariable(name));
-
-            for (int p = 0; p < prior.getNumParents(n); p++) {
-                Node parentNode = prior.getNode(prior.getParent(n, p));
-                name = parentNode.getName();
-                varIndices[p + 1] =
-                        dataSet.getColumn(dataSet.getVariable(name));
-            }
-
-            // Loop over conditioning set.
-            for (int row = 0; row < prior.getNumRows(n); row++) {
-                int numCategories = bayesPm.getNumCategories(node);
-
-                // Count occurrences of category.
-                int[] nCount = new int[numCategories];
-                int[] pVals = prior.getParentValues(n, row);
-
-                // Count the occurrence of each category satisfying the
-                // various condition in the data.
-                for (int i = 0; i < numPoints; i++) {
-
-                    //first make sure conditions are satisfied
-                    boolean satisfied = true;
-
-                    for (int p = 0; p < prior.getNumParents(n); p++) {
-
-                        // Ignore cases where one of the parents has a
-                        // missing value.
-                        if (dataSet.getInt(i, varIndices[p + 1]) ==
-                                DiscreteVariable.MISSING_VALUE) {
-                            satisfied = false;
-                            break;
-                        }
-
-                        if (pVals[p] != dataSet.getInt(i, varIndices[p + 1])) {
-                            satisfied = false;
-                            break;
-                        }
-                    }
-
-                    if (dataSet.getInt(i, varIndices[0]) == DiscreteVariable
-                            .MISSING_VALUE) {
-                        satisfied = false;
-                    }
-
-                    if (satisfied) {
-                        nCount[dataSet.getInt(i, varIndices[0])]++;
-                    }
-                }
-
-                // include prior
-                for (int i = 0; i < numCategories; ++i) {
-                    double priorValue = prior.getPseudocount(n, row, i);
-                    double value = nCount[i] + priorValue;
-                    posterior.setPseudocount(n, row, i, value);
-                }
-            }
-        }
+        // Count every family in one pass, leaving out for each node the rows
+        // missing its value or the value of one of its parents.
+        FamilyCounts counts = new FamilyCounts(posterior);
+        counts.addRows(dataSet);
+        counts.setPseudocounts(prior, posterior);
 
         return posterior;
     }
@@ -0,0 +1,396 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ParallelUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Counts the rows of discrete data by the values of each node and its parents in a Bayes net, for every node at once.
+ * These counts are the sufficient statistics for estimating the conditional probability tables of the net.
+ * <p/>
+ * Rows are taken in blocks. The columns of the nodes are copied for a block into short arrays, one per node, and the
+ * cell of every row of the block is then worked out for each node in turn from those arrays, so the data set is read
+ * just once, however many nodes there are. Large data are split into contiguous ranges of blocks counted on several
+ * threads, each into its own tables, which are then added up; since the counts are integers, they do not depend on
+ * the number of threads. Each row counts as many times as its multiplier.
+ * <p/>
+ * Rows may be added in as many batches as are convenient, so that an IM can be kept up to date as new cases come in
+ * without counting the old ones again. The counts for node i are indexed rowIndex * numColumns + column, as in the
+ * tables of the IM the counter was made for.
+ * <p/>
+ * A row missing the value of a node or one of its parents is not counted for that node. If complete cases only are
+ * counted, a row missing any value is not counted for any node.
+ *
+ * @author Joseph Ramsey
+ * @see MlBayesEstimator
+ * @see DirichletEstimator
+ */
+public final class FamilyCounts {
+
+    /**
+     * The number of rows whose values are copied at a time.
+     */
+    private static final int BLOCK = 4096;
+
+    /**
+     * Data with fewer rows than this are counted on the calling thread.
+     */
+    private static final int MIN_PARALLEL_ROWS = 1 << 15;
+
+    /**
+     * The names of the nodes, in the order of the IM.
+     */
+    private final String[] names;
+
+    /**
+     * The number of categories of each node, and its parents, as in the IM.
+     */
+    private final int[] numCategories;
+    private final int[][] parents;
+
+    /**
+     * The counts for each node, indexed rowIndex * numColumns + column.
+     */
+    private final long[][] counts;
+
+    /**
+     * The number of rows added, not counting multipliers.
+     */
+    private long numRows;
+
+    private boolean completeCasesOnly = false;
+    private int parallelism = ParallelUtils.getDefaultParallelism();
+
+    //==============================CONSTRUCTORS===========================//
+
+    /**
+     * Constructs a counter, with no rows yet, for the nodes and parents of the given IM.
+     */
+    public FamilyCounts(BayesIm bayesIm) {
+        if (bayesIm == null) {
+            throw new NullPointerException();
+        }
+
+        int numNodes = bayesIm.getNumNodes();
+        this.names = new String[numNodes];
+        this.numCategories = new int[numNodes];
+        this.parents = new int[numNodes][];
+        this.counts = new long[numNodes][];
+
+        for (int node = 0; node < numNodes; node++) {
+            names[node] = bayesIm.getNode(node).getName();
+            numCategories[node] = bayesIm.getNumColumns(node);
+            parents[node] = bayesIm.getParents(node);
+
+            if (numCategories[node] > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many categories to count: " + bayesIm.getNode(node));
+            }
+
+            long numCells = (long) bayesIm.getNumRows(node) * numCategories[node];
+
+            if (numCells > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many cells in the table for " + bayesIm.getNode(node));
+            }
+
+            counts[node] = new long[(int) numCells];
+        }
+    }
+
+    //==============================PUBLIC METHODS=========================//
+
+    /**
+     * Adds all of the rows of the given data set to the counts. Columns are matched to nodes by name; each node must
+     * have a discrete column with its categories, in its order (see BayesUtils.ensureVarsInData).
+     */
+    public void addRows(DataSet dataSet) {
+        addRows(dataSet, 0, dataSet.getNumRows());
+    }
+
+    /**
+     * Adds the rows of the given data set from from, inclusive, to to, exclusive, to the counts.
+     */
+    public void addRows(DataSet dataSet, int from, int to) {
+        if (from < 0 || to > dataSet.getNumRows() || from > to) {
+            throw new IllegalArgumentException("Rows " + from + " to " + to + " are not in the data.");
+        }
+
+        int[] columns = new int[names.length];
+
+        for (int node = 0; node < names.length; node++) {
+            Node variable = dataSet.getVariable(names[node]);
+
+            if (!(variable instanceof DiscreteVariable)) {
+                throw new IllegalArgumentException("Variable " + names[node] + " was not in the data "
+                        + "or is not discrete.");
+            }
+
+            columns[node] = dataSet.getColumn(variable);
+        }
+
+        int numBlocks = (to - from + BLOCK - 1) / BLOCK;
+        int numTasks = to - from < MIN_PARALLEL_ROWS ? 1 : Math.min(parallelism, numBlocks);
+        List<CountTask> tasks = new ArrayList<CountTask>();
+
+        for (int t = 0; t < numTasks; t++) {
+            int taskFrom = from + (int) ((long) numBlocks * t / numTasks) * BLOCK;
+            int taskTo = Math.min(to, from + (int) ((long) numBlocks * (t + 1) / numTasks) * BLOCK);
+            tasks.add(new CountTask(dataSet, columns, taskFrom, taskTo, numTasks == 1 ? counts : null));
+        }
+
+        ParallelUtils.runAll(tasks, parallelism);
+
+        if (numTasks > 1) {
+            for (CountTask task : tasks) {
+                for (int node = 0; node < counts.length; node++) {
+                    long[] _counts = counts[node];
+                    long[] taskCounts = task.counts[node];
+
+                    for (int cell = 0; cell < _counts.length; cell++) {
+                        _counts[cell] += taskCounts[cell];
+                    }
+                }
+            }
+        }
+
+        numRows += to - from;
+    }
+
+    /**
+     * Sets the probabilities of the given IM, which must have the nodes and tables of the IM the counter was made
+     * for, to their maximum likelihood estimates from the counts. A row of a table with no counts is set to NaN.
+     */
+    public void setProbabilities(BayesIm bayesIm) {
+        checkTables(bayesIm);
+
+        for (int node = 0; node < counts.length; node++) {
+            int numColumns = numCategories[node];
+            long[] _counts = counts[node];
+
+            for (int row = 0; row < bayesIm.getNumRows(node); row++) {
+                long total = 0;
+
+                for (int col = 0; col < numColumns; col++) {
+                    total += _counts[row * numColumns + col];
+                }
+
+                for (int col = 0; col < numColumns; col++) {
+                    double p = total == 0 ? Double.NaN : _counts[row * numColumns + col] / (double) total;
+                    bayesIm.setProbability(node, row, col, p);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the pseudocounts of the given posterior to those of the given prior plus the counts. Both must have the
+     * nodes and tables of the IM the counter was made for.
+     */
+    public void setPseudocounts(DirichletBayesIm prior, DirichletBayesIm posterior) {
+        checkTables(prior);
+        checkTables(posterior);
+
+        for (int node = 0; node < counts.length; node++) {
+            int numColumns = numCategories[node];
+
+            for (int row = 0; row < prior.getNumRows(node); row++) {
+                for (int col = 0; col < numColumns; col++) {
+                    double value = counts[node][row * numColumns + col] + prior.getPseudocount(node, row, col);
+                    posterior.setPseudocount(node, row, col, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of rows counted for the given node with the given row of parent values and the given value.
+     */
+    public long getCount(int node, int row, int col) {
+        return counts[node][row * numCategories[node] + col];
+    }
+
+    /**
+     * Returns a copy of the counts for the given node, indexed rowIndex * numColumns + column.
+     */
+    public long[] getCounts(int node) {
+        return Arrays.copyOf(counts[node], counts[node].length);
+    }
+
+    /**
+     * Returns the number of rows added so far, whether counted or not, and not counting multipliers.
+     */
+    public long getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * Sets all of the counts back to zero.
+     */
+    public void reset() {
+        for (long[] _counts : counts) {
+            Arrays.fill(_counts, 0L);
+        }
+
+        numRows = 0;
+    }
+
+    public boolean isCompleteCasesOnly() {
+        return completeCasesOnly;
+    }
+
+    /**
+     * True if a row missing the value of any node should not be counted at all; false (the default) if it should
+     * still be counted for the nodes whose families it has complete.
+     */
+    public void setCompleteCasesOnly(boolean completeCasesOnly) {
+        this.completeCasesOnly = completeCasesOnly;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used. Default is ParallelUtils.getDefaultParallelism(). Does not affect the counts.
+     */
+    public void setParallelism(int parallelism) {
+        ParallelUtils.checkParallelism(parallelism);
+        this.parallelism = parallelism;
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    private void checkTables(BayesIm bayesIm) {
+        if (bayesIm.getNumNodes() != counts.length) {
+            throw new IllegalArgumentException("Expecting an IM over " + counts.length + " nodes.");
+        }
+
+        for (int node = 0; node < counts.length; node++) {
+            if (!names[node].equals(bayesIm.getNode(node).getName())
+                    || bayesIm.getNumColumns(node) != numCategories[node]
+                    || !Arrays.equals(bayesIm.getParents(node), parents[node])) {
+                throw new IllegalArgumentException("The table for " + names[node] + " does not match.");
+            }
+        }
+    }
+
+    /**
+     * Counts the rows from from, inclusive, to to, exclusive, a block at a time, into its own tables, or into the
+     * given ones.
+     */
+    private class CountTask extends RecursiveAction {
+        private final DataSet dataSet;
+        private final int[] columns;
+        private final int from;
+        private final int to;
+        private long[][] counts;
+
+        private CountTask(DataSet dataSet, int[] columns, int from, int to, long[][] counts) {
+            this.dataSet = dataSet;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+            this.counts = counts;
+        }
+
+        protected void compute() {
+            if (counts == null) {
+                counts = new long[numCategories.length][];
+
+                for (int node = 0; node < counts.length; node++) {
+                    counts[node] = new long[FamilyCounts.this.counts[node].length];
+                }
+            }
+
+            int numNodes = numCategories.length;
+            short[][] values = new short[numNodes][BLOCK];
+            int[] weights = new int[BLOCK];
+            int[] cells = new int[BLOCK];
+            boolean[] complete = new boolean[BLOCK];
+
+            for (int start = from; start < to; start += BLOCK) {
+                int size = Math.min(BLOCK, to - start);
+                Arrays.fill(complete, 0, size, true);
+
+                // Copy the block, column by column; -1 marks missing values.
+                for (int node = 0; node < numNodes; node++) {
+                    short[] _values = values[node];
+                    int column = columns[node];
+
+                    for (int k = 0; k < size; k++) {
+                        int value = dataSet.getInt(start + k, column);
+
+                        if (value == DiscreteVariable.MISSING_VALUE) {
+                            _values[k] = -1;
+                            complete[k] = false;
+                        } else if (value < 0 || value >= numCategories[node]) {
+                            throw new IllegalArgumentException("Value " + value + " of " + names[node]
+                                    + " in row " + (start + k) + " is out of range.");
+                        } else {
+                            _values[k] = (short) value;
+                        }
+                    }
+                }
+
+                for (int k = 0; k < size; k++) {
+                    weights[k] = completeCasesOnly && !complete[k] ? 0 : dataSet.getMultiplier(start + k);
+                }
+
+                for (int node = 0; node < numNodes; node++) {
+                    Arrays.fill(cells, 0, size, 0);
+
+                    // Mixed radix cell indices, parents first; -1 marks rows missing a value.
+                    for (int parent : parents[node]) {
+                        addDigit(cells, values[parent], numCategories[parent], size);
+                    }
+
+                    addDigit(cells, values[node], numCategories[node], size);
+
+                    long[] _counts = counts[node];
+
+                    for (int k = 0; k < size; k++) {
+                        int cell = cells[k];
+                        if (cell >= 0) _counts[cell] += weights[k];
+                    }
+                }
+            }
+        }
+
+        private void addDigit(int[] cells, short[] values, int dim, int size) {
+            for (int k = 0; k < size; k++) {
+                int value = values[k];
+                int cell = cells[k];
+                cells[k] = (cell < 0 || value < 0) ? -1 : cell * dim + value;
+            }
+        }
+    }
+}
+
+
+
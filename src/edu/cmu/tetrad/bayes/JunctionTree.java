@@ -0,0 +1,841 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bayes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A junction tree for exact inference in a discrete Bayes IM, with Hugin-style propagation.
+ * <p/>
+ * The moral graph of the IM is triangulated by eliminating variables greedily in min-fill order (ties going to the
+ * variable with the smallest clique table), and the maximal elimination cliques are joined by a maximum weight
+ * spanning tree on the sizes of their intersections. Clique and separator potentials are flat double arrays, indexed
+ * as place-value numbers over the variables of the clique in ascending order, first variable most significant. Each
+ * conditional probability table is multiplied into a clique containing its family and the tree is calibrated once;
+ * the calibrated potentials are kept as the prior.
+ * <p/>
+ * Evidence is given for each variable as the set of its categories that are allowed. Evidence is propagated
+ * incrementally: if the new evidence only narrows the evidence already in the tree, the new findings are multiplied
+ * into their cliques and propagated from there--distributed only, if they all fall into one clique--and otherwise
+ * the tree is reset to the prior and all of the findings are propagated. Potentials are not normalized, so after
+ * propagation every clique sums to the probability of the evidence.
+ *
+ * @author Joseph Ramsey
+ * @see JunctionTreeUpdater
+ */
+public final class JunctionTree {
+
+    /**
+     * The number of categories of each variable.
+     */
+    private final int[] numCategories;
+
+    /**
+     * The variables of each clique, ascending, and the sizes of their tables.
+     */
+    private final int[][] cliques;
+    private final int[] tableSizes;
+
+    /**
+     * For each variable, the smallest clique containing it, and the smallest clique containing its family.
+     */
+    private final int[] home;
+    private final int[] familyClique;
+
+    /**
+     * For each variable its family--parents, then the variable, as in its conditional probability table--and, made
+     * on demand, the projections of its home clique onto the variable and of its family clique onto the family.
+     */
+    private final int[][] families;
+    private final int[][] homeMaps;
+    private final int[][] familyMaps;
+
+    /**
+     * The edges of the tree: the cliques at either end, and for each cell of those cliques the cell of the separator
+     * it projects to.
+     */
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+    private final int[][] fromMaps;
+    private final int[][] toMaps;
+
+    /**
+     * For each clique, the edges incident to it.
+     */
+    private final int[][] incidentEdges;
+
+    /**
+     * The calibrated potentials with no evidence.
+     */
+    private final double[][] priorPotentials;
+    private final double[][] priorSeparators;
+
+    /**
+     * The current potentials, and the evidence that has been entered into them.
+     */
+    private double[][] potentials;
+    private double[][] separators;
+    private final boolean[][] entered;
+
+    /**
+     * Scratch space for messages, one for each edge, and for traversals of the tree: the cliques in breadth first
+     * order from a root, and the edge by which each was reached.
+     */
+    private final double[][] messages;
+    private final int[] order;
+    private final int[] parentEdge;
+    private final boolean[] visited;
+
+    /**
+     * Marginals of single variables under the current evidence, calculated on demand.
+     */
+    private final double[][] marginals;
+
+    //==============================CONSTRUCTORS===========================//
+
+    /**
+     * Constructs and calibrates a junction tree for the given IM.
+     *
+     * @throws IllegalArgumentException if some probability in the IM is not filled in.
+     */
+    public JunctionTree(BayesIm bayesIm) {
+        int numNodes = bayesIm.getNumNodes();
+        this.numCategories = new int[numNodes];
+        int[][] parents = new int[numNodes][];
+
+        for (int node = 0; node < numNodes; node++) {
+            numCategories[node] = bayesIm.getNumColumns(node);
+            parents[node] = bayesIm.getParents(node);
+        }
+
+        List<int[]> _cliques = findCliques(parents);
+        int numCliques = _cliques.size();
+
+        this.cliques = _cliques.toArray(new int[numCliques][]);
+        this.tableSizes = new int[numCliques];
+
+        for (int c = 0; c < numCliques; c++) {
+            int[] clique = cliques[c];
+            long size = 1;
+
+            for (int node : clique) {
+                size *= numCategories[node];
+
+                if (size > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("The graph is too densely connected for a junction tree; " +
+                            "a clique of " + clique.length + " variables would be needed.");
+                }
+            }
+
+            tableSizes[c] = (int) size;
+        }
+
+        this.home = new int[numNodes];
+        this.familyClique = new int[numNodes];
+        this.families = new int[numNodes][];
+        this.homeMaps = new int[numNodes][];
+        this.familyMaps = new int[numNodes][];
+
+        for (int node = 0; node < numNodes; node++) {
+            families[node] = new int[parents[node].length + 1];
+            System.arraycopy(parents[node], 0, families[node], 0, parents[node].length);
+            families[node][parents[node].length] = node;
+
+            int[] family = families[node].clone();
+            Arrays.sort(family);
+            home[node] = smallestCliqueContaining(new int[]{node});
+            familyClique[node] = smallestCliqueContaining(family);
+        }
+
+        // Join the cliques by a maximum weight spanning tree (Prim); cliques with nothing in common are joined by
+        // empty separators, which simply pass on totals.
+        this.edgeFrom = new int[numCliques - 1];
+        this.edgeTo = new int[numCliques - 1];
+        this.fromMaps = new int[numCliques - 1][];
+        this.toMaps = new int[numCliques - 1][];
+        this.priorSeparators = new double[numCliques - 1][];
+
+        boolean[] inTree = new boolean[numCliques];
+        int[] bestWeight = new int[numCliques];
+        int[] bestLink = new int[numCliques];
+        Arrays.fill(bestWeight, -1);
+        inTree[0] = true;
+
+        for (int c = 1; c < numCliques; c++) {
+            bestWeight[c] = intersection(cliques[0], cliques[c]).length;
+        }
+
+        for (int e = 0; e < numCliques - 1; e++) {
+            int next = -1;
+
+            for (int c = 0; c < numCliques; c++) {
+                if (!inTree[c] && (next == -1 || bestWeight[c] > bestWeight[next])) next = c;
+            }
+
+            int[] separator = intersection(cliques[bestLink[next]], cliques[next]);
+            edgeFrom[e] = bestLink[next];
+            edgeTo[e] = next;
+            fromMaps[e] = project(bestLink[next], separator);
+            toMaps[e] = project(next, separator);
+            priorSeparators[e] = new double[tableSize(separator)];
+            Arrays.fill(priorSeparators[e], 1.0);
+            inTree[next] = true;
+
+            for (int c = 0; c < numCliques; c++) {
+                if (inTree[c]) continue;
+                int weight = intersection(cliques[next], cliques[c]).length;
+
+                if (weight > bestWeight[c]) {
+                    bestWeight[c] = weight;
+                    bestLink[c] = next;
+                }
+            }
+        }
+
+        int[] numIncident = new int[numCliques];
+
+        for (int e = 0; e < numCliques - 1; e++) {
+            numIncident[edgeFrom[e]]++;
+            numIncident[edgeTo[e]]++;
+        }
+
+        this.incidentEdges = new int[numCliques][];
+
+        for (int c = 0; c < numCliques; c++) {
+            incidentEdges[c] = new int[numIncident[c]];
+            numIncident[c] = 0;
+        }
+
+        for (int e = 0; e < numCliques - 1; e++) {
+            incidentEdges[edgeFrom[e]][numIncident[edgeFrom[e]]++] = e;
+            incidentEdges[edgeTo[e]][numIncident[edgeTo[e]]++] = e;
+        }
+
+        // Multiply in the conditional probability tables. With the node last, the cell index of a family table
+        // is rowIndex * numColumns + column.
+        this.priorPotentials = new double[numCliques][];
+
+        for (int c = 0; c < numCliques; c++) {
+            priorPotentials[c] = new double[tableSizes[c]];
+            Arrays.fill(priorPotentials[c], 1.0);
+        }
+
+        for (int node = 0; node < numNodes; node++) {
+            int numRows = bayesIm.getNumRows(node);
+            int numColumns = numCategories[node];
+            double[] cpt = new double[numRows * numColumns];
+
+            for (int row = 0; row < numRows; row++) {
+                for (int col = 0; col < numColumns; col++) {
+                    double p = bayesIm.getProbability(node, row, col);
+
+                    if (Double.isNaN(p)) {
+                        throw new IllegalArgumentException("Some probability values in the BayesIm are not " +
+                                "filled in; cannot build a junction tree.");
+                    }
+
+                    cpt[row * numColumns + col] = p;
+                }
+            }
+
+            int[] map = familyMap(node);
+            double[] potential = priorPotentials[familyClique[node]];
+
+            for (int cell = 0; cell < potential.length; cell++) {
+                potential[cell] *= cpt[map[cell]];
+            }
+        }
+
+        this.messages = copy(priorSeparators);
+        this.order = new int[numCliques];
+        this.parentEdge = new int[numCliques];
+        this.visited = new boolean[numCliques];
+        this.potentials = priorPotentials;
+        this.separators = priorSeparators;
+        propagate(0);
+
+        this.potentials = copy(priorPotentials);
+        this.separators = copy(priorSeparators);
+
+        this.entered = new boolean[numNodes][];
+
+        for (int node = 0; node < numNodes; node++) {
+            entered[node] = new boolean[numCategories[node]];
+            Arrays.fill(entered[node], true);
+        }
+
+        this.marginals = new double[numNodes][];
+    }
+
+    //============================PUBLIC METHODS==========================//
+
+    /**
+     * Sets the evidence, allowed[i][j] being true just in case category j of variable i is allowed, and propagates
+     * it.
+     */
+    public void setEvidence(boolean[][] allowed) {
+        if (allowed.length != numCategories.length) {
+            throw new IllegalArgumentException("Expecting evidence for " + numCategories.length + " variables.");
+        }
+
+        boolean narrowing = true;
+        boolean changed = false;
+
+        for (int node = 0; node < allowed.length; node++) {
+            if (!Arrays.equals(allowed[node], entered[node])) {
+                if (allowed[node].length != numCategories[node]) {
+                    throw new IllegalArgumentException("Expecting " + numCategories[node] + " categories for " +
+                            "variable " + node + ".");
+                }
+
+                changed = true;
+
+                for (int k = 0; k < allowed[node].length; k++) {
+                    if (allowed[node][k] && !entered[node][k]) narrowing = false;
+                }
+            }
+        }
+
+        if (!changed) {
+            return;
+        }
+
+        Arrays.fill(marginals, null);
+
+        if (!narrowing) {
+            reset();
+
+            for (int node = 0; node < allowed.length; node++) {
+                Arrays.fill(entered[node], true);
+            }
+        }
+
+        int root = -1;
+        boolean oneClique = true;
+
+        for (int node = 0; node < allowed.length; node++) {
+            if (!Arrays.equals(allowed[node], entered[node])) {
+                enterFinding(node, allowed[node]);
+                System.arraycopy(allowed[node], 0, entered[node], 0, allowed[node].length);
+
+                if (root == -1) {
+                    root = home[node];
+                } else if (home[node] != root) {
+                    oneClique = false;
+                }
+            }
+        }
+
+        if (root == -1) {
+            return;
+        }
+
+        if (oneClique) {
+            distribute(root);
+        } else {
+            propagate(root);
+        }
+    }
+
+    /**
+     * Returns the probability of the evidence.
+     */
+    public double getProbabilityOfEvidence() {
+        return sum(potentials[0]);
+    }
+
+    /**
+     * Returns P(node = category | evidence), or NaN if the evidence has probability zero.
+     */
+    public double getMarginal(int node, int category) {
+        if (marginals[node] == null) {
+            marginals[node] = marginal(potentials, node);
+        }
+
+        return marginals[node][category];
+    }
+
+    /**
+     * Returns P(node = category) with no evidence.
+     */
+    public double getPriorMarginal(int node, int category) {
+        return marginal(priorPotentials, node)[category];
+    }
+
+    /**
+     * Returns P(nodes[i] = categories[i] for all i | evidence), or NaN if the evidence has probability zero. If the
+     * nodes are all in one clique this is a sum over that clique; otherwise the query is entered as further evidence,
+     * collected to one clique, and the potentials are then restored.
+     */
+    public double getJointMarginal(int[] nodes, int[] categories) {
+        double total = getProbabilityOfEvidence();
+
+        if (total == 0.0) {
+            return Double.NaN;
+        }
+
+        boolean[][] query = new boolean[nodes.length][];
+
+        for (int i = 0; i < nodes.length; i++) {
+            query[i] = new boolean[numCategories[nodes[i]]];
+            query[i][categories[i]] = true;
+        }
+
+        int c = smallestCliqueContaining(sortedUnique(nodes));
+
+        if (c != -1) {
+            double sum = 0.0;
+            double[] potential = potentials[c];
+            int[][] maps = new int[nodes.length][];
+
+            for (int i = 0; i < nodes.length; i++) {
+                maps[i] = home[nodes[i]] == c ? homeMap(nodes[i]) : project(c, new int[]{nodes[i]});
+            }
+
+            cells:
+            for (int cell = 0; cell < potential.length; cell++) {
+                for (int i = 0; i < nodes.length; i++) {
+                    if (!query[i][maps[i][cell]]) continue cells;
+                }
+
+                sum += potential[cell];
+            }
+
+            return sum / total;
+        }
+
+        double[][] savedPotentials = copy(potentials);
+        double[][] savedSeparators = copy(separators);
+
+        try {
+            for (int i = 0; i < nodes.length; i++) {
+                enterFinding(nodes[i], query[i]);
+            }
+
+            collect(0);
+            return sum(potentials[0]) / total;
+        } finally {
+            restore(potentials, savedPotentials);
+            restore(separators, savedSeparators);
+        }
+    }
+
+    /**
+     * Returns the table of P(parents, node | evidence) times the probability of the evidence, indexed as the node's
+     * conditional probability table is: rowIndex * numColumns + column.
+     */
+    public double[] getFamilyTable(int node) {
+        double[] table = new double[tableSize(families[node])];
+        addFamilyTable(node, 1.0, table);
+        return table;
+    }
+
+    /**
+     * Adds weight times the table of P(parents, node | evidence) to the given table, indexed as the node's
+     * conditional probability table is--for accumulating expected counts. The evidence must have positive
+     * probability.
+     */
+    public void addFamilyTable(int node, double weight, double[] table) {
+        int[] map = familyMap(node);
+        double[] potential = potentials[familyClique[node]];
+        double scale = weight / getProbabilityOfEvidence();
+
+        for (int cell = 0; cell < potential.length; cell++) {
+            table[map[cell]] += scale * potential[cell];
+        }
+    }
+
+    public int getNumCliques() {
+        return cliques.length;
+    }
+
+    /**
+     * Returns the number of cells in the largest clique table.
+     */
+    public int getMaxCliqueSize() {
+        int max = 0;
+
+        for (int size : tableSizes) {
+            max = Math.max(max, size);
+        }
+
+        return max;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    /**
+     * Triangulates the moral graph by min-fill elimination and returns the maximal elimination cliques, each sorted.
+     */
+    private List<int[]> findCliques(int[][] parents) {
+        int numNodes = parents.length;
+        List<Set<Integer>> adjacent = new ArrayList<Set<Integer>>();
+
+        for (int node = 0; node < numNodes; node++) {
+            adjacent.add(new HashSet<Integer>());
+        }
+
+        for (int node = 0; node < numNodes; node++) {
+            int[] _parents = parents[node];
+
+            for (int i = 0; i < _parents.length; i++) {
+                adjacent.get(node).add(_parents[i]);
+                adjacent.get(_parents[i]).add(node);
+
+                for (int j = i + 1; j < _parents.length; j++) {
+                    adjacent.get(_parents[i]).add(_parents[j]);
+                    adjacent.get(_parents[j]).add(_parents[i]);
+                }
+            }
+        }
+
+        boolean[] eliminated = new boolean[numNodes];
+        List<int[]> cliques = new ArrayList<int[]>();
+
+        for (int step = 0; step < numNodes; step++) {
+            int best = -1;
+            int bestFill = Integer.MAX_VALUE;
+            double bestWeight = Double.POSITIVE_INFINITY;
+
+            for (int node = 0; node < numNodes; node++) {
+                if (eliminated[node]) continue;
+
+                int fill = 0;
+                double weight = numCategories[node];
+                Integer[] neighbors = adjacent.get(node).toArray(new Integer[0]);
+
+                for (int i = 0; i < neighbors.length; i++) {
+                    weight *= numCategories[neighbors[i]];
+
+                    for (int j = i + 1; j < neighbors.length; j++) {
+                        if (!adjacent.get(neighbors[i]).contains(neighbors[j])) fill++;
+                    }
+                }
+
+                if (fill < bestFill || (fill == bestFill && weight < bestWeight)) {
+                    best = node;
+                    bestFill = fill;
+                    bestWeight = weight;
+                }
+            }
+
+            Set<Integer> neighbors = adjacent.get(best);
+            int[] clique = new int[neighbors.size() + 1];
+            int k = 0;
+            clique[k++] = best;
+
+            for (int neighbor : neighbors) {
+                clique[k++] = neighbor;
+            }
+
+            Arrays.sort(clique);
+
+            // Earlier cliques contain eliminated variables, so only the new clique can be contained in another.
+            boolean maximal = true;
+
+            for (int[] other : cliques) {
+                if (intersection(clique, other).length == clique.length) {
+                    maximal = false;
+                    break;
+                }
+            }
+
+            if (maximal) {
+                cliques.add(clique);
+            }
+
+            for (int u : neighbors) {
+                for (int v : neighbors) {
+                    if (u != v) adjacent.get(u).add(v);
+                }
+
+                adjacent.get(u).remove(best);
+            }
+
+            adjacent.get(best).clear();
+            eliminated[best] = true;
+        }
+
+        return cliques;
+    }
+
+    /**
+     * Returns the smallest clique containing all of the given sorted variables, or -1 if there is none.
+     */
+    private int smallestCliqueContaining(int[] nodes) {
+        int best = -1;
+
+        for (int c = 0; c < cliques.length; c++) {
+            if (intersection(nodes, cliques[c]).length == nodes.length
+                    && (best == -1 || tableSizes[c] < tableSizes[best])) {
+                best = c;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Returns, for each cell of the given clique's table, the index of the cell it falls in of a table over the given
+     * variables (which must be in the clique), in the order given, first variable most significant.
+     */
+    private int[] project(int c, int[] nodes) {
+        int[] clique = cliques[c];
+        int[] subStrides = new int[clique.length];
+        int stride = 1;
+
+        for (int k = nodes.length - 1; k >= 0; k--) {
+            subStrides[Arrays.binarySearch(clique, nodes[k])] = stride;
+            stride *= numCategories[nodes[k]];
+        }
+
+        int[] map = new int[tableSizes[c]];
+        int[] coords = new int[clique.length];
+        int index = 0;
+
+        for (int cell = 0; cell < map.length; cell++) {
+            map[cell] = index;
+
+            for (int k = clique.length - 1; k >= 0; k--) {
+                coords[k]++;
+                index += subStrides[k];
+
+                if (coords[k] < numCategories[clique[k]]) break;
+
+                index -= subStrides[k] * coords[k];
+                coords[k] = 0;
+            }
+        }
+
+        return map;
+    }
+
+    private int[] homeMap(int node) {
+        if (homeMaps[node] == null) {
+            homeMaps[node] = project(home[node], new int[]{node});
+        }
+
+        return homeMaps[node];
+    }
+
+    private int[] familyMap(int node) {
+        if (familyMaps[node] == null) {
+            familyMaps[node] = project(familyClique[node], families[node]);
+        }
+
+        return familyMaps[node];
+    }
+
+    /**
+     * Multiplies the indicator of the allowed categories of the given variable into its home clique.
+     */
+    private void enterFinding(int node, boolean[] allowed) {
+        int[] map = homeMap(node);
+        double[] potential = potentials[home[node]];
+
+        for (int cell = 0; cell < potential.length; cell++) {
+            if (!allowed[map[cell]]) potential[cell] = 0.0;
+        }
+    }
+
+    private double[] marginal(double[][] potentials, int node) {
+        int[] map = homeMap(node);
+        double[] potential = potentials[home[node]];
+        double[] marginal = new double[numCategories[node]];
+
+        for (int cell = 0; cell < potential.length; cell++) {
+            marginal[map[cell]] += potential[cell];
+        }
+
+        double total = sum(marginal);
+
+        for (int k = 0; k < marginal.length; k++) {
+            marginal[k] = total == 0.0 ? Double.NaN : marginal[k] / total;
+        }
+
+        return marginal;
+    }
+
+    /**
+     * Collects to and distributes from the given clique.
+     */
+    private void propagate(int root) {
+        collect(root);
+        distribute(root);
+    }
+
+    private void collect(int root) {
+        traverse(root);
+
+        for (int i = order.length - 1; i > 0; i--) {
+            pass(parentEdge[order[i]], order[i]);
+        }
+    }
+
+    private void distribute(int root) {
+        traverse(root);
+
+        for (int i = 1; i < order.length; i++) {
+            int e = parentEdge[order[i]];
+            pass(e, edgeFrom[e] == order[i] ? edgeTo[e] : edgeFrom[e]);
+        }
+    }
+
+    /**
+     * Lists the cliques in breadth first order from the given root, recording the edge by which each was reached.
+     */
+    private void traverse(int root) {
+        Arrays.fill(visited, false);
+        int head = 0;
+        int tail = 0;
+        order[tail++] = root;
+        visited[root] = true;
+        parentEdge[root] = -1;
+
+        while (head < tail) {
+            int c = order[head++];
+
+            for (int e : incidentEdges[c]) {
+                int other = edgeFrom[e] == c ? edgeTo[e] : edgeFrom[e];
+
+                if (!visited[other]) {
+                    visited[other] = true;
+                    parentEdge[other] = e;
+                    order[tail++] = other;
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes a message across the given edge from the given clique to the clique at the other end.
+     */
+    private void pass(int e, int from) {
+        boolean forward = edgeFrom[e] == from;
+        int to = forward ? edgeTo[e] : edgeFrom[e];
+        int[] fromMap = forward ? fromMaps[e] : toMaps[e];
+        int[] toMap = forward ? toMaps[e] : fromMaps[e];
+
+        double[] fromPotential = potentials[from];
+        double[] toPotential = potentials[to];
+        double[] separator = separators[e];
+        double[] message = messages[e];
+        Arrays.fill(message, 0.0);
+
+        for (int cell = 0; cell < fromPotential.length; cell++) {
+            message[fromMap[cell]] += fromPotential[cell];
+        }
+
+        // The message replaces the separator, and the scratch space then holds the update ratio.
+        for (int s = 0; s < separator.length; s++) {
+            double ratio = separator[s] == 0.0 ? 0.0 : message[s] / separator[s];
+            separator[s] = message[s];
+            message[s] = ratio;
+        }
+
+        for (int cell = 0; cell < toPotential.length; cell++) {
+            toPotential[cell] *= message[toMap[cell]];
+        }
+    }
+
+    /**
+     * Resets the potentials to the prior.
+     */
+    private void reset() {
+        restore(potentials, priorPotentials);
+        restore(separators, priorSeparators);
+    }
+
+    private int tableSize(int[] nodes) {
+        int size = 1;
+
+        for (int node : nodes) {
+            size *= numCategories[node];
+        }
+
+        return size;
+    }
+
+    private static int[] sortedUnique(int[] nodes) {
+        int[] sorted = nodes.clone();
+        Arrays.sort(sorted);
+        int n = 0;
+
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) sorted[n++] = sorted[i];
+        }
+
+        return Arrays.copyOf(sorted, n);
+    }
+
+    /**
+     * Returns the intersection of two sorted arrays.
+     */
+    private static int[] intersection(int[] a, int[] b) {
+        int[] intersection = new int[Math.min(a.length, b.length)];
+        int n = 0;
+
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                intersection[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+
+        return Arrays.copyOf(intersection, n);
+    }
+
+    private static double sum(double[] x) {
+        double sum = 0.0;
+
+        for (double _x : x) {
+            sum += _x;
+        }
+
+        return sum;
+    }
+
+    private static double[][] copy(double[][] x) {
+        double[][] copy = new double[x.length][];
+
+        for (int i = 0; i < x.length; i++) {
+            copy[i] = x[i].clone();
+        }
+
+        return copy;
+    }
+
+    private static void restore(double[][] x, double[][] saved) {
+        for (int i = 0; i < x.length; i++) {
+            System.arraycopy(saved[i], 0, x[i], 0, x[i].length);
+        }
+    }
+}
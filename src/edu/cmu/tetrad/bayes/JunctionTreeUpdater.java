@@ -0,0 +1,375 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.List;
+
+/**
+ * Performs exact updating on a BayesIm by propagation in a junction tree. Marginals and joint marginals cost about
+ * as much as a pass over the clique tables, so networks far too large for summing over the joint can be updated as
+ * long as their cliques stay small. Changing the evidence without changing the manipulations reuses the tree and
+ * propagates incrementally.
+ *
+ * @author Joseph Ramsey
+ * @see JunctionTree
+ */
+public final class JunctionTreeUpdater implements ManipulatingBayesUpdater {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The BayesIm which this updater modifies.
+     *
+     * @serial Cannot be null.
+     */
+    private BayesIm bayesIm;
+
+    /**
+     * Stores evidence for all variables.
+     *
+     * @serial Cannot be null.
+     */
+    private Evidence evidence;
+
+    /**
+     * The last manipulated BayesIm.
+     *
+     * @serial Can be null.
+     */
+    private BayesIm manipulatedBayesIm;
+
+    /**
+     * The BayesIm after update, if this was calculated.
+     *
+     * @serial Can be null.
+     */
+    private BayesIm updatedBayesIm;
+
+    /**
+     * The junction tree for the manipulated BayesIm, built on demand.
+     */
+    private transient JunctionTree junctionTree;
+
+    /**
+     * True if the current evidence has been entered into the junction tree.
+     */
+    private transient boolean evidenceEntered;
+
+    //==============================CONSTRUCTORS===========================//
+
+    /**
+     * Constructs a new updater for the given Bayes net.
+     */
+    public JunctionTreeUpdater(BayesIm bayesIm) {
+        if (bayesIm == null) {
+            throw new NullPointerException();
+        }
+
+        this.bayesIm = bayesIm;
+        setEvidence(Evidence.tautology(bayesIm));
+    }
+
+    /**
+     * Constructs a new updater for the given Bayes net.
+     */
+    public JunctionTreeUpdater(BayesIm bayesIm, Evidence evidence) {
+        if (bayesIm == null) {
+            throw new NullPointerException();
+        }
+
+        this.bayesIm = bayesIm;
+        setEvidence(evidence);
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     *
+     * @see edu.cmu.TestSerialization
+     * @see edu.cmu.tetradapp.util.TetradSerializableUtils
+     */
+    public static JunctionTreeUpdater serializableInstance() {
+        return new JunctionTreeUpdater(MlBayesIm.serializableInstance());
+    }
+
+    //============================PUBLIC METHODS==========================//
+
+    /**
+     * The BayesIm that this updater bases its update on. This BayesIm is not
+     * modified; rather, a new BayesIm is created and updated.
+     */
+    public BayesIm getBayesIm() {
+        return bayesIm;
+    }
+
+    public BayesIm getManipulatedBayesIm() {
+        return this.manipulatedBayesIm;
+    }
+
+    public Graph getManipulatedGraph() {
+        return getManipulatedBayesIm().getDag();
+    }
+
+    /**
+     * The updated BayesIm. This is a different object from the source BayesIm.
+     *
+     * @see #getBayesIm
+     */
+    public BayesIm getUpdatedBayesIm() {
+        if (updatedBayesIm == null) {
+            updateAll();
+        }
+
+        return updatedBayesIm;
+    }
+
+    /**
+     * Returns a defensive copy of the evidence.
+     */
+    public Evidence getEvidence() {
+        return new Evidence(this.evidence);
+    }
+
+    public final void setEvidence(Evidence evidence) {
+        if (evidence == null) {
+            throw new NullPointerException();
+        }
+
+        if (!evidence.isCompatibleWith(bayesIm)) {
+            throw new IllegalArgumentException("The variable list for the " +
+                    "given bayesIm must be compatible with the variable list " +
+                    "for this evidence.");
+        }
+
+        // The tree depends only on which variables are manipulated.
+        boolean manipulationsChanged = manipulatedBayesIm == null || !sameManipulations(this.evidence, evidence);
+        this.evidence = evidence;
+
+        if (manipulationsChanged) {
+            Dag graph = bayesIm.getBayesPm().getDag();
+            Dag manipulatedGraph = createManipulatedGraph(graph);
+            BayesPm manipulatedPm = createManipulatedBayesPm(manipulatedGraph);
+
+            this.manipulatedBayesIm = createManipulatedBayesIm(manipulatedPm);
+            this.junctionTree = null;
+        }
+
+        this.updatedBayesIm = null;
+        this.evidenceEntered = false;
+    }
+
+    public boolean isJointMarginalSupported() {
+        return true;
+    }
+
+    public double getJointMarginal(int[] variables, int[] values) {
+        if (variables.length != values.length) {
+            throw new IllegalArgumentException("Values must match variables.");
+        }
+
+        return getJunctionTree().getJointMarginal(variables, values);
+    }
+
+    /**
+     * Returns P(variable==value | evidence) where evience is getEvidence().
+     */
+    public double getMarginal(int variable, int value) {
+        return getJunctionTree().getMarginal(variable, value);
+    }
+
+    public double[] calculatePriorMarginals(int nodeIndex) {
+        boolean manipulated = false;
+
+        for (int i = 0; i < evidence.getNumNodes(); i++) {
+            if (evidence.isManipulated(i)) manipulated = true;
+        }
+
+        // Without manipulations the prior is kept in the tree.
+        if (!manipulated) {
+            double[] marginals = new double[evidence.getNumCategories(nodeIndex)];
+
+            for (int i = 0; i < getBayesIm().getNumColumns(nodeIndex); i++) {
+                marginals[i] = getJunctionTree().getPriorMarginal(nodeIndex, i);
+            }
+
+            return marginals;
+        }
+
+        Evidence evidence = getEvidence();
+        setEvidence(Evidence.tautology(evidence.getVariableSource()));
+
+        double[] marginals = new double[evidence.getNumCategories(nodeIndex)];
+
+        for (int i = 0; i < getBayesIm().getNumColumns(nodeIndex); i++) {
+            marginals[i] = getMarginal(nodeIndex, i);
+        }
+
+        setEvidence(evidence);
+        return marginals;
+    }
+
+    public double[] calculateUpdatedMarginals(int nodeIndex) {
+        double[] marginals = new double[evidence.getNumCategories(nodeIndex)];
+
+        for (int i = 0; i < getBayesIm().getNumColumns(nodeIndex); i++) {
+            marginals[i] = getMarginal(nodeIndex, i);
+        }
+
+        return marginals;
+    }
+
+    /**
+     * Prints out the most recent marginal.
+     */
+    public String toString() {
+        return "Junction tree updater, evidence = " + evidence;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    /**
+     * Returns the junction tree for the manipulated IM with the current evidence entered.
+     */
+    private JunctionTree getJunctionTree() {
+        if (junctionTree == null) {
+            junctionTree = new JunctionTree(manipulatedBayesIm);
+            evidenceEntered = false;
+        }
+
+        if (!evidenceEntered) {
+            Proposition proposition = new Evidence(evidence, manipulatedBayesIm).getProposition();
+            boolean[][] allowed = new boolean[manipulatedBayesIm.getNumNodes()][];
+
+            for (int i = 0; i < allowed.length; i++) {
+                allowed[i] = new boolean[manipulatedBayesIm.getNumColumns(i)];
+
+                for (int j = 0; j < allowed[i].length; j++) {
+                    allowed[i][j] = proposition.isAllowed(i, j);
+                }
+            }
+
+            junctionTree.setEvidence(allowed);
+            evidenceEntered = true;
+        }
+
+        return junctionTree;
+    }
+
+    /**
+     * Sets each conditional probability to its value given the evidence, read off the clique holding the node's
+     * family; rows whose parent values are impossible given the evidence are set to NaN.
+     */
+    private void updateAll() {
+        BayesIm updatedBayesIm = new MlBayesIm(manipulatedBayesIm);
+        JunctionTree junctionTree = getJunctionTree();
+
+        for (int node = 0; node < manipulatedBayesIm.getNumNodes(); node++) {
+            int numRows = manipulatedBayesIm.getNumRows(node);
+            int numCols = manipulatedBayesIm.getNumColumns(node);
+            double[] table = junctionTree.getFamilyTable(node);
+
+            for (int row = 0; row < numRows; row++) {
+                double total = 0.0;
+
+                for (int col = 0; col < numCols; col++) {
+                    total += table[row * numCols + col];
+                }
+
+                for (int col = 0; col < numCols; col++) {
+                    double p = total > 0.0 ? table[row * numCols + col] / total : Double.NaN;
+                    updatedBayesIm.setProbability(node, row, col, p);
+                }
+            }
+        }
+
+        this.updatedBayesIm = updatedBayesIm;
+    }
+
+    private static boolean sameManipulations(Evidence evidence1, Evidence evidence2) {
+        if (evidence1 == null || evidence1.getNumNodes() != evidence2.getNumNodes()) {
+            return false;
+        }
+
+        for (int i = 0; i < evidence1.getNumNodes(); i++) {
+            if (evidence1.isManipulated(i) != evidence2.isManipulated(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private BayesIm createManipulatedBayesIm(BayesPm updatedBayesPm) {
+        return new MlBayesIm(updatedBayesPm, bayesIm, MlBayesIm.RANDOM);
+    }
+
+    private BayesPm createManipulatedBayesPm(Dag updatedGraph) {
+        return new BayesPm(updatedGraph, bayesIm.getBayesPm());
+    }
+
+    private Dag createManipulatedGraph(Graph graph) {
+        Dag updatedGraph = new Dag(graph);
+
+        for (int i = 0; i < evidence.getNumNodes(); ++i) {
+            if (evidence.isManipulated(i)) {
+                Node node = updatedGraph.getNode(evidence.getNode(i).getName());
+                List<Node> parents = updatedGraph.getParents(node);
+
+                for (Node parent : parents) {
+                    updatedGraph.removeEdge(node, parent);
+                }
+            }
+        }
+
+        return updatedGraph;
+    }
+
+    /**
+     * Adds semantic checks to the default deserialization method. This method
+     * must have the standard signature for a readObject method, and the body of
+     * the method must begin with "s.defaultReadObject();". Other than that, any
+     * semantic checks can be specified and do not need to stay the same from
+     * version to version. A readObject method of this form may be added to any
+     * class, even if Tetrad sessions were previously saved out using a version
+     * of the class that didn't include it. (That's what the
+     * "s.defaultReadObject();" is for. See J. Bloch, Effective Java, for help.
+     *
+     * @throws java.io.IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        if (bayesIm == null) {
+            throw new NullPointerException();
+        }
+
+        if (evidence == null) {
+            throw new NullPointerException();
+        }
+    }
+}
@@ -28,7 +28,9 @@ import java.util.List;
 
 /**
  * Estimates parameters of the given Bayes net from the given data using maximum
- * likelihood method.
+ * likelihood method. The counts for all of the tables are taken in one pass
+ * over the data; see FamilyCounts, which may also be used directly to keep an
+ * estimate up to date as rows are added.
  *
  * @author Shane Harwood, Joseph Ramsey
  */
@@ -65,56 +67,12 @@ public final class MlBayesEstimator {
         List<Node> variables = estimatedIm.getVariables();
         DataSet columnDataSet2 = dataSet.subsetColumns(variables);
         this.reorderedDataSetDiscrete = columnDataSet2;
-        DiscreteProbs discreteProbs = new DataSetProbs(columnDataSet2);
-
-        // We will use the same estimation methods as the updaters, to ensure
-        // compatibility.
-        Proposition assertion = Proposition.tautology(estimatedIm);
-        Proposition condition = Proposition.tautology(estimatedIm);
-        Evidence evidence2 = Evidence.tautology(estimatedIm);
-
-        int numNodes = estimatedIm.getNumNodes();
-
-        for (int node = 0; node < numNodes; node++) {
-            int numRows = estimatedIm.getNumRows(node);
-            int numCols = estimatedIm.getNumColumns(node);
-            int[] parents = estimatedIm.getParents(node);
-
-            for (int row = 0; row < numRows; row++) {
-                int[] parentValues = estimatedIm.getParentValues(node, row);
-
-                for (int col = 0; col < numCols; col++) {
-                                             
-                    // Remove values from the proposition in various ways; if
-                    // a combination exists in the end, calculate a contitional
-                    // probability.
-                    assertion.setToTautology();
-                    condition.setToTautology();
-
-                    for (int i = 0; i < numNodes; i++) {
-                        for (int j = 0; j < evidence2.getNumCategories(i); j++) {
-                            if (!evidence2.getProposition().isAllowed(i, j)) {
-                                condition.removeCategory(i, j);
-                            }
-                        }
-                    }
-
-                    assertion.disallowComplement(node, col);
-
-                    for (int k = 0; k < parents.length; k++) {
-                        condition.disallowComplement(parents[k], parentValues[k]);
-                    }
-
-                    if (condition.existsCombination()) {
-                        double p = discreteProbs.getConditionalProb(assertion, condition);
-                        estimatedIm.setProbability(node, row, col, p);
-                    }
-                    else {
-                        estimatedIm.setProbability(node, row, col, Double.NaN);
-                    }
-                }
-            }
-        }
+
+        // Rows missing any value are left out, as in DataSetProbs.
+        FamilyCounts counts = new FamilyCounts(estimatedIm);
+        counts.setCompleteCasesOnly(true);
+        counts.addRows(columnDataSet2);
+        counts.setProbabilities(estimatedIm);
 
         return estimatedIm;
     }
@@ -979,52 +979,16 @@ public final class MlBayesIm implements BayesIm {
     private void constructSample(int sampleSize,
                                  int numMeasured, DataSet dataSet,
                                  int[] map) {
-        // Get a tier ordering and convert it to an int array.
-        Graph graph = getBayesPm().getDag();
-        Dag dag = (Dag) graph;
-        List<Node> tierOrdering = dag.getTierOrdering();
-        int[] tiers = new int[tierOrdering.size()];
-
-        for (int i = 0; i < tierOrdering.size(); i++) {
-            tiers[i] = getNodeIndex(tierOrdering.get(i));
-        }
-
-        // Construct the sample.
-        int[] combination = new int[nodes.length];
-
-        for (int i = 0; i < sampleSize; i++) {
-            int[] point = new int[nodes.length];
-
-            for (int nodeIndex : tiers) {
-                double cutoff = RandomUtil.getInstance().nextDouble();
-
-                for (int k = 0; k < getNumParents(nodeIndex); k++) {
-                    combination[k] = point[getParent(nodeIndex, k)];
-                }
-
-                int rowIndex = getRowIndex(nodeIndex, combination);
-                double sum = 0.0;
-
-                for (int k = 0; k < getNumColumns(nodeIndex); k++) {
-                    double probability = getProbability(nodeIndex, rowIndex, k);
+        // The seed is drawn from RandomUtil, so seeding RandomUtil, as simulateData(sampleSize, seed, ...) does,
+        // still reproduces the sample.
+        long seed = RandomUtil.getInstance().nextLong();
+        int[][] sample = new ParallelBayesSimulator(this).simulate(sampleSize, seed);
 
-                    if (Double.isNaN(probability)) {
-                        throw new IllegalStateException("Some probability " +
-                                "values in the BayesIm are not filled in; " +
-                                "cannot simulate data.");
-                    }
-
-                    sum += probability;
-
-                    if (sum >= cutoff) {
-                        point[nodeIndex] = k;
-                        break;
-                    }
-                }
-            }
+        for (int j = 0; j < numMeasured; j++) {
+            int[] column = sample[map[j]];
 
-            for (int j = 0; j < numMeasured; j++) {
-                dataSet.setInt(i, j, point[map[j]]);
+            for (int i = 0; i < sampleSize; i++) {
+                dataSet.setInt(i, j, column[i]);
             }
         }
     }
@@ -0,0 +1,475 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ParallelUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Estimates the parameters of a Bayes net with latent variables or missing values by EM, in parallel.
+ * <p/>
+ * The rows of the data are compressed once into distinct patterns of observed values, each with the number of rows
+ * that show it. Patterns with nothing missing contribute fixed counts, which are tallied once. For the others, the
+ * E-step enters each pattern as evidence into a junction tree for the current IM and adds its weight times the
+ * posterior of each family to the expected counts; the patterns are sorted by which variables they observe, so that
+ * consecutive patterns differ little, and split into chunks of a fixed size, each handled on a fork/join pool with its
+ * own junction tree and count tables. The chunks' counts are summed in chunk order, so the estimate does not depend on
+ * the number of threads. The M-step normalizes the counts; a row of a table with no expected count keeps its previous
+ * probabilities.
+ * <p/>
+ * The log likelihood of the data under the IM going into each iteration is recorded. Iteration stops when the
+ * distance between successive IMs (see BayesImDistanceFunction) is at most the tolerance, when the log likelihood
+ * improves by no more than the log likelihood tolerance, or after the maximum number of iterations.
+ *
+ * @author Joseph Ramsey
+ * @see EmBayesEstimator
+ * @see JunctionTree
+ */
+public final class ParallelBayesEm {
+
+    /**
+     * The number of patterns in a chunk of the E-step. Part of the definition of the order in which counts are
+     * summed.
+     */
+    private static final int CHUNK = 256;
+
+    /**
+     * The number of categories of each node, and its parents, as in the IMs estimated.
+     */
+    private final int[] numCategories;
+    private final int[][] parents;
+
+    /**
+     * The distinct patterns with something missing, their values (-1 for missing) and their numbers of rows.
+     */
+    private final int[][] patterns;
+    private final double[] weights;
+
+    /**
+     * The distinct patterns with nothing missing, and their numbers of rows.
+     */
+    private final int[][] completePatterns;
+    private final double[] completeWeights;
+
+    /**
+     * The counts from the complete patterns, by node, indexed rowIndex * numColumns + column.
+     */
+    private final double[][] completeCounts;
+
+    private double tolerance = 0.0001;
+    private double logLikelihoodTolerance = 0.0;
+    private int maxIterations = 1000;
+    private int parallelism = ParallelUtils.getDefaultParallelism();
+
+    /**
+     * The log likelihoods going into each iteration since estimation last started, and the expected counts of the
+     * last iteration.
+     */
+    private final List<Double> logLikelihoods = new ArrayList<Double>();
+    private double[][] expectedCounts;
+
+    //==============================CONSTRUCTORS===========================//
+
+    /**
+     * Compresses the given data for estimating IMs over the given PM. Columns are matched to nodes by name; nodes
+     * with no column--latents, say--are missing in every row.
+     */
+    public ParallelBayesEm(BayesPm bayesPm, DataSet dataSet) {
+        BayesIm structure = new MlBayesIm(bayesPm);
+        int numNodes = structure.getNumNodes();
+
+        this.numCategories = new int[numNodes];
+        this.parents = new int[numNodes][];
+        int[] columns = new int[numNodes];
+
+        for (int node = 0; node < numNodes; node++) {
+            numCategories[node] = structure.getNumColumns(node);
+            parents[node] = structure.getParents(node);
+            Node variable = dataSet.getVariable(structure.getNode(node).getName());
+            columns[node] = variable == null ? -1 : dataSet.getColumn(variable);
+        }
+
+        Map<Pattern, Pattern> distinct = new LinkedHashMap<Pattern, Pattern>();
+
+        for (int i = 0; i < dataSet.getNumRows(); i++) {
+            int[] values = new int[numNodes];
+
+            for (int node = 0; node < numNodes; node++) {
+                int value = columns[node] == -1 ? -1 : dataSet.getInt(i, columns[node]);
+                values[node] = value == DiscreteVariable.MISSING_VALUE ? -1 : value;
+            }
+
+            Pattern pattern = new Pattern(values);
+            Pattern existing = distinct.get(pattern);
+
+            if (existing == null) {
+                distinct.put(pattern, pattern);
+            } else {
+                existing.weight++;
+            }
+        }
+
+        List<Pattern> incomplete = new ArrayList<Pattern>();
+        List<Pattern> complete = new ArrayList<Pattern>();
+
+        for (Pattern pattern : distinct.keySet()) {
+            if (pattern.isComplete()) {
+                complete.add(pattern);
+            } else {
+                incomplete.add(pattern);
+            }
+        }
+
+        // Group patterns that observe the same variables, so that evidence changes little from one to the next.
+        Collections.sort(incomplete, new Comparator<Pattern>() {
+            public int compare(Pattern p1, Pattern p2) {
+                for (int node = 0; node < p1.values.length; node++) {
+                    boolean missing1 = p1.values[node] == -1;
+                    boolean missing2 = p2.values[node] == -1;
+
+                    if (missing1 != missing2) {
+                        return missing1 ? 1 : -1;
+                    }
+                }
+
+                return 0;
+            }
+        });
+
+        this.patterns = new int[incomplete.size()][];
+        this.weights = new double[incomplete.size()];
+
+        for (int p = 0; p < incomplete.size(); p++) {
+            patterns[p] = incomplete.get(p).values;
+            weights[p] = incomplete.get(p).weight;
+        }
+
+        this.completePatterns = new int[complete.size()][];
+        this.completeWeights = new double[complete.size()];
+        this.completeCounts = newCountTables();
+
+        for (int p = 0; p < complete.size(); p++) {
+            int[] values = complete.get(p).values;
+            completePatterns[p] = values;
+            completeWeights[p] = complete.get(p).weight;
+
+            for (int node = 0; node < numNodes; node++) {
+                completeCounts[node][cell(node, values)] += completeWeights[p];
+            }
+        }
+    }
+
+    //============================PUBLIC METHODS==========================//
+
+    /**
+     * Iterates EM from the given IM until one of the stopping rules is met, and returns the last IM.
+     */
+    public BayesIm estimate(BayesIm initialIm) {
+        logLikelihoods.clear();
+        BayesIm oldIm = initialIm;
+
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            BayesIm newIm = iterate(oldIm);
+            double distance = BayesImDistanceFunction.distance(newIm, oldIm);
+            int n = logLikelihoods.size();
+            boolean flat = n > 1 && logLikelihoods.get(n - 1) - logLikelihoods.get(n - 2)
+                    <= logLikelihoodTolerance * Math.abs(logLikelihoods.get(n - 1));
+
+            oldIm = newIm;
+
+            if (distance <= tolerance || flat) {
+                break;
+            }
+        }
+
+        return oldIm;
+    }
+
+    /**
+     * Returns the log likelihoods of the data going into each iteration since estimation last started.
+     */
+    public List<Double> getLogLikelihoods() {
+        return Collections.unmodifiableList(logLikelihoods);
+    }
+
+    /**
+     * Returns the expected counts of the last iteration, by node, indexed rowIndex * numColumns + column.
+     */
+    public double[][] getExpectedCounts() {
+        return expectedCounts;
+    }
+
+    /**
+     * Returns the number of distinct patterns of observed values in the data.
+     */
+    public int getNumPatterns() {
+        return patterns.length + completePatterns.length;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Sets the distance between successive IMs at or below which iteration stops. Default 0.0001.
+     */
+    public void setTolerance(double tolerance) {
+        if (tolerance < 0) {
+            throw new IllegalArgumentException("Tolerance must be non-negative: " + tolerance);
+        }
+
+        this.tolerance = tolerance;
+    }
+
+    public double getLogLikelihoodTolerance() {
+        return logLikelihoodTolerance;
+    }
+
+    /**
+     * Sets the relative improvement in log likelihood at or below which iteration stops. Default 0, which stops only
+     * if the log likelihood stops improving.
+     */
+    public void setLogLikelihoodTolerance(double logLikelihoodTolerance) {
+        if (logLikelihoodTolerance < 0) {
+            throw new IllegalArgumentException("Tolerance must be non-negative: " + logLikelihoodTolerance);
+        }
+
+        this.logLikelihoodTolerance = logLikelihoodTolerance;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        if (maxIterations < 1) {
+            throw new IllegalArgumentException("Max iterations must be at least 1: " + maxIterations);
+        }
+
+        this.maxIterations = maxIterations;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used. Default is ParallelUtils.getDefaultParallelism(). Does not affect the estimate.
+     */
+    public void setParallelism(int parallelism) {
+        ParallelUtils.checkParallelism(parallelism);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Does one iteration of EM from the given IM, recording the log likelihood of the data under it, and returns
+     * the new IM. Its expected counts are then available from getExpectedCounts().
+     */
+    public BayesIm iterate(BayesIm bayesIm) {
+        if (bayesIm.getNumNodes() != numCategories.length) {
+            throw new IllegalArgumentException("Expecting an IM over " + numCategories.length + " nodes.");
+        }
+
+        List<EStepTask> tasks = new ArrayList<EStepTask>();
+
+        for (int from = 0; from < patterns.length; from += CHUNK) {
+            tasks.add(new EStepTask(bayesIm, from, Math.min(from + CHUNK, patterns.length)));
+        }
+
+        ParallelUtils.runAll(tasks, parallelism);
+
+        double[][] counts = newCountTables();
+        double logLikelihood = 0.0;
+
+        for (int node = 0; node < counts.length; node++) {
+            System.arraycopy(completeCounts[node], 0, counts[node], 0, counts[node].length);
+        }
+
+        for (EStepTask task : tasks) {
+            for (int node = 0; node < counts.length; node++) {
+                double[] _counts = counts[node];
+                double[] taskCounts = task.counts[node];
+
+                for (int cell = 0; cell < _counts.length; cell++) {
+                    _counts[cell] += taskCounts[cell];
+                }
+            }
+
+            logLikelihood += task.logLikelihood;
+        }
+
+        for (int p = 0; p < completePatterns.length; p++) {
+            for (int node = 0; node < numCategories.length; node++) {
+                int cell = cell(node, completePatterns[p]);
+                int numColumns = numCategories[node];
+                logLikelihood += completeWeights[p]
+                        * Math.log(bayesIm.getProbability(node, cell / numColumns, cell % numColumns));
+            }
+        }
+
+        logLikelihoods.add(logLikelihood);
+        expectedCounts = counts;
+
+        // M-step.
+        BayesIm newIm = new MlBayesIm(bayesIm);
+
+        for (int node = 0; node < counts.length; node++) {
+            int numColumns = numCategories[node];
+            double[] _counts = counts[node];
+
+            for (int row = 0; row < _counts.length / numColumns; row++) {
+                double total = 0.0;
+
+                for (int col = 0; col < numColumns; col++) {
+                    total += _counts[row * numColumns + col];
+                }
+
+                if (total > 0.0) {
+                    for (int col = 0; col < numColumns; col++) {
+                        newIm.setProbability(node, row, col, _counts[row * numColumns + col] / total);
+                    }
+                }
+            }
+        }
+
+        return newIm;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    /**
+     * Returns the cell of the given node's table for the given complete values.
+     */
+    private int cell(int node, int[] values) {
+        int row = 0;
+
+        for (int parent : parents[node]) {
+            row = row * numCategories[parent] + values[parent];
+        }
+
+        return row * numCategories[node] + values[node];
+    }
+
+    private double[][] newCountTables() {
+        double[][] counts = new double[numCategories.length][];
+
+        for (int node = 0; node < numCategories.length; node++) {
+            int size = numCategories[node];
+
+            for (int parent : parents[node]) {
+                size *= numCategories[parent];
+            }
+
+            counts[node] = new double[size];
+        }
+
+        return counts;
+    }
+
+    /**
+     * A pattern of values of the nodes, -1 for missing, with the number of rows that show it.
+     */
+    private static final class Pattern {
+        private final int[] values;
+        private final int hashCode;
+        private int weight = 1;
+
+        private Pattern(int[] values) {
+            this.values = values;
+            this.hashCode = Arrays.hashCode(values);
+        }
+
+        private boolean isComplete() {
+            for (int value : values) {
+                if (value == -1) return false;
+            }
+
+            return true;
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Pattern && Arrays.equals(values, ((Pattern) o).values);
+        }
+    }
+
+    /**
+     * Accumulates the expected counts and log likelihood of the patterns from, inclusive, to to, exclusive.
+     */
+    private class EStepTask extends RecursiveAction {
+        private final BayesIm bayesIm;
+        private final int from;
+        private final int to;
+        private double[][] counts;
+        private double logLikelihood;
+
+        private EStepTask(BayesIm bayesIm, int from, int to) {
+            this.bayesIm = bayesIm;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            JunctionTree tree = new JunctionTree(bayesIm);
+            counts = newCountTables();
+            boolean[][] allowed = new boolean[numCategories.length][];
+
+            for (int node = 0; node < numCategories.length; node++) {
+                allowed[node] = new boolean[numCategories[node]];
+            }
+
+            for (int p = from; p < to; p++) {
+                int[] values = patterns[p];
+
+                for (int node = 0; node < values.length; node++) {
+                    boolean missing = values[node] == -1;
+                    Arrays.fill(allowed[node], missing);
+                    if (!missing) allowed[node][values[node]] = true;
+                }
+
+                tree.setEvidence(allowed);
+                double probability = tree.getProbabilityOfEvidence();
+                logLikelihood += weights[p] * Math.log(probability);
+
+                if (probability > 0.0) {
+                    for (int node = 0; node < values.length; node++) {
+                        tree.addFamilyTable(node, weights[p], counts[node]);
+                    }
+                }
+            }
+        }
+    }
+}
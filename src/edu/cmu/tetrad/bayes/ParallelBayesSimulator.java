@@ -0,0 +1,298 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ParallelUtils;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well44497b;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Simulates data from a discrete Bayes IM by forward sampling, in parallel and reproducibly.
+ * <p/>
+ * On construction each row of each conditional probability table is turned into a Walker alias table, so that a value
+ * is drawn with one uniform number and one comparison, however many categories the variable has. The rows of the
+ * sample are split into chunks of a fixed size. Each chunk draws from its own random number generator, seeded from
+ * the seed of the simulation and the number of the chunk, so the data depend only on the seed--not on the number of
+ * threads, nor on the state of <code>RandomUtil</code>. Within a chunk the variables are sampled a whole column at a
+ * time, in tier order, over int arrays: the row of each case in a variable's table is accumulated from its parents'
+ * columns and the variable's column is then drawn from the alias tables of those rows. Chunks are run on a fork/join
+ * pool.
+ * <p/>
+ * Works with any BayesIm whose rows are indexed as in <code>BayesIm.getRowIndex</code>; used by MlBayesIm,
+ * MlBayesImObs and DirichletBayesIm to simulate data.
+ *
+ * @author Joseph Ramsey
+ * @see BayesIm#simulateData
+ */
+public final class ParallelBayesSimulator {
+
+    /**
+     * The number of rows in a chunk. Part of the definition of the simulated data for a seed; changing it changes the
+     * data.
+     */
+    private static final int CHUNK = 4096;
+
+    /**
+     * Below this many rows times variables the work is done on the calling thread.
+     */
+    private static final long MIN_PARALLEL_WORK = 1L << 18;
+
+    /**
+     * The nodes in tier order.
+     */
+    private final int[] order;
+
+    /**
+     * For each node its parents, and the amount each parent's value adds to the row index.
+     */
+    private final int[][] parents;
+    private final int[][] strides;
+
+    /**
+     * For each node the number of categories, and its alias tables, row after row: the probability of keeping a slot's
+     * own category, and the category it is aliased to otherwise.
+     */
+    private final int[] numCategories;
+    private final double[][] keep;
+    private final int[][] alias;
+
+    private int parallelism = ParallelUtils.getDefaultParallelism();
+
+    /**
+     * Constructs a simulator for the given IM, taking a snapshot of its probabilities. Rows that do not sum to 1 are
+     * normalized; rows of zeros always give the first category.
+     *
+     * @throws IllegalStateException if some probability in the IM is not filled in.
+     */
+    public ParallelBayesSimulator(BayesIm bayesIm) {
+        int n = bayesIm.getNumNodes();
+        List<Node> tierOrdering = bayesIm.getDag().getTierOrdering();
+
+        this.order = new int[tierOrdering.size()];
+
+        for (int i = 0; i < tierOrdering.size(); i++) {
+            order[i] = bayesIm.getNodeIndex(tierOrdering.get(i));
+        }
+
+        this.parents = new int[n][];
+        this.strides = new int[n][];
+        this.numCategories = new int[n];
+        this.keep = new double[n][];
+        this.alias = new int[n][];
+
+        for (int node = 0; node < n; node++) {
+            int numParents = bayesIm.getNumParents(node);
+            parents[node] = new int[numParents];
+            strides[node] = new int[numParents];
+            int stride = 1;
+
+            for (int k = numParents - 1; k >= 0; k--) {
+                parents[node][k] = bayesIm.getParent(node, k);
+                strides[node][k] = stride;
+                stride *= bayesIm.getParentDim(node, k);
+            }
+
+            int numRows = bayesIm.getNumRows(node);
+            int numColumns = bayesIm.getNumColumns(node);
+            numCategories[node] = numColumns;
+            keep[node] = new double[numRows * numColumns];
+            alias[node] = new int[numRows * numColumns];
+            double[] probs = new double[numColumns];
+
+            for (int row = 0; row < numRows; row++) {
+                for (int k = 0; k < numColumns; k++) {
+                    probs[k] = bayesIm.getProbability(node, row, k);
+
+                    if (Double.isNaN(probs[k])) {
+                        throw new IllegalStateException("Some probability " +
+                                "values in the BayesIm are not filled in; " +
+                                "cannot simulate data.");
+                    }
+                }
+
+                makeAliasTable(probs, keep[node], alias[node], row * numColumns);
+            }
+        }
+    }
+
+    /**
+     * Simulates the given number of cases from the given seed.
+     *
+     * @return the data as columns: element [i][j] is the category of node i (as indexed in the IM) in case j.
+     */
+    public int[][] simulate(int sampleSize, long seed) {
+        int[][] data = new int[numCategories.length][sampleSize];
+        List<ChunkTask> tasks = new ArrayList<ChunkTask>();
+
+        for (int chunk = 0; (long) chunk * CHUNK < sampleSize; chunk++) {
+            int from = chunk * CHUNK;
+            long chunkSeed = ParallelUtils.chunkSeed(seed, chunk);
+            tasks.add(new ChunkTask(data, from, Math.min(from + CHUNK, sampleSize), chunkSeed));
+        }
+
+        boolean parallel = (long) sampleSize * order.length >= MIN_PARALLEL_WORK;
+        ParallelUtils.runAll(tasks, parallel ? parallelism : 1);
+
+        return data;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used. Default is ParallelUtils.getDefaultParallelism(). Does not affect the data
+     * simulated.
+     */
+    public void setParallelism(int parallelism) {
+        ParallelUtils.checkParallelism(parallelism);
+        this.parallelism = parallelism;
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    /**
+     * Builds the alias table for the given distribution (Vose's method) into keep and alias, starting at offset.
+     */
+    private static void makeAliasTable(double[] probs, double[] keep, int[] alias, int offset) {
+        int m = probs.length;
+        double sum = 0.0;
+        int mostLikely = 0;
+
+        for (int k = 0; k < m; k++) {
+            sum += probs[k];
+            if (probs[k] > probs[mostLikely]) mostLikely = k;
+        }
+
+        if (!(sum > 0.0)) {
+            for (int k = 0; k < m; k++) {
+                keep[offset + k] = 0.0;
+                alias[offset + k] = 0;
+            }
+
+            return;
+        }
+
+        // Scale so the mean slot weight is 1; slots under 1 are topped up from slots over 1.
+        double[] scaled = new double[m];
+        int[] small = new int[m];
+        int[] large = new int[m];
+        int numSmall = 0;
+        int numLarge = 0;
+
+        for (int k = 0; k < m; k++) {
+            scaled[k] = probs[k] * m / sum;
+
+            if (scaled[k] < 1.0) {
+                small[numSmall++] = k;
+            } else {
+                large[numLarge++] = k;
+            }
+        }
+
+        while (numSmall > 0 && numLarge > 0) {
+            int s = small[--numSmall];
+            int l = large[--numLarge];
+
+            keep[offset + s] = scaled[s];
+            alias[offset + s] = l;
+
+            scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+
+            if (scaled[l] < 1.0) {
+                small[numSmall++] = l;
+            } else {
+                large[numLarge++] = l;
+            }
+        }
+
+        // What is left is 1 up to rounding--except that a category of probability zero must never be drawn.
+        while (numLarge > 0) {
+            int l = large[--numLarge];
+            keep[offset + l] = 1.0;
+            alias[offset + l] = l;
+        }
+
+        while (numSmall > 0) {
+            int s = small[--numSmall];
+            keep[offset + s] = probs[s] == 0.0 ? 0.0 : 1.0;
+            alias[offset + s] = mostLikely;
+        }
+    }
+
+    /**
+     * Simulates the cases from, inclusive, to to, exclusive.
+     */
+    private class ChunkTask extends RecursiveAction {
+        private final int[][] data;
+        private final int from;
+        private final int to;
+        private final long seed;
+
+        private ChunkTask(int[][] data, int from, int to, long seed) {
+            this.data = data;
+            this.from = from;
+            this.to = to;
+            this.seed = seed;
+        }
+
+        protected void compute() {
+            RandomGenerator random = new Well44497b(seed);
+            int[] rows = new int[to - from];
+
+            for (int node : order) {
+                int[] _parents = parents[node];
+                int[] _strides = strides[node];
+
+                // The row of each case in the node's table.
+                Arrays.fill(rows, 0);
+
+                for (int p = 0; p < _parents.length; p++) {
+                    int stride = _strides[p];
+                    int[] parent = data[_parents[p]];
+
+                    for (int i = from; i < to; i++) {
+                        rows[i - from] += stride * parent[i];
+                    }
+                }
+
+                int m = numCategories[node];
+                double[] _keep = keep[node];
+                int[] _alias = alias[node];
+                int[] column = data[node];
+
+                for (int i = from; i < to; i++) {
+                    double u = random.nextDouble() * m;
+                    int k = (int) u;
+                    int slot = rows[i - from] * m + k;
+                    column[i] = u - k < _keep[slot] ? k : _alias[slot];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphConverter;
+import edu.cmu.tetrad.util.RandomUtil;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+
+/**
+ * Tests FamilyCounts.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestFamilyCounts extends TestCase {
+
+    /**
+     * Standard constructor for JUnit test cases.
+     */
+    public TestFamilyCounts(String name) {
+        super(name);
+    }
+
+    /**
+     * The maximum likelihood estimate should be the conditional probabilities of DataSetProbs, which leaves out rows
+     * with missing values.
+     */
+    public void testMlEstimate() {
+        RandomUtil.getInstance().setSeed(2828L);
+        BayesPm bayesPm = bayesPm();
+        DataSet data = simulate(bayesPm, 1500, 0.02);
+
+        BayesIm estimated = new MlBayesEstimator().estimate(bayesPm, data);
+        DiscreteProbs probs = new DataSetProbs(data.subsetColumns(estimated.getVariables()));
+        Proposition assertion = Proposition.tautology(estimated);
+        Proposition condition = Proposition.tautology(estimated);
+
+        for (int node = 0; node < estimated.getNumNodes(); node++) {
+            int[] parents = estimated.getParents(node);
+
+            for (int row = 0; row < estimated.getNumRows(node); row++) {
+                int[] parentValues = estimated.getParentValues(node, row);
+
+                for (int col = 0; col < estimated.getNumColumns(node); col++) {
+                    assertion.setToTautology();
+                    condition.setToTautology();
+                    assertion.disallowComplement(node, col);
+
+                    for (int k = 0; k < parents.length; k++) {
+                        condition.disallowComplement(parents[k], parentValues[k]);
+                    }
+
+                    double expected = probs.getConditionalProb(assertion, condition);
+                    double actual = estimated.getProbability(node, row, col);
+                    assertTrue(expected + " != " + actual, Double.isNaN(expected) ? Double.isNaN(actual)
+                            : Math.abs(expected - actual) < 1e-12);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adding rows in batches should give the counts of adding them all at once, on any number of threads, and a
+     * node's counts should add up to the rows with its family complete.
+     */
+    public void testIncremental() {
+        RandomUtil.getInstance().setSeed(5151L);
+        BayesPm bayesPm = bayesPm();
+        DataSet data = simulate(bayesPm, 70000, 0.05);
+        BayesIm structure = new MlBayesIm(bayesPm);
+
+        FamilyCounts batch = new FamilyCounts(structure);
+        batch.setParallelism(3);
+        batch.addRows(data);
+
+        FamilyCounts incremental = new FamilyCounts(structure);
+        incremental.setParallelism(1);
+        int[] ends = {1, 4097, 4097, 40000, data.getNumRows()};
+        int from = 0;
+
+        for (int to : ends) {
+            incremental.addRows(data, from, to);
+            from = to;
+        }
+
+        assertEquals(data.getNumRows(), batch.getNumRows());
+        assertEquals(data.getNumRows(), incremental.getNumRows());
+
+        for (int node = 0; node < structure.getNumNodes(); node++) {
+            assertTrue(Arrays.equals(batch.getCounts(node), incremental.getCounts(node)));
+
+            int[] family = new int[structure.getNumParents(node) + 1];
+            family[0] = data.getColumn(data.getVariable(structure.getNode(node).getName()));
+
+            for (int k = 0; k < structure.getNumParents(node); k++) {
+                String name = structure.getNode(structure.getParent(node, k)).getName();
+                family[k + 1] = data.getColumn(data.getVariable(name));
+            }
+
+            long complete = 0;
+
+            rows:
+            for (int i = 0; i < data.getNumRows(); i++) {
+                for (int column : family) {
+                    if (data.getInt(i, column) == DiscreteVariable.MISSING_VALUE) continue rows;
+                }
+
+                complete++;
+            }
+
+            long total = 0;
+
+            for (long count : batch.getCounts(node)) {
+                total += count;
+            }
+
+            assertEquals(complete, total);
+        }
+
+        BayesIm fromBatch = new MlBayesIm(bayesPm);
+        batch.setProbabilities(fromBatch);
+        BayesIm fromIncremental = new MlBayesIm(bayesPm);
+        incremental.setProbabilities(fromIncremental);
+        assertEquals(0.0, BayesImDistanceFunction.distance(fromBatch, fromIncremental), 0.0);
+
+        DirichletBayesIm prior = DirichletBayesIm.symmetricDirichletIm(bayesPm, 0.5);
+        DirichletBayesIm posterior = DirichletEstimator.estimate(prior, data);
+
+        for (int node = 0; node < posterior.getNumNodes(); node++) {
+            for (int row = 0; row < posterior.getNumRows(node); row++) {
+                for (int col = 0; col < posterior.getNumColumns(node); col++) {
+                    assertEquals(batch.getCount(node, row, col) + 0.5, posterior.getPseudocount(node, row, col), 0.0);
+                }
+            }
+        }
+    }
+
+    private BayesPm bayesPm() {
+        Graph graph = GraphConverter.convert("X1-->X2,X1-->X3,X2-->X4,X3-->X4,X4-->X5,X2-->X5");
+        return new BayesPm(new Dag(graph), 2, 4);
+    }
+
+    private DataSet simulate(BayesPm bayesPm, int sampleSize, double missing) {
+        BayesIm bayesIm = new MlBayesIm(bayesPm, MlBayesIm.RANDOM);
+        DataSet data = bayesIm.simulateData(sampleSize, false);
+
+        for (int i = 0; i < data.getNumRows(); i++) {
+            for (int j = 0; j < data.getNumColumns(); j++) {
+                if (RandomUtil.getInstance().nextDouble() < missing) {
+                    data.setInt(i, j, DiscreteVariable.MISSING_VALUE);
+                }
+            }
+        }
+
+        return data;
+    }
+
+    /**
+     * This method uses reflection to collect up all of the test methods from
+     * this class and return them to the test runner.
+     */
+    public static Test suite() {
+
+        // Edit the name of the class in the parens to match the name
+        // of this class.
+        return new TestSuite(TestFamilyCounts.class);
+    }
+}
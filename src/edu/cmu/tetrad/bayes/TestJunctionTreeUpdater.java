@@ -0,0 +1,177 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.util.RandomUtil;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the JunctionTreeUpdater against the RowSummingExactUpdater.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestJunctionTreeUpdater extends TestCase {
+
+    /**
+     * Standard constructor for JUnit test cases.
+     */
+    public TestJunctionTreeUpdater(String name) {
+        super(name);
+    }
+
+    /**
+     * Marginals, joint marginals and updated probabilities should agree with row summing, for a sequence of
+     * evidence that is narrowed, widened and cleared.
+     */
+    public void testAgreesWithRowSumming() {
+        RandomUtil.getInstance().setSeed(2838282L);
+
+        for (int trial = 0; trial < 5; trial++) {
+            Dag dag = GraphUtils.randomDag(9, 0, 14, 4, 4, 4, false);
+            BayesPm bayesPm = new BayesPm(dag, 2, 3);
+            BayesIm bayesIm = new MlBayesIm(bayesPm, MlBayesIm.RANDOM);
+
+            ManipulatingBayesUpdater expected = new RowSummingExactUpdater(bayesIm);
+            ManipulatingBayesUpdater updater = new JunctionTreeUpdater(bayesIm);
+
+            Evidence evidence = Evidence.tautology(bayesIm);
+            checkAgreement(expected, updater, evidence);
+
+            evidence.getProposition().setCategory(1, 0);
+            checkAgreement(expected, updater, evidence);
+
+            evidence.getProposition().setCategory(6, 1);
+            evidence.getProposition().setCategory(8, 0);
+            checkAgreement(expected, updater, evidence);
+
+            evidence.getProposition().setVariable(6, true);
+            checkAgreement(expected, updater, evidence);
+
+            evidence.getProposition().removeCategory(3, 0);
+            checkAgreement(expected, updater, evidence);
+
+            checkAgreement(expected, updater, Evidence.tautology(bayesIm));
+        }
+    }
+
+    /**
+     * Manipulating a variable should cut it off from its parents, as it does for row summing.
+     */
+    public void testManipulation() {
+        Graph graph = GraphConverter.convert("X1-->X2,X1-->X3,X2-->X4,X3-->X4");
+        BayesIm bayesIm = new MlBayesIm(new BayesPm(new Dag(graph)), MlBayesIm.RANDOM);
+
+        ManipulatingBayesUpdater expected = new RowSummingExactUpdater(bayesIm);
+        ManipulatingBayesUpdater updater = new JunctionTreeUpdater(bayesIm);
+
+        Evidence evidence = Evidence.tautology(bayesIm);
+        int x2 = evidence.getNodeIndex("X2");
+        evidence.getProposition().setCategory(x2, 1);
+        evidence.setManipulated(x2, true);
+        checkAgreement(expected, updater, evidence);
+
+        int x1 = updater.getManipulatedBayesIm().getNodeIndex(updater.getManipulatedBayesIm().getNode("X1"));
+        assertEquals(updater.calculatePriorMarginals(x1)[0], updater.getMarginal(x1, 0), 1e-10);
+    }
+
+    /**
+     * Evidence that cannot happen gives NaN.
+     */
+    public void testImpossibleEvidence() {
+        Graph graph = GraphConverter.convert("X1-->X2");
+        BayesIm bayesIm = new MlBayesIm(new BayesPm(new Dag(graph)), MlBayesIm.RANDOM);
+        int x1 = bayesIm.getNodeIndex(bayesIm.getNode("X1"));
+        int x2 = bayesIm.getNodeIndex(bayesIm.getNode("X2"));
+
+        for (int row = 0; row < bayesIm.getNumRows(x2); row++) {
+            bayesIm.setProbability(x2, row, 0, 1.0);
+            bayesIm.setProbability(x2, row, 1, 0.0);
+        }
+
+        ManipulatingBayesUpdater updater = new JunctionTreeUpdater(bayesIm);
+        Evidence evidence = Evidence.tautology(bayesIm);
+        evidence.getProposition().setCategory(x2, 1);
+        updater.setEvidence(evidence);
+
+        assertTrue(Double.isNaN(updater.getMarginal(x1, 0)));
+    }
+
+    private void checkAgreement(ManipulatingBayesUpdater expected, ManipulatingBayesUpdater updater,
+                                Evidence evidence) {
+        expected.setEvidence(new Evidence(evidence));
+        updater.setEvidence(new Evidence(evidence));
+
+        BayesIm manipulatedIm = updater.getManipulatedBayesIm();
+        int numNodes = manipulatedIm.getNumNodes();
+
+        for (int node = 0; node < numNodes; node++) {
+            for (int category = 0; category < manipulatedIm.getNumColumns(node); category++) {
+                assertEquals(expected.getMarginal(node, category), updater.getMarginal(node, category), 1e-10);
+            }
+        }
+
+        for (int i = 0; i < 10; i++) {
+            int first = RandomUtil.getInstance().nextInt(numNodes);
+            int[] variables = {first, (first + 1 + RandomUtil.getInstance().nextInt(numNodes - 2)) % numNodes,
+                    (first + numNodes - 1) % numNodes};
+            int[] values = new int[variables.length];
+
+            for (int j = 0; j < variables.length; j++) {
+                values[j] = RandomUtil.getInstance().nextInt(manipulatedIm.getNumColumns(variables[j]));
+            }
+
+            double p1 = expected.getJointMarginal(variables, values);
+            double p2 = updater.getJointMarginal(variables, values);
+            assertEquals(p1, p2, 1e-10);
+        }
+
+        BayesIm expectedIm = expected.getUpdatedBayesIm();
+        BayesIm updatedIm = updater.getUpdatedBayesIm();
+
+        for (int node = 0; node < numNodes; node++) {
+            for (int row = 0; row < updatedIm.getNumRows(node); row++) {
+                for (int col = 0; col < updatedIm.getNumColumns(node); col++) {
+                    double p1 = expectedIm.getProbability(node, row, col);
+                    double p2 = updatedIm.getProbability(node, row, col);
+
+                    if (!(Double.isNaN(p1) && Double.isNaN(p2))) {
+                        assertEquals(p1, p2, 1e-10);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * This method uses reflection to collect up all of the test methods from
+     * this class and return them to the test runner.
+     */
+    public static Test suite() {
+
+        // Edit the name of the class in the parens to match the name
+        // of this class.
+        return new TestSuite(TestJunctionTreeUpdater.class);
+    }
+}
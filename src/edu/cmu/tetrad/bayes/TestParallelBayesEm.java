@@ -0,0 +1,141 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.util.RandomUtil;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.List;
+
+/**
+ * Tests the ParallelBayesEm.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestParallelBayesEm extends TestCase {
+
+    /**
+     * Standard constructor for JUnit test cases.
+     */
+    public TestParallelBayesEm(String name) {
+        super(name);
+    }
+
+    /**
+     * With nothing missing, one iteration gives the maximum likelihood estimate.
+     */
+    public void testCompleteData() {
+        RandomUtil.getInstance().setSeed(48383L);
+        Graph graph = GraphConverter.convert("X1-->X2,X1-->X3,X2-->X4,X3-->X4");
+        BayesPm bayesPm = new BayesPm(new Dag(graph), 2, 3);
+        BayesIm bayesIm = new MlBayesIm(bayesPm, MlBayesIm.RANDOM);
+        DataSet data = bayesIm.simulateData(2000, false);
+
+        ParallelBayesEm em = new ParallelBayesEm(bayesPm, data);
+        BayesIm estimated = em.iterate(new MlBayesIm(bayesPm, MlBayesIm.RANDOM));
+        BayesIm expected = new MlBayesEstimator().estimate(bayesPm, data);
+
+        for (int node = 0; node < estimated.getNumNodes(); node++) {
+            for (int row = 0; row < estimated.getNumRows(node); row++) {
+                for (int col = 0; col < estimated.getNumColumns(node); col++) {
+                    assertEquals(expected.getProbability(node, row, col),
+                            estimated.getProbability(node, row, col), 1e-10);
+                }
+            }
+        }
+    }
+
+    /**
+     * With a latent variable and missing values, the log likelihood should never decrease, the expected counts for
+     * each node should add up to the number of rows, and the estimate should not depend on the number of threads.
+     */
+    public void testLatentAndMissing() {
+        RandomUtil.getInstance().setSeed(3939L);
+        Graph graph = GraphConverter.convert("L-->X1,L-->X2,L-->X3,X1-->X4,X3-->X5,X4-->X6,X5-->X6");
+        BayesPm bayesPm = new BayesPm(new Dag(graph), 2, 3);
+        BayesIm bayesIm = new MlBayesIm(bayesPm, MlBayesIm.RANDOM);
+        Node latent = bayesPm.getDag().getNode("L");
+        latent.setNodeType(NodeType.LATENT);
+
+        DataSet data = bayesIm.simulateData(3000, false);
+
+        for (int i = 0; i < data.getNumRows(); i++) {
+            for (int j = 0; j < data.getNumColumns(); j++) {
+                if (RandomUtil.getInstance().nextDouble() < 0.2) {
+                    data.setInt(i, j, DiscreteVariable.MISSING_VALUE);
+                }
+            }
+        }
+
+        BayesIm initial = new MlBayesIm(bayesPm, MlBayesIm.RANDOM);
+
+        ParallelBayesEm em1 = new ParallelBayesEm(bayesPm, data);
+        em1.setParallelism(1);
+        em1.setMaxIterations(30);
+        em1.setTolerance(0.0);
+        BayesIm estimated1 = em1.estimate(initial);
+
+        List<Double> logLikelihoods = em1.getLogLikelihoods();
+        assertEquals(30, logLikelihoods.size());
+
+        for (int i = 1; i < logLikelihoods.size(); i++) {
+            assertTrue(logLikelihoods.get(i) >= logLikelihoods.get(i - 1) - 1e-6);
+        }
+
+        double[][] counts = em1.getExpectedCounts();
+
+        for (double[] _counts : counts) {
+            double total = 0.0;
+
+            for (double count : _counts) {
+                total += count;
+            }
+
+            assertEquals(data.getNumRows(), total, 1e-6);
+        }
+
+        ParallelBayesEm em2 = new ParallelBayesEm(bayesPm, data);
+        em2.setParallelism(4);
+        em2.setMaxIterations(30);
+        em2.setTolerance(0.0);
+        BayesIm estimated2 = em2.estimate(initial);
+
+        assertTrue(em1.getNumPatterns() > 256);
+        assertEquals(0.0, BayesImDistanceFunction.distance(estimated1, estimated2), 0.0);
+    }
+
+    /**
+     * This method uses reflection to collect up all of the test methods from
+     * this class and return them to the test runner.
+     */
+    public static Test suite() {
+
+        // Edit the name of the class in the parens to match the name
+        // of this class.
+        return new TestSuite(TestParallelBayesEm.class);
+    }
+}
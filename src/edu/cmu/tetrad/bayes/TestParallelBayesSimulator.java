@@ -0,0 +1,121 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.*;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+
+/**
+ * Tests the ParallelBayesSimulator.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestParallelBayesSimulator extends TestCase {
+
+    /**
+     * Standard constructor for JUnit test cases.
+     */
+    public TestParallelBayesSimulator(String name) {
+        super(name);
+    }
+
+    /**
+     * The data for a seed should not depend on the number of threads.
+     */
+    public void testReproducible() {
+        Graph graph = GraphConverter.convert("X1-->X2,X1-->X3,X2-->X4,X3-->X4,X4-->X5");
+        BayesPm bayesPm = new BayesPm(new Dag(graph), 3, 3);
+        BayesIm bayesIm = new MlBayesIm(bayesPm, MlBayesIm.RANDOM);
+
+        ParallelBayesSimulator simulator = new ParallelBayesSimulator(bayesIm);
+        simulator.setParallelism(1);
+        int[][] data1 = simulator.simulate(100000, 42L);
+        simulator.setParallelism(4);
+        int[][] data2 = simulator.simulate(100000, 42L);
+
+        for (int i = 0; i < data1.length; i++) {
+            assertTrue(Arrays.equals(data1[i], data2[i]));
+        }
+
+        DataSet dataSet1 = bayesIm.simulateData(1000, 17L, false);
+        DataSet dataSet2 = bayesIm.simulateData(1000, 17L, false);
+        assertEquals(dataSet1, dataSet2);
+    }
+
+    /**
+     * Conditional frequencies in a large sample should be close to the probabilities in the tables, and categories of
+     * probability zero should never be drawn.
+     */
+    public void testFrequencies() {
+        Graph graph = GraphConverter.convert("X1-->X2");
+        BayesPm bayesPm = new BayesPm(new Dag(graph), 4, 4);
+        BayesIm bayesIm = new MlBayesIm(bayesPm, MlBayesIm.RANDOM);
+
+        int x1 = bayesIm.getNodeIndex(bayesIm.getNode("X1"));
+        int x2 = bayesIm.getNodeIndex(bayesIm.getNode("X2"));
+
+        double[] probs = {0.5, 0.0, 0.3, 0.2};
+
+        for (int k = 0; k < 4; k++) {
+            bayesIm.setProbability(x2, 1, k, probs[k]);
+        }
+
+        int sampleSize = 200000;
+        int[][] data = new ParallelBayesSimulator(bayesIm).simulate(sampleSize, 1234L);
+
+        int[] counts1 = new int[4];
+        int[][] counts2 = new int[4][4];
+
+        for (int i = 0; i < sampleSize; i++) {
+            counts1[data[x1][i]]++;
+            counts2[data[x1][i]][data[x2][i]]++;
+        }
+
+        for (int k = 0; k < 4; k++) {
+            assertEquals(bayesIm.getProbability(x1, 0, k), counts1[k] / (double) sampleSize, 0.01);
+        }
+
+        for (int j = 0; j < 4; j++) {
+            for (int k = 0; k < 4; k++) {
+                assertEquals(bayesIm.getProbability(x2, j, k), counts2[j][k] / (double) counts1[j], 0.02);
+            }
+        }
+
+        assertEquals(0, counts2[1][1]);
+    }
+
+    /**
+     * This method uses reflection to collect up all of the test methods from
+     * this class and return them to the test runner.
+     */
+    public static Test suite() {
+
+        // Edit the name of the class in the parens to match the name
+        // of this class.
+        return new TestSuite(TestParallelBayesSimulator.class);
+    }
+}
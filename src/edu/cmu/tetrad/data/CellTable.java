@@ -103,6 +103,15 @@ public final class CellTable {
         }
     }
 
+    /**
+     * Like addToTable(DataSet, int[]), but takes the counts from the given counter, which must have been constructed
+     * from the data set in question. Rows with missing values are skipped; rows with multipliers are counted that many
+     * times.
+     */
+    public final void addToTable(ContingencyCounter counter, int[] indices) {
+        counter.count(indices, table);
+    }
+
     /**
      * Returns the number of values for the given variable.
      *
@@ -125,24 +134,7 @@ public final class CellTable {
      * @return the marginal sum specified.
      */
     public final long calcMargin(int[] coords) {
-        internalCoordCopy(coords);
-
-        int sum = 0;
-        int i = -1;
-
-        while (++i < this.coordCopy.length) {
-            if (this.coordCopy[i] == -1) {
-                for (int j = 0; j < table.getDimension(i); j++) {
-                    this.coordCopy[i] = j;
-                    sum += calcMargin(this.coordCopy);
-                }
-
-                this.coordCopy[i] = -1;
-                return sum;
-            }
-        }
-
-        return table.getValue(this.coordCopy);
+        return table.getMargin(coords);
     }
 
     /**
@@ -24,7 +24,6 @@ package edu.cmu.tetrad.data;
 import cern.colt.matrix.DoubleMatrix2D;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.NumberFormatUtil;
-import edu.cmu.tetrad.util.StatUtils;
 import edu.cmu.tetrad.util.TetradMatrix;
 import edu.cmu.tetrad.util.TetradSerializable;
 
@@ -303,6 +302,21 @@ public final class ColtDataSet implements DataSet, TetradSerializable {
         return dataSet;
     }
 
+    /**
+     * Makes a data set over the given variables backed by the given matrix,
+     * which is not copied. Discrete values are stored as indices, with NaN for
+     * missing values.
+     */
+    static ColtDataSet wrap(List<Node> variables, TetradMatrix data) {
+        if (variables.size() != data.columns()) {
+            throw new IllegalArgumentException();
+        }
+
+        ColtDataSet dataSet = new ColtDataSet(0, variables);
+        dataSet.tetradMatrix = data;
+        return dataSet;
+    }
+
     public DataSet concatenateDataRowwise(ColtDataSet dataSet1, ColtDataSet dataSet2) {
         if (!(dataSet1.variables.equals(dataSet2.variables))) {
             throw new IllegalArgumentException();
@@ -978,41 +992,30 @@ public final class ColtDataSet implements DataSet, TetradSerializable {
     }
 
     /**
-     * Returns the correlation matrix for this dataset. Defers to
-     * <code>Statistic.covariance()</code> in the COLT matrix library, so it
-     * inherits the handling of missing values from that library--that is, any
-     * off-diagonal correlation involving a column with a missing value is
-     * Double.NaN, although all of the on-diagonal elements are 1.0. If that's
-     * not the desired behavior, missing values can be removed or imputed
-     * first.
+     * Returns the correlation matrix for this dataset, calculated by
+     * <code>CovarianceBuilder</code> without copying the data, with each case
+     * weighted by its case multiplier. Any correlation
+     * involving a column with a missing value is Double.NaN. If that's not the
+     * desired behavior, missing values can be removed or imputed first, or a
+     * CovarianceBuilder may be used with pairwise deletion.
      */
     public final TetradMatrix getCorrelationMatrix() {
         if (!isContinuous()) {
             throw new IllegalStateException("Not a continuous tetradMatrix set.");
         }
 
-        TetradMatrix cov = new TetradMatrix(tetradMatrix.columns(), tetradMatrix.columns());
-
-        for (int i = 0; i < tetradMatrix.columns(); i++) {
-            for (int j = i; j < tetradMatrix.columns(); j++) {
-                double correlation = StatUtils.correlation(tetradMatrix.getColumn(i).toArray(), tetradMatrix.getColumn(j).toArray());
-                cov.set(i, j, correlation);
-                cov.set(j, i, correlation);
-            }
-        }
-
-        return cov;
+        return covarianceBuilder().correlation();
 
 //        return Statistic.correlation(Statistic.covariance(tetradMatrix));
     }
 
     /**
-     * Returns the covariance matrix for this dataset. Defers to
-     * <code>Statistic.covariance()</code> in the COLT matrix library, so it
-     * inherits the handling of missing values from that library--that is, any
-     * covariance involving a column with a missing value is Double.NaN. If
-     * that's not the desired behavior, missing values can be removed or imputed
-     * first.
+     * Returns the covariance matrix for this dataset, dividing by the number of
+     * cases (the sum of the case multipliers), calculated by <code>CovarianceBuilder</code> without copying the
+     * data. Any covariance involving a column with a missing value is
+     * Double.NaN. If that's not the desired behavior, missing values can be
+     * removed or imputed first, or a CovarianceBuilder may be used with
+     * pairwise deletion.
      */
     public final TetradMatrix getCovarianceMatrix() {
 
@@ -1134,24 +1137,9 @@ public final class ColtDataSet implements DataSet, TetradSerializable {
 //            }
 //        }
 
-        TetradMatrix matrix = new TetradMatrix(tetradMatrix);
-
-        for (int j = 0; j < matrix.columns(); j++) {
-            double sum = 0.0;
-
-            for (int i = 0; i < matrix.rows(); i++) {
-                double entry = matrix.get(i, j);
-                sum += entry;
-            }
-
-            double mean = sum / matrix.rows();
-
-            for (int i = 0; i < matrix.rows(); i++) {
-                matrix.set(i, j, matrix.get(i, j) - mean);
-            }
-        }
-
-        return matrix.transpose().times(matrix).scalarMult(1.0 / matrix.rows());
+        CovarianceBuilder builder = covarianceBuilder();
+        builder.setBiased(true);
+        return builder.covariance();
 
 //        double[][] doubles = tetradMatrix.toArray();
 //        DenseDoubleMatrix2D denseDoubleMatrix2D = new DenseDoubleMatrix2D(doubles);
@@ -1633,6 +1621,26 @@ public final class ColtDataSet implements DataSet, TetradSerializable {
         tetradMatrix = _data;
     }
 
+    /**
+     * Returns a builder over the data that weights each row by its case
+     * multiplier, if any multiplier differs from 1.
+     */
+    private CovarianceBuilder covarianceBuilder() {
+        CovarianceBuilder builder = new CovarianceBuilder(tetradMatrix);
+
+        if (isMulipliersCollapsed()) {
+            int[] _multipliers = new int[tetradMatrix.rows()];
+
+            for (int i = 0; i < _multipliers.length; i++) {
+                _multipliers[i] = getMultiplier(i);
+            }
+
+            builder.setMultipliers(_multipliers);
+        }
+
+        return builder;
+    }
+
     /**
      * Returns the set of case multipliers..
      */
@@ -0,0 +1,467 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.MultiDimIntTable;
+import edu.cmu.tetrad.util.ParallelUtils;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the rows of a discrete data set by the joint values of any list of its columns, for the discrete scores and
+ * the chi square and G square tests.
+ * <p/>
+ * The discrete columns are copied once, column by column, into byte arrays (short arrays for variables with more than
+ * 127 categories), so counting reads primitive arrays instead of going through DataSet.getInt() for every row and
+ * column. The cell of each row is built up one column at a time as a mixed radix index, the first column most
+ * significant, so cells are laid out as in MultiDimIntTable. Each row counts as many times as its multiplier. Rows may
+ * be split among several threads when the data are large.
+ * <p/>
+ * Tables of many cells--many columns, or columns with many categories--have at most one nonzero cell per row, so they
+ * should be counted into a MultiDimIntTable, which stores them sparsely; only tables of up to DENSE_LIMIT cells are
+ * counted into dense arrays along the way.
+ * <p/>
+ * The counts are of the data as they were when the counter was constructed.
+ *
+ * @author Joseph Ramsey
+ * @see CellTable
+ */
+public final class ContingencyCounter {
+
+    /**
+     * The stored form of missing values.
+     */
+    private static final byte MISSING = -1;
+
+    /**
+     * Rows are counted in chunks of at least this many on each thread.
+     */
+    private static final int MIN_ROWS_PER_TASK = 1 << 15;
+
+    /**
+     * The largest number of cells counted into dense arrays on the way to a MultiDimIntTable, or counted into a
+     * separate dense array on each thread.
+     */
+    private static final int DENSE_LIMIT = 1 << 16;
+
+    private final int numRows;
+
+    /**
+     * The number of categories of each column, or 0 if it is not discrete.
+     */
+    private final int[] dims;
+
+    /**
+     * The values of each column with fewer than 128 categories, or null.
+     */
+    private final byte[][] byteColumns;
+
+    /**
+     * The values of each column with 128 or more categories, or null.
+     */
+    private final short[][] shortColumns;
+
+    /**
+     * True for the columns with missing values.
+     */
+    private final boolean[] missing;
+
+    /**
+     * The multiplier of each row, or null if they are all 1.
+     */
+    private final int[] weights;
+
+    /**
+     * Per-thread buffer for the cell indices of the rows being counted.
+     */
+    private final ThreadLocal<int[]> cellBuffer = new ThreadLocal<int[]>() {
+        protected int[] initialValue() {
+            return new int[0];
+        }
+    };
+
+    private int parallelism = 1;
+    private ForkJoinPool pool;
+
+    //=============================CONSTRUCTORS===========================//
+
+    /**
+     * Copies the discrete columns of the given data set. Columns that are not discrete cannot be counted.
+     */
+    public ContingencyCounter(DataSet dataSet) {
+        this.numRows = dataSet.getNumRows();
+
+        int numColumns = dataSet.getNumColumns();
+        this.dims = new int[numColumns];
+        this.byteColumns = new byte[numColumns][];
+        this.shortColumns = new short[numColumns][];
+        this.missing = new boolean[numColumns];
+
+        for (int j = 0; j < numColumns; j++) {
+            Node variable = dataSet.getVariable(j);
+
+            if (!(variable instanceof DiscreteVariable)) {
+                continue;
+            }
+
+            int numCategories = ((DiscreteVariable) variable).getNumCategories();
+            dims[j] = numCategories;
+
+            if (numCategories <= Byte.MAX_VALUE) {
+                byte[] column = new byte[numRows];
+
+                for (int i = 0; i < numRows; i++) {
+                    int value = dataSet.getInt(i, j);
+
+                    if (value == DiscreteVariable.MISSING_VALUE) {
+                        column[i] = MISSING;
+                        missing[j] = true;
+                    } else {
+                        column[i] = (byte) value;
+                    }
+                }
+
+                byteColumns[j] = column;
+            } else if (numCategories <= Short.MAX_VALUE) {
+                short[] column = new short[numRows];
+
+                for (int i = 0; i < numRows; i++) {
+                    int value = dataSet.getInt(i, j);
+
+                    if (value == DiscreteVariable.MISSING_VALUE) {
+                        column[i] = MISSING;
+                        missing[j] = true;
+                    } else {
+                        column[i] = (short) value;
+                    }
+                }
+
+                shortColumns[j] = column;
+            } else {
+                throw new IllegalArgumentException("Too many categories to count: " + variable);
+            }
+        }
+
+        int[] weights = null;
+
+        for (int i = 0; i < numRows; i++) {
+            int multiplier = dataSet.getMultiplier(i);
+
+            if (multiplier != 1 && weights == null) {
+                weights = new int[numRows];
+                Arrays.fill(weights, 0, i, 1);
+            }
+
+            if (weights != null) {
+                weights[i] = multiplier;
+            }
+        }
+
+        this.weights = weights;
+    }
+
+    //=============================PUBLIC METHODS=========================//
+
+    /**
+     * Returns the counts of the rows by the joint values of the given columns. The count for values (v_0, v_1, ...,
+     * v_k-1) of the columns is at index (...((v_0 d_1 + v_1) d_2 + v_2)...) d_k-1 + v_k-1, where d_i is the number of
+     * categories of column i. Rows missing a value for any of the columns are not counted.
+     * <p/>
+     * The array has getNumCells(columns) elements; for tables that may have many cells, use count(columns, table).
+     */
+    public long[] count(int[] columns) {
+        long[] counts = new long[getNumCells(columns)];
+        count(columns, counts);
+        return counts;
+    }
+
+    /**
+     * Like count(columns), but puts the counts into the given array, which must have at least getNumCells(columns)
+     * elements. Any further elements are left alone.
+     */
+    public void count(int[] columns, long[] counts) {
+        int numCells = getNumCells(columns);
+
+        if (counts.length < numCells) {
+            throw new IllegalArgumentException("Expecting at least " + numCells + " cells: " + counts.length);
+        }
+
+        Arrays.fill(counts, 0, numCells, 0L);
+
+        if (pool == null || numRows < 2 * MIN_ROWS_PER_TASK) {
+            countRows(columns, counts, 0, numRows);
+        } else if (numCells <= DENSE_LIMIT) {
+            long[] sums = pool.invoke(new CountTask(columns, numCells, 0, numRows));
+            System.arraycopy(sums, 0, counts, 0, numCells);
+        } else {
+            int[] cells = new int[numRows];
+            pool.invoke(new CellTask(columns, cells, 0, numRows));
+
+            for (int i = 0; i < numRows; i++) {
+                int cell = cells[i];
+                if (cell >= 0) counts[cell] += weight(i);
+            }
+        }
+    }
+
+    /**
+     * Like count(columns), but resets the given table to the dimensions of the columns and puts the counts into it.
+     * Tables of more than DENSE_LIMIT cells are counted row by row into the table, which stores only the nonzero cells,
+     * so no array over all of the cells is made.
+     */
+    public void count(int[] columns, MultiDimIntTable table) {
+        int numCells = getNumCells(columns);
+        int[] dims = new int[columns.length];
+
+        for (int i = 0; i < columns.length; i++) {
+            dims[i] = this.dims[columns[i]];
+        }
+
+        table.reset(dims);
+
+        if (numCells <= DENSE_LIMIT) {
+            long[] counts = count(columns);
+
+            for (int cell = 0; cell < numCells; cell++) {
+                if (counts[cell] != 0) {
+                    table.incrementCell(cell, counts[cell]);
+                }
+            }
+        } else if (pool != null && numRows >= 2 * MIN_ROWS_PER_TASK) {
+            int[] cells = new int[numRows];
+            pool.invoke(new CellTask(columns, cells, 0, numRows));
+
+            for (int i = 0; i < numRows; i++) {
+                int cell = cells[i];
+                if (cell >= 0) table.incrementCell(cell, weight(i));
+            }
+        } else {
+            int[] cells = cells(numRows);
+            fillCells(columns, cells, 0, 0, numRows);
+
+            for (int i = 0; i < numRows; i++) {
+                int cell = cells[i];
+                if (cell >= 0) table.incrementCell(cell, weight(i));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cells in a table of the given columns--that is, the product of their numbers of
+     * categories.
+     */
+    public int getNumCells(int[] columns) {
+        long numCells = 1;
+
+        for (int column : columns) {
+            if (dims[column] == 0) {
+                throw new IllegalArgumentException("Column " + column + " is not discrete.");
+            }
+
+            numCells *= dims[column];
+
+            if (numCells > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many cells in table for columns "
+                        + Arrays.toString(columns));
+            }
+        }
+
+        return (int) numCells;
+    }
+
+    /**
+     * Returns the number of categories of the given column, or 0 if it is not discrete.
+     */
+    public int getNumCategories(int column) {
+        return dims[column];
+    }
+
+    /**
+     * Returns true if the given column has missing values.
+     */
+    public boolean hasMissingValues(int column) {
+        return missing[column];
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads rows are split among when the data are large enough; 1 (the default) counts on the
+     * calling thread.
+     */
+    public synchronized void setParallelism(int parallelism) {
+        ParallelUtils.checkParallelism(parallelism);
+        this.parallelism = parallelism;
+        this.pool = parallelism > 1 ? ParallelUtils.getPool(parallelism) : null;
+    }
+
+    //=============================PRIVATE METHODS========================//
+
+    /**
+     * Adds the counts of rows from (inclusive) to to (exclusive) to counts.
+     */
+    private void countRows(int[] columns, long[] counts, int from, int to) {
+        int numRows = to - from;
+        int[] cells = cells(numRows);
+        fillCells(columns, cells, 0, from, to);
+
+        if (weights == null) {
+            for (int k = 0; k < numRows; k++) {
+                int cell = cells[k];
+                if (cell >= 0) counts[cell]++;
+            }
+        } else {
+            for (int k = 0; k < numRows; k++) {
+                int cell = cells[k];
+                if (cell >= 0) counts[cell] += weights[from + k];
+            }
+        }
+    }
+
+    /**
+     * Puts the cell indices of rows from (inclusive) to to (exclusive) into cells, starting at offset; -1 marks rows
+     * missing a value.
+     */
+    private void fillCells(int[] columns, int[] cells, int offset, int from, int to) {
+        int numRows = to - from;
+        Arrays.fill(cells, offset, offset + numRows, 0);
+
+        // Mixed radix cell indices, one column at a time.
+        for (int column : columns) {
+            int dim = dims[column];
+            byte[] byteColumn = byteColumns[column];
+
+            if (byteColumn != null) {
+                for (int k = 0; k < numRows; k++) {
+                    int value = byteColumn[from + k];
+                    int cell = cells[offset + k];
+                    cells[offset + k] = (cell < 0 || value < 0) ? -1 : cell * dim + value;
+                }
+            } else {
+                short[] shortColumn = shortColumns[column];
+
+                for (int k = 0; k < numRows; k++) {
+                    int value = shortColumn[from + k];
+                    int cell = cells[offset + k];
+                    cells[offset + k] = (cell < 0 || value < 0) ? -1 : cell * dim + value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns this thread's cell buffer, with room for at least the given number of rows.
+     */
+    private int[] cells(int numRows) {
+        int[] cells = cellBuffer.get();
+
+        if (cells.length < numRows) {
+            cells = new int[numRows];
+            cellBuffer.set(cells);
+        }
+
+        return cells;
+    }
+
+    private int weight(int row) {
+        return weights == null ? 1 : weights[row];
+    }
+
+    /**
+     * Counts a range of rows, splitting it in half until it is small, and returns the counts.
+     */
+    private class CountTask extends RecursiveTask<long[]> {
+        private final int[] columns;
+        private final int numCells;
+        private final int from;
+        private final int to;
+
+        public CountTask(int[] columns, int numCells, int from, int to) {
+            this.columns = columns;
+            this.numCells = numCells;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected long[] compute() {
+            if (to - from < 2 * MIN_ROWS_PER_TASK) {
+                long[] counts = new long[numCells];
+                countRows(columns, counts, from, to);
+                return counts;
+            }
+
+            int mid = (from + to) >>> 1;
+            CountTask left = new CountTask(columns, numCells, from, mid);
+            left.fork();
+            long[] counts = new CountTask(columns, numCells, mid, to).compute();
+            long[] leftCounts = left.join();
+
+            for (int i = 0; i < numCells; i++) {
+                counts[i] += leftCounts[i];
+            }
+
+            return counts;
+        }
+    }
+
+    /**
+     * Puts the cell indices of a range of rows into the corresponding elements of a shared array, splitting the range
+     * in half until it is small. Used for tables too large to count into an array on each thread.
+     */
+    private class CellTask extends RecursiveAction {
+        private final int[] columns;
+        private final int[] cells;
+        private final int from;
+        private final int to;
+
+        public CellTask(int[] columns, int[] cells, int from, int to) {
+            this.columns = columns;
+            this.cells = cells;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from < 2 * MIN_ROWS_PER_TASK) {
+                fillCells(columns, cells, from, from, to);
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            invokeAll(new CellTask(columns, cells, from, mid), new CellTask(columns, cells, mid, to));
+        }
+    }
+}
+
+
+
@@ -55,7 +55,7 @@ public final class CorrelationMatrix extends CovarianceMatrix
      */
     public CorrelationMatrix(DataSet dataSet) {
         super(Collections.unmodifiableList(dataSet.getVariables()),
-                dataSet.getCorrelationMatrix(), dataSet.getNumRows());
+                dataSet.getCorrelationMatrix(), sampleSize(dataSet));
         if (!dataSet.isContinuous()) {
             throw new IllegalArgumentException("Data set not continuous.");
         }
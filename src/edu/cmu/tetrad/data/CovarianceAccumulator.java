@@ -0,0 +1,297 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ParallelUtils;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Accumulates the sufficient statistics for a covariance matrix--the number of cases, the means, and the co-moments
+ * (sums of products of deviations from the means)--from cases added one at a time or a chunk at a time, so that a
+ * covariance matrix can be had for data that never fit in memory at once. Accumulators for different parts of the data,
+ * filled by different threads, say, may be merged.
+ * <p/>
+ * A single case is added by Welford's update; a chunk of cases has its own means and co-moments calculated (by
+ * CovarianceBuilder) and is merged in by the pairwise update of Chan, Golub and LeVeque:
+ * <pre>
+ *     n = n_a + n_b,  delta = mean_b - mean_a,
+ *     mean = mean_a + delta n_b / n,
+ *     C = C_a + C_b + delta delta' n_a n_b / n.
+ * </pre>
+ * Both avoid the cancellation of accumulating raw sums of squares. Missing values (NaN) are propagated, as by
+ * CovarianceMatrix(DataSet). Accumulators are not synchronized; give each thread its own and merge them at the end.
+ *
+ * @author Joseph Ramsey
+ * @see DataReader#accumulateCovariance
+ */
+public final class CovarianceAccumulator {
+
+    /**
+     * The variables, in order.
+     */
+    private final List<Node> variables;
+
+    /**
+     * The number of variables.
+     */
+    private final int numVariables;
+
+    /**
+     * The number of cases added.
+     */
+    private long sampleSize;
+
+    /**
+     * The mean of each variable.
+     */
+    private final double[] means;
+
+    /**
+     * The co-moments, upper triangle (j >= i) only.
+     */
+    private final double[][] comoments;
+
+    /**
+     * Scratch space for single cases.
+     */
+    private final double[] deviations;
+
+    /**
+     * The number of threads used to calculate the statistics of a chunk.
+     */
+    private int parallelism = 1;
+
+    /**
+     * Constructs an empty accumulator over the given (continuous) variables.
+     */
+    public CovarianceAccumulator(List<Node> variables) {
+        for (Node variable : variables) {
+            if (!(variable instanceof ContinuousVariable)) {
+                throw new IllegalArgumentException("Not a continuous variable: " + variable);
+            }
+        }
+
+        this.variables = Collections.unmodifiableList(new ArrayList<Node>(variables));
+        this.numVariables = variables.size();
+        this.means = new double[numVariables];
+        this.deviations = new double[numVariables];
+        this.comoments = new double[numVariables][];
+
+        for (int i = 0; i < numVariables; i++) {
+            comoments[i] = new double[numVariables];
+        }
+    }
+
+    /**
+     * Adds a single case, with values in the order of the variables.
+     */
+    public void add(double[] values) {
+        if (values.length != numVariables) {
+            throw new IllegalArgumentException("Expecting " + numVariables + " values: " + values.length);
+        }
+
+        sampleSize++;
+
+        // Deviations from the old means, before updating them.
+        double[] before = deviations;
+
+        for (int i = 0; i < numVariables; i++) {
+            before[i] = values[i] - means[i];
+            means[i] += before[i] / sampleSize;
+        }
+
+        for (int i = 0; i < numVariables; i++) {
+            double[] row = comoments[i];
+            double d = before[i];
+
+            for (int j = i; j < numVariables; j++) {
+                row[j] += d * (values[j] - means[j]);
+            }
+        }
+    }
+
+    /**
+     * Adds a chunk of cases, rows being cases and columns the variables in order.
+     */
+    public void add(TetradMatrix chunk) {
+        if (chunk.columns() != numVariables) {
+            throw new IllegalArgumentException("Expecting " + numVariables + " columns: " + chunk.columns());
+        }
+
+        int n = chunk.rows();
+
+        if (n == 0) {
+            return;
+        }
+
+        double[] chunkMeans = new double[numVariables];
+
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < numVariables; j++) {
+                chunkMeans[j] += chunk.get(i, j);
+            }
+        }
+
+        for (int j = 0; j < numVariables; j++) {
+            chunkMeans[j] /= n;
+        }
+
+        CovarianceBuilder builder = new CovarianceBuilder(chunk);
+        builder.setBiased(true);
+        builder.setParallelism(parallelism);
+        TetradMatrix cov = builder.covariance();
+
+        double[][] chunkComoments = new double[numVariables][numVariables];
+
+        for (int i = 0; i < numVariables; i++) {
+            for (int j = i; j < numVariables; j++) {
+                chunkComoments[i][j] = cov.get(i, j) * n;
+            }
+        }
+
+        merge(n, chunkMeans, chunkComoments);
+    }
+
+    /**
+     * Adds the cases of a continuous data set, whose variables must be those of this accumulator, in order.
+     */
+    public void add(DataSet dataSet) {
+        if (!dataSet.getVariables().equals(variables)) {
+            throw new IllegalArgumentException("Data set variables do not match those of the accumulator.");
+        }
+
+        add(dataSet.getDoubleData());
+    }
+
+    /**
+     * Adds the cases accumulated by another accumulator over the same variables. The other accumulator is not changed.
+     */
+    public void merge(CovarianceAccumulator other) {
+        if (!other.variables.equals(variables)) {
+            throw new IllegalArgumentException("Cannot merge accumulators over different variables.");
+        }
+
+        merge(other.sampleSize, other.means, other.comoments);
+    }
+
+    public List<Node> getVariables() {
+        return variables;
+    }
+
+    /**
+     * Returns the number of cases added.
+     */
+    public long getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Returns a copy of the means.
+     */
+    public double[] getMeans() {
+        return means.clone();
+    }
+
+    /**
+     * Returns the covariance matrix, dividing the co-moments by N if <code>biased</code>, otherwise by N - 1.
+     */
+    public TetradMatrix getCovariance(boolean biased) {
+        double divisor = biased ? sampleSize : sampleSize - 1;
+        TetradMatrix cov = new TetradMatrix(numVariables, numVariables);
+
+        for (int i = 0; i < numVariables; i++) {
+            for (int j = i; j < numVariables; j++) {
+                double value = comoments[i][j] / divisor;
+                cov.set(i, j, value);
+                cov.set(j, i, value);
+            }
+        }
+
+        return cov;
+    }
+
+    /**
+     * Returns the covariance matrix for the cases added so far, dividing by N as CovarianceMatrix(DataSet) does, for
+     * use by independence tests, searches and estimators that take an ICovarianceMatrix.
+     */
+    public ICovarianceMatrix getCovarianceMatrix() {
+        if (sampleSize > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Sample size too large for a covariance matrix: " + sampleSize);
+        }
+
+        return new CovarianceMatrix(variables, getCovariance(true), (int) sampleSize);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to calculate the statistics of each chunk added. Default 1.
+     */
+    public void setParallelism(int parallelism) {
+        ParallelUtils.checkParallelism(parallelism);
+        this.parallelism = parallelism;
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    /**
+     * Merges in the statistics of other cases, of which only the upper triangle of the co-moments is used.
+     */
+    private void merge(long n, double[] otherMeans, double[][] otherComoments) {
+        if (n == 0) {
+            return;
+        }
+
+        long total = sampleSize + n;
+        double weight = (double) sampleSize * n / total;
+        double[] delta = new double[numVariables];
+
+        for (int i = 0; i < numVariables; i++) {
+            delta[i] = otherMeans[i] - means[i];
+        }
+
+        for (int i = 0; i < numVariables; i++) {
+            double[] row = comoments[i];
+            double[] otherRow = otherComoments[i];
+
+            for (int j = i; j < numVariables; j++) {
+                row[j] += otherRow[j] + delta[i] * delta[j] * weight;
+            }
+        }
+
+        for (int i = 0; i < numVariables; i++) {
+            means[i] += delta[i] * n / total;
+        }
+
+        sampleSize = total;
+    }
+}
+
+
+
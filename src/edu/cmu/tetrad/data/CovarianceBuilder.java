@@ -0,0 +1,487 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.util.ParallelUtils;
+import edu.cmu.tetrad.util.TetradMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Calculates covariance and correlation matrices of the columns of a data matrix without copying or centering the
+ * data.
+ * <p/>
+ * The result is divided into square tiles of columns, of which only those on or above the diagonal are calculated.
+ * Each tile is one task. The task reads the data a block of rows at a time into two small row-major buffers, one for its
+ * row of tiles and one for its column, centering (and weighting) values as it copies them, and accumulates their
+ * cross products into a tile of sums. Buffers and sums together stay within the processor's cache. Tasks are run on a
+ * fork/join pool. If there are too few tiles to keep the threads busy, the rows are also split into chunks, whose
+ * partial sums are added in chunk order. Chunks and tiles depend only on the shape of the data, so the result is the
+ * same, bit for bit, whatever the parallelism.
+ * <p/>
+ * Rows may be weighted by case multipliers. Missing values (NaN) are by default propagated, so that any covariance
+ * involving a column with a missing value is NaN; alternatively, each covariance may be calculated from just the rows
+ * in which both of its columns have values (pairwise deletion).
+ *
+ * @author Joseph Ramsey
+ */
+public final class CovarianceBuilder {
+
+    /**
+     * The number of columns in a tile.
+     */
+    private static final int TILE = 64;
+
+    /**
+     * The number of rows read into the buffers at a time.
+     */
+    private static final int BLOCK = 128;
+
+    /**
+     * The number of rows in a chunk, when rows are split.
+     */
+    private static final int CHUNK = 1 << 16;
+
+    /**
+     * Rows are split into chunks only when there are fewer pairs of tiles than this.
+     */
+    private static final int MIN_TILE_PAIRS = 16;
+
+    /**
+     * Below this many multiplications the work is done on the calling thread.
+     */
+    private static final long MIN_PARALLEL_WORK = 1L << 24;
+
+    /**
+     * The data, rows being cases and columns variables.
+     */
+    private final RealMatrix data;
+
+    private final int numRows;
+    private final int numColumns;
+
+    /**
+     * Case multipliers, or null if all are 1.
+     */
+    private int[] multipliers;
+
+    /**
+     * True if missing values should be deleted pairwise rather than propagated.
+     */
+    private boolean pairwiseDeletion = false;
+
+    /**
+     * True if covariances should be divided by the sample size rather than the sample size minus 1.
+     */
+    private boolean biased = false;
+
+    private int parallelism = ParallelUtils.getDefaultParallelism();
+
+    /**
+     * Constructs a builder for the columns of the given matrix, which is not copied.
+     */
+    public CovarianceBuilder(TetradMatrix data) {
+        if (data == null) {
+            throw new NullPointerException("Data matrix must not be null.");
+        }
+
+        this.data = data.getRealMatrix();
+        this.numRows = data.rows();
+        this.numColumns = data.columns();
+    }
+
+    /**
+     * Sets the case multipliers, one for each row, or null if every row counts once.
+     */
+    public void setMultipliers(int[] multipliers) {
+        if (multipliers != null && multipliers.length != numRows) {
+            throw new IllegalArgumentException("Expecting one multiplier for each row.");
+        }
+
+        this.multipliers = multipliers;
+    }
+
+    public boolean isPairwiseDeletion() {
+        return pairwiseDeletion;
+    }
+
+    /**
+     * True if each covariance should be calculated from the rows in which both of its columns have values; false (the
+     * default) if missing values should make the covariances involving their columns NaN.
+     */
+    public void setPairwiseDeletion(boolean pairwiseDeletion) {
+        this.pairwiseDeletion = pairwiseDeletion;
+    }
+
+    public boolean isBiased() {
+        return biased;
+    }
+
+    /**
+     * True if covariances should be divided by N, the sample size; false (the default) if by N - 1.
+     */
+    public void setBiased(boolean biased) {
+        this.biased = biased;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads to use for large data; 1 calculates on the calling thread. The default is the number
+     * of available processors.
+     */
+    public void setParallelism(int parallelism) {
+        ParallelUtils.checkParallelism(parallelism);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the covariance matrix of the columns.
+     */
+    public TetradMatrix covariance() {
+        return calculate(false);
+    }
+
+    /**
+     * Returns the correlation matrix of the columns.
+     */
+    public TetradMatrix correlation() {
+        return calculate(true);
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    private TetradMatrix calculate(boolean correlation) {
+        TetradMatrix result = new TetradMatrix(numColumns, numColumns);
+
+        if (numColumns == 0) {
+            return result;
+        }
+
+        int numTiles = (numColumns + TILE - 1) / TILE;
+        int numTilePairs = numTiles * (numTiles + 1) / 2;
+        int numChunks = numTilePairs < MIN_TILE_PAIRS ? Math.max(1, (numRows + CHUNK - 1) / CHUNK) : 1;
+
+        double[] means = means(numTiles);
+
+        List<TileTask> tasks = new ArrayList<TileTask>();
+
+        for (int t1 = 0; t1 < numTiles; t1++) {
+            for (int t2 = t1; t2 < numTiles; t2++) {
+                for (int c = 0; c < numChunks; c++) {
+                    int from = (int) ((long) numRows * c / numChunks);
+                    int to = (int) ((long) numRows * (c + 1) / numChunks);
+                    tasks.add(new TileTask(t1 * TILE, t2 * TILE, from, to, means));
+                }
+            }
+        }
+
+        run(tasks, (long) numRows * numColumns * numColumns / 2);
+
+        List<TileTask> tiles = new ArrayList<TileTask>();
+
+        for (int i = 0; i < tasks.size(); i += numChunks) {
+            TileTask tile = tasks.get(i);
+
+            for (int c = 1; c < numChunks; c++) {
+                tile.add(tasks.get(i + c));
+            }
+
+            tiles.add(tile);
+        }
+
+        // Sums of squared deviations of the columns, from the diagonals of the diagonal tiles.
+        double[] squares = new double[numColumns];
+
+        for (TileTask tile : tiles) {
+            if (tile.start1 == tile.start2) {
+                for (int j = 0; j < tile.end1 - tile.start1; j++) {
+                    squares[tile.start1 + j] = tile.sxy[j][j];
+                }
+            }
+        }
+
+        double total = numRows;
+
+        if (multipliers != null) {
+            total = 0;
+            for (int multiplier : multipliers) total += multiplier;
+        }
+
+        for (TileTask tile : tiles) {
+            tile.store(result, correlation, squares, total);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the mean of each column--over the rows where it has values, if deleting pairwise--weighted by the
+     * multipliers.
+     */
+    private double[] means(int numTiles) {
+        final double[] means = new double[numColumns];
+        List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+
+        for (int t = 0; t < numTiles; t++) {
+            final int start = t * TILE;
+            final int end = Math.min(start + TILE, numColumns);
+
+            tasks.add(new RecursiveAction() {
+                protected void compute() {
+                    int width = end - start;
+                    double[][] block = new double[BLOCK][width];
+                    double[] sums = new double[width];
+                    double[] counts = new double[width];
+
+                    for (int from = 0; from < numRows; from += BLOCK) {
+                        int to = Math.min(from + BLOCK, numRows);
+                        data.copySubMatrix(from, to - 1, start, end - 1, block);
+
+                        for (int r = 0; r < to - from; r++) {
+                            double w = multipliers == null ? 1 : multipliers[from + r];
+                            double[] row = block[r];
+
+                            for (int j = 0; j < width; j++) {
+                                double value = row[j];
+
+                                if (pairwiseDeletion && Double.isNaN(value)) {
+                                    continue;
+                                }
+
+                                sums[j] += w * value;
+                                counts[j] += w;
+                            }
+                        }
+                    }
+
+                    for (int j = 0; j < width; j++) {
+                        means[start + j] = sums[j] / counts[j];
+                    }
+                }
+            });
+        }
+
+        run(tasks, (long) numRows * numColumns);
+        return means;
+    }
+
+    private void run(List<? extends RecursiveAction> tasks, long work) {
+        ParallelUtils.runAll(tasks, work < MIN_PARALLEL_WORK ? 1 : parallelism);
+    }
+
+    /**
+     * Accumulates the sums for one tile of the result over a range of rows. The sums are taken over the deviations of
+     * the values from the column means. Without pairwise deletion only the sums of cross products are needed; with it,
+     * for columns j and k, the sums over rows where both have values of 1, x_j, x_k, x_j x_k, x_j^2 and x_k^2.
+     */
+    private class TileTask extends RecursiveAction {
+        private final int start1, end1, start2, end2;
+        private final int from, to;
+        private final double[] means;
+
+        private double[][] sxy;
+        private double[][] n, sx, sy, sxx, syy;
+
+        private TileTask(int start1, int start2, int from, int to, double[] means) {
+            this.start1 = start1;
+            this.end1 = Math.min(start1 + TILE, numColumns);
+            this.start2 = start2;
+            this.end2 = Math.min(start2 + TILE, numColumns);
+            this.from = from;
+            this.to = to;
+            this.means = means;
+        }
+
+        protected void compute() {
+            int width1 = end1 - start1;
+            int width2 = end2 - start2;
+            boolean diagonal = start1 == start2;
+
+            sxy = new double[width1][width2];
+
+            // The first tile's values are weighted; the second's are not.
+            double[][] a1 = new double[BLOCK][width1];
+            double[][] a2 = new double[BLOCK][width2];
+            double[][] m1 = null, m2 = null, aa1 = null, aa2 = null;
+
+            if (pairwiseDeletion) {
+                n = new double[width1][width2];
+                sx = new double[width1][width2];
+                sy = new double[width1][width2];
+                sxx = new double[width1][width2];
+                syy = new double[width1][width2];
+                m1 = new double[BLOCK][width1];
+                m2 = new double[BLOCK][width2];
+                aa1 = new double[BLOCK][width1];
+                aa2 = new double[BLOCK][width2];
+            }
+
+            for (int blockFrom = from; blockFrom < to; blockFrom += BLOCK) {
+                int blockTo = Math.min(blockFrom + BLOCK, to);
+                int rows = blockTo - blockFrom;
+
+                data.copySubMatrix(blockFrom, blockTo - 1, start1, end1 - 1, a1);
+                data.copySubMatrix(blockFrom, blockTo - 1, start2, end2 - 1, a2);
+
+                for (int r = 0; r < rows; r++) {
+                    double w = multipliers == null ? 1 : multipliers[blockFrom + r];
+
+                    if (pairwiseDeletion) {
+                        prepare(a1[r], m1[r], aa1[r], start1, w);
+                        prepare(a2[r], m2[r], aa2[r], start2, 1);
+                    } else {
+                        center(a1[r], start1, w);
+                        center(a2[r], start2, 1);
+                    }
+                }
+
+                accumulate(sxy, a1, a2, rows, diagonal);
+
+                if (pairwiseDeletion) {
+                    accumulate(n, m1, m2, rows, diagonal);
+                    accumulate(sx, a1, m2, rows, diagonal);
+                    accumulate(sy, m1, a2, rows, diagonal);
+                    accumulate(sxx, aa1, m2, rows, diagonal);
+                    accumulate(syy, m1, aa2, rows, diagonal);
+                }
+            }
+        }
+
+        /**
+         * Replaces the values in row with their weighted deviations from the means.
+         */
+        private void center(double[] row, int start, double w) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] = w * (row[j] - means[start + j]);
+            }
+        }
+
+        /**
+         * Replaces the values in row with their weighted deviations from the means, or 0 if missing, and fills present
+         * with the weight, or 0 if missing, and squares with the weighted squared deviations.
+         */
+        private void prepare(double[] row, double[] present, double[] squares, int start, double w) {
+            for (int j = 0; j < row.length; j++) {
+                double value = row[j];
+
+                if (Double.isNaN(value)) {
+                    row[j] = 0;
+                    present[j] = 0;
+                    squares[j] = 0;
+                } else {
+                    double d = value - means[start + j];
+                    row[j] = w * d;
+                    present[j] = w;
+                    squares[j] = w * d * d;
+                }
+            }
+        }
+
+        /**
+         * Adds the cross products of the given rows of a and b to sums. On diagonal tiles only the upper triangle is
+         * calculated.
+         */
+        private void accumulate(double[][] sums, double[][] a, double[][] b, int rows, boolean diagonal) {
+            int width = sums[0].length;
+
+            for (int r = 0; r < rows; r++) {
+                double[] ar = a[r];
+                double[] br = b[r];
+
+                for (int j = 0; j < ar.length; j++) {
+                    double aj = ar[j];
+                    double[] row = sums[j];
+
+                    for (int k = diagonal ? j : 0; k < width; k++) {
+                        row[k] += aj * br[k];
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds the sums of another chunk of rows for the same tile to these.
+         */
+        private void add(TileTask other) {
+            add(sxy, other.sxy);
+
+            if (pairwiseDeletion) {
+                add(n, other.n);
+                add(sx, other.sx);
+                add(sy, other.sy);
+                add(sxx, other.sxx);
+                add(syy, other.syy);
+            }
+        }
+
+        private void add(double[][] sums, double[][] other) {
+            for (int j = 0; j < sums.length; j++) {
+                for (int k = 0; k < sums[j].length; k++) {
+                    sums[j][k] += other[j][k];
+                }
+            }
+        }
+
+        /**
+         * Stores the covariances or correlations for this tile, and their transposes, in result. Squares are the sums
+         * of squared deviations of the columns and total the sum of the multipliers, used without pairwise deletion.
+         */
+        private void store(TetradMatrix result, boolean correlation, double[] squares, double total) {
+            boolean diagonal = start1 == start2;
+
+            for (int j = 0; j < end1 - start1; j++) {
+                for (int k = diagonal ? j : 0; k < end2 - start2; k++) {
+                    double value;
+
+                    if (pairwiseDeletion) {
+                        double _n = n[j][k];
+                        double cxy = sxy[j][k] - sx[j][k] * sy[j][k] / _n;
+
+                        if (correlation) {
+                            double cxx = sxx[j][k] - sx[j][k] * sx[j][k] / _n;
+                            double cyy = syy[j][k] - sy[j][k] * sy[j][k] / _n;
+                            value = cxy / (Math.sqrt(cxx) * Math.sqrt(cyy));
+                        } else {
+                            value = cxy / (biased ? _n : _n - 1);
+                        }
+                    } else if (correlation) {
+                        value = sxy[j][k] / (Math.sqrt(squares[start1 + j]) * Math.sqrt(squares[start2 + k]));
+                    } else {
+                        value = sxy[j][k] / (biased ? total : total - 1);
+                    }
+
+                    result.set(start1 + j, start2 + k, value);
+                    result.set(start2 + k, start1 + j, value);
+                }
+            }
+        }
+    }
+}
+
+
+
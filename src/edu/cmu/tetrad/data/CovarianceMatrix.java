@@ -98,7 +98,8 @@ public class CovarianceMatrix implements ICovarianceMatrix {
     //=============================CONSTRUCTORS=========================//
 
     /**
-     * Constructs a new covariance matrix from the given data set.
+     * Constructs a new covariance matrix from the given data set, weighting
+     * each case by its case multiplier.
      * @throws IllegalArgumentException if this is not a continuous data set.
      */
     public CovarianceMatrix(DataSet dataSet) {
@@ -107,7 +108,7 @@ public class CovarianceMatrix implements ICovarianceMatrix {
         }
 
         this.variables = Collections.unmodifiableList(dataSet.getVariables());
-        this.sampleSize = dataSet.getNumRows();
+        this.sampleSize = sampleSize(dataSet);
         this.matrix = dataSet.getCovarianceMatrix();
     }
 
@@ -447,6 +448,24 @@ public class CovarianceMatrix implements ICovarianceMatrix {
         return selectedVariables;
     }
 
+    /**
+     * Returns the number of cases in the given data set, counting each row as
+     * many times as its case multiplier.
+     */
+    static int sampleSize(DataSet dataSet) {
+        if (!dataSet.isMulipliersCollapsed()) {
+            return dataSet.getNumRows();
+        }
+
+        int sampleSize = 0;
+
+        for (int i = 0; i < dataSet.getNumRows(); i++) {
+            sampleSize += dataSet.getMultiplier(i);
+        }
+
+        return sampleSize;
+    }
+
     private static TetradMatrix defensiveCopy(TetradMatrix m) {
         return m;
 //        return m.copy();
@@ -23,6 +23,7 @@ package edu.cmu.tetrad.data;
 
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.NamingProtocol;
+import edu.cmu.tetrad.util.ParallelUtils;
 import edu.cmu.tetrad.util.TetradLogger;
 import edu.cmu.tetrad.util.TetradMatrix;
 
@@ -41,6 +42,17 @@ import java.util.regex.Pattern;
  */
 public final class DataReader {
 
+    /**
+     * The number of rows from which the types of columns are guessed when
+     * memory mapping.
+     */
+    private static final int TYPE_SAMPLE_SIZE = 1000;
+
+    /**
+     * The number of rows read at a time by accumulateCovariance.
+     */
+    private static final int COVARIANCE_CHUNK_SIZE = 4096;
+
     /**
      * A set of characters that in any combination makes up a delimiter.
      */
@@ -114,6 +126,16 @@ public final class DataReader {
      */
     private boolean readVariablesUppercase = false;
 
+    /**
+     * True if plain tabular files should be read by memory mapping them.
+     */
+    private boolean memoryMapped = false;
+
+    /**
+     * The number of threads used to parse memory mapped files.
+     */
+    private int parallelism = ParallelUtils.getDefaultParallelism();
+
     /**
      * Constructs a new data parser.
      */
@@ -217,6 +239,26 @@ public final class DataReader {
         this.knownVariables = knownVariables;
     }
 
+    /**
+     * If true, parseTabular(File) reads files by memory mapping them and
+     * parsing them in a single pass, on several threads; see
+     * MappedTabularParser. Files with sections, quoted tokens or case IDs are
+     * still read the usual way. Default false.
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    /**
+     * The number of threads used to parse memory mapped files and to
+     * accumulate covariances. Default is
+     * ParallelUtils.getDefaultParallelism().
+     */
+    public void setParallelism(int parallelism) {
+        ParallelUtils.checkParallelism(parallelism);
+        this.parallelism = parallelism;
+    }
+
     /**
      * Parses the given files for a tabular data set, returning a
      * RectangularDataSet if successful.
@@ -224,6 +266,24 @@ public final class DataReader {
      * @throws IOException if the file cannot be read.
      */
     public DataSet parseTabular(File file) throws IOException {
+        if (memoryMapped && !idsSupplied) {
+            try {
+                DataSet dataSet = parseTabularMapped(file);
+                dataSet.setName(file.getName());
+
+                this.logger.log("info", "\nData set loaded!");
+                this.logger.reset();
+                return dataSet;
+            } catch (MappedTabularParser.UnsupportedFormatException e) {
+                this.logger.log("info", "Reading " + file.getName() +
+                        " without memory mapping: " + e.getMessage());
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("Parsing failed.", e);
+            }
+        }
+
         FileReader reader = null, reader2 = null;
 
         try {
@@ -281,6 +341,152 @@ public final class DataReader {
         return dataSet;
     }
 
+    /**
+     * Parses a plain tabular data file with a MappedTabularParser. Column
+     * types are guessed from the first rows and confirmed once all of the
+     * data have been read, so that the variables are the same as the usual
+     * parser would make.
+     *
+     * @throws MappedTabularParser.UnsupportedFormatException if the file must
+     *                                                        be read the usual
+     *                                                        way.
+     */
+    private DataSet parseTabularMapped(File file) throws IOException {
+        this.logger.log("info", "\nDATA LOADING PARAMETERS:");
+        this.logger.log("info", "File type = TABULAR (memory mapped)");
+        this.logger.log("info", "Comment marker = " + commentMarker);
+        this.logger.log("info", "Delimiter chars = " + delimiterType);
+        this.logger.log("info", "Var names first row = " + varNamesSupplied);
+        this.logger.log("info", "Missing value marker = " + missingValueMarker);
+        this.logger.log("info", "Max discrete = " + maxIntegralDiscrete);
+        this.logger.log("info", "--------------------");
+
+        MappedTabularParser parser = new MappedTabularParser(file, delimiterType,
+                commentMarker, quoteChar, missingValueMarker, parallelism);
+
+        try {
+            List<String> firstLine = parser.getFirstLineTokens();
+            List<String> varNames = new ArrayList<String>();
+
+            if (varNamesSupplied) {
+                Set<String> names = new HashSet<String>();
+
+                for (String token : firstLine) {
+                    String name = token.trim();
+
+                    if ("".equals(name)) {
+                        throw new IllegalArgumentException("Line 1: Expected " +
+                                "variable name, got empty token.");
+                    }
+
+                    if (!names.add(name)) {
+                        throw new IllegalArgumentException("Line 1: Duplicate " +
+                                "variable name (" + name + ").");
+                    }
+
+                    if (readVariablesLowercase) {
+                        varNames.add(name.toLowerCase());
+                    } else if (readVariablesUppercase) {
+                        varNames.add(name.toUpperCase());
+                    } else {
+                        varNames.add(name);
+                    }
+                }
+
+                parser.skipFirstLine();
+            } else {
+                for (int i = 0; i < firstLine.size(); i++) {
+                    varNames.add("X" + (i + 1));
+                }
+            }
+
+            if ("MULT".equals(varNames.get(0))) {
+                throw new MappedTabularParser.UnsupportedFormatException(
+                        "File has a MULT column.");
+            }
+
+            // Columns that look continuous in the sample are parsed as
+            // numbers; any others, and columns of known variables, as
+            // category names.
+            List<Set<String>> sample = parser.sample(varNames.size(), TYPE_SAMPLE_SIZE);
+            boolean[] continuous = new boolean[varNames.size()];
+
+            for (int i = 0; i < varNames.size(); i++) {
+                Set<String> strings = sample.get(i);
+                continuous[i] = !isKnownVariable(varNames.get(i)) && isDouble(strings)
+                        && (!isIntegral(strings) || tooManyDiscreteValues(strings));
+            }
+
+            MappedTabularParser.Table table = parser.parse(continuous);
+            this.logger.log("info", "\nNumber of data rows = " + table.getNumRows());
+
+            // Columns parsed as numbers keep their type, since more values
+            // can't make them less so.
+            List<Set<String>> dataStrings = new ArrayList<Set<String>>();
+
+            for (int i = 0; i < varNames.size(); i++) {
+                dataStrings.add(continuous[i] ? sample.get(i)
+                        : new HashSet<String>(table.getCategories(i)));
+            }
+
+            List<Node> variables = makeVariables(varNames, dataStrings, -1,
+                    table.getNumRows() + 1);
+            logVariables(varNames, variables, -1);
+
+            // The values to store for the categories of columns parsed as
+            // category names.
+            double[][] values = new double[variables.size()][];
+
+            for (int i = 0; i < variables.size(); i++) {
+                if (continuous[i]) {
+                    continue;
+                }
+
+                List<String> categories = table.getCategories(i);
+                values[i] = new double[categories.size()];
+                Node node = variables.get(i);
+
+                if (node instanceof DiscreteVariable) {
+                    List<String> nodeCategories = ((DiscreteVariable) node).getCategories();
+                    Map<String, Integer> indices = new HashMap<String, Integer>();
+
+                    for (int k = 0; k < nodeCategories.size(); k++) {
+                        indices.put(nodeCategories.get(k), k);
+                    }
+
+                    for (int k = 0; k < categories.size(); k++) {
+                        Integer index = indices.get(categories.get(k));
+                        values[i][k] = index == null ? Double.NaN : index;
+                    }
+                } else {
+                    for (int k = 0; k < categories.size(); k++) {
+                        try {
+                            values[i][k] = Double.parseDouble(categories.get(k));
+                        } catch (NumberFormatException e) {
+                            values[i][k] = Double.NaN;
+                        }
+                    }
+                }
+            }
+
+            TetradMatrix matrix = new TetradMatrix(table.getNumRows(), variables.size());
+            parser.fill(table, matrix, values);
+            return ColtDataSet.wrap(variables, matrix);
+        } finally {
+            parser.close();
+        }
+    }
+
+    private boolean isKnownVariable(String name) {
+        for (Node node : knownVariables) {
+            if (name.equals(node.getName())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     private DataSetDescription doFirstTabularPass(Reader reader) {
         DataSetDescription description;
         Lineizer lineizer = new Lineizer(reader, commentMarker);
@@ -747,6 +953,174 @@ public final class DataReader {
         return covarianceMatrix;
     }
 
+    /**
+     * Reads a tabular file of continuous data into a CovarianceAccumulator,
+     * a chunk of rows at a time, so that the covariance matrix of a file too
+     * large to load as a data set may be had. Variable names, case IDs, the
+     * delimiter, quote character, comment marker and missing value marker are
+     * handled as by parseTabular; every other column is read as continuous.
+     * Reading stops at a /knowledge section, if there is one.
+     *
+     * @throws IOException if the file cannot be read.
+     */
+    public CovarianceAccumulator accumulateCovariance(File file) throws IOException {
+        Reader reader = new BufferedReader(new FileReader(file));
+
+        try {
+            CovarianceAccumulator accumulator = accumulateCovariance(reader);
+
+            this.logger.log("info", "\nCovariances accumulated!");
+            this.logger.reset();
+            return accumulator;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Like accumulateCovariance(File), but reads from the given reader.
+     */
+    public CovarianceAccumulator accumulateCovariance(Reader reader) {
+        Lineizer lineizer = new Lineizer(reader, commentMarker);
+        Pattern delimiter = delimiterType.getPattern();
+
+        if (!lineizer.hasMoreLines()) {
+            throw new IllegalArgumentException("Data source is empty.");
+        }
+
+        String line = lineizer.nextLine();
+
+        if (line.startsWith("/variables")) {
+            throw new IllegalArgumentException("A /variables section cannot be " +
+                    "read when accumulating covariances; all variables are continuous.");
+        }
+
+        if (line.startsWith("/data")) {
+            line = lineizer.nextLine();
+        }
+
+        List<String> varNames = new ArrayList<String>();
+        String dataFirstLine = line;
+
+        if (varNamesSupplied) {
+
+            // Variable lists can't have missing values, so we can excuse an extra tab at the end of the line.
+            if (line.endsWith("\t")) {
+                line = line.substring(0, line.length() - 1);
+            }
+
+            RegexTokenizer tokenizer = new RegexTokenizer(line, delimiter, quoteChar);
+
+            while (tokenizer.hasMoreTokens()) {
+                String name = tokenizer.nextToken().trim();
+
+                if ("".equals(name)) {
+                    throw new IllegalArgumentException("Line " + lineizer.getLineNumber()
+                            + ": Expected variable name, got empty token: " + line);
+                }
+
+                if (varNames.contains(name)) {
+                    throw new IllegalArgumentException("Line " + lineizer.getLineNumber()
+                            + ": Duplicate variable name (" + name + ").");
+                }
+
+                if (readVariablesLowercase) {
+                    varNames.add(name.toLowerCase());
+                } else if (readVariablesUppercase) {
+                    varNames.add(name.toUpperCase());
+                } else {
+                    varNames.add(name);
+                }
+            }
+
+            dataFirstLine = null;
+        } else {
+            RegexTokenizer tokenizer = new RegexTokenizer(line, delimiter, quoteChar);
+
+            if (idsSupplied && idLabel == null && tokenizer.hasMoreTokens()) {
+                tokenizer.nextToken();
+            }
+
+            int i = 0;
+
+            while (tokenizer.hasMoreTokens()) {
+                tokenizer.nextToken();
+                varNames.add("X" + (++i));
+            }
+        }
+
+        int idIndex = adjustForId(varNames, lineizer);
+        int numColumns = varNames.size();
+
+        List<String> continuousNames = new ArrayList<String>(varNames);
+
+        if (idIndex != -1) {
+            continuousNames.remove(idIndex);
+        }
+
+        List<Node> variables = new ArrayList<Node>();
+
+        for (String name : continuousNames) {
+            variables.add(new ContinuousVariable(name));
+        }
+
+        CovarianceAccumulator accumulator = new CovarianceAccumulator(variables);
+        accumulator.setParallelism(parallelism);
+
+        double[][] chunk = new double[COVARIANCE_CHUNK_SIZE][variables.size()];
+        int numRows = 0;
+
+        while (dataFirstLine != null || lineizer.hasMoreLines()) {
+            if (dataFirstLine == null) {
+                line = lineizer.nextLine();
+            } else {
+                line = dataFirstLine;
+                dataFirstLine = null;
+            }
+
+            if (line.startsWith("/knowledge")) {
+                break;
+            }
+
+            RegexTokenizer tokenizer = new RegexTokenizer(line, delimiter, quoteChar);
+            double[] row = chunk[numRows];
+            int col = -1;
+            int j = 0;
+
+            while (tokenizer.hasMoreTokens()) {
+                String token = tokenizer.nextToken().trim();
+
+                if (++col >= numColumns) {
+                    throw new IllegalArgumentException("Line " + lineizer.getLineNumber()
+                            + ": Expected " + numColumns + " tokens, got more.");
+                }
+
+                if (col != idIndex) {
+                    row[j++] = parseContinuous(token);
+                }
+            }
+
+            if (col != numColumns - 1) {
+                throw new IllegalArgumentException("Line " + lineizer.getLineNumber()
+                        + ": Expected " + numColumns + " tokens, got " + (col + 1) + ".");
+            }
+
+            if (++numRows == chunk.length) {
+                accumulator.add(new TetradMatrix(chunk));
+                numRows = 0;
+            }
+        }
+
+        if (numRows > 0) {
+            accumulator.add(new TetradMatrix(Arrays.copyOf(chunk, numRows)));
+        }
+
+        this.logger.log("info", "Accumulated covariances over " + variables.size()
+                + " variables from " + accumulator.getSampleSize() + " cases.");
+
+        return accumulator;
+    }
+
     /**
      * Loads knowledge from a file. Assumes knowledge is the only thing in
      * the file. No jokes please. :)
@@ -794,6 +1168,23 @@ public final class DataReader {
         return idIndex;
     }
 
+    /**
+     * Parses a continuous value as setValue does: blank tokens, the missing
+     * value marker and other non-numeric tokens are missing (NaN).
+     */
+    private double parseContinuous(String s) {
+        if (s.equals("") || s.equals(missingValueMarker)) {
+            return Double.NaN;
+        }
+
+        try {
+            return Double.parseDouble(s);
+        }
+        catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
     private void setValue(DataSet dataSet, int row, int col, String s) {
         if (s == null || s.equals("") || s.trim().equals(missingValueMarker)) {
             return;
@@ -1132,6 +1523,33 @@ public final class DataReader {
         int numRows = row + 1;
 
         // Convert these range values into variable definitions.
+        List<Node> variables = makeVariables(varNames, dataStrings, idIndex,
+                lineizer.getLineNumber());
+
+        boolean multColumnIncluded = false;
+
+        if (variables.get(0).getName().equals("MULT")) {
+            multColumnIncluded = true;
+            variables.remove(0);
+            varNames.remove(0);
+        }
+
+        // Print out a report of the variable definitions guessed at (or
+        // read in through the /variables section or specified as known
+        // variables.
+        logVariables(varNames, variables, idIndex);
+
+        return new DataSetDescription(variables, numRows, idIndex, variableSectionIncluded,
+                delimiter, multColumnIncluded);
+    }
+
+    /**
+     * Converts the sets of distinct values of the columns into variable
+     * definitions, using known variables where they exist.
+     */
+    private List<Node> makeVariables(List<String> varNames,
+                                     List<Set<String>> dataStrings,
+                                     int idIndex, int lineNumber) {
         List<Node> variables = new ArrayList<Node>();
 
         VARNAMES:
@@ -1158,7 +1576,7 @@ public final class DataReader {
                 }
 
                 if (!NamingProtocol.isLegalName(name)) {
-                    throw new IllegalArgumentException("Line " + lineizer.getLineNumber()
+                    throw new IllegalArgumentException("Line " + lineNumber
                             + ": This cannot be used as a variable name: " + name + ".");
                 }
 
@@ -1192,7 +1610,7 @@ public final class DataReader {
                 }
 
                 if (!NamingProtocol.isLegalName(name)) {
-                    throw new IllegalArgumentException("Line " + lineizer.getLineNumber()
+                    throw new IllegalArgumentException("Line " + lineNumber
                             + ": This cannot be used as a variable name: " + name + ".");
                 }
 
@@ -1200,17 +1618,11 @@ public final class DataReader {
             }
         }
 
-        boolean multColumnIncluded = false;
-
-        if (variables.get(0).getName().equals("MULT")) {
-            multColumnIncluded = true;
-            variables.remove(0);
-            varNames.remove(0);
-        }
+        return variables;
+    }
 
-        // Print out a report of the variable definitions guessed at (or
-        // read in through the /variables section or specified as known
-        // variables.
+    private void logVariables(List<String> varNames, List<Node> variables,
+                              int idIndex) {
         for (int i = 0; i < varNames.size(); i++) {
             if (i == idIndex) {
                 continue;
@@ -1238,9 +1650,6 @@ public final class DataReader {
                 this.logger.log("info", buf.toString());
             }
         }
-
-        return new DataSetDescription(variables, numRows, idIndex, variableSectionIncluded,
-                delimiter, multColumnIncluded);
     }
 
     private boolean tooManyDiscreteValues(Set<String> strings) {
@@ -581,7 +581,7 @@ public final class DataUtils {
     /**
      * Returns the submatrix of m with variables in the order of the x variables.
      */
-    public static synchronized TetradMatrix subMatrix(TetradMatrix m, Map<Node, Integer> indexMap, Node x, Node y, List<Node> z) {
+    public static TetradMatrix subMatrix(TetradMatrix m, Map<Node, Integer> indexMap, Node x, Node y, List<Node> z) {
         if (x == null) {
             throw new NullPointerException();
         }
@@ -966,30 +966,18 @@ public final class DataUtils {
         return fullDataSet.subsetColumns(measuredVars);
     }
 
+    /**
+     * Returns the covariance matrix of the columns of data, dividing by N - 1.
+     */
     public static TetradMatrix cov(TetradMatrix data) {
-        TetradMatrix cov = new TetradMatrix(data.columns(), data.columns());
-
-        for (int i = 0; i < data.columns(); i++) {
-            for (int j = 0; j < data.columns(); j++) {
-                cov.set(i, j, StatUtils.covariance(data.getColumn(i).toArray(), data.getColumn(j).toArray()));
-            }
-        }
-
-        return cov;
-
+        return new CovarianceBuilder(data).covariance();
     }
 
+    /**
+     * Returns the correlation matrix of the columns of data.
+     */
     public static TetradMatrix corr(TetradMatrix data) {
-        TetradMatrix corr = new TetradMatrix(data.columns(), data.columns());
-
-        for (int i = 0; i < data.columns(); i++) {
-            for (int j = 0; j < data.columns(); j++) {
-                corr.set(i, j, StatUtils.correlation(data.getColumn(i).toArray(), data.getColumn(j).toArray()));
-            }
-        }
-
-        return corr;
-
+        return new CovarianceBuilder(data).correlation();
     }
 
     public static TetradVector mean(TetradMatrix data) {
@@ -34,8 +34,16 @@ import java.util.*;
  * @author Various folks.
  */
 public final class DataUtils2 {
-    private static Map<Integer, TetradMatrix> rememberSubmatricesMap
-            = new HashMap<Integer, TetradMatrix>();
+
+    /**
+     * Submatrices reused by subMatrix(ICovarianceMatrix, List, Node, Node, List), by size, for each thread.
+     */
+    private static final ThreadLocal<Map<Integer, TetradMatrix>> rememberSubmatricesMap
+            = new ThreadLocal<Map<Integer, TetradMatrix>>() {
+        protected Map<Integer, TetradMatrix> initialValue() {
+            return new HashMap<Integer, TetradMatrix>();
+        }
+    };
 
 
     public static void copyColumn(Node node, DataSet source, DataSet dest) {
@@ -363,8 +371,8 @@ public final class DataUtils2 {
     }
 
     /**
-     * Returns the submatrix of m with variables in the order of the x variables.  This **reuses** matrices; if you need a persistent
-     * copy of your matrix, call matrix.copy().
+     * Returns the submatrix of m with variables in the order of the x variables.  This **reuses** matrices, one per size for
+     * each thread; if you need a persistent copy of your matrix, or need to pass it to another thread, call matrix.copy().
      */
     public static TetradMatrix subMatrix(ICovarianceMatrix cov, List<Node> variables, Node x, Node y, List<Node> z) {
         if (x == null) {
@@ -397,12 +405,14 @@ public final class DataUtils2 {
             indices[i + 2] = variables.indexOf(z.get(i));
         }
 
-        if (rememberSubmatricesMap.get(2 + z.size()) == null) {
+        Map<Integer, TetradMatrix> submatrices = rememberSubmatricesMap.get();
+
+        if (submatrices.get(2 + z.size()) == null) {
             TetradMatrix submatrix = new TetradMatrix(2 + z.size(), 2 + z.size());
-            rememberSubmatricesMap.put(2 + z.size(), submatrix);
+            submatrices.put(2 + z.size(), submatrix);
         }
 
-        TetradMatrix submatrix = rememberSubmatricesMap.get(2 + z.size());
+        TetradMatrix submatrix = submatrices.get(2 + z.size());
 
         for (int i = 0; i < 2 + z.size(); i++) {
             for (int j = 0; j < 2 + z.size(); j++) {
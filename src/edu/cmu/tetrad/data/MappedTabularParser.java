@@ -0,0 +1,779 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.util.ParallelUtils;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Parses the data in a plain tabular data file for DataReader, reading the file through memory mappings instead of a
+ * Reader. Lines are split into tokens by scanning bytes for the delimiter, without regular expressions, following the
+ * rules of Lineizer and RegexTokenizer. The data are parsed in a single pass, the file being divided into byte ranges
+ * that begin at line breaks and are parsed concurrently; numbers are parsed directly from the bytes where that can be
+ * done exactly. Tokens are trimmed before being compared with the missing value marker or taken as category names.
+ * <p/>
+ * Only files consisting of an optional line of variable names followed by data are handled. Sections (lines beginning
+ * with "/"), quoted tokens and continuous columns with non-numeric values are reported with an
+ * UnsupportedFormatException, at which point DataReader falls back to parsing the file in the usual way.
+ *
+ * @author Joseph Ramsey
+ * @see DataReader
+ */
+final class MappedTabularParser {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The largest byte range mapped and parsed as a unit.
+     */
+    private static final int MAX_CHUNK_SIZE = 1 << 27;
+
+    /**
+     * Files are not split into ranges smaller than this.
+     */
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+
+    /**
+     * Delimiter code for runs of whitespace.
+     */
+    private static final int WHITESPACE = -1;
+
+    /**
+     * Numbers with more significant digits than this are handed to Double.parseDouble().
+     */
+    private static final int MAX_FAST_DIGITS = 15;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+
+    /**
+     * WHITESPACE, or the delimiter character.
+     */
+    private final int delimiter;
+
+    private final byte[] commentMarker;
+    private final byte[] missingValueMarker;
+    private final int quoteChar;
+    private final ForkJoinPool pool;
+
+    /**
+     * The byte range of the first line of the file, once found.
+     */
+    private long firstLineStart = -1;
+    private long firstLineEnd;
+
+    /**
+     * The offset of the first line of data.
+     */
+    private long dataStart;
+
+    /**
+     * Thrown if the file contains something that is only handled by the usual parser.
+     */
+    static final class UnsupportedFormatException extends RuntimeException {
+        public UnsupportedFormatException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The parsed data, by chunk.
+     */
+    static final class Table {
+        private final List<Chunk> chunks;
+        private final List<List<String>> categories;
+        private final int[][][] localToGlobal;
+        private final int numRows;
+
+        private Table(List<Chunk> chunks, List<List<String>> categories, int[][][] localToGlobal) {
+            this.chunks = chunks;
+            this.categories = categories;
+            this.localToGlobal = localToGlobal;
+
+            int numRows = 0;
+
+            for (Chunk chunk : chunks) {
+                numRows += chunk.numRows;
+            }
+
+            this.numRows = numRows;
+        }
+
+        public int getNumRows() {
+            return numRows;
+        }
+
+        /**
+         * Returns the distinct nonmissing values of the given column, which must have been parsed as discrete, in
+         * order of appearance.
+         */
+        public List<String> getCategories(int column) {
+            return categories.get(column);
+        }
+    }
+
+    /**
+     * The data parsed from one byte range. Values are stored row by row; values of columns parsed as discrete are
+     * indices into the chunk's own category lists, or -1 if missing.
+     */
+    private static final class Chunk {
+        private double[] values = new double[0];
+        private int numRows;
+        private final List<List<String>> categories = new ArrayList<List<String>>();
+        private final List<Map<String, Integer>> codes = new ArrayList<Map<String, Integer>>();
+    }
+
+    //=============================CONSTRUCTORS===========================//
+
+    public MappedTabularParser(File file, DelimiterType delimiterType, String commentMarker, char quoteChar,
+                               String missingValueMarker, int parallelism) throws IOException {
+        if (delimiterType == DelimiterType.WHITESPACE) {
+            this.delimiter = WHITESPACE;
+        } else if (delimiterType == DelimiterType.TAB) {
+            this.delimiter = '\t';
+        } else if (delimiterType == DelimiterType.COMMA) {
+            this.delimiter = ',';
+        } else if (delimiterType == DelimiterType.COLON) {
+            this.delimiter = ':';
+        } else {
+            throw new UnsupportedFormatException("Unrecognized delimiter: " + delimiterType);
+        }
+
+        this.commentMarker = commentMarker.getBytes(UTF8);
+        this.missingValueMarker = missingValueMarker.trim().getBytes(UTF8);
+        this.quoteChar = quoteChar < 0x80 ? quoteChar : -1;
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        this.size = channel.size();
+        this.pool = parallelism > 1 ? ParallelUtils.getPool(parallelism) : null;
+    }
+
+    //=============================PUBLIC METHODS=========================//
+
+    /**
+     * Returns the tokens of the first line of the file that is not blank or a comment, with a trailing tab removed.
+     */
+    public List<String> getFirstLineTokens() throws IOException {
+        ByteBuffer buffer = map(0, Math.min(size, MAX_CHUNK_SIZE));
+        Lines lines = new Lines(buffer, 0, buffer.limit());
+
+        if (!lines.next()) {
+            throw new IllegalArgumentException("Data source is empty.");
+        }
+
+        int end = lines.end;
+
+        if (end > lines.start && buffer.get(end - 1) == '\t') {
+            end--;
+        }
+
+        checkLine(buffer, lines.start, end);
+
+        firstLineStart = lines.start;
+        firstLineEnd = lines.end;
+        dataStart = firstLineStart;
+
+        List<String> tokens = new ArrayList<String>();
+        Tokens _tokens = new Tokens(end - lines.start + 1);
+        _tokens.split(buffer, lines.start, end);
+
+        for (int t = 0; t < _tokens.count; t++) {
+            tokens.add(decode(buffer, _tokens.starts[t], _tokens.ends[t]));
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Takes the first line to be variable names, so that the data begin on the next line.
+     */
+    public void skipFirstLine() {
+        if (firstLineStart == -1) {
+            throw new IllegalStateException("First line not read.");
+        }
+
+        dataStart = firstLineEnd;
+    }
+
+    /**
+     * Returns the distinct nonmissing (trimmed) values of each column in the first maxRows rows of data.
+     */
+    public List<Set<String>> sample(int numColumns, int maxRows) throws IOException {
+        List<Set<String>> values = new ArrayList<Set<String>>();
+
+        for (int j = 0; j < numColumns; j++) {
+            values.add(new HashSet<String>());
+        }
+
+        ByteBuffer buffer = map(dataStart, Math.min(size - dataStart, MAX_CHUNK_SIZE));
+        Lines lines = new Lines(buffer, 0, buffer.limit());
+        Tokens tokens = new Tokens(numColumns);
+
+        for (int row = 0; row < maxRows && lines.next(); row++) {
+            checkLine(buffer, lines.start, lines.end);
+            tokens.split(buffer, lines.start, lines.end);
+
+            for (int j = 0; j < Math.min(tokens.count, numColumns); j++) {
+                int start = trimStart(buffer, tokens.starts[j], tokens.ends[j]);
+                int end = trimEnd(buffer, start, tokens.ends[j]);
+
+                if (!isMissing(buffer, start, end)) {
+                    values.get(j).add(decode(buffer, start, end));
+                }
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Parses the data, splitting the file into byte ranges that are parsed concurrently.
+     *
+     * @param continuous True for the columns to be parsed as numbers; the others are parsed as category names.
+     */
+    public Table parse(final boolean[] continuous) throws IOException {
+        long[] bounds = chunkBounds();
+        List<Callable<Chunk>> tasks = new ArrayList<Callable<Chunk>>();
+
+        for (int c = 0; c < bounds.length - 1; c++) {
+            final long from = bounds[c];
+            final long to = bounds[c + 1];
+
+            tasks.add(new Callable<Chunk>() {
+                public Chunk call() throws IOException {
+                    return parseChunk(from, to, continuous);
+                }
+            });
+        }
+
+        List<Chunk> chunks = invokeAll(tasks);
+
+        // Merge the category lists of the chunks.
+        int numColumns = continuous.length;
+        List<List<String>> categories = new ArrayList<List<String>>();
+        int[][][] localToGlobal = new int[chunks.size()][numColumns][];
+
+        for (int j = 0; j < numColumns; j++) {
+            if (continuous[j]) {
+                categories.add(null);
+                continue;
+            }
+
+            List<String> global = new ArrayList<String>();
+            Map<String, Integer> globalCodes = new HashMap<String, Integer>();
+
+            for (int c = 0; c < chunks.size(); c++) {
+                List<String> local = chunks.get(c).categories.get(j);
+                int[] remap = new int[local.size()];
+
+                for (int k = 0; k < local.size(); k++) {
+                    Integer code = globalCodes.get(local.get(k));
+
+                    if (code == null) {
+                        code = global.size();
+                        globalCodes.put(local.get(k), code);
+                        global.add(local.get(k));
+                    }
+
+                    remap[k] = code;
+                }
+
+                localToGlobal[c][j] = remap;
+            }
+
+            categories.add(global);
+        }
+
+        return new Table(chunks, categories, localToGlobal);
+    }
+
+    /**
+     * Copies the parsed data into the given matrix, which has a row for each row of the table.
+     *
+     * @param values For each column parsed as discrete, the value to store for each of its categories, by index in
+     *               table.getCategories(); null for columns parsed as numbers.
+     */
+    public void fill(final Table table, final TetradMatrix matrix, final double[][] values) throws IOException {
+        List<Callable<Chunk>> tasks = new ArrayList<Callable<Chunk>>();
+        int offset = 0;
+
+        for (int c = 0; c < table.chunks.size(); c++) {
+            final Chunk chunk = table.chunks.get(c);
+            final int[][] remap = table.localToGlobal[c];
+            final int rowOffset = offset;
+
+            tasks.add(new Callable<Chunk>() {
+                public Chunk call() {
+                    int numColumns = values.length;
+
+                    for (int i = 0; i < chunk.numRows; i++) {
+                        for (int j = 0; j < numColumns; j++) {
+                            double value = chunk.values[i * numColumns + j];
+
+                            if (values[j] != null) {
+                                value = value < 0 ? Double.NaN : values[j][remap[j][(int) value]];
+                            }
+
+                            matrix.set(rowOffset + i, j, value);
+                        }
+                    }
+
+                    chunk.values = null;
+                    return chunk;
+                }
+            });
+
+            offset += chunk.numRows;
+        }
+
+        invokeAll(tasks);
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+
+    //=============================PRIVATE METHODS========================//
+
+    /**
+     * Returns the boundaries of the byte ranges into which the data are split, each after a line break.
+     */
+    private long[] chunkBounds() throws IOException {
+        long length = size - dataStart;
+        int parallelism = pool == null ? 1 : pool.getParallelism();
+        long numChunks = Math.max(1, Math.min(parallelism, length / MIN_CHUNK_SIZE));
+        numChunks = Math.max(numChunks, (length + MAX_CHUNK_SIZE / 2 - 1) / (MAX_CHUNK_SIZE / 2));
+
+        long[] bounds = new long[(int) numChunks + 1];
+        bounds[0] = dataStart;
+        bounds[bounds.length - 1] = size;
+
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+        for (int c = 1; c < numChunks; c++) {
+            long position = Math.max(bounds[c - 1], dataStart + length * c / numChunks);
+            bounds[c] = size;
+
+            SEARCH:
+            while (position < size) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+
+                if (read <= 0) {
+                    break;
+                }
+
+                for (int k = 0; k < read; k++) {
+                    byte b = buffer.get(k);
+
+                    if (b == '\n' || b == '\r') {
+                        bounds[c] = position + k + 1;
+                        break SEARCH;
+                    }
+                }
+
+                position += read;
+            }
+
+            if (bounds[c] - bounds[c - 1] > MAX_CHUNK_SIZE) {
+                throw new UnsupportedFormatException("Line too long.");
+            }
+        }
+
+        if (bounds[bounds.length - 1] - bounds[bounds.length - 2] > MAX_CHUNK_SIZE) {
+            throw new UnsupportedFormatException("Line too long.");
+        }
+
+        return bounds;
+    }
+
+    private Chunk parseChunk(long from, long to, boolean[] continuous) throws IOException {
+        int numColumns = continuous.length;
+        Chunk chunk = new Chunk();
+
+        for (int j = 0; j < numColumns; j++) {
+            chunk.categories.add(continuous[j] ? null : new ArrayList<String>());
+            chunk.codes.add(continuous[j] ? null : new HashMap<String, Integer>());
+        }
+
+        if (to <= from) {
+            return chunk;
+        }
+
+        ByteBuffer buffer = map(from, to - from);
+        Lines lines = new Lines(buffer, 0, buffer.limit());
+        Tokens tokens = new Tokens(numColumns);
+
+        while (lines.next()) {
+            checkLine(buffer, lines.start, lines.end);
+            tokens.split(buffer, lines.start, lines.end);
+
+            // Guess at the number of rows from the length of the first.
+            if (chunk.numRows == 0) {
+                long rows = buffer.limit() / (lines.end - lines.start + 1) + 16;
+                chunk.values = new double[(int) Math.min(Integer.MAX_VALUE - 8, rows * numColumns)];
+            }
+
+            int offset = chunk.numRows * numColumns;
+
+            if (offset + numColumns > chunk.values.length) {
+                long newLength = Math.max((long) chunk.values.length * 3 / 2, offset + numColumns);
+
+                if (newLength > Integer.MAX_VALUE - 8) {
+                    throw new UnsupportedFormatException("Too much data in one range.");
+                }
+
+                chunk.values = Arrays.copyOf(chunk.values, (int) newLength);
+            }
+
+            for (int j = 0; j < numColumns; j++) {
+                double value = continuous[j] ? Double.NaN : -1;
+
+                if (j < tokens.count) {
+                    int start = trimStart(buffer, tokens.starts[j], tokens.ends[j]);
+                    int end = trimEnd(buffer, start, tokens.ends[j]);
+
+                    if (!isMissing(buffer, start, end)) {
+                        if (continuous[j]) {
+                            value = parseNumber(buffer, start, end);
+                        } else {
+                            String category = decode(buffer, start, end);
+                            Integer code = chunk.codes.get(j).get(category);
+
+                            if (code == null) {
+                                code = chunk.categories.get(j).size();
+                                chunk.codes.get(j).put(category, code);
+                                chunk.categories.get(j).add(category);
+                            }
+
+                            value = code;
+                        }
+                    }
+                }
+
+                chunk.values[offset + j] = value;
+            }
+
+            chunk.numRows++;
+        }
+
+        chunk.codes.clear();
+        return chunk;
+    }
+
+    /**
+     * Throws an UnsupportedFormatException for section headers and quoted text.
+     */
+    private void checkLine(ByteBuffer buffer, int start, int end) {
+        if (start < end && buffer.get(start) == '/') {
+            throw new UnsupportedFormatException("File has sections.");
+        }
+
+        if (quoteChar != -1) {
+            for (int i = start; i < end; i++) {
+                if (buffer.get(i) == quoteChar) {
+                    throw new UnsupportedFormatException("File has quoted text.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses a number exactly as Double.parseDouble() would. Plain decimals of up to MAX_FAST_DIGITS digits are
+     * parsed from the bytes: the digits, read as an integer, and the power of ten dividing them are both exact
+     * doubles, so their quotient is the correctly rounded value.
+     */
+    private static double parseNumber(ByteBuffer buffer, int start, int end) {
+        int i = start;
+        boolean negative = false;
+
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int numDigits = 0;
+        int scale = -1;
+
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+
+            if (b >= '0' && b <= '9') {
+                mantissa = 10 * mantissa + (b - '0');
+                numDigits++;
+
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (b == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                break;
+            }
+        }
+
+        if (i == end && numDigits > 0 && numDigits <= MAX_FAST_DIGITS) {
+            double value = scale <= 0 ? mantissa : mantissa / POWERS_OF_TEN[scale];
+            return negative ? -value : value;
+        }
+
+        String token = decode(buffer, start, end);
+
+        try {
+            return Double.parseDouble(token);
+        } catch (NumberFormatException e) {
+            throw new UnsupportedFormatException("Not a number: " + token);
+        }
+    }
+
+    private boolean isMissing(ByteBuffer buffer, int start, int end) {
+        if (start == end) {
+            return true;
+        }
+
+        if (end - start != missingValueMarker.length) {
+            return false;
+        }
+
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) != missingValueMarker[i - start]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int trimStart(ByteBuffer buffer, int start, int end) {
+        while (start < end && (buffer.get(start) & 0xff) <= ' ') {
+            start++;
+        }
+
+        return start;
+    }
+
+    private static int trimEnd(ByteBuffer buffer, int start, int end) {
+        while (end > start && (buffer.get(end - 1) & 0xff) <= ' ') {
+            end--;
+        }
+
+        return end;
+    }
+
+    private static String decode(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+
+        for (int i = start; i < end; i++) {
+            bytes[i - start] = buffer.get(i);
+        }
+
+        return new String(bytes, UTF8);
+    }
+
+    private MappedByteBuffer map(long position, long length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<T>();
+
+        try {
+            if (pool == null) {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+            } else {
+                for (Future<T> future : pool.invokeAll(tasks)) {
+                    results.add(future.get());
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        } catch (IOException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        return results;
+    }
+
+    /**
+     * Steps through the lines of a buffer, skipping blank lines and comments, as Lineizer does. Either of '\n' and
+     * '\r' ends a line; since blank lines are skipped, "\r\n" acts as a single line break.
+     */
+    private final class Lines {
+        private final ByteBuffer buffer;
+        private final int limit;
+        private int position;
+        private int start;
+        private int end;
+
+        public Lines(ByteBuffer buffer, int position, int limit) {
+            this.buffer = buffer;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        public boolean next() {
+            while (position < limit) {
+                start = position;
+                end = start;
+
+                while (end < limit && buffer.get(end) != '\n' && buffer.get(end) != '\r') {
+                    end++;
+                }
+
+                position = end + 1;
+
+                if (end > start && !isComment()) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private boolean isComment() {
+            if (end - start < commentMarker.length) {
+                return false;
+            }
+
+            for (int i = 0; i < commentMarker.length; i++) {
+                if (buffer.get(start + i) != commentMarker[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Splits a line into tokens the way RegexTokenizer does with the delimiter's pattern, recording the bounds of up
+     * to capacity of them. Leading spaces are skipped; every delimiter, including a trailing one, ends a token.
+     */
+    private final class Tokens {
+        private final int[] starts;
+        private final int[] ends;
+        private int count;
+
+        public Tokens(int capacity) {
+            starts = new int[capacity];
+            ends = new int[capacity];
+        }
+
+        public void split(ByteBuffer buffer, int start, int end) {
+            int position = start;
+
+            for (int i = start; i < end; i++) {
+                if (buffer.get(i) != ' ') {
+                    position = i;
+                    break;
+                }
+            }
+
+            count = 0;
+
+            while (true) {
+                int delimiterStart = -1;
+                int delimiterEnd = -1;
+
+                for (int i = position; i < end; i++) {
+                    if (isDelimiter(buffer.get(i))) {
+                        delimiterStart = i;
+                        delimiterEnd = i + 1;
+
+                        if (delimiter == WHITESPACE) {
+                            while (delimiterEnd < end && isDelimiter(buffer.get(delimiterEnd))) {
+                                delimiterEnd++;
+                            }
+                        }
+
+                        break;
+                    }
+                }
+
+                add(position, delimiterStart == -1 ? end : delimiterStart);
+
+                if (delimiterStart == -1) {
+                    return;
+                }
+
+                position = delimiterEnd;
+            }
+        }
+
+        private void add(int start, int end) {
+            if (count < starts.length) {
+                starts[count] = start;
+                ends[count] = end;
+            }
+
+            count++;
+        }
+
+        private boolean isDelimiter(byte b) {
+            if (delimiter == WHITESPACE) {
+                return b == ' ' || b == '\t' || b == 0x0B || b == '\f';
+            }
+
+            return b == delimiter;
+        }
+    }
+}
+
+
+
@@ -869,13 +869,18 @@ public final class NumberObjectDataSet
      * off-diagonal correlation involving a column with a missing value is
      * Double.NaN, although all of the on-diagonal elements are 1.0. If that's
      * not the desired behavior, missing values can be removed or imputed
-     * first.
+     * first. If case multipliers are used, each case is weighted by its
+     * multiplier.
      */
     public final TetradMatrix getCorrelationMatrix() {
         if (!isContinuous()) {
             throw new IllegalStateException("Not a continuous data set.");
         }
 
+        if (isMulipliersCollapsed()) {
+            return weightedCovarianceBuilder().correlation();
+        }
+
         TetradMatrix cov = new TetradMatrix(data[0].length, data[0].length);
 
         double[] x = new double[data.length];
@@ -901,13 +906,18 @@ public final class NumberObjectDataSet
      * inherits the handling of missing values from that library--that is, any
      * covariance involving a column with a missing value is Double.NaN. If
      * that's not the desired behavior, missing values can be removed or imputed
-     * first.
+     * first. If case multipliers are used, each case is weighted by its
+     * multiplier.
      */
     public final TetradMatrix getCovarianceMatrix() {
         if (!isContinuous()) {
             throw new IllegalStateException("Not a continuous data set.");
         }
 
+        if (isMulipliersCollapsed()) {
+            return weightedCovarianceBuilder().covariance();
+        }
+
         TetradMatrix cov = new TetradMatrix(data[0].length, data[0].length);
 
         double[] x = new double[data.length];
@@ -1390,6 +1400,27 @@ public final class NumberObjectDataSet
         data = _data;
     }
 
+    /**
+     * Returns a builder over a copy of the data that weights each row by its
+     * case multiplier.
+     */
+    private CovarianceBuilder weightedCovarianceBuilder() {
+        TetradMatrix _data = new TetradMatrix(data.length, data[0].length);
+        int[] _multipliers = new int[data.length];
+
+        for (int i = 0; i < data.length; i++) {
+            for (int j = 0; j < data[0].length; j++) {
+                _data.set(i, j, data[i][j].doubleValue());
+            }
+
+            _multipliers[i] = getMultiplier(i);
+        }
+
+        CovarianceBuilder builder = new CovarianceBuilder(_data);
+        builder.setMultipliers(_multipliers);
+        return builder;
+    }
+
     /**
      * Returns the set of case multipliers..
      */
@@ -0,0 +1,225 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import static java.lang.Math.sqrt;
+
+/**
+ * Reusable primitive buffers, one set per thread, for extracting submatrices of covariance matrices and calculating
+ * partial correlations from them. Independence tests running on several threads at once can use these without locking
+ * and without allocating a matrix per test. The buffers grow to the largest submatrix a thread has extracted--for a
+ * search, two plus its maximum depth--and are kept for the life of the thread.
+ * <p/>
+ * The submatrix returned by <code>subMatrix</code> is the workspace's own buffer, of which only the top left
+ * <code>indices.length</code> by <code>indices.length</code> block is defined; it is overwritten by the next
+ * extraction on the same thread and must not be handed to other threads.
+ *
+ * @author Joseph Ramsey
+ */
+public final class SubmatrixWorkspace {
+
+    /**
+     * Cholesky pivots at or below this fraction of the corresponding diagonal entry of the Z block are taken to be
+     * zero; rounding leaves small positive pivots behind when Z is collinear. CholeskyPartialCorrelation uses the same
+     * rule, so the Fisher Z tests agree on which conditioning sets are singular.
+     */
+    public static final double PIVOT_TOLERANCE = 1e-10;
+
+    /**
+     * The workspace for each thread.
+     */
+    private static final ThreadLocal<SubmatrixWorkspace> WORKSPACE = new ThreadLocal<SubmatrixWorkspace>() {
+        protected SubmatrixWorkspace initialValue() {
+            return new SubmatrixWorkspace();
+        }
+    };
+
+    /**
+     * The last submatrix extracted.
+     */
+    private double[][] submatrix = new double[0][0];
+
+    /**
+     * The size of the last submatrix extracted.
+     */
+    private int size;
+
+    /**
+     * The Cholesky factor of the conditioning block, lower triangle.
+     */
+    private double[][] factor = new double[0][0];
+
+    /**
+     * Forward substitution results for the first two variables.
+     */
+    private double[] wx = new double[0];
+    private double[] wy = new double[0];
+
+    private SubmatrixWorkspace() {
+    }
+
+    /**
+     * Returns the workspace for the calling thread.
+     */
+    public static SubmatrixWorkspace getInstance() {
+        return WORKSPACE.get();
+    }
+
+    /**
+     * Copies the submatrix of <code>cov</code> for the given variable indices, in order, into this workspace and
+     * returns it. Only the values needed are asked of <code>cov</code>, so covariance matrices that calculate their
+     * values on the fly calculate only those.
+     */
+    public double[][] subMatrix(ICovarianceMatrix cov, int[] indices) {
+        int size = indices.length;
+        ensureCapacity(size);
+
+        for (int i = 0; i < size; i++) {
+            for (int j = i; j < size; j++) {
+                double value = cov.getValue(indices[i], indices[j]);
+                submatrix[i][j] = value;
+                submatrix[j][i] = value;
+            }
+        }
+
+        this.size = size;
+        return submatrix;
+    }
+
+    /**
+     * Copies the submatrix of the (symmetric) matrix <code>m</code> for the given variable indices, in order, into this
+     * workspace and returns it.
+     */
+    public double[][] subMatrix(TetradMatrix m, int[] indices) {
+        int size = indices.length;
+        ensureCapacity(size);
+
+        for (int i = 0; i < size; i++) {
+            for (int j = i; j < size; j++) {
+                double value = m.get(indices[i], indices[j]);
+                submatrix[i][j] = value;
+                submatrix[j][i] = value;
+            }
+        }
+
+        this.size = size;
+        return submatrix;
+    }
+
+    /**
+     * Returns the size of the last submatrix extracted.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the partial correlation of the first two variables of the last submatrix extracted given the rest--the
+     * same quantity as StatUtils.partialCorrelation(TetradMatrix), for a submatrix in the order X, Y, Z1, ..., Zn.
+     * It is calculated from the Cholesky factor L of the Z block:
+     * <pre>
+     *     w_x = L^-1 cov(z, x),  w_y = L^-1 cov(z, y),
+     *     r = (cov(x, y) - w_x.w_y) / sqrt((var(x) - w_x.w_x) (var(y) - w_y.w_y)).
+     * </pre>
+     * Returns NaN if the Z block is not positive definite, or so nearly singular that some Cholesky pivot falls below
+     * a small fraction of its diagonal entry.
+     */
+    public double partialCorrelation() {
+        if (size < 2) {
+            throw new IllegalStateException("Expecting a submatrix over at least two variables.");
+        }
+
+        double[][] s = submatrix;
+        int k = size - 2;
+
+        for (int i = 0; i < k; i++) {
+            double[] si = s[i + 2];
+            double[] li = factor[i];
+
+            for (int j = 0; j <= i; j++) {
+                double[] lj = factor[j];
+                double sum = si[j + 2];
+
+                for (int m = 0; m < j; m++) {
+                    sum -= li[m] * lj[m];
+                }
+
+                if (j < i) {
+                    li[j] = sum / lj[j];
+                } else if (sum > PIVOT_TOLERANCE * si[i + 2]) {
+                    li[i] = sqrt(sum);
+                } else {
+                    return Double.NaN;
+                }
+            }
+        }
+
+        forwardSubstitute(s[0], wx, k);
+        forwardSubstitute(s[1], wy, k);
+
+        double cxy = s[0][1];
+        double vx = s[0][0];
+        double vy = s[1][1];
+
+        for (int i = 0; i < k; i++) {
+            cxy -= wx[i] * wy[i];
+            vx -= wx[i] * wx[i];
+            vy -= wy[i] * wy[i];
+        }
+
+        return cxy / sqrt(vx * vy);
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    /**
+     * Solves L w = row[2..k+2) for w.
+     */
+    private void forwardSubstitute(double[] row, double[] w, int k) {
+        for (int i = 0; i < k; i++) {
+            double[] li = factor[i];
+            double sum = row[i + 2];
+
+            for (int m = 0; m < i; m++) {
+                sum -= li[m] * w[m];
+            }
+
+            w[i] = sum / li[i];
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (submatrix.length >= size) {
+            return;
+        }
+
+        submatrix = new double[size][size];
+        factor = new double[size][size];
+        wx = new double[size];
+        wy = new double[size];
+    }
+}
+
+
+
@@ -0,0 +1,210 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.MultiDimIntTable;
+import edu.cmu.tetrad.util.RandomUtil;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Tests ContingencyCounter against counting the data set row by row.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestContingencyCounter extends TestCase {
+
+    public TestContingencyCounter(String name) {
+        super(name);
+    }
+
+    public void testCount() {
+        DataSet dataSet = randomData(500, new int[]{2, 3, 4, 200}, false);
+        ContingencyCounter counter = new ContingencyCounter(dataSet);
+
+        int[][] columnLists = {{0}, {3}, {1, 0}, {2, 3, 1}, {0, 1, 2, 3}, {}};
+
+        for (int[] columns : columnLists) {
+            assertTrue(Arrays.equals(countDirectly(dataSet, columns), counter.count(columns)));
+        }
+    }
+
+    public void testMissingValuesAndMultipliers() {
+        DataSet dataSet = randomData(500, new int[]{3, 2, 150, 4}, true);
+
+        for (int i = 0; i < dataSet.getNumRows(); i++) {
+            dataSet.setMultiplier(i, RandomUtil.getInstance().nextInt(3) + 1);
+        }
+
+        ContingencyCounter counter = new ContingencyCounter(dataSet);
+
+        for (int j = 0; j < dataSet.getNumColumns(); j++) {
+            assertTrue(counter.hasMissingValues(j));
+        }
+
+        int[][] columnLists = {{0}, {2, 1}, {3, 2, 0}, {0, 1, 2, 3}};
+
+        for (int[] columns : columnLists) {
+            assertTrue(Arrays.equals(countDirectly(dataSet, columns), counter.count(columns)));
+        }
+    }
+
+    public void testCellTable() {
+        DataSet dataSet = randomData(300, new int[]{2, 3, 4}, true);
+        int[] indices = {2, 0, 1};
+
+        CellTable fromData = new CellTable(null);
+        fromData.setMissingValue(DiscreteVariable.MISSING_VALUE);
+        fromData.addToTable(dataSet, indices);
+
+        CellTable fromCounter = new CellTable(null);
+        fromCounter.addToTable(new ContingencyCounter(dataSet), indices);
+
+        int[] coords = new int[3];
+
+        for (coords[0] = 0; coords[0] < 4; coords[0]++) {
+            for (coords[1] = 0; coords[1] < 2; coords[1]++) {
+                for (coords[2] = 0; coords[2] < 3; coords[2]++) {
+                    assertEquals(fromData.getValue(coords), fromCounter.getValue(coords));
+                }
+            }
+        }
+    }
+
+    public void testParallel() {
+        DataSet dataSet = randomData(100000, new int[]{3, 4, 5}, true);
+        ContingencyCounter counter = new ContingencyCounter(dataSet);
+        int[] columns = {0, 1, 2};
+
+        long[] sequential = counter.count(columns);
+        counter.setParallelism(4);
+        long[] parallel = counter.count(columns);
+
+        assertTrue(Arrays.equals(sequential, parallel));
+        assertTrue(Arrays.equals(countDirectly(dataSet, columns), parallel));
+    }
+
+    /**
+     * Counts a table of 4^12 cells, which must be counted sparsely, on one thread and on several.
+     */
+    public void testLargeTable() {
+        int[] numCategories = new int[12];
+        Arrays.fill(numCategories, 4);
+        DataSet dataSet = randomData(70000, numCategories, true);
+        int[] columns = {11, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+
+        MultiDimIntTable sequential = new MultiDimIntTable(null);
+        MultiDimIntTable parallel = new MultiDimIntTable(null);
+        ContingencyCounter counter = new ContingencyCounter(dataSet);
+        counter.count(columns, sequential);
+        counter.setParallelism(4);
+        counter.count(columns, parallel);
+
+        assertEquals(1 << 24, sequential.getNumCells());
+        int[] coords = new int[columns.length];
+        long total = 0;
+
+        rows:
+        for (int i = 0; i < dataSet.getNumRows(); i++) {
+            for (int j = 0; j < columns.length; j++) {
+                coords[j] = dataSet.getInt(i, columns[j]);
+                if (coords[j] == DiscreteVariable.MISSING_VALUE) continue rows;
+            }
+
+            long count = sequential.getValue(coords);
+            assertTrue(count > 0);
+            assertEquals(count, parallel.getValue(coords));
+            total++;
+        }
+
+        int[] margin = new int[columns.length];
+        Arrays.fill(margin, -1);
+        assertEquals(total, sequential.getMargin(margin));
+        assertEquals(total, parallel.getMargin(margin));
+    }
+
+    private DataSet randomData(int numRows, int[] numCategories, boolean missing) {
+        List<Node> variables = new LinkedList<Node>();
+
+        for (int j = 0; j < numCategories.length; j++) {
+            variables.add(new DiscreteVariable("X" + (j + 1), numCategories[j]));
+        }
+
+        DataSet dataSet = new ColtDataSet(numRows, variables);
+        RandomUtil random = RandomUtil.getInstance();
+
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0; j < numCategories.length; j++) {
+                if (missing && random.nextInt(20) == 0) {
+                    dataSet.setInt(i, j, DiscreteVariable.MISSING_VALUE);
+                } else {
+                    dataSet.setInt(i, j, random.nextInt(numCategories[j]));
+                }
+            }
+        }
+
+        return dataSet;
+    }
+
+    private long[] countDirectly(DataSet dataSet, int[] columns) {
+        int numCells = 1;
+
+        for (int column : columns) {
+            numCells *= ((DiscreteVariable) dataSet.getVariable(column)).getNumCategories();
+        }
+
+        long[] counts = new long[numCells];
+
+        rows:
+        for (int i = 0; i < dataSet.getNumRows(); i++) {
+            int cell = 0;
+
+            for (int column : columns) {
+                int value = dataSet.getInt(i, column);
+
+                if (value == DiscreteVariable.MISSING_VALUE) {
+                    continue rows;
+                }
+
+                cell = cell * ((DiscreteVariable) dataSet.getVariable(column)).getNumCategories() + value;
+            }
+
+            counts[cell] += dataSet.getMultiplier(i);
+        }
+
+        return counts;
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestContingencyCounter.class);
+    }
+}
+
+
+
@@ -0,0 +1,162 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.IndTestFisherZ;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.StatUtils;
+import edu.cmu.tetrad.util.TetradMatrix;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests the CovarianceAccumulator class.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestCovarianceAccumulator extends TestCase {
+
+    /**
+     * Standard constructor for JUnit test cases.
+     */
+    public TestCovarianceAccumulator(String name) {
+        super(name);
+    }
+
+    public void testCases() {
+        DataSet data = simulate(500);
+        TetradMatrix matrix = data.getDoubleData();
+        CovarianceAccumulator accumulator = new CovarianceAccumulator(data.getVariables());
+
+        for (int i = 0; i < matrix.rows(); i++) {
+            accumulator.add(matrix.getRow(i).toArray());
+        }
+
+        assertEquals(500, accumulator.getSampleSize());
+        assertEquals(new CovarianceMatrix(data), accumulator.getCovarianceMatrix());
+        assertEquals(DataUtils.cov(matrix), accumulator.getCovariance(false));
+    }
+
+    public void testChunks() {
+        DataSet data = simulate(1000);
+        TetradMatrix matrix = data.getDoubleData();
+        CovarianceAccumulator accumulator = new CovarianceAccumulator(data.getVariables());
+
+        for (int from = 0; from < matrix.rows(); from += 137) {
+            int to = Math.min(from + 137, matrix.rows());
+            accumulator.add(matrix.getPart(from, to - 1, 0, matrix.columns() - 1));
+        }
+
+        assertEquals(1000, accumulator.getSampleSize());
+        assertEquals(new CovarianceMatrix(data), accumulator.getCovarianceMatrix());
+    }
+
+    public void testMerge() {
+        DataSet data = simulate(1000);
+        TetradMatrix matrix = data.getDoubleData();
+        int columns = matrix.columns();
+
+        CovarianceAccumulator first = new CovarianceAccumulator(data.getVariables());
+        CovarianceAccumulator second = new CovarianceAccumulator(data.getVariables());
+        CovarianceAccumulator third = new CovarianceAccumulator(data.getVariables());
+
+        first.add(matrix.getPart(0, 99, 0, columns - 1));
+        second.add(matrix.getPart(100, 699, 0, columns - 1));
+
+        for (int i = 700; i < 1000; i++) {
+            third.add(matrix.getRow(i).toArray());
+        }
+
+        CovarianceAccumulator merged = new CovarianceAccumulator(data.getVariables());
+        merged.merge(third);
+        merged.merge(first);
+        merged.merge(second);
+
+        assertEquals(1000, merged.getSampleSize());
+        assertEquals(new CovarianceMatrix(data), merged.getCovarianceMatrix());
+
+        double[] means = merged.getMeans();
+
+        for (int j = 0; j < columns; j++) {
+            assertEquals(StatUtils.mean(matrix.getColumn(j).toArray()), means[j], 1e-10);
+        }
+    }
+
+    /**
+     * The accumulated covariance matrix should serve wherever one calculated from the data would.
+     */
+    public void testIndependenceTest() {
+        DataSet data = simulate(1000);
+        CovarianceAccumulator accumulator = new CovarianceAccumulator(data.getVariables());
+        accumulator.add(data);
+
+        IndTestFisherZ expected = new IndTestFisherZ(new CovarianceMatrix(data), 0.05);
+        IndTestFisherZ test = new IndTestFisherZ(accumulator.getCovarianceMatrix(), 0.05);
+
+        List<Node> variables = test.getVariables();
+        List<Node> z = Collections.singletonList(variables.get(2));
+
+        expected.isIndependent(variables.get(0), variables.get(1), z);
+        test.isIndependent(variables.get(0), variables.get(1), z);
+
+        assertEquals(expected.getPValue(), test.getPValue(), 1e-8);
+    }
+
+    private static void assertEquals(ICovarianceMatrix expected, ICovarianceMatrix actual) {
+        assertEquals(expected.getVariables(), actual.getVariables());
+        assertEquals(expected.getSampleSize(), actual.getSampleSize());
+        assertEquals(expected.getMatrix(), actual.getMatrix());
+    }
+
+    private static void assertEquals(TetradMatrix expected, TetradMatrix actual) {
+        for (int i = 0; i < expected.rows(); i++) {
+            for (int j = 0; j < expected.columns(); j++) {
+                assertEquals(expected.get(i, j), actual.get(i, j), 1e-10);
+            }
+        }
+    }
+
+    private DataSet simulate(int sampleSize) {
+        Dag dag = GraphUtils.randomDag(6, 6, false);
+        SemIm semIm = new SemIm(new SemPm(dag));
+        return semIm.simulateData(sampleSize, false);
+    }
+
+    /**
+     * This method uses reflection to collect up all of the test methods from this class and return them to the test
+     * runner.
+     */
+    public static Test suite() {
+        return new TestSuite(TestCovarianceAccumulator.class);
+    }
+}
+
+
+
@@ -0,0 +1,221 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.StatUtils;
+import edu.cmu.tetrad.util.TetradMatrix;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the CovarianceBuilder class.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestCovarianceBuilder extends TestCase {
+
+    /**
+     * Standard constructor for JUnit test cases.
+     */
+    public TestCovarianceBuilder(String name) {
+        super(name);
+    }
+
+    public void testCovariance() {
+        TetradMatrix data = randomData(300, 70);
+        TetradMatrix cov = new CovarianceBuilder(data).covariance();
+
+        CovarianceBuilder builder = new CovarianceBuilder(data);
+        builder.setBiased(true);
+        TetradMatrix biased = builder.covariance();
+
+        for (int i = 0; i < data.columns(); i++) {
+            for (int j = 0; j < data.columns(); j++) {
+                double expected = StatUtils.covariance(data.getColumn(i).toArray(), data.getColumn(j).toArray());
+                assertEquals(expected, cov.get(i, j), 1e-10);
+                assertEquals(expected * 299 / 300, biased.get(i, j), 1e-10);
+            }
+        }
+    }
+
+    public void testCorrelation() {
+        TetradMatrix data = randomData(300, 70);
+        TetradMatrix corr = new CovarianceBuilder(data).correlation();
+
+        for (int i = 0; i < data.columns(); i++) {
+            for (int j = 0; j < data.columns(); j++) {
+                double expected = StatUtils.correlation(data.getColumn(i).toArray(), data.getColumn(j).toArray());
+                assertEquals(expected, corr.get(i, j), 1e-10);
+            }
+        }
+    }
+
+    /**
+     * Weighting a row by a multiplier should be the same as repeating it.
+     */
+    public void testMultipliers() {
+        TetradMatrix data = randomData(50, 5);
+        int[] multipliers = new int[data.rows()];
+        int total = 0;
+
+        for (int i = 0; i < multipliers.length; i++) {
+            multipliers[i] = 1 + RandomUtil.getInstance().nextInt(3);
+            total += multipliers[i];
+        }
+
+        TetradMatrix expanded = new TetradMatrix(total, data.columns());
+        int row = 0;
+
+        for (int i = 0; i < data.rows(); i++) {
+            for (int m = 0; m < multipliers[i]; m++) {
+                for (int j = 0; j < data.columns(); j++) {
+                    expanded.set(row, j, data.get(i, j));
+                }
+
+                row++;
+            }
+        }
+
+        CovarianceBuilder builder = new CovarianceBuilder(data);
+        builder.setMultipliers(multipliers);
+
+        assertEquals(new CovarianceBuilder(expanded).covariance(), builder.covariance(), 1e-10);
+        assertEquals(new CovarianceBuilder(expanded).correlation(), builder.correlation(), 1e-10);
+
+        builder.setPairwiseDeletion(true);
+        assertEquals(new CovarianceBuilder(expanded).covariance(), builder.covariance(), 1e-10);
+    }
+
+    public void testMissingValues() {
+        TetradMatrix data = randomData(200, 6);
+
+        for (int k = 0; k < 40; k++) {
+            int i = RandomUtil.getInstance().nextInt(data.rows());
+            int j = RandomUtil.getInstance().nextInt(data.columns() - 1);
+            data.set(i, j, Double.NaN);
+        }
+
+        // The last column has no missing values.
+        int last = data.columns() - 1;
+
+        TetradMatrix propagated = new CovarianceBuilder(data).covariance();
+        assertTrue(Double.isNaN(propagated.get(0, last)));
+        assertFalse(Double.isNaN(propagated.get(last, last)));
+
+        CovarianceBuilder builder = new CovarianceBuilder(data);
+        builder.setPairwiseDeletion(true);
+        TetradMatrix cov = builder.covariance();
+        TetradMatrix corr = builder.correlation();
+
+        for (int i = 0; i < data.columns(); i++) {
+            for (int j = 0; j < data.columns(); j++) {
+                int n = 0;
+
+                for (int r = 0; r < data.rows(); r++) {
+                    if (!Double.isNaN(data.get(r, i)) && !Double.isNaN(data.get(r, j))) n++;
+                }
+
+                double[] x = new double[n];
+                double[] y = new double[n];
+                n = 0;
+
+                for (int r = 0; r < data.rows(); r++) {
+                    if (!Double.isNaN(data.get(r, i)) && !Double.isNaN(data.get(r, j))) {
+                        x[n] = data.get(r, i);
+                        y[n] = data.get(r, j);
+                        n++;
+                    }
+                }
+
+                assertEquals(StatUtils.covariance(x, y), cov.get(i, j), 1e-10);
+                assertEquals(StatUtils.correlation(x, y), corr.get(i, j), 1e-10);
+            }
+        }
+    }
+
+    /**
+     * The result should not depend on the number of threads.
+     */
+    public void testParallelism() {
+        TetradMatrix data = randomData(2000, 130);
+
+        CovarianceBuilder builder = new CovarianceBuilder(data);
+        builder.setParallelism(1);
+        TetradMatrix expected = builder.covariance();
+
+        builder.setParallelism(3);
+        TetradMatrix cov = builder.covariance();
+
+        for (int i = 0; i < data.columns(); i++) {
+            for (int j = 0; j < data.columns(); j++) {
+                assertEquals(expected.get(i, j), cov.get(i, j), 0.0);
+            }
+        }
+
+        // Few columns and many rows, so rows are split into chunks.
+        TetradMatrix tall = randomData(150000, 3);
+        TetradMatrix tallCov = new CovarianceBuilder(tall).covariance();
+
+        for (int i = 0; i < tall.columns(); i++) {
+            for (int j = 0; j < tall.columns(); j++) {
+                double _expected = StatUtils.covariance(tall.getColumn(i).toArray(), tall.getColumn(j).toArray());
+                assertEquals(_expected, tallCov.get(i, j), 1e-10);
+            }
+        }
+    }
+
+    private static void assertEquals(TetradMatrix expected, TetradMatrix actual, double tolerance) {
+        for (int i = 0; i < expected.rows(); i++) {
+            for (int j = 0; j < expected.columns(); j++) {
+                assertEquals(expected.get(i, j), actual.get(i, j), tolerance);
+            }
+        }
+    }
+
+    private TetradMatrix randomData(int rows, int columns) {
+        TetradMatrix data = new TetradMatrix(rows, columns);
+        RandomUtil random = RandomUtil.getInstance();
+
+        for (int i = 0; i < rows; i++) {
+            double shared = random.nextNormal(0, 1);
+
+            for (int j = 0; j < columns; j++) {
+                data.set(i, j, 10 + j + shared + random.nextNormal(0, 1));
+            }
+        }
+
+        return data;
+    }
+
+    /**
+     * This method uses reflection to collect up all of the test methods from this class and return them to the test
+     * runner.
+     */
+    public static Test suite() {
+        return new TestSuite(TestCovarianceBuilder.class);
+    }
+}
+
+
+
@@ -91,6 +91,62 @@ public final class TestCovarianceMatrix extends TestCase {
         System.out.println("cov3 = " + cov3);
     }
 
+    /**
+     * A data set with case multipliers should give the same covariances,
+     * correlations and sample size as the data set with the rows repeated.
+     */
+    public void testMultipliers() {
+        checkMultipliers(true);
+        checkMultipliers(false);
+    }
+
+    private void checkMultipliers(boolean colt) {
+        List<Node> variables = new LinkedList<Node>();
+
+        for (int i = 0; i < 5; i++) {
+            variables.add(new ContinuousVariable("X" + i));
+        }
+
+        int[] multipliers = {1, 3, 1, 2, 1, 1, 4, 1, 2, 1};
+        int total = 0;
+
+        for (int multiplier : multipliers) {
+            total += multiplier;
+        }
+
+        DataSet weighted = colt ? new ColtDataSet(10, variables)
+                : new NumberObjectDataSet(10, variables);
+        DataSet expanded = colt ? new ColtDataSet(total, variables)
+                : new NumberObjectDataSet(total, variables);
+        int row = 0;
+
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 5; j++) {
+                weighted.setDouble(i, j, this.data[i][j]);
+            }
+
+            weighted.setMultiplier(i, multipliers[i]);
+
+            for (int m = 0; m < multipliers[i]; m++) {
+                for (int j = 0; j < 5; j++) {
+                    expanded.setDouble(row, j, this.data[i][j]);
+                }
+
+                row++;
+            }
+        }
+
+        ICovarianceMatrix cov = new CovarianceMatrix(weighted);
+        ICovarianceMatrix expectedCov = new CovarianceMatrix(expanded);
+        assertEquals(total, cov.getSampleSize());
+        assertEquals(expectedCov.getMatrix(), cov.getMatrix());
+
+        ICovarianceMatrix corr = new CorrelationMatrix(weighted);
+        ICovarianceMatrix expectedCorr = new CorrelationMatrix(expanded);
+        assertEquals(total, corr.getSampleSize());
+        assertEquals(expectedCorr.getMatrix(), corr.getMatrix());
+    }
+
     public static void testPositiveDefinite() {
         String[] varNames = new String[]{"X1", "X2", "X3"};
         double[][] mUpper = new double[][]{{1.0}, {.3, 1.0}, {0.8, -.2, 1.0}};
@@ -116,6 +172,14 @@ public final class TestCovarianceMatrix extends TestCase {
 
     }
 
+    private static void assertEquals(TetradMatrix expected, TetradMatrix actual) {
+        for (int i = 0; i < expected.rows(); i++) {
+            for (int j = 0; j < expected.columns(); j++) {
+                assertEquals(expected.get(i, j), actual.get(i, j), 1e-10);
+            }
+        }
+    }
+
     /**
      * This method uses reflection to collect up all of the test methods from
      * this class and return them to the test runner.
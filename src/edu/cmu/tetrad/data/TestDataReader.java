@@ -21,6 +21,8 @@
 
 package edu.cmu.tetrad.data;
 
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.RandomUtil;
 import edu.cmu.tetrad.util.TetradLogger;
 import junit.framework.Test;
 import junit.framework.TestCase;
@@ -29,7 +31,9 @@ import junit.framework.TestSuite;
 import java.io.CharArrayWriter;
 import java.io.File;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintWriter;
 
 public final class TestDataReader extends TestCase {
 
@@ -245,6 +249,91 @@ public final class TestDataReader extends TestCase {
         }
     }
 
+    public void testMemoryMapped() throws IOException {
+        File file = File.createTempFile("testMemoryMapped", ".txt");
+        file.deleteOnExit();
+
+        RandomUtil random = RandomUtil.getInstance();
+        String[] colors = {"red", "green", "blue"};
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        out.print("// Comment\r\n");
+        out.print("X1\tX2\tX3\tX4\r\n");
+
+        for (int i = 0; i < 80000; i++) {
+            if (i % 30000 == 0) {
+                out.print("\n// Comment\n");
+            }
+
+            out.print(random.nextNormal(0, 1) + "\t");
+            out.print((random.nextInt(50) == 0 ? "*" : "" + random.nextInt(4)) + "\t");
+            out.print(colors[random.nextInt(3)] + "\t");
+            out.print(random.nextInt(50) == 0 ? "" : "" + random.nextInt(1000) / 100.0);
+            out.print(i % 2 == 0 ? "\n" : "\r\n");
+        }
+
+        out.close();
+
+        DataReader reader = new DataReader();
+        reader.setDelimiter(DelimiterType.TAB);
+        DataSet expected = reader.parseTabular(file);
+
+        reader.setMemoryMapped(true);
+        reader.setParallelism(3);
+        DataSet data = reader.parseTabular(file);
+
+        assertEquals(expected.getNumRows(), data.getNumRows());
+        assertEquals(expected.getNumColumns(), data.getNumColumns());
+
+        for (int j = 0; j < expected.getNumColumns(); j++) {
+            Node variable = expected.getVariable(j);
+            assertEquals(variable.getName(), data.getVariable(j).getName());
+            assertEquals(variable.getClass(), data.getVariable(j).getClass());
+
+            if (variable instanceof DiscreteVariable) {
+                assertEquals(((DiscreteVariable) variable).getCategories(),
+                        ((DiscreteVariable) data.getVariable(j)).getCategories());
+            }
+
+            for (int i = 0; i < expected.getNumRows(); i++) {
+                assertEquals(expected.getDouble(i, j), data.getDouble(i, j));
+            }
+        }
+    }
+
+    public void testAccumulateCovariance() throws IOException {
+        File file = File.createTempFile("testAccumulateCovariance", ".txt");
+        file.deleteOnExit();
+
+        RandomUtil random = RandomUtil.getInstance();
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        out.println("ID,X1,X2,X3");
+
+        for (int i = 0; i < 10000; i++) {
+            double x1 = random.nextNormal(0, 1);
+            double x2 = x1 + random.nextNormal(0, 1);
+            out.println("case" + i + "," + x1 + "," + x2 + "," + (x2 - random.nextNormal(0, 1)));
+        }
+
+        out.close();
+
+        DataReader reader = new DataReader();
+        reader.setDelimiter(DelimiterType.COMMA);
+        reader.setIdsSupplied(true);
+        reader.setIdLabel("ID");
+
+        ICovarianceMatrix expected = new CovarianceMatrix(reader.parseTabular(file));
+        ICovarianceMatrix cov = reader.accumulateCovariance(file).getCovarianceMatrix();
+
+        assertEquals(expected.getVariableNames(), cov.getVariableNames());
+        assertEquals(expected.getSampleSize(), cov.getSampleSize());
+
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                assertEquals(expected.getValue(i, j), cov.getValue(i, j), 1e-10);
+            }
+        }
+    }
+
     public void test10() {
         TetradLogger.getInstance().addOutputStream(System.out);
         File file = new File("sample_data/bollen.txt");
@@ -0,0 +1,206 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.StatUtils;
+import edu.cmu.tetrad.util.TetradMatrix;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the SubmatrixWorkspace class.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestSubmatrixWorkspace extends TestCase {
+
+    /**
+     * Standard constructor for JUnit test cases.
+     */
+    public TestSubmatrixWorkspace(String name) {
+        super(name);
+    }
+
+    public void testPartialCorrelation() {
+        ICovarianceMatrix cov = randomCov(12);
+        TetradMatrix matrix = cov.getMatrix();
+        SubmatrixWorkspace workspace = SubmatrixWorkspace.getInstance();
+
+        for (int[] indices : randomIndices(12, 200)) {
+            double expected = StatUtils.partialCorrelation(matrix.getSelection(indices, indices));
+
+            workspace.subMatrix(cov, indices);
+            assertEquals(indices.length, workspace.getSize());
+            assertEquals(expected, workspace.partialCorrelation(), 1e-10);
+
+            workspace.subMatrix(matrix, indices);
+            assertEquals(expected, workspace.partialCorrelation(), 1e-10);
+        }
+    }
+
+    public void testSingular() {
+        ICovarianceMatrix cov = randomCov(5);
+        SubmatrixWorkspace workspace = SubmatrixWorkspace.getInstance();
+
+        workspace.subMatrix(cov, new int[]{0, 1, 2, 3, 2});
+        assertTrue(Double.isNaN(workspace.partialCorrelation()));
+
+        // The workspace is usable again afterward.
+        workspace.subMatrix(cov, new int[]{0, 1, 2});
+        assertFalse(Double.isNaN(workspace.partialCorrelation()));
+    }
+
+    /**
+     * Calculates the same partial correlations on one thread and then on several at once, checking that the results
+     * are the same.
+     */
+    public void testConcurrent() throws InterruptedException {
+        final ICovarianceMatrix cov = randomCov(20);
+        final List<int[]> indices = randomIndices(20, 20000);
+        final double[] expected = new double[indices.size()];
+
+        SubmatrixWorkspace workspace = SubmatrixWorkspace.getInstance();
+
+        for (int i = 0; i < indices.size(); i++) {
+            workspace.subMatrix(cov, indices.get(i));
+            expected[i] = workspace.partialCorrelation();
+        }
+
+        int numThreads = 4;
+        final double[][] results = new double[numThreads][indices.size()];
+        Thread[] threads = new Thread[numThreads];
+
+        for (int t = 0; t < numThreads; t++) {
+            final double[] result = results[t];
+
+            threads[t] = new Thread() {
+                public void run() {
+                    SubmatrixWorkspace workspace = SubmatrixWorkspace.getInstance();
+
+                    for (int i = 0; i < indices.size(); i++) {
+                        workspace.subMatrix(cov, indices.get(i));
+                        result[i] = workspace.partialCorrelation();
+                    }
+                }
+            };
+        }
+
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        for (double[] result : results) {
+            for (int i = 0; i < indices.size(); i++) {
+                assertEquals(expected[i], result[i], 0.0);
+            }
+        }
+    }
+
+    /**
+     * Prints the throughput of the workspace on one thread and on several at once. Checks nothing; compare the lines
+     * to see how partial correlations scale with threads.
+     */
+    public void testThroughput() throws InterruptedException {
+        final ICovarianceMatrix cov = randomCov(20);
+        final List<int[]> indices = randomIndices(20, 20000);
+
+        for (int numThreads = 1; numThreads <= 8; numThreads *= 2) {
+            Thread[] threads = new Thread[numThreads];
+
+            for (int t = 0; t < numThreads; t++) {
+                threads[t] = new Thread() {
+                    public void run() {
+                        SubmatrixWorkspace workspace = SubmatrixWorkspace.getInstance();
+
+                        for (int[] _indices : indices) {
+                            workspace.subMatrix(cov, _indices);
+                            workspace.partialCorrelation();
+                        }
+                    }
+                };
+            }
+
+            long start = System.currentTimeMillis();
+
+            for (Thread thread : threads) thread.start();
+            for (Thread thread : threads) thread.join();
+
+            long elapsed = Math.max(System.currentTimeMillis() - start, 1);
+            System.out.println(numThreads + " thread(s): " + (numThreads * indices.size() * 1000L / elapsed)
+                    + " partial correlations/s");
+        }
+    }
+
+    private ICovarianceMatrix randomCov(int numVars) {
+        Dag dag = GraphUtils.randomDag(numVars, numVars, false);
+        SemIm semIm = new SemIm(new SemPm(dag));
+        DataSet data = semIm.simulateData(500, false);
+        return new CovarianceMatrix(data);
+    }
+
+    /**
+     * Random index arrays x, y, z1, ..., zk of distinct variables, with k up to 5.
+     */
+    private List<int[]> randomIndices(int numVars, int count) {
+        RandomUtil random = RandomUtil.getInstance();
+        List<int[]> indices = new ArrayList<int[]>();
+
+        for (int c = 0; c < count; c++) {
+            int[] perm = new int[numVars];
+            for (int i = 0; i < numVars; i++) perm[i] = i;
+
+            int size = 2 + random.nextInt(6);
+
+            for (int i = 0; i < size; i++) {
+                int j = i + random.nextInt(numVars - i);
+                int temp = perm[i];
+                perm[i] = perm[j];
+                perm[j] = temp;
+            }
+
+            int[] _indices = new int[size];
+            System.arraycopy(perm, 0, _indices, 0, size);
+            indices.add(_indices);
+        }
+
+        return indices;
+    }
+
+    /**
+     * This method uses reflection to collect up all of the test methods from this class and return them to the test
+     * runner.
+     */
+    public static Test suite() {
+        return new TestSuite(TestSubmatrixWorkspace.class);
+    }
+}
+
+
+
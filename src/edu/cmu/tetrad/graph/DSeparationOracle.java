@@ -0,0 +1,418 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.graph;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Answers d-separation queries for a fixed graph, for use where many queries are asked of the same graph, as by
+ * IndTestDSep. The graph is indexed once, when the oracle is constructed: the neighbors of each node are stored as
+ * bitsets, split by whether each edge has an arrowhead at either end, and the ancestors of each node are computed up
+ * front. A query is then a reachability search ("Bayes ball") over pairs of a node and whether the search arrived at
+ * it through an arrowhead, done a word of nodes at a time, with the ancestors of the conditioning set taken as the
+ * union of the precomputed ancestor sets. These unions are cached by conditioning set, since searches ask about the
+ * same conditioning set for many pairs of nodes.</p>
+ *
+ * <p>Colliders and ancestors are defined as in EdgeListGraph.isDConnectedTo, so for DAGs and other ancestral graphs the
+ * answers are the same as that method's. The oracle keeps no reference to the graph, so later changes to the graph are not seen. It may be
+ * queried from several threads at once.</p>
+ *
+ * @author Joseph Ramsey
+ * @see EdgeListGraph#isDConnectedTo
+ */
+public final class DSeparationOracle {
+
+    /**
+     * The largest number of conditioning sets whose ancestors are cached; beyond this the cache is cleared.
+     */
+    private static final int MAX_CACHED = 10000;
+
+    /**
+     * The nodes of the graph; bit i of a bitset stands for nodes.get(i).
+     */
+    private final List<Node> nodes;
+
+    /**
+     * Map from nodes to their indices.
+     */
+    private final Map<Node, Integer> indices;
+
+    /**
+     * The number of longs in a bitset over the nodes.
+     */
+    private final int words;
+
+    /**
+     * arrowsAt[b] is the set of neighbors a of b for which the edge between them has an arrowhead at b; tailsAt[b] is
+     * the set of the other neighbors of b.
+     */
+    private final long[][] arrowsAt;
+    private final long[][] tailsAt;
+
+    /**
+     * arrowsFrom[b] is the set of neighbors c of b for which the edge between them has an arrowhead at c.
+     */
+    private final long[][] arrowsFrom;
+
+    /**
+     * ancestors[i] is the set of ancestors of node i, including node i itself.
+     */
+    private final long[][] ancestors;
+
+    /**
+     * The ancestors of conditioning sets, keyed by the conditioning sets, both as bitsets.
+     */
+    private final Map<BitSetKey, long[]> zAncestors = new ConcurrentHashMap<BitSetKey, long[]>();
+
+    //==============================CONSTRUCTORS=========================//
+
+    /**
+     * Indexes the given graph for d-separation queries.
+     */
+    public DSeparationOracle(Graph graph) {
+        if (graph == null) {
+            throw new NullPointerException("Graph must not be null.");
+        }
+
+        this.nodes = Collections.unmodifiableList(new ArrayList<Node>(graph.getNodes()));
+        this.indices = new HashMap<Node, Integer>();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            indices.put(nodes.get(i), i);
+        }
+
+        int numNodes = nodes.size();
+        this.words = (numNodes + 63) >>> 6;
+        this.arrowsAt = new long[numNodes][words];
+        this.tailsAt = new long[numNodes][words];
+        this.arrowsFrom = new long[numNodes][words];
+        long[][] parents = new long[numNodes][words];
+
+        for (Edge edge : graph.getEdges()) {
+            int a = indices.get(edge.getNode1());
+            int b = indices.get(edge.getNode2());
+            Endpoint atA = edge.getEndpoint1();
+            Endpoint atB = edge.getEndpoint2();
+
+            if (atB == Endpoint.ARROW) {
+                set(arrowsAt[b], a);
+                set(arrowsFrom[a], b);
+            } else {
+                set(tailsAt[b], a);
+            }
+
+            if (atA == Endpoint.ARROW) {
+                set(arrowsAt[a], b);
+                set(arrowsFrom[b], a);
+            } else {
+                set(tailsAt[a], b);
+            }
+
+            if (atA == Endpoint.TAIL && atB == Endpoint.ARROW) {
+                set(parents[b], a);
+            } else if (atB == Endpoint.TAIL && atA == Endpoint.ARROW) {
+                set(parents[a], b);
+            }
+        }
+
+        this.ancestors = ancestors(parents);
+    }
+
+    //==============================PUBLIC METHODS=======================//
+
+    /**
+     * Returns the nodes of the graph, in the graph's order.
+     */
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns true iff x is d-connected to y given z.
+     */
+    public boolean isDConnectedTo(Node x, Node y, List<Node> z) {
+        return reach(index(x), index(y), z) == null;
+    }
+
+    /**
+     * Returns true iff x is d-separated from y given z.
+     */
+    public boolean isDSeparatedFrom(Node x, Node y, List<Node> z) {
+        return !isDConnectedTo(x, y, z);
+    }
+
+    /**
+     * Returns the nodes other than x that are d-connected to x given z, in the graph's order. Nodes in z are included
+     * if they are reachable from x, as they are for isDConnectedTo.
+     */
+    public List<Node> getDConnectedNodes(Node x, List<Node> z) {
+        int i = index(x);
+        long[] reached = reach(i, -1, z);
+        List<Node> connected = new ArrayList<Node>();
+
+        for (int j = 0; j < nodes.size(); j++) {
+            if (j != i && get(reached, j)) connected.add(nodes.get(j));
+        }
+
+        return connected;
+    }
+
+    //==============================PRIVATE METHODS======================//
+
+    /**
+     * Searches for the nodes d-connected to node x given z. If node y is found, returns null at once; otherwise returns
+     * the set of nodes found.
+     */
+    private long[] reach(int x, int y, List<Node> z) {
+        long[] inZ = new long[words];
+
+        for (Node node : z) {
+            set(inZ, index(node));
+        }
+
+        long[] zAncestors = zAncestors(inZ);
+
+        // The nodes reached through an arrowhead and through a tail or circle, and of those, the ones whose
+        // neighbors have yet to be looked at.
+        long[] reachedByArrow = new long[words];
+        long[] reachedByTail = new long[words];
+        long[] pendingByArrow = new long[words];
+        long[] pendingByTail = new long[words];
+
+        // The first step from x may go to any neighbor.
+        for (int w = 0; w < words; w++) {
+            long arrow = arrowsFrom[x][w];
+            long tail = (arrowsAt[x][w] | tailsAt[x][w]) & ~arrow;
+            reachedByArrow[w] = pendingByArrow[w] = arrow;
+            reachedByTail[w] = pendingByTail[w] = tail;
+        }
+
+        set(reachedByArrow, x);
+        set(reachedByTail, x);
+
+        if (y != -1 && (get(reachedByArrow, y) || get(reachedByTail, y))) return null;
+
+        long[] next = new long[words];
+        boolean pending = true;
+
+        while (pending) {
+            pending = false;
+
+            for (int w = 0; w < words; w++) {
+                while (pendingByArrow[w] != 0 || pendingByTail[w] != 0) {
+                    boolean byArrow = pendingByArrow[w] != 0;
+                    long bit = Long.lowestOneBit(byArrow ? pendingByArrow[w] : pendingByTail[w]);
+
+                    if (byArrow) {
+                        pendingByArrow[w] &= ~bit;
+                    } else {
+                        pendingByTail[w] &= ~bit;
+                    }
+
+                    int b = (w << 6) + Long.numberOfTrailingZeros(bit);
+                    boolean conditioned = (inZ[w] & bit) != 0;
+
+                    // Into b, c may follow as a collider if b is an ancestor of z and as a noncollider if b is
+                    // not in z. Otherwise b is a noncollider either way.
+                    if (byArrow) {
+                        boolean collider = (zAncestors[w] & bit) != 0;
+
+                        if (!collider && conditioned) continue;
+
+                        for (int v = 0; v < words; v++) {
+                            next[v] = (collider ? arrowsAt[b][v] : 0) | (conditioned ? 0 : tailsAt[b][v]);
+                        }
+                    } else {
+                        if (conditioned) continue;
+
+                        for (int v = 0; v < words; v++) {
+                            next[v] = arrowsAt[b][v] | tailsAt[b][v];
+                        }
+                    }
+
+                    for (int v = 0; v < words; v++) {
+                        long arrow = next[v] & arrowsFrom[b][v] & ~reachedByArrow[v];
+                        long tail = next[v] & ~arrowsFrom[b][v] & ~reachedByTail[v];
+
+                        if (arrow == 0 && tail == 0) continue;
+
+                        reachedByArrow[v] |= arrow;
+                        reachedByTail[v] |= tail;
+                        pendingByArrow[v] |= arrow;
+                        pendingByTail[v] |= tail;
+
+                        // Earlier words must be gone over again.
+                        if (v < w) pending = true;
+                    }
+
+                    if (y != -1 && (get(reachedByArrow, y) || get(reachedByTail, y))) return null;
+                }
+            }
+        }
+
+        for (int w = 0; w < words; w++) {
+            reachedByArrow[w] |= reachedByTail[w];
+        }
+
+        return reachedByArrow;
+    }
+
+    /**
+     * Returns the set of ancestors of the given conditioning set, caching it.
+     */
+    private long[] zAncestors(long[] inZ) {
+        BitSetKey key = new BitSetKey(inZ);
+        long[] zAncestors = this.zAncestors.get(key);
+
+        if (zAncestors == null) {
+            zAncestors = new long[words];
+
+            for (int w = 0; w < words; w++) {
+                for (long bits = inZ[w]; bits != 0; bits &= bits - 1) {
+                    long[] _ancestors = ancestors[(w << 6) + Long.numberOfTrailingZeros(bits)];
+
+                    for (int v = 0; v < words; v++) {
+                        zAncestors[v] |= _ancestors[v];
+                    }
+                }
+            }
+
+            if (this.zAncestors.size() >= MAX_CACHED) {
+                this.zAncestors.clear();
+            }
+
+            this.zAncestors.put(key, zAncestors);
+        }
+
+        return zAncestors;
+    }
+
+    /**
+     * Computes the ancestors of every node from the parents of every node. Parents are visited before children where
+     * the graph is acyclic; nodes on or below a directed cycle are done by search.
+     */
+    private long[][] ancestors(long[][] parents) {
+        int numNodes = nodes.size();
+        long[][] ancestors = new long[numNodes][];
+        int[] numParents = new int[numNodes];
+        int[] queue = new int[numNodes];
+        int tail = 0;
+
+        for (int i = 0; i < numNodes; i++) {
+            for (long word : parents[i]) {
+                numParents[i] += Long.bitCount(word);
+            }
+
+            if (numParents[i] == 0) queue[tail++] = i;
+        }
+
+        for (int head = 0; head < tail; head++) {
+            int i = queue[head];
+            long[] _ancestors = new long[words];
+            set(_ancestors, i);
+
+            for (int w = 0; w < words; w++) {
+                for (long bits = parents[i][w]; bits != 0; bits &= bits - 1) {
+                    long[] parentAncestors = ancestors[(w << 6) + Long.numberOfTrailingZeros(bits)];
+
+                    for (int v = 0; v < words; v++) {
+                        _ancestors[v] |= parentAncestors[v];
+                    }
+                }
+            }
+
+            ancestors[i] = _ancestors;
+
+            for (int j = 0; j < numNodes; j++) {
+                if (get(parents[j], i) && --numParents[j] == 0) {
+                    queue[tail++] = j;
+                }
+            }
+        }
+
+        for (int i = 0; i < numNodes; i++) {
+            if (ancestors[i] != null) continue;
+
+            long[] _ancestors = new long[words];
+            int[] stack = new int[numNodes];
+            int top = 0;
+            set(_ancestors, i);
+            stack[top++] = i;
+
+            while (top > 0) {
+                int j = stack[--top];
+
+                for (int w = 0; w < words; w++) {
+                    for (long bits = parents[j][w] & ~_ancestors[w]; bits != 0; bits &= bits - 1) {
+                        int k = (w << 6) + Long.numberOfTrailingZeros(bits);
+                        set(_ancestors, k);
+                        stack[top++] = k;
+                    }
+                }
+            }
+
+            ancestors[i] = _ancestors;
+        }
+
+        return ancestors;
+    }
+
+    private int index(Node node) {
+        Integer index = indices.get(node);
+
+        if (index == null) {
+            throw new IllegalArgumentException("Node not in graph: " + node);
+        }
+
+        return index;
+    }
+
+    private static void set(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    private static boolean get(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * A bitset usable as a hash key.
+     */
+    private static final class BitSetKey {
+        private final long[] bits;
+        private final int hashCode;
+
+        BitSetKey(long[] bits) {
+            this.bits = bits.clone();
+            this.hashCode = Arrays.hashCode(bits);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof BitSetKey && Arrays.equals(bits, ((BitSetKey) o).bits);
+        }
+    }
+}
@@ -423,7 +423,7 @@ public class EdgeListGraph implements Graph {
      * a
      */
     public boolean existsDirectedPathFromTo(Node node1, Node node2) {
-        return existsDirectedPathVisit(node1, node2, new LinkedList<Node>());
+        return existsPathVisit(node1, Collections.singleton(node2), false);
     }
 
     public boolean existsUndirectedPathFromTo(Node node1, Node node2) {
@@ -431,8 +431,7 @@ public class EdgeListGraph implements Graph {
     }
 
     public boolean existsSemiDirectedPathFromTo(Node node1, Set<Node> nodes) {
-        return existsSemiDirectedPathVisit(node1, nodes,
-                new LinkedList<Node>());
+        return existsPathVisit(node1, nodes, true);
     }
 
     /**
@@ -2328,62 +2327,38 @@ public class EdgeListGraph implements Graph {
         return false;
     }
 
-    private boolean existsDirectedPathVisit(Node node1, Node node2,
-                                            LinkedList<Node> path) {
-        path.addLast(node1);
-
-        for (Edge edge : getEdges(node1)) {
-            Node child = Edges.traverseDirected(node1, edge);
-
-            if (child == null) {
-                continue;
-            }
-
-            if (child == node2) {
-                return true;
-            }
-
-            if (path.contains(child)) {
-                continue;
-            }
-
-            if (existsDirectedPathVisit(child, node2, path)) {
-                return true;
-            }
-        }
-
-        path.removeLast();
-        return false;
-    }
-
     /**
-     * @return true iff there is a semi-directed path from node1 to node2
+     * Searches breadth first from node1 along edges that can be traversed by the given rule (directed or semi-directed)
+     * for a member of nodes2, visiting each node once.
+     *
+     * @return true iff there is a path of at least one edge from node1 to a member of nodes2.
      */
-    private boolean existsSemiDirectedPathVisit(Node node1, Set<Node> nodes2,
-                                                LinkedList<Node> path) {
-        path.addLast(node1);
+    private boolean existsPathVisit(Node node1, Set<Node> nodes2, boolean semiDirected) {
+        Queue<Node> Q = new ArrayDeque<Node>();
+        Set<Node> V = new HashSet<Node>();
+        Q.offer(node1);
+        V.add(node1);
 
-        for (Edge edge : getEdges(node1)) {
-            Node child = Edges.traverseSemiDirected(node1, edge);
+        while (!Q.isEmpty()) {
+            Node t = Q.poll();
 
-            if (child == null) {
-                continue;
-            }
+            for (Edge edge : getEdges(t)) {
+                Node child = semiDirected ? Edges.traverseSemiDirected(t, edge) : Edges.traverseDirected(t, edge);
 
-            if (nodes2.contains(child)) {
-                return true;
-            }
+                if (child == null) {
+                    continue;
+                }
 
-            if (path.contains(child)) {
-                continue;
-            }
+                if (nodes2.contains(child)) {
+                    return true;
+                }
 
-            if (existsSemiDirectedPathVisit(child, nodes2, path)) {
-                return true;
+                if (V.add(child)) {
+                    Q.offer(child);
+                }
             }
         }
 
-        path.removeLast();
         return false;
     }
 
@@ -0,0 +1,1885 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.graph;
+
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.*;
+
+/**
+ * <p>A graph for use inside searches, storing nodes as dense integer indices, adjacencies as bitsets and endpoints
+ * in a packed byte matrix, so that adjacency, endpoint, parent and collider queries take constant time and allocate
+ * nothing. Besides the Graph interface, these queries are offered directly in terms of node indices (see
+ * #getIndex(Node)). Directed and semi-directed path queries, which searches ask when checking for cycles, are looked
+ * up in reachability indices (see ReachabilityIndex) that are made on the first such query and kept up to date as
+ * edges change.</p>
+ *
+ * <p>The graph allows at most one edge between a pair of nodes and no edges from a node to itself, which is what
+ * search algorithms build. Within those limits it behaves as EdgeListGraph does, down to the order of nodes, edges
+ * and adjacencies, so a search may run on an IndexedGraph internally and return new EdgeListGraph(graph) with the
+ * same result it would have had. Edges are rebuilt from the matrix when asked for, so changing an edge object
+ * returned by the graph does not change the graph; use setEndpoint instead. Removing a node renumbers the nodes after
+ * it and takes time quadratic in the number of nodes.</p>
+ *
+ * @author Joseph Ramsey
+ * @see EdgeListGraph
+ */
+public final class IndexedGraph implements Graph {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The endpoints, indexed by their codes in the endpoint matrix. Code 0 means no edge.
+     */
+    private static final Endpoint[] ENDPOINTS = {null, Endpoint.TAIL, Endpoint.ARROW, Endpoint.CIRCLE,
+            Endpoint.STAR, Endpoint.NULL};
+
+    /**
+     * Mask for the endpoint code in an entry of the endpoint matrix.
+     */
+    private static final int MARK = 7;
+
+    /**
+     * Flag in endpoints[i][j] marking node i as the first node of the edge between i and j.
+     */
+    private static final int FIRST = 8;
+
+    /**
+     * The nodes in the graph, in the order in which they were added. A node's index is its position here.
+     *
+     * @serial
+     */
+    private List<Node> nodes;
+
+    /**
+     * Map from each node to its index.
+     *
+     * @serial
+     */
+    private Map<Node, Integer> indices;
+
+    /**
+     * A hash from node names to nodes.
+     *
+     * @serial
+     */
+    private Map<String, Node> namesHash;
+
+    /**
+     * endpoints[i][j] holds the code of the endpoint at node j of the edge between nodes i and j, or 0 if they are not
+     * adjacent, together with the FIRST flag if node i is the first node of the edge.
+     *
+     * @serial
+     */
+    private byte[][] endpoints;
+
+    /**
+     * Bit j of adjacencies[i] is set just in case nodes i and j are adjacent.
+     *
+     * @serial
+     */
+    private long[][] adjacencies;
+
+    /**
+     * The first degrees[i] entries of adjacents[i] are the indices of the nodes adjacent to node i, in the order in
+     * which the edges were added.
+     *
+     * @serial
+     */
+    private int[][] adjacents;
+
+    /**
+     * @serial
+     */
+    private int[] degrees;
+
+    /**
+     * The edges in the order in which they were added, each as the index of its first node in the high word and of
+     * its second node in the low word.
+     *
+     * @serial
+     */
+    private Set<Long> edgeOrder;
+
+    /**
+     * These are the graph constraints currently used.
+     *
+     * @serial
+     */
+    private List<GraphConstraint> graphConstraints;
+
+    /**
+     * True iff graph constraints will be checked for future graph modifications.
+     *
+     * @serial
+     */
+    private boolean graphConstraintsChecked = true;
+
+    /**
+     * Fires property change events, once a listener has been added.
+     */
+    private transient PropertyChangeSupport pcs;
+
+    /**
+     * @serial
+     */
+    private Set<Triple> ambiguousTriples = new HashSet<Triple>();
+
+    /**
+     * @serial
+     */
+    private Set<Triple> underLineTriples = new HashSet<Triple>();
+
+    /**
+     * @serial
+     */
+    private Set<Triple> dottedUnderLineTriples = new HashSet<Triple>();
+
+    /**
+     * True iff nodes or edges were removed since the last call to an accessor for ambiguous, underline, or dotted
+     * underline triples.
+     *
+     * @serial
+     */
+    private boolean stuffRemovedSinceLastTripleAccess = false;
+
+    /**
+     * The set of highlighted edges.
+     *
+     * @serial
+     */
+    private Set<Edge> highlightedEdges = new HashSet<Edge>();
+
+    /**
+     * Indices of the directed and semi-directed paths in the graph, made when first needed and then kept up to date
+     * as edges are added and removed.
+     */
+    private transient ReachabilityIndex directedPaths;
+    private transient ReachabilityIndex semiDirectedPaths;
+
+    //==============================CONSTUCTORS===========================//
+
+    /**
+     * Constructs a new (empty) IndexedGraph.
+     */
+    public IndexedGraph() {
+        this.nodes = new ArrayList<Node>();
+        this.indices = new HashMap<Node, Integer>();
+        this.namesHash = new HashMap<String, Node>();
+        this.endpoints = new byte[0][];
+        this.adjacencies = new long[0][];
+        this.adjacents = new int[0][];
+        this.degrees = new int[0];
+        this.edgeOrder = new LinkedHashSet<Long>();
+        this.graphConstraints = new LinkedList<GraphConstraint>();
+    }
+
+    /**
+     * Constructs a new graph, with no edges, over the given nodes.
+     */
+    public IndexedGraph(List<Node> nodes) {
+        this();
+
+        if (nodes == null) {
+            throw new NullPointerException();
+        }
+
+        ensureCapacity(nodes.size());
+
+        for (Node node : nodes) {
+            if (!addNode(node)) {
+                throw new IllegalArgumentException();
+            }
+        }
+    }
+
+    /**
+     * Constructs an IndexedGraph with the nodes, edges, triples and highlighted edges of the given graph. Graph
+     * constraints are forgotten.
+     *
+     * @throws IllegalArgumentException if the given graph has more than one edge between a pair of nodes or an edge
+     *                                  from a node to itself.
+     */
+    public IndexedGraph(Graph graph) throws IllegalArgumentException {
+        this();
+
+        if (graph == null) {
+            throw new NullPointerException("Graph must not be null.");
+        }
+
+        ensureCapacity(graph.getNumNodes());
+        transferNodesAndEdges(graph);
+        this.ambiguousTriples = graph.getAmbiguousTriples();
+        this.underLineTriples = graph.getUnderLines();
+        this.dottedUnderLineTriples = graph.getDottedUnderlines();
+
+        for (Edge edge : graph.getEdges()) {
+            if (graph.isHighlighted(edge)) {
+                setHighlighted(edge, true);
+            }
+        }
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     *
+     * @see edu.cmu.TestSerialization
+     * @see edu.cmu.tetradapp.util.TetradSerializableUtils
+     */
+    public static IndexedGraph serializableInstance() {
+        return new IndexedGraph();
+    }
+
+    //===========================INDEXED METHODS=========================//
+
+    /**
+     * Returns the index of the given node, or -1 if it is not in the graph. Indices run from 0 to getNumNodes() - 1
+     * in the order of getNodes().
+     */
+    public int getIndex(Node node) {
+        Integer index = indices.get(node);
+
+        if (index == null || nodes.get(index) != node) {
+
+            // The node may have been renamed, which changes the hash codes of some kinds of nodes.
+            if (!nodes.contains(node)) {
+                return -1;
+            }
+
+            reindex();
+            index = indices.get(node);
+        }
+
+        return index;
+    }
+
+    /**
+     * Returns the node with the given index.
+     */
+    public Node getNode(int index) {
+        return nodes.get(index);
+    }
+
+    /**
+     * Returns the number of nodes adjacent to node i.
+     */
+    public int getNumAdjacents(int i) {
+        return degrees[i];
+    }
+
+    /**
+     * Returns the index of the k'th node adjacent to node i, for k from 0 to getNumAdjacents(i) - 1, in the order of
+     * getAdjacentNodes.
+     */
+    public int getAdjacent(int i, int k) {
+        if (k >= degrees[i]) {
+            throw new IndexOutOfBoundsException("Node " + i + " has only " + degrees[i] + " adjacents: " + k);
+        }
+
+        return adjacents[i][k];
+    }
+
+    /**
+     * Returns true iff nodes i and j are adjacent.
+     */
+    public boolean isAdjacentTo(int i, int j) {
+        return (adjacencies[i][j >>> 6] & (1L << j)) != 0;
+    }
+
+    /**
+     * Returns the endpoint at node j of the edge between nodes i and j, or null if they are not adjacent.
+     */
+    public Endpoint getEndpoint(int i, int j) {
+        return ENDPOINTS[endpoints[i][j] & MARK];
+    }
+
+    /**
+     * Returns true iff i --> j.
+     */
+    public boolean isParentOf(int i, int j) {
+        return mark(i, j) == 2 && mark(j, i) == 1;
+    }
+
+    /**
+     * Returns true iff i *-> j <-* k.
+     */
+    public boolean isDefCollider(int i, int j, int k) {
+        return mark(i, j) == 2 && mark(k, j) == 2;
+    }
+
+    /**
+     * Returns the edge between nodes i and j, or null if they are not adjacent.
+     */
+    public Edge getEdge(int i, int j) {
+        int entry = endpoints[i][j];
+
+        if (entry == 0) {
+            return null;
+        } else if ((entry & FIRST) != 0) {
+            return new Edge(nodes.get(i), nodes.get(j), getEndpoint(j, i), getEndpoint(i, j));
+        } else {
+            return new Edge(nodes.get(j), nodes.get(i), getEndpoint(i, j), getEndpoint(j, i));
+        }
+    }
+
+    //===============================PUBLIC METHODS========================//
+
+    public boolean addGraphConstraint(GraphConstraint gc) {
+        if (!this.graphConstraints.contains(gc)) {
+            this.graphConstraints.add(gc);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    public boolean addBidirectedEdge(Node node1, Node node2) {
+        return addEdge(Edges.bidirectedEdge(node1, node2));
+    }
+
+    public boolean addDirectedEdge(Node node1, Node node2) {
+        return addEdge(Edges.directedEdge(node1, node2));
+    }
+
+    public boolean addUndirectedEdge(Node node1, Node node2) {
+        return addEdge(Edges.undirectedEdge(node1, node2));
+    }
+
+    public boolean addNondirectedEdge(Node node1, Node node2) {
+        return addEdge(Edges.nondirectedEdge(node1, node2));
+    }
+
+    public boolean addPartiallyOrientedEdge(Node node1, Node node2) {
+        return addEdge(Edges.partiallyOrientedEdge(node1, node2));
+    }
+
+    /**
+     * Adds an edge to the graph if the graph constraints permit it.
+     *
+     * @throws IllegalArgumentException if the nodes are already adjacent or the edge is from a node to itself.
+     */
+    public boolean addEdge(Edge edge) {
+        if (edge == null) throw new NullPointerException();
+
+        if (isGraphConstraintsChecked() && !checkAddEdge(edge)) {
+            throw new IllegalArgumentException("Violates graph constraints: " + edge);
+        }
+
+        int i = getIndex(edge.getNode1());
+        int j = getIndex(edge.getNode2());
+
+        if (i == -1 || j == -1) {
+            throw new NullPointerException("Can't add an edge unless both nodes are in the graph: " + edge);
+        }
+
+        if (i == j) {
+            throw new IllegalArgumentException("Edges from a node to itself are not allowed in this graph: " + edge);
+        }
+
+        if (endpoints[i][j] != 0) {
+            if (edge.equals(getEdge(i, j))) {
+                throw new IllegalArgumentException("That edge is already in the graph: " + edge);
+            } else {
+                throw new IllegalArgumentException("Only one edge is allowed between a pair of nodes in this " +
+                        "graph: " + edge);
+            }
+        }
+
+        connect(i, j, code(edge.getEndpoint1()), code(edge.getEndpoint2()));
+
+        if (pcs != null) {
+            pcs.firePropertyChange("edgeAdded", null, edge);
+        }
+
+        return true;
+    }
+
+    public void addPropertyChangeListener(PropertyChangeListener l) {
+        if (pcs == null) {
+            pcs = new PropertyChangeSupport(this);
+        }
+
+        pcs.addPropertyChangeListener(l);
+    }
+
+    /**
+     * Adds a node to the graph, provided no node by the same name is in it already.
+     *
+     * @return true if the node was added, false if not.
+     */
+    public boolean addNode(Node node) {
+        if (node == null) {
+            throw new NullPointerException();
+        }
+
+        if (getNode(node.getName()) != null || getIndex(node) != -1) {
+            return false;
+        }
+
+        if (isGraphConstraintsChecked() && !checkAddNode(node)) {
+            return false;
+        }
+
+        int index = nodes.size();
+        ensureCapacity(index + 1);
+        nodes.add(node);
+        indices.put(node, index);
+        namesHash.put(node.getName(), node);
+
+        if (pcs != null && node.getNodeType() != NodeType.ERROR) {
+            pcs.firePropertyChange("nodeAdded", null, node);
+        }
+
+        return true;
+    }
+
+    public void clear() {
+        for (Node node : getNodes()) {
+            removeNode(node);
+        }
+    }
+
+    public boolean containsEdge(Edge edge) {
+        int i = getIndex(edge.getNode1());
+        int j = getIndex(edge.getNode2());
+
+        return i != -1 && j != -1 && i != j && mark(j, i) == code(edge.getEndpoint1())
+                && mark(i, j) == code(edge.getEndpoint2());
+    }
+
+    public boolean containsNode(Node node) {
+        return getIndex(node) != -1;
+    }
+
+    public boolean existsDirectedCycle() {
+        int numNodes = nodes.size();
+        int[] indegrees = new int[numNodes];
+        int[] queue = new int[numNodes];
+        int tail = 0;
+
+        for (int i = 0; i < numNodes; i++) {
+            for (int k = 0; k < degrees[i]; k++) {
+                if (isParentOf(adjacents[i][k], i)) indegrees[i]++;
+            }
+
+            if (indegrees[i] == 0) queue[tail++] = i;
+        }
+
+        for (int head = 0; head < tail; head++) {
+            int i = queue[head];
+
+            for (int k = 0; k < degrees[i]; k++) {
+                int j = adjacents[i][k];
+
+                if (isParentOf(i, j) && --indegrees[j] == 0) {
+                    queue[tail++] = j;
+                }
+            }
+        }
+
+        return tail < numNodes;
+    }
+
+    /**
+     * Returns true iff there is a directed path from node1 to node2, looking it up in an index of directed paths that
+     * is kept up to date as edges change, once this or another directed path query has been asked.
+     */
+    public boolean existsDirectedPathFromTo(Node node1, Node node2) {
+        int i = checkedIndex(node1);
+        int j = getIndex(node2);
+        return j != -1 && reaches(i, j);
+    }
+
+    public boolean existsUndirectedPathFromTo(Node node1, Node node2) {
+        int i = checkedIndex(node1);
+        int j = getIndex(node2);
+
+        if (j == -1) return false;
+
+        boolean[] visited = new boolean[nodes.size()];
+        int[] queue = new int[nodes.size()];
+        int tail = 0;
+        queue[tail++] = i;
+        visited[i] = true;
+
+        for (int head = 0; head < tail; head++) {
+            int a = queue[head];
+
+            for (int k = 0; k < degrees[a]; k++) {
+                int b = adjacents[a][k];
+
+                if (b == j) return true;
+
+                if (!visited[b]) {
+                    visited[b] = true;
+                    queue[tail++] = b;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns true iff there is a semi-directed path from node1 to some member of the given set, looking it up in an
+     * index of semi-directed paths that is kept up to date as edges change.
+     */
+    public boolean existsSemiDirectedPathFromTo(Node node1, Set<Node> nodes) {
+        long[] targets = new long[(endpoints.length + 63) >>> 6];
+
+        for (Node node : nodes) {
+            int j = getIndex(node);
+            if (j != -1) targets[j >>> 6] |= 1L << j;
+        }
+
+        return reachesAny(checkedIndex(node1), targets);
+    }
+
+    public boolean existsInducingPath(Node node1, Node node2, Set<Node> observedNodes, Set<Node> conditioningNodes) {
+        Set<Node> sPlus = new HashSet<Node>(conditioningNodes);
+        sPlus.add(node1);
+        sPlus.add(node2);
+
+        boolean[] sClosure = ancestors(sPlus);
+        boolean[] onPath = new boolean[nodes.size()];
+
+        return existsInducingPathVisit(checkedIndex(node1), checkedIndex(node2), 0, onPath, observedNodes,
+                conditioningNodes, sClosure);
+    }
+
+    /**
+     * Determines whether a trek exists between two nodes in the graph--that is, whether some node is an ancestor of
+     * both.
+     */
+    public boolean existsTrek(Node node1, Node node2) {
+        boolean[] ancestors1 = ancestors(Collections.singletonList(node1));
+        boolean[] ancestors2 = ancestors(Collections.singletonList(node2));
+
+        for (int i = 0; i < ancestors1.length; i++) {
+            if (ancestors1[i] && ancestors2[i]) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns true iff the given object is a graph with the same node names and the same edges as this one.
+     */
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (!(o instanceof Graph)) return false;
+
+        Graph graph = (Graph) o;
+
+        if (!new HashSet<String>(graph.getNodeNames()).equals(new HashSet<String>(getNodeNames()))) {
+            return false;
+        }
+
+        return new HashSet<Edge>(graph.getEdges()).equals(new HashSet<Edge>(getEdges()));
+    }
+
+    public int hashCode() {
+        int hashCode = 0;
+        int sum = 0;
+
+        for (Node node : nodes) {
+            sum += node.hashCode();
+        }
+
+        hashCode += 23 * sum;
+        sum = 0;
+
+        for (Edge edge : getEdges()) {
+            sum += edge.hashCode();
+        }
+
+        hashCode += 41 * sum;
+
+        return hashCode;
+    }
+
+    /**
+     * Removes all edges and connects every pair of nodes with a #-# edge, where # is the given endpoint.
+     */
+    public void fullyConnect(Endpoint endpoint) {
+        removeAllEdges();
+        int code = code(endpoint);
+
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = i + 1; j < nodes.size(); j++) {
+                connect(i, j, code, code);
+            }
+        }
+    }
+
+    public void reorientAllWith(Endpoint endpoint) {
+        for (Edge edge : getEdges()) {
+            Node a = edge.getNode1();
+            Node b = edge.getNode2();
+            setEndpoint(a, b, endpoint);
+            setEndpoint(b, a, endpoint);
+        }
+    }
+
+    public List<Node> getAdjacentNodes(Node node) {
+        int i = checkedIndex(node);
+        List<Node> adj = new ArrayList<Node>(degrees[i]);
+
+        for (int k = 0; k < degrees[i]; k++) {
+            adj.add(nodes.get(adjacents[i][k]));
+        }
+
+        return adj;
+    }
+
+    public List<Node> getAncestors(List<Node> nodes) {
+        return nodesIn(ancestors(nodes));
+    }
+
+    public List<Node> getChildren(Node node) {
+        int i = checkedIndex(node);
+        List<Node> children = new ArrayList<Node>();
+
+        for (int k = 0; k < degrees[i]; k++) {
+            int j = adjacents[i][k];
+            if (isParentOf(i, j)) children.add(nodes.get(j));
+        }
+
+        return children;
+    }
+
+    public int getConnectivity() {
+        int connectivity = 0;
+
+        for (int i = 0; i < nodes.size(); i++) {
+            connectivity = Math.max(connectivity, degrees[i]);
+        }
+
+        return connectivity;
+    }
+
+    public List<Node> getDescendants(List<Node> nodes) {
+        boolean[] descendants = new boolean[this.nodes.size()];
+        int[] queue = new int[this.nodes.size()];
+        int tail = 0;
+
+        for (Node node : nodes) {
+            int i = checkedIndex(node);
+
+            if (!descendants[i]) {
+                descendants[i] = true;
+                queue[tail++] = i;
+            }
+        }
+
+        for (int head = 0; head < tail; head++) {
+            int i = queue[head];
+
+            for (int k = 0; k < degrees[i]; k++) {
+                int j = adjacents[i][k];
+
+                if (!descendants[j] && isParentOf(i, j)) {
+                    descendants[j] = true;
+                    queue[tail++] = j;
+                }
+            }
+        }
+
+        return nodesIn(descendants);
+    }
+
+    /**
+     * Returns the edge connecting node1 and node2, or null if they are not adjacent.
+     */
+    public Edge getEdge(Node node1, Node node2) {
+        int i = getIndex(node1);
+        int j = getIndex(node2);
+
+        if (i == -1 || j == -1) return null;
+
+        return getEdge(i, j);
+    }
+
+    public Edge getDirectedEdge(Node node1, Node node2) {
+        int i = getIndex(node1);
+        int j = getIndex(node2);
+
+        if (i == -1 || j == -1 || !isParentOf(i, j)) return null;
+
+        return getEdge(i, j);
+    }
+
+    public List<Edge> getEdges(Node node) {
+        int i = checkedIndex(node);
+        List<Edge> edges = new ArrayList<Edge>(degrees[i]);
+
+        for (int k = 0; k < degrees[i]; k++) {
+            edges.add(getEdge(i, adjacents[i][k]));
+        }
+
+        return edges;
+    }
+
+    public List<Edge> getEdges(Node node1, Node node2) {
+        Edge edge = getEdge(node1, node2);
+
+        if (edge == null) {
+            return new ArrayList<Edge>();
+        }
+
+        List<Edge> edges = new ArrayList<Edge>(1);
+        edges.add(edge);
+        return edges;
+    }
+
+    /**
+     * Returns the edges in the graph, in the order in which they were added. Setting an endpoint of an edge counts as
+     * removing it and adding it again, as in EdgeListGraph.
+     */
+    public List<Edge> getEdges() {
+        List<Edge> edges = new ArrayList<Edge>(edgeOrder.size());
+
+        for (long key : edgeOrder) {
+            edges.add(getEdge((int) (key >>> 32), (int) key));
+        }
+
+        return edges;
+    }
+
+    /**
+     * Returns the endpoint at node2 of the edge between node1 and node2, or null if there is no such edge.
+     */
+    public Endpoint getEndpoint(Node node1, Node node2) {
+        int i = getIndex(node1);
+        int j = getIndex(node2);
+
+        if (i == -1 || j == -1) return null;
+
+        return getEndpoint(i, j);
+    }
+
+    public Endpoint[][] getEndpointMatrix() {
+        int size = nodes.size();
+        Endpoint[][] endpoints = new Endpoint[size][size];
+
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                if (i != j) endpoints[i][j] = getEndpoint(i, j);
+            }
+        }
+
+        return endpoints;
+    }
+
+    public List<GraphConstraint> getGraphConstraints() {
+        return new LinkedList<GraphConstraint>(graphConstraints);
+    }
+
+    public int getIndegree(Node node) {
+        int i = checkedIndex(node);
+        int indegree = 0;
+
+        for (int k = 0; k < degrees[i]; k++) {
+            if (isParentOf(adjacents[i][k], i)) indegree++;
+        }
+
+        return indegree;
+    }
+
+    public Node getNode(String name) {
+        Node node = namesHash.get(name);
+
+        if (node == null || !name.equals(node.getName())) {
+            namesHash = new HashMap<String, Node>();
+
+            for (Node _node : nodes) {
+                namesHash.put(_node.getName(), _node);
+            }
+
+            node = namesHash.get(name);
+        }
+
+        return node;
+    }
+
+    public List<Node> getNodes() {
+        return new ArrayList<Node>(nodes);
+    }
+
+    public List<String> getNodeNames() {
+        List<String> names = new ArrayList<String>(nodes.size());
+
+        for (Node node : nodes) {
+            names.add(node.getName());
+        }
+
+        return names;
+    }
+
+    public int getNumEdges() {
+        return edgeOrder.size();
+    }
+
+    public int getNumEdges(Node node) {
+        int i = getIndex(node);
+        return i == -1 ? 0 : degrees[i];
+    }
+
+    public int getNumNodes() {
+        return nodes.size();
+    }
+
+    public int getOutdegree(Node node) {
+        int i = checkedIndex(node);
+        int outdegree = 0;
+
+        for (int k = 0; k < degrees[i]; k++) {
+            if (isParentOf(i, adjacents[i][k])) outdegree++;
+        }
+
+        return outdegree;
+    }
+
+    public List<Node> getParents(Node node) {
+        int i = checkedIndex(node);
+        List<Node> parents = new ArrayList<Node>();
+
+        for (int k = 0; k < degrees[i]; k++) {
+            int j = adjacents[i][k];
+            if (isParentOf(j, i)) parents.add(nodes.get(j));
+        }
+
+        return parents;
+    }
+
+    public boolean isAdjacentTo(Node node1, Node node2) {
+        int i = getIndex(node1);
+        int j = getIndex(node2);
+        return i != -1 && j != -1 && isAdjacentTo(i, j);
+    }
+
+    public boolean isAncestorOf(Node node1, Node node2) {
+        return node1 == node2 || isProperAncestorOf(node1, node2);
+    }
+
+    public boolean possibleAncestor(Node node1, Node node2) {
+        return existsSemiDirectedPathFromTo(node1, Collections.singleton(node2));
+    }
+
+    public boolean isChildOf(Node node1, Node node2) {
+        return isParentOf(node2, node1);
+    }
+
+    public boolean isParentOf(Node node1, Node node2) {
+        int i = getIndex(node1);
+        int j = getIndex(node2);
+        return i != -1 && j != -1 && isParentOf(i, j);
+    }
+
+    public boolean isProperAncestorOf(Node node1, Node node2) {
+        return existsDirectedPathFromTo(node1, node2);
+    }
+
+    public boolean isProperDescendentOf(Node node1, Node node2) {
+        return existsDirectedPathFromTo(node2, node1);
+    }
+
+    public boolean isDescendentOf(Node node1, Node node2) {
+        return node1 == node2 || isProperDescendentOf(node1, node2);
+    }
+
+    public boolean defNonDescendent(Node node1, Node node2) {
+        return !possibleAncestor(node1, node2);
+    }
+
+    /**
+     * Returns true iff one of the edges node1 *-* node2 *-* node3 points away from node2, as in EdgeListGraph.
+     */
+    public boolean isDefNoncollider(Node node1, Node node2, Node node3) {
+        int i = checkedIndex(node1);
+        int j = checkedIndex(node2);
+        int k = checkedIndex(node3);
+        return pointsTowards(j, i) || pointsTowards(j, k);
+    }
+
+    public boolean isDefCollider(Node node1, Node node2, Node node3) {
+        return isDefCollider(checkedIndex(node1), checkedIndex(node2), checkedIndex(node3));
+    }
+
+    /**
+     * Determines whether node1 is d-connected to node2 given z, by a search over pairs of a node and whether the
+     * walk arrived at it through an arrowhead. A collider passes just in case it is an ancestor of some member of z; a
+     * noncollider passes just in case it is not in z.
+     */
+    public boolean isDConnectedTo(Node node1, Node node2, List<Node> z) {
+        int x = checkedIndex(node1);
+        int y = checkedIndex(node2);
+        int numNodes = nodes.size();
+
+        boolean[] inZ = new boolean[numNodes];
+
+        for (Node node : z) {
+            inZ[checkedIndex(node)] = true;
+        }
+
+        boolean[] zAncestors = ancestors(z);
+
+        // Node b arrived at with an arrowhead at b is state 2b + 1; otherwise 2b.
+        boolean[] visited = new boolean[2 * numNodes];
+        int[] queue = new int[2 * numNodes];
+        int tail = 0;
+
+        for (int k = 0; k < degrees[x]; k++) {
+            int b = adjacents[x][k];
+            if (b == y) return true;
+
+            int state = 2 * b + (mark(x, b) == 2 ? 1 : 0);
+
+            if (!visited[state]) {
+                visited[state] = true;
+                queue[tail++] = state;
+            }
+        }
+
+        for (int head = 0; head < tail; head++) {
+            int b = queue[head] >> 1;
+            boolean arrowIn = (queue[head] & 1) == 1;
+
+            for (int k = 0; k < degrees[b]; k++) {
+                int c = adjacents[b][k];
+                boolean collider = arrowIn && mark(c, b) == 2;
+
+                if (collider ? !zAncestors[b] : inZ[b]) continue;
+                if (c == y) return true;
+
+                int state = 2 * c + (mark(b, c) == 2 ? 1 : 0);
+
+                if (!visited[state]) {
+                    visited[state] = true;
+                    queue[tail++] = state;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    public boolean isDSeparatedFrom(Node node1, Node node2, List<Node> z) {
+        return !isDConnectedTo(node1, node2, z);
+    }
+
+    public boolean possDConnectedTo(Node node1, Node node2, List<Node> z) {
+        int numNodes = nodes.size();
+        int n1 = checkedIndex(node1);
+        int n2 = checkedIndex(node2);
+        boolean[] visited = new boolean[numNodes * numNodes];
+        boolean[] inZ = new boolean[numNodes];
+        long[] zBits = new long[(endpoints.length + 63) >>> 6];
+
+        for (Node node : z) {
+            int i = checkedIndex(node);
+            inZ[i] = true;
+            zBits[i >>> 6] |= 1L << i;
+        }
+
+        List<int[]> edges = new ArrayList<int[]>();
+        visited[n1 * numNodes + n1] = true;
+        visited[n2 * numNodes + n2] = true;
+        edges.add(new int[]{n1, n1});
+        edges.add(new int[]{n2, n2});
+
+        while (!edges.isEmpty()) {
+            List<int[]> nextEdges = new ArrayList<int[]>();
+
+            for (int[] edge : edges) {
+                int a = edge[0];
+                int b = edge[1];
+
+                for (int k = 0; k < degrees[b]; k++) {
+                    int c = adjacents[b][k];
+
+                    if (visited[b * numNodes + c]) continue;
+
+                    boolean noncollider = a != b && (pointsTowards(b, a) || pointsTowards(b, c));
+                    boolean collider = a != b && isDefCollider(a, b, c);
+
+                    if (!((noncollider && !inZ[b]) || (collider && reachesAny(b, zBits)))) {
+                        continue;
+                    }
+
+                    if (c == n2) return true;
+
+                    nextEdges.add(new int[]{b, c});
+                    visited[b * numNodes + c] = true;
+                    visited[c * numNodes + b] = true;
+                }
+            }
+
+            edges = nextEdges;
+        }
+
+        return false;
+    }
+
+    public boolean isDirectedFromTo(Node node1, Node node2) {
+        int i = getIndex(node1);
+        int j = getIndex(node2);
+        return i != -1 && j != -1 && pointsTowards(i, j);
+    }
+
+    public boolean isUndirectedFromTo(Node node1, Node node2) {
+        int i = getIndex(node1);
+        int j = getIndex(node2);
+        return i != -1 && j != -1 && mark(i, j) == 1 && mark(j, i) == 1;
+    }
+
+    /**
+     * Returns true if the given directed edge is definitely visible (Jiji, pg 25)--that is, if some node into its tail
+     * is not adjacent to its head.
+     *
+     * @throws IllegalArgumentException if the given edge is not in the graph.
+     */
+    public boolean defVisible(Edge edge) {
+        if (!containsEdge(edge)) {
+            throw new IllegalArgumentException("Given edge is not in the graph.");
+        }
+
+        int a = getIndex(Edges.getDirectedEdgeTail(edge));
+        int b = getIndex(Edges.getDirectedEdgeHead(edge));
+
+        for (int k = 0; k < degrees[a]; k++) {
+            int c = adjacents[a][k];
+
+            if (c != b && !isAdjacentTo(c, b) && mark(c, a) == 2) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public boolean isExogenous(Node node) {
+        return getIndegree(node) == 0;
+    }
+
+    /**
+     * Nodes adjacent to the given node with the given proximal endpoint.
+     */
+    public List<Node> getNodesInTo(Node node, Endpoint n) {
+        int i = checkedIndex(node);
+        int code = code(n);
+        List<Node> nodes = new ArrayList<Node>();
+
+        for (int k = 0; k < degrees[i]; k++) {
+            int j = adjacents[i][k];
+            if (mark(j, i) == code) nodes.add(this.nodes.get(j));
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Nodes adjacent to the given node with the given distal endpoint.
+     */
+    public List<Node> getNodesOutTo(Node node, Endpoint n) {
+        int i = checkedIndex(node);
+        int code = code(n);
+        List<Node> nodes = new ArrayList<Node>();
+
+        for (int k = 0; k < degrees[i]; k++) {
+            int j = adjacents[i][k];
+            if (mark(i, j) == code) nodes.add(this.nodes.get(j));
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Removes the given edge, if it is in the graph with the same endpoints.
+     *
+     * @return true if the edge was removed, false if not.
+     */
+    public boolean removeEdge(Edge edge) {
+        if (!containsEdge(edge) || !checkRemoveEdge(edge)) {
+            return false;
+        }
+
+        disconnect(getIndex(edge.getNode1()), getIndex(edge.getNode2()));
+        highlightedEdges.remove(edge);
+
+        if (pcs != null) {
+            pcs.firePropertyChange("edgeRemoved", edge, null);
+        }
+
+        return true;
+    }
+
+    public boolean removeEdge(Node node1, Node node2) {
+        Edge edge = getEdge(node1, node2);
+        return edge != null && removeEdge(edge);
+    }
+
+    public boolean removeEdges(Node node1, Node node2) {
+        return removeEdge(node1, node2);
+    }
+
+    public boolean removeEdges(List<Edge> edges) {
+        boolean change = false;
+
+        for (Edge edge : edges) {
+            boolean _change = removeEdge(edge);
+            change = change || _change;
+        }
+
+        return change;
+    }
+
+    /**
+     * Removes a node and its edges from the graph, renumbering the nodes after it.
+     */
+    public boolean removeNode(Node node) {
+        int i = getIndex(node);
+
+        if (i == -1 || !checkRemoveNode(node)) {
+            return false;
+        }
+
+        for (Edge edge : getEdges(node)) {
+            disconnect(getIndex(edge.getNode1()), getIndex(edge.getNode2()));
+            highlightedEdges.remove(edge);
+
+            if (pcs != null) {
+                pcs.firePropertyChange("edgeRemoved", edge, null);
+            }
+        }
+
+        int numNodes = nodes.size();
+
+        // Shift the rows and columns after i down by one.
+        byte[] row = endpoints[i];
+        long[] bits = adjacencies[i];
+        int[] adj = adjacents[i];
+
+        for (int j = i; j < numNodes - 1; j++) {
+            endpoints[j] = endpoints[j + 1];
+            adjacencies[j] = adjacencies[j + 1];
+            adjacents[j] = adjacents[j + 1];
+            degrees[j] = degrees[j + 1];
+        }
+
+        endpoints[numNodes - 1] = row;
+        adjacencies[numNodes - 1] = bits;
+        adjacents[numNodes - 1] = adj;
+        degrees[numNodes - 1] = 0;
+
+        for (int j = 0; j < numNodes - 1; j++) {
+            System.arraycopy(endpoints[j], i + 1, endpoints[j], i, numNodes - 1 - i);
+            endpoints[j][numNodes - 1] = 0;
+            Arrays.fill(adjacencies[j], 0L);
+
+            for (int k = 0; k < degrees[j]; k++) {
+                if (adjacents[j][k] > i) adjacents[j][k]--;
+                int m = adjacents[j][k];
+                adjacencies[j][m >>> 6] |= 1L << m;
+            }
+        }
+
+        Set<Long> edgeOrder = new LinkedHashSet<Long>();
+
+        for (long key : this.edgeOrder) {
+            int first = (int) (key >>> 32);
+            int second = (int) key;
+            edgeOrder.add(key(first > i ? first - 1 : first, second > i ? second - 1 : second));
+        }
+
+        this.edgeOrder = edgeOrder;
+
+        nodes.remove(i);
+        namesHash.remove(node.getName());
+        reindex();
+        clearPaths();
+        stuffRemovedSinceLastTripleAccess = true;
+
+        if (pcs != null) {
+            pcs.firePropertyChange("nodeRemoved", node, null);
+        }
+
+        return true;
+    }
+
+    public boolean removeNodes(List<Node> nodes) {
+        boolean changed = false;
+
+        for (Node node : nodes) {
+            boolean _changed = removeNode(node);
+            changed = changed || _changed;
+        }
+
+        return changed;
+    }
+
+    /**
+     * If there is currently an edge from node1 to node2, sets the endpoint at node2 to the given endpoint; if there is
+     * no such edge, adds an edge --# where # is the given endpoint. Setting an endpoint to null removes the edge.
+     */
+    public boolean setEndpoint(Node from, Node to, Endpoint endPoint) throws IllegalArgumentException {
+        Edge currentEdge = getEdge(from, to);
+
+        if (endPoint == null) {
+            removeEdge(from, to);
+            return true;
+        } else if (currentEdge == null) {
+            addEdge(new Edge(from, to, Endpoint.TAIL, endPoint));
+            return true;
+        } else {
+            Edge newEdge = new Edge(from, to, currentEdge.getProximalEndpoint(from), endPoint);
+            removeEdge(currentEdge);
+
+            try {
+                addEdge(newEdge);
+                return true;
+            } catch (IllegalArgumentException e) {
+                addEdge(currentEdge);
+                return false;
+            }
+        }
+    }
+
+    public boolean isGraphConstraintsChecked() {
+        return this.graphConstraintsChecked;
+    }
+
+    public void setGraphConstraintsChecked(boolean checked) {
+        this.graphConstraintsChecked = checked;
+    }
+
+    public Graph subgraph(List<Node> nodes) {
+        IndexedGraph graph = new IndexedGraph(nodes);
+
+        for (Edge edge : getEdges()) {
+            if (graph.containsNode(edge.getNode1()) && graph.containsNode(edge.getNode2())) {
+                graph.addEdge(edge);
+            }
+        }
+
+        return graph;
+    }
+
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+
+        buf.append("\nGraph Nodes:\n");
+
+        for (int i = 0; i < nodes.size(); i++) {
+            buf.append(nodes.get(i)).append(" ");
+            if ((i + 1) % 30 == 0) buf.append("\n");
+        }
+
+        buf.append("\n\nGraph Edges: ");
+
+        List<Edge> edges = getEdges();
+        Edges.sortEdges(edges);
+
+        for (int i = 0; i < edges.size(); i++) {
+            buf.append("\n").append(i + 1).append(". ").append(edges.get(i));
+        }
+
+        buf.append("\n");
+        buf.append("\n");
+
+        if (!ambiguousTriples.isEmpty()) {
+            buf.append("Ambiguous triples (i.e. list of triples for which there is ambiguous data" +
+                    "\nabout whether they are colliders or not): \n");
+
+            for (Triple triple : ambiguousTriples) {
+                buf.append(triple).append("\n");
+            }
+        }
+
+        if (!underLineTriples.isEmpty()) {
+            buf.append("Underline triples: \n");
+
+            for (Triple triple : underLineTriples) {
+                buf.append(triple).append("\n");
+            }
+        }
+
+        if (!dottedUnderLineTriples.isEmpty()) {
+            buf.append("Dotted underline triples: \n");
+
+            for (Triple triple : dottedUnderLineTriples) {
+                buf.append(triple).append("\n");
+            }
+        }
+
+        return buf.toString();
+    }
+
+    public void transferNodesAndEdges(Graph graph) throws IllegalArgumentException {
+        if (graph == null) {
+            throw new NullPointerException("No graph was provided.");
+        }
+
+        for (Node node : graph.getNodes()) {
+            if (!addNode(node)) {
+                throw new IllegalArgumentException();
+            }
+        }
+
+        for (Edge edge : graph.getEdges()) {
+            if (!addEdge(edge)) {
+                throw new IllegalArgumentException();
+            }
+        }
+    }
+
+    public Set<Triple> getAmbiguousTriples() {
+        removeTriplesNotInGraph();
+        return new HashSet<Triple>(ambiguousTriples);
+    }
+
+    public Set<Triple> getUnderLines() {
+        removeTriplesNotInGraph();
+        return new HashSet<Triple>(underLineTriples);
+    }
+
+    public Set<Triple> getDottedUnderlines() {
+        removeTriplesNotInGraph();
+        return new HashSet<Triple>(dottedUnderLineTriples);
+    }
+
+    public boolean isAmbiguousTriple(Node x, Node y, Node z) {
+        Triple triple = new Triple(x, y, z);
+
+        if (!triple.alongPathIn(this)) {
+            throw new IllegalArgumentException("<" + x + ", " + y + ", " + z + "> is not along a path.");
+        }
+
+        removeTriplesNotInGraph();
+        return ambiguousTriples.contains(triple);
+    }
+
+    public boolean isUnderlineTriple(Node x, Node y, Node z) {
+        removeTriplesNotInGraph();
+        return underLineTriples.contains(new Triple(x, y, z));
+    }
+
+    public boolean isDottedUnderlineTriple(Node x, Node y, Node z) {
+        Triple triple = new Triple(x, y, z);
+
+        if (!triple.alongPathIn(this)) {
+            throw new IllegalArgumentException("<" + x + ", " + y + ", " + z + "> is not along a path.");
+        }
+
+        removeTriplesNotInGraph();
+        return dottedUnderLineTriples.contains(triple);
+    }
+
+    public void addAmbiguousTriple(Node x, Node y, Node z) {
+        ambiguousTriples.add(tripleAlongPath(x, y, z));
+    }
+
+    public void addUnderlineTriple(Node x, Node y, Node z) {
+        underLineTriples.add(tripleAlongPath(x, y, z));
+    }
+
+    public void addDottedUnderlineTriple(Node x, Node y, Node z) {
+        dottedUnderLineTriples.add(tripleAlongPath(x, y, z));
+    }
+
+    public void removeAmbiguousTriple(Node x, Node y, Node z) {
+        ambiguousTriples.remove(new Triple(x, y, z));
+    }
+
+    public void removeUnderlineTriple(Node x, Node y, Node z) {
+        underLineTriples.remove(new Triple(x, y, z));
+    }
+
+    public void removeDottedUnderlineTriple(Node x, Node y, Node z) {
+        dottedUnderLineTriples.remove(new Triple(x, y, z));
+    }
+
+    public void setAmbiguousTriples(Set<Triple> triples) {
+        ambiguousTriples.clear();
+
+        for (Triple triple : triples) {
+            addAmbiguousTriple(triple.getX(), triple.getY(), triple.getZ());
+        }
+    }
+
+    public void setUnderLineTriples(Set<Triple> triples) {
+        underLineTriples.clear();
+
+        for (Triple triple : triples) {
+            addUnderlineTriple(triple.getX(), triple.getY(), triple.getZ());
+        }
+    }
+
+    public void setDottedUnderLineTriples(Set<Triple> triples) {
+        dottedUnderLineTriples.clear();
+
+        for (Triple triple : triples) {
+            addDottedUnderlineTriple(triple.getX(), triple.getY(), triple.getZ());
+        }
+    }
+
+    /**
+     * Returns the nodes in an order in which every node comes after its parents.
+     *
+     * @throws IllegalStateException if there is a directed cycle.
+     */
+    public List<Node> getTierOrdering() {
+        int numNodes = nodes.size();
+        int[] indegrees = new int[numNodes];
+        int[] queue = new int[numNodes];
+        int tail = 0;
+
+        for (int i = 0; i < numNodes; i++) {
+            for (int k = 0; k < degrees[i]; k++) {
+                if (isParentOf(adjacents[i][k], i)) indegrees[i]++;
+            }
+
+            if (indegrees[i] == 0) queue[tail++] = i;
+        }
+
+        List<Node> found = new ArrayList<Node>(numNodes);
+
+        for (int head = 0; head < tail; head++) {
+            int i = queue[head];
+            found.add(nodes.get(i));
+
+            for (int k = 0; k < degrees[i]; k++) {
+                int j = adjacents[i][k];
+
+                if (isParentOf(i, j) && --indegrees[j] == 0) {
+                    queue[tail++] = j;
+                }
+            }
+        }
+
+        if (tail < numNodes) {
+            throw new IllegalStateException("The graph has a directed cycle, so it has no tier ordering.");
+        }
+
+        return found;
+    }
+
+    public void setHighlighted(Edge edge, boolean highlighted) {
+        if (highlighted) {
+            highlightedEdges.add(edge);
+        } else {
+            highlightedEdges.remove(edge);
+        }
+    }
+
+    public boolean isHighlighted(Edge edge) {
+        return highlightedEdges.contains(edge);
+    }
+
+    public boolean isParameterizable(Node node) {
+        return true;
+    }
+
+    public boolean isTimeLagModel() {
+        return false;
+    }
+
+    public TimeLagGraph getTimeLagGraph() {
+        return null;
+    }
+
+    //===============================PRIVATE METHODS======================//
+
+    private int mark(int i, int j) {
+        return endpoints[i][j] & MARK;
+    }
+
+    /**
+     * True iff the edge between i and j has an arrow at j and a tail or circle at i.
+     */
+    private boolean pointsTowards(int i, int j) {
+        int atI = mark(j, i);
+        return mark(i, j) == 2 && (atI == 1 || atI == 3);
+    }
+
+    private static int code(Endpoint endpoint) {
+        for (int code = 1; code < ENDPOINTS.length; code++) {
+            if (ENDPOINTS[code] == endpoint) return code;
+        }
+
+        throw new IllegalArgumentException("Unrecognized endpoint: " + endpoint);
+    }
+
+    private static long key(int first, int second) {
+        return ((long) first << 32) | second;
+    }
+
+    private int checkedIndex(Node node) {
+        int i = getIndex(node);
+
+        if (i == -1) {
+            throw new IllegalArgumentException("Node not in graph: " + node);
+        }
+
+        return i;
+    }
+
+    private void reindex() {
+        Map<Node, Integer> indices = new HashMap<Node, Integer>();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            indices.put(nodes.get(i), i);
+        }
+
+        this.indices = indices;
+    }
+
+    /**
+     * Grows the matrices, doubling them, so that they hold at least the given number of nodes.
+     */
+    private void ensureCapacity(int numNodes) {
+        int capacity = endpoints.length;
+
+        if (numNodes <= capacity) return;
+
+        capacity = Math.max(numNodes, Math.max(8, 2 * capacity));
+        int words = (capacity + 63) >>> 6;
+
+        byte[][] endpoints = new byte[capacity][];
+        long[][] adjacencies = new long[capacity][];
+        int[][] adjacents = new int[capacity][];
+        int[] degrees = new int[capacity];
+
+        for (int i = 0; i < capacity; i++) {
+            endpoints[i] = new byte[capacity];
+            adjacencies[i] = new long[words];
+
+            if (i < this.endpoints.length) {
+                System.arraycopy(this.endpoints[i], 0, endpoints[i], 0, this.endpoints[i].length);
+                System.arraycopy(this.adjacencies[i], 0, adjacencies[i], 0, this.adjacencies[i].length);
+                adjacents[i] = this.adjacents[i];
+                degrees[i] = this.degrees[i];
+            } else {
+                adjacents[i] = new int[4];
+            }
+        }
+
+        this.endpoints = endpoints;
+        this.adjacencies = adjacencies;
+        this.adjacents = adjacents;
+        this.degrees = degrees;
+        clearPaths();
+    }
+
+    /**
+     * Adds the edge i *-# j, with i as its first node, where * and # are the given endpoint codes.
+     */
+    private void connect(int i, int j, int atI, int atJ) {
+        endpoints[i][j] = (byte) (atJ | FIRST);
+        endpoints[j][i] = (byte) atI;
+        adjacencies[i][j >>> 6] |= 1L << j;
+        adjacencies[j][i >>> 6] |= 1L << i;
+        append(i, j);
+        append(j, i);
+        edgeOrder.add(key(i, j));
+
+        if (directedPaths != null) addArcs(directedPaths, false, i, j);
+        if (semiDirectedPaths != null) addArcs(semiDirectedPaths, true, i, j);
+    }
+
+    private void disconnect(int i, int j) {
+        long key = (endpoints[i][j] & FIRST) != 0 ? key(i, j) : key(j, i);
+
+        if (directedPaths != null) removeArcs(directedPaths, false, i, j);
+        if (semiDirectedPaths != null) removeArcs(semiDirectedPaths, true, i, j);
+
+        endpoints[i][j] = 0;
+        endpoints[j][i] = 0;
+        adjacencies[i][j >>> 6] &= ~(1L << j);
+        adjacencies[j][i >>> 6] &= ~(1L << i);
+        unappend(i, j);
+        unappend(j, i);
+        edgeOrder.remove(key);
+        stuffRemovedSinceLastTripleAccess = true;
+    }
+
+    private void append(int i, int j) {
+        if (degrees[i] == adjacents[i].length) {
+            adjacents[i] = Arrays.copyOf(adjacents[i], Math.max(4, 2 * degrees[i]));
+        }
+
+        adjacents[i][degrees[i]++] = j;
+    }
+
+    private void unappend(int i, int j) {
+        int[] adj = adjacents[i];
+
+        for (int k = 0; k < degrees[i]; k++) {
+            if (adj[k] == j) {
+                System.arraycopy(adj, k + 1, adj, k, degrees[i] - k - 1);
+                degrees[i]--;
+                return;
+            }
+        }
+    }
+
+    private void removeAllEdges() {
+        for (int i = 0; i < nodes.size(); i++) {
+            Arrays.fill(endpoints[i], (byte) 0);
+            Arrays.fill(adjacencies[i], 0L);
+            degrees[i] = 0;
+        }
+
+        edgeOrder.clear();
+        highlightedEdges.clear();
+        stuffRemovedSinceLastTripleAccess = true;
+        clearPaths();
+    }
+
+    /**
+     * True iff there is a directed path of at least one edge from node i to node j. The index of directed paths is
+     * made on the first call; queries are synchronized so that searches reading the graph from several threads
+     * don't make it twice.
+     */
+    private synchronized boolean reaches(int i, int j) {
+        if (directedPaths == null) {
+            directedPaths = new ReachabilityIndex(endpoints.length);
+            addArcs(directedPaths, false);
+        }
+
+        return directedPaths.reaches(i, j);
+    }
+
+    /**
+     * True iff there is a semi-directed path of at least one edge from node i to some node in the given bitset.
+     */
+    private synchronized boolean reachesAny(int i, long[] targets) {
+        if (semiDirectedPaths == null) {
+            semiDirectedPaths = new ReachabilityIndex(endpoints.length);
+            addArcs(semiDirectedPaths, true);
+        }
+
+        return semiDirectedPaths.reachesAny(i, targets);
+    }
+
+    private void addArcs(ReachabilityIndex index, boolean semiDirected) {
+        for (long key : edgeOrder) {
+            addArcs(index, semiDirected, (int) (key >>> 32), (int) key);
+        }
+    }
+
+    /**
+     * Adds to the given index the arcs for the edge between nodes i and j: i to j if the edge is i --> j or, for
+     * semi-directed paths, if it has a tail or circle at i; and likewise j to i.
+     */
+    private void addArcs(ReachabilityIndex index, boolean semiDirected, int i, int j) {
+        if (semiDirected ? semiDirected(i, j) : isParentOf(i, j)) index.addArc(i, j);
+        if (semiDirected ? semiDirected(j, i) : isParentOf(j, i)) index.addArc(j, i);
+    }
+
+    private void removeArcs(ReachabilityIndex index, boolean semiDirected, int i, int j) {
+        if (semiDirected ? semiDirected(i, j) : isParentOf(i, j)) index.removeArc(i, j);
+        if (semiDirected ? semiDirected(j, i) : isParentOf(j, i)) index.removeArc(j, i);
+    }
+
+    private boolean semiDirected(int i, int j) {
+        int atI = mark(j, i);
+        return atI == 1 || atI == 3;
+    }
+
+    /**
+     * Drops the path indices, to be made again when next needed.
+     */
+    private synchronized void clearPaths() {
+        directedPaths = null;
+        semiDirectedPaths = null;
+    }
+
+    /**
+     * The given nodes and their ancestors, as a mask over node indices.
+     */
+    private boolean[] ancestors(Collection<Node> nodes) {
+        boolean[] ancestors = new boolean[this.nodes.size()];
+        int[] queue = new int[this.nodes.size()];
+        int tail = 0;
+
+        for (Node node : nodes) {
+            int i = checkedIndex(node);
+
+            if (!ancestors[i]) {
+                ancestors[i] = true;
+                queue[tail++] = i;
+            }
+        }
+
+        for (int head = 0; head < tail; head++) {
+            int i = queue[head];
+
+            for (int k = 0; k < degrees[i]; k++) {
+                int j = adjacents[i][k];
+
+                if (!ancestors[j] && isParentOf(j, i)) {
+                    ancestors[j] = true;
+                    queue[tail++] = j;
+                }
+            }
+        }
+
+        return ancestors;
+    }
+
+    private List<Node> nodesIn(boolean[] mask) {
+        List<Node> nodes = new ArrayList<Node>();
+
+        for (int i = 0; i < mask.length; i++) {
+            if (mask[i]) nodes.add(this.nodes.get(i));
+        }
+
+        return nodes;
+    }
+
+    private boolean existsInducingPathVisit(int a, int b, int inEnd, boolean[] onPath, Set<Node> observedNodes,
+                                            Set<Node> conditioningNodes, boolean[] sClosure) {
+        if (a == b) return true;
+        if (onPath[a]) return false;
+
+        onPath[a] = true;
+        Node node = nodes.get(a);
+
+        for (int k = 0; k < degrees[a]; k++) {
+            int c = adjacents[a][k];
+            boolean isCollider = inEnd == 2 && mark(c, a) == 2;
+            boolean passAsCollider = isCollider && sClosure[a];
+            boolean passAsNonCollider = !isCollider && !observedNodes.contains(node)
+                    && !conditioningNodes.contains(node);
+
+            if ((passAsCollider || passAsNonCollider) && existsInducingPathVisit(c, b, mark(a, c), onPath,
+                    observedNodes, conditioningNodes, sClosure)) {
+                return true;
+            }
+        }
+
+        onPath[a] = false;
+        return false;
+    }
+
+    private Triple tripleAlongPath(Node x, Node y, Node z) {
+        Triple triple = new Triple(x, y, z);
+
+        if (!triple.alongPathIn(this)) {
+            throw new IllegalArgumentException("<" + x + ", " + y + ", " + z + "> must lie along a path in the graph.");
+        }
+
+        return triple;
+    }
+
+    private void removeTriplesNotInGraph() {
+        if (!stuffRemovedSinceLastTripleAccess) return;
+
+        removeTriplesNotInGraph(ambiguousTriples);
+        removeTriplesNotInGraph(underLineTriples);
+        removeTriplesNotInGraph(dottedUnderLineTriples);
+
+        stuffRemovedSinceLastTripleAccess = false;
+    }
+
+    private void removeTriplesNotInGraph(Set<Triple> triples) {
+        for (Iterator<Triple> it = triples.iterator(); it.hasNext(); ) {
+            Triple triple = it.next();
+
+            if (!isAdjacentTo(triple.getX(), triple.getY()) || !isAdjacentTo(triple.getY(), triple.getZ())) {
+                it.remove();
+            }
+        }
+    }
+
+    private boolean checkAddNode(Node node) {
+        for (GraphConstraint gc : graphConstraints) {
+            if (!gc.isNodeAddable(node, this)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean checkAddEdge(Edge edge) {
+        for (GraphConstraint gc : graphConstraints) {
+            if (!gc.isEdgeAddable(edge, this)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean checkRemoveNode(Node node) {
+        for (GraphConstraint gc : graphConstraints) {
+            if (!gc.isNodeRemovable(node, this)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean checkRemoveEdge(Edge edge) {
+        for (GraphConstraint gc : graphConstraints) {
+            if (!gc.isEdgeRemovable(edge, this)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Adds semantic checks to the default deserialization method. This method must have the standard signature for a
+     * readObject method, and the body of the method must begin with "s.defaultReadObject();". Other than that, any
+     * semantic checks can be specified and do not need to stay the same from version to version. A readObject method
+     * of this form may be added to any class, even if Tetrad sessions were previously saved out using a version of
+     * the class that didn't include it. (That's what the "s.defaultReadObject();" is for. See J. Bloch, Effective
+     * Java, for help.
+     *
+     * @throws java.io.IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream s) throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        if (nodes == null || indices == null || namesHash == null) {
+            throw new NullPointerException();
+        }
+
+        if (endpoints == null || adjacencies == null || adjacents == null || degrees == null) {
+            throw new NullPointerException();
+        }
+
+        if (edgeOrder == null || graphConstraints == null) {
+            throw new NullPointerException();
+        }
+
+        // The hash codes of the nodes may differ in this JVM.
+        reindex();
+    }
+}
@@ -0,0 +1,374 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.graph;
+
+import java.util.Arrays;
+
+/**
+ * <p>Keeps track of which nodes can reach which others along arcs, for graphs whose arcs are added and removed one at a
+ * time, as they are during searches. Nodes are numbered from 0 to numNodes - 1; what counts as an arc (a directed
+ * edge, say, or a step along a semi-directed path) is up to the graph that keeps the index. For each node the sets of
+ * nodes it reaches and nodes reaching it are kept as bitsets, so asking whether a path exists takes constant time.</p>
+ *
+ * <p>Adding an arc from a to b adds the nodes reaching b (and b) to the sets of everything reaching a (and a), and
+ * vice versa. Removing an arc recomputes just the sets of the ancestors of a and the descendants of b, parents (or
+ * children) first, which may be done in order of the sizes of their ancestor sets so long as there is no cycle. With a
+ * cycle, or before the first query, the index is marked stale and rebuilt when it is next asked about a path, so that
+ * a run of changes between queries costs one rebuild.</p>
+ *
+ * @author Joseph Ramsey
+ * @see IndexedGraph
+ */
+public final class ReachabilityIndex {
+
+    /**
+     * The number of nodes.
+     */
+    private final int numNodes;
+
+    /**
+     * The number of longs in a bitset over the nodes.
+     */
+    private final int words;
+
+    /**
+     * The arcs, out of each node and into each node.
+     */
+    private final long[][] successors;
+    private final long[][] predecessors;
+
+    /**
+     * descendants[i] is the set of nodes reachable from node i along one or more arcs; ancestors[i] is the set of nodes
+     * from which node i is so reachable. These are only kept up to date if the index is not stale.
+     */
+    private final long[][] descendants;
+    private final long[][] ancestors;
+
+    /**
+     * True iff the reachable sets have to be rebuilt before they are next used.
+     */
+    private boolean stale = true;
+
+    /**
+     * True iff the arcs contain a cycle, as of the last rebuild or arc added since.
+     */
+    private boolean cyclic = false;
+
+    //==============================CONSTRUCTORS=========================//
+
+    /**
+     * Constructs an index over the given number of nodes, with no arcs.
+     */
+    public ReachabilityIndex(int numNodes) {
+        if (numNodes < 0) {
+            throw new IllegalArgumentException("Number of nodes must be >= 0: " + numNodes);
+        }
+
+        this.numNodes = numNodes;
+        this.words = (numNodes + 63) >>> 6;
+        this.successors = new long[numNodes][words];
+        this.predecessors = new long[numNodes][words];
+        this.descendants = new long[numNodes][words];
+        this.ancestors = new long[numNodes][words];
+    }
+
+    //==============================PUBLIC METHODS=======================//
+
+    public int getNumNodes() {
+        return numNodes;
+    }
+
+    /**
+     * Adds an arc from node a to node b. Adding an arc that is already there does nothing.
+     */
+    public void addArc(int a, int b) {
+        if (get(successors[a], b)) return;
+
+        set(successors[a], b);
+        set(predecessors[b], a);
+
+        if (stale) return;
+
+        // Every node reaching a, and a, now reaches b and every node b reaches.
+        long[] from = ancestors[a].clone();
+        long[] to = descendants[b].clone();
+        set(from, a);
+        set(to, b);
+
+        if (get(from, b)) {
+            cyclic = true;
+        }
+
+        for (int w = 0; w < words; w++) {
+            for (long bits = from[w]; bits != 0; bits &= bits - 1) {
+                or(descendants[(w << 6) + Long.numberOfTrailingZeros(bits)], to);
+            }
+
+            for (long bits = to[w]; bits != 0; bits &= bits - 1) {
+                or(ancestors[(w << 6) + Long.numberOfTrailingZeros(bits)], from);
+            }
+        }
+    }
+
+    /**
+     * Removes the arc from node a to node b, if there is one.
+     */
+    public void removeArc(int a, int b) {
+        if (!get(successors[a], b)) return;
+
+        clear(successors[a], b);
+        clear(predecessors[b], a);
+
+        if (stale) return;
+
+        if (cyclic) {
+            stale = true;
+            return;
+        }
+
+        // Without cycles, a node comes after all of its ancestors in order of ancestor set size, so children are
+        // done before parents by going down that order and parents before children by going up it.
+        int[] from = byNumAncestors(ancestors[a], a);
+        int[] to = byNumAncestors(descendants[b], b);
+
+        for (int k = from.length - 1; k >= 0; k--) {
+            int i = from[k];
+            long[] _descendants = descendants[i];
+            Arrays.fill(_descendants, 0L);
+
+            for (int w = 0; w < words; w++) {
+                for (long bits = successors[i][w]; bits != 0; bits &= bits - 1) {
+                    int j = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    set(_descendants, j);
+                    or(_descendants, descendants[j]);
+                }
+            }
+        }
+
+        for (int i : to) {
+            long[] _ancestors = ancestors[i];
+            Arrays.fill(_ancestors, 0L);
+
+            for (int w = 0; w < words; w++) {
+                for (long bits = predecessors[i][w]; bits != 0; bits &= bits - 1) {
+                    int j = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    set(_ancestors, j);
+                    or(_ancestors, ancestors[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true iff there is an arc from node a to node b.
+     */
+    public boolean isArc(int a, int b) {
+        return get(successors[a], b);
+    }
+
+    /**
+     * Returns true iff node b can be reached from node a along one or more arcs. (So a reaches itself only if it is on
+     * a cycle.)
+     */
+    public boolean reaches(int a, int b) {
+        rebuildIfStale();
+        return get(descendants[a], b);
+    }
+
+    /**
+     * Returns true iff some node set in the given bitset can be reached from node a along one or more arcs.
+     */
+    public boolean reachesAny(int a, long[] nodes) {
+        rebuildIfStale();
+        long[] _descendants = descendants[a];
+
+        for (int w = 0; w < words; w++) {
+            if ((_descendants[w] & nodes[w]) != 0) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns true iff the arcs contain a cycle.
+     */
+    public boolean isCyclic() {
+        rebuildIfStale();
+        return cyclic;
+    }
+
+    //==============================PRIVATE METHODS======================//
+
+    private void rebuildIfStale() {
+        if (!stale) return;
+
+        int[] numPredecessors = new int[numNodes];
+        int[] order = new int[numNodes];
+        int tail = 0;
+
+        for (int i = 0; i < numNodes; i++) {
+            for (long word : predecessors[i]) {
+                numPredecessors[i] += Long.bitCount(word);
+            }
+
+            if (numPredecessors[i] == 0) order[tail++] = i;
+        }
+
+        for (int head = 0; head < tail; head++) {
+            int i = order[head];
+
+            for (int w = 0; w < words; w++) {
+                for (long bits = successors[i][w]; bits != 0; bits &= bits - 1) {
+                    int j = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    if (--numPredecessors[j] == 0) order[tail++] = j;
+                }
+            }
+        }
+
+        cyclic = tail < numNodes;
+
+        if (!cyclic) {
+
+            // Descendants from the bottom up, ancestors from the top down.
+            for (int k = numNodes - 1; k >= 0; k--) {
+                int i = order[k];
+                Arrays.fill(descendants[i], 0L);
+
+                for (int w = 0; w < words; w++) {
+                    for (long bits = successors[i][w]; bits != 0; bits &= bits - 1) {
+                        int j = (w << 6) + Long.numberOfTrailingZeros(bits);
+                        set(descendants[i], j);
+                        or(descendants[i], descendants[j]);
+                    }
+                }
+            }
+        } else {
+            for (int i = 0; i < numNodes; i++) {
+                search(i, successors, descendants[i]);
+            }
+        }
+
+        for (int i = 0; i < numNodes; i++) {
+            Arrays.fill(ancestors[i], 0L);
+        }
+
+        for (int i = 0; i < numNodes; i++) {
+            for (int w = 0; w < words; w++) {
+                for (long bits = descendants[i][w]; bits != 0; bits &= bits - 1) {
+                    set(ancestors[(w << 6) + Long.numberOfTrailingZeros(bits)], i);
+                }
+            }
+        }
+
+        stale = false;
+    }
+
+    /**
+     * Puts into reached the nodes reachable from node i along one or more of the given arcs.
+     */
+    private void search(int i, long[][] arcs, long[] reached) {
+        Arrays.fill(reached, 0L);
+        long[] pending = arcs[i].clone();
+        or(reached, pending);
+        boolean found = true;
+
+        while (found) {
+            found = false;
+
+            for (int w = 0; w < words; w++) {
+                while (pending[w] != 0) {
+                    long bit = Long.lowestOneBit(pending[w]);
+                    pending[w] &= ~bit;
+                    long[] next = arcs[(w << 6) + Long.numberOfTrailingZeros(bit)];
+
+                    for (int v = 0; v < words; v++) {
+                        long added = next[v] & ~reached[v];
+
+                        if (added != 0) {
+                            reached[v] |= added;
+                            pending[v] |= added;
+                            if (v < w) found = true;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the nodes in the given set, together with node i, sorted by the sizes of their ancestor sets.
+     */
+    private int[] byNumAncestors(long[] nodes, int i) {
+        long[] _nodes = nodes.clone();
+        set(_nodes, i);
+
+        int count = 0;
+
+        for (long word : _nodes) {
+            count += Long.bitCount(word);
+        }
+
+        // Sort on the size in the high word and the node in the low word.
+        long[] keys = new long[count];
+        int k = 0;
+
+        for (int w = 0; w < words; w++) {
+            for (long bits = _nodes[w]; bits != 0; bits &= bits - 1) {
+                int j = (w << 6) + Long.numberOfTrailingZeros(bits);
+                int size = 0;
+
+                for (long word : ancestors[j]) {
+                    size += Long.bitCount(word);
+                }
+
+                keys[k++] = ((long) size << 32) | j;
+            }
+        }
+
+        Arrays.sort(keys);
+        int[] sorted = new int[count];
+
+        for (k = 0; k < count; k++) {
+            sorted[k] = (int) keys[k];
+        }
+
+        return sorted;
+    }
+
+    private static void or(long[] bits, long[] other) {
+        for (int w = 0; w < bits.length; w++) {
+            bits[w] |= other[w];
+        }
+    }
+
+    private static void set(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    private static void clear(long[] bits, int i) {
+        bits[i >>> 6] &= ~(1L << i);
+    }
+
+    private static boolean get(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+}
@@ -0,0 +1,147 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.graph;
+
+import edu.cmu.tetrad.util.RandomUtil;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests DSeparationOracle against EdgeListGraph.isDConnectedTo.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestDSeparationOracle extends TestCase {
+
+    /**
+     * Standard constructor for JUnit test cases.
+     */
+    public TestDSeparationOracle(String name) {
+        super(name);
+    }
+
+    public void testDags() {
+        RandomUtil.getInstance().setSeed(1928374L);
+
+        checkQueries(new EdgeListGraph(GraphUtils.randomDag(10, 0, 15, 4, 4, 4, false)), 500);
+        checkQueries(new EdgeListGraph(GraphUtils.randomDag(30, 0, 40, 4, 4, 4, false)), 500);
+
+        // More than one word of nodes.
+        checkQueries(new EdgeListGraph(GraphUtils.randomDag(150, 0, 200, 5, 5, 5, false)), 300);
+    }
+
+    /**
+     * Directed cycles have to be gone around when computing ancestors.
+     */
+    public void testCycles() {
+        RandomUtil.getInstance().setSeed(2837465L);
+
+        Graph graph = new EdgeListGraph(GraphUtils.randomDag(80, 0, 100, 4, 4, 4, false));
+        List<Node> nodes = graph.getNodes();
+
+        for (int k = 0; k < 10; k++) {
+            Node x = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+            Node y = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+
+            if (x != y && !graph.isAdjacentTo(x, y)) {
+                graph.addDirectedEdge(x, y);
+            }
+        }
+
+        checkQueries(graph, 300);
+    }
+
+    public void testBatch() {
+        RandomUtil.getInstance().setSeed(3748392L);
+
+        Graph graph = new EdgeListGraph(GraphUtils.randomDag(100, 0, 150, 5, 5, 5, false));
+        DSeparationOracle oracle = new DSeparationOracle(graph);
+        List<Node> nodes = graph.getNodes();
+
+        for (int k = 0; k < 50; k++) {
+            Node x = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+            List<Node> z = randomSubset(nodes, x, x, 0.05);
+            List<Node> connected = oracle.getDConnectedNodes(x, z);
+
+            for (Node y : nodes) {
+                if (y == x) continue;
+                assertEquals(graph.isDConnectedTo(x, y, z), connected.contains(y));
+            }
+        }
+    }
+
+    public void testMissingNode() {
+        DSeparationOracle oracle = new DSeparationOracle(new EdgeListGraph(GraphUtils.randomDag(5, 0, 5, 3, 3, 3,
+                false)));
+
+        try {
+            oracle.isDConnectedTo(new GraphNode("A"), oracle.getNodes().get(0), new ArrayList<Node>());
+            fail("Nodes not in the graph should be rejected.");
+        } catch (IllegalArgumentException e) {
+            // Succeed.
+        }
+    }
+
+    private void checkQueries(Graph graph, int numQueries) {
+        DSeparationOracle oracle = new DSeparationOracle(graph);
+        List<Node> nodes = graph.getNodes();
+        assertEquals(nodes, oracle.getNodes());
+
+        for (int k = 0; k < numQueries; k++) {
+            Node x = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+            Node y = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+
+            if (x == y) continue;
+
+            List<Node> z = randomSubset(nodes, x, y, k % 2 == 0 ? 0.1 : 0.3);
+            assertEquals(graph.isDConnectedTo(x, y, z), oracle.isDConnectedTo(x, y, z));
+            assertEquals(graph.isDSeparatedFrom(x, y, z), oracle.isDSeparatedFrom(x, y, z));
+        }
+    }
+
+    private List<Node> randomSubset(List<Node> nodes, Node x, Node y, double p) {
+        List<Node> z = new ArrayList<Node>();
+
+        for (Node node : nodes) {
+            if (node != x && node != y && RandomUtil.getInstance().nextDouble() < p) {
+                z.add(node);
+            }
+        }
+
+        return z;
+    }
+
+    /**
+     * This method uses reflection to collect up all of the test methods from this class and return them to the test
+     * runner.
+     */
+    public static Test suite() {
+
+        // Edit the name of the class in the parens to match the name
+        // of this class.
+        return new TestSuite(TestDSeparationOracle.class);
+    }
+}
@@ -0,0 +1,253 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.graph;
+
+import edu.cmu.tetrad.search.MeekRules3;
+import edu.cmu.tetrad.search.SearchGraphUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests IndexedGraph against EdgeListGraph.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestIndexedGraph extends TestCase {
+
+    /**
+     * Standard constructor for JUnit test cases.
+     */
+    public TestIndexedGraph(String name) {
+        super(name);
+    }
+
+    public void testDag() {
+        RandomUtil.getInstance().setSeed(3829182L);
+
+        for (int trial = 0; trial < 5; trial++) {
+            Dag dag = GraphUtils.randomDag(15, 0, 25, 4, 4, 4, false);
+            Graph edgeList = new EdgeListGraph(dag);
+            IndexedGraph indexed = new IndexedGraph(dag);
+            assertSame(edgeList, indexed);
+
+            List<Node> nodes = dag.getNodes();
+
+            for (int i = 0; i < nodes.size(); i++) {
+                Node node = nodes.get(i);
+                assertEquals(i, indexed.getIndex(node));
+                assertEquals(node, indexed.getNode(i));
+                assertEquals(edgeList.getAncestors(Collections.singletonList(node)).size(),
+                        indexed.getAncestors(Collections.singletonList(node)).size());
+                assertEquals(edgeList.getDescendants(Collections.singletonList(node)).size(),
+                        indexed.getDescendants(Collections.singletonList(node)).size());
+            }
+
+            for (int k = 0; k < 200; k++) {
+                Node x = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+                Node y = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+                List<Node> z = new ArrayList<Node>();
+
+                for (Node node : nodes) {
+                    if (node != x && node != y && RandomUtil.getInstance().nextDouble() < 0.2) {
+                        z.add(node);
+                    }
+                }
+
+                if (x == y) continue;
+
+                assertEquals(edgeList.isDConnectedTo(x, y, z), indexed.isDConnectedTo(x, y, z));
+                assertEquals(edgeList.existsDirectedPathFromTo(x, y), indexed.existsDirectedPathFromTo(x, y));
+                assertEquals(edgeList.existsTrek(x, y), indexed.existsTrek(x, y));
+            }
+
+            assertFalse(indexed.existsDirectedCycle());
+            List<Node> order = indexed.getTierOrdering();
+
+            for (Edge edge : indexed.getEdges()) {
+                assertTrue(order.indexOf(Edges.getDirectedEdgeTail(edge))
+                        < order.indexOf(Edges.getDirectedEdgeHead(edge)));
+            }
+        }
+    }
+
+    public void testEdits() {
+        RandomUtil.getInstance().setSeed(28372837L);
+        Endpoint[] endpoints = {Endpoint.TAIL, Endpoint.ARROW, Endpoint.CIRCLE};
+
+        for (int trial = 0; trial < 5; trial++) {
+            Dag dag = GraphUtils.randomDag(12, 0, 20, 4, 4, 4, false);
+            Graph edgeList = new EdgeListGraph(dag);
+            IndexedGraph indexed = new IndexedGraph(dag);
+            List<Node> nodes = dag.getNodes();
+
+            edgeList.reorientAllWith(Endpoint.CIRCLE);
+            indexed.reorientAllWith(Endpoint.CIRCLE);
+            assertSame(edgeList, indexed);
+
+            for (int k = 0; k < 300; k++) {
+                Node x = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+                Node y = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+
+                if (x == y) continue;
+
+                int action = RandomUtil.getInstance().nextInt(4);
+
+                if (action == 0) {
+                    assertEquals(edgeList.removeEdge(x, y), indexed.removeEdge(x, y));
+                } else if (action == 1 && !edgeList.isAdjacentTo(x, y)) {
+                    edgeList.addNondirectedEdge(x, y);
+                    indexed.addNondirectedEdge(x, y);
+                } else {
+                    Endpoint endpoint = endpoints[RandomUtil.getInstance().nextInt(endpoints.length)];
+                    edgeList.setEndpoint(x, y, endpoint);
+                    indexed.setEndpoint(x, y, endpoint);
+                }
+
+                Node z = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+
+                if (z != x && z != y && edgeList.isAdjacentTo(x, y) && edgeList.isAdjacentTo(y, z)) {
+                    assertEquals(edgeList.isDefCollider(x, y, z), indexed.isDefCollider(x, y, z));
+                    assertEquals(edgeList.isDefNoncollider(x, y, z), indexed.isDefNoncollider(x, y, z));
+                }
+
+                assertEquals(edgeList.existsDirectedPathFromTo(x, z), indexed.existsDirectedPathFromTo(x, z));
+                assertEquals(edgeList.possibleAncestor(x, z), indexed.possibleAncestor(x, z));
+            }
+
+            assertSame(edgeList, indexed);
+
+            Node removed = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+            edgeList.removeNode(removed);
+            indexed.removeNode(removed);
+            assertSame(edgeList, indexed);
+            assertEquals(-1, indexed.getIndex(removed));
+
+            Node added = new GraphNode("Added");
+            edgeList.addNode(added);
+            indexed.addNode(added);
+            edgeList.addDirectedEdge(added, edgeList.getNodes().get(0));
+            indexed.addDirectedEdge(added, indexed.getNodes().get(0));
+            assertSame(edgeList, indexed);
+
+            assertEquals(edgeList, new EdgeListGraph(indexed));
+        }
+    }
+
+    /**
+     * Turning a DAG into a pattern, as Ges does after each step, should leave
+     * the same edges in the same order, with the same first nodes, in both
+     * graphs.
+     */
+    public void testPattern() {
+        RandomUtil.getInstance().setSeed(3947209L);
+
+        for (int trial = 0; trial < 10; trial++) {
+            Dag dag = GraphUtils.randomDag(15, 0, 25, 4, 4, 4, false);
+            Graph edgeList = new EdgeListGraph(dag);
+            IndexedGraph indexed = new IndexedGraph(dag);
+
+            SearchGraphUtils.basicPattern(edgeList);
+            SearchGraphUtils.basicPattern(indexed);
+            assertSame(edgeList, indexed);
+
+            new MeekRules3().orientImplied(edgeList);
+            new MeekRules3().orientImplied(indexed);
+            assertSame(edgeList, indexed);
+
+            assertEquals(edgeList.getEdges().toString(), new EdgeListGraph(indexed).getEdges().toString());
+        }
+    }
+
+    public void testOneEdgePerPair() {
+        Node x1 = new GraphNode("x1");
+        Node x2 = new GraphNode("x2");
+        IndexedGraph graph = new IndexedGraph(Arrays.asList(x1, x2));
+        graph.addDirectedEdge(x1, x2);
+
+        try {
+            graph.addDirectedEdge(x2, x1);
+            fail("Two edges between the same nodes should not be allowed.");
+        } catch (IllegalArgumentException e) {
+            // Succeed.
+        }
+
+        try {
+            graph.addDirectedEdge(x1, x1);
+            fail("An edge from a node to itself should not be allowed.");
+        } catch (IllegalArgumentException e) {
+            // Succeed.
+        }
+
+        assertEquals(1, graph.getNumEdges());
+        assertFalse(graph.addNode(new GraphNode("x1")));
+    }
+
+    /**
+     * Checks that the two graphs have the same nodes and the same edges, in the same orders.
+     */
+    private void assertSame(Graph edgeList, IndexedGraph indexed) {
+        assertEquals(edgeList.getNodes(), indexed.getNodes());
+        assertEquals(edgeList.getEdges(), indexed.getEdges());
+        assertEquals(edgeList.getEdges().toString(), indexed.getEdges().toString());
+        assertEquals(edgeList.getNumEdges(), indexed.getNumEdges());
+        assertEquals(edgeList, indexed);
+
+        for (Node node : edgeList.getNodes()) {
+            assertEquals(edgeList.getAdjacentNodes(node), indexed.getAdjacentNodes(node));
+            assertEquals(edgeList.getEdges(node), indexed.getEdges(node));
+            assertEquals(edgeList.getParents(node), indexed.getParents(node));
+            assertEquals(edgeList.getChildren(node), indexed.getChildren(node));
+
+            int i = indexed.getIndex(node);
+            assertEquals(edgeList.getAdjacentNodes(node).size(), indexed.getNumAdjacents(i));
+
+            for (Node other : edgeList.getNodes()) {
+                int j = indexed.getIndex(other);
+
+                if (other == node) continue;
+
+                assertEquals(edgeList.isAdjacentTo(node, other), indexed.isAdjacentTo(i, j));
+                assertEquals(edgeList.getEndpoint(node, other), indexed.getEndpoint(i, j));
+                assertEquals(edgeList.isParentOf(node, other), indexed.isParentOf(i, j));
+                assertEquals(edgeList.getEdge(node, other), indexed.getEdge(node, other));
+            }
+        }
+    }
+
+    /**
+     * This method uses reflection to collect up all of the test methods from this class and return them to the test
+     * runner.
+     */
+    public static Test suite() {
+
+        // Edit the name of the class in the parens to match the name
+        // of this class.
+        return new TestSuite(TestIndexedGraph.class);
+    }
+}
@@ -0,0 +1,144 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.graph;
+
+import edu.cmu.tetrad.util.RandomUtil;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests ReachabilityIndex against searching the arcs directly.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestReachabilityIndex extends TestCase {
+
+    /**
+     * Standard constructor for JUnit test cases.
+     */
+    public TestReachabilityIndex(String name) {
+        super(name);
+    }
+
+    /**
+     * Arcs only go from lower to higher nodes, so the arcs stay acyclic and removals are done in place.
+     */
+    public void testAcyclic() {
+        RandomUtil.getInstance().setSeed(4738291L);
+        checkEdits(20, 2000, true);
+        checkEdits(100, 2000, true);
+    }
+
+    public void testCyclic() {
+        RandomUtil.getInstance().setSeed(5839201L);
+        checkEdits(20, 2000, false);
+        checkEdits(100, 2000, false);
+    }
+
+    public void testCycle() {
+        ReachabilityIndex index = new ReachabilityIndex(3);
+        index.addArc(0, 1);
+        index.addArc(1, 2);
+        assertFalse(index.isCyclic());
+        assertFalse(index.reaches(0, 0));
+        assertTrue(index.reaches(0, 2));
+
+        index.addArc(2, 0);
+        assertTrue(index.isCyclic());
+        assertTrue(index.reaches(0, 0));
+        assertTrue(index.reaches(2, 1));
+
+        index.removeArc(1, 2);
+        assertFalse(index.isCyclic());
+        assertFalse(index.reaches(0, 2));
+        assertTrue(index.reaches(2, 1));
+    }
+
+    private void checkEdits(int numNodes, int numEdits, boolean acyclic) {
+        ReachabilityIndex index = new ReachabilityIndex(numNodes);
+        boolean[][] arcs = new boolean[numNodes][numNodes];
+
+        for (int k = 0; k < numEdits; k++) {
+            int a = RandomUtil.getInstance().nextInt(numNodes);
+            int b = RandomUtil.getInstance().nextInt(numNodes);
+
+            if (a == b || (acyclic && a > b)) continue;
+
+            // Keep the arcs fairly sparse.
+            if (arcs[a][b] || RandomUtil.getInstance().nextDouble() < 0.4) {
+                index.removeArc(a, b);
+                arcs[a][b] = false;
+            } else {
+                index.addArc(a, b);
+                arcs[a][b] = true;
+            }
+
+            assertEquals(arcs[a][b], index.isArc(a, b));
+
+            // Ask only now and then, so that some changes are made to a stale index.
+            if (k % 7 != 0) continue;
+
+            for (int i = 0; i < numNodes; i++) {
+                boolean[] reached = search(arcs, i);
+
+                for (int j = 0; j < numNodes; j++) {
+                    assertEquals(reached[j], index.reaches(i, j));
+                }
+            }
+
+            if (acyclic) assertFalse(index.isCyclic());
+        }
+    }
+
+    private boolean[] search(boolean[][] arcs, int i) {
+        int numNodes = arcs.length;
+        boolean[] reached = new boolean[numNodes];
+
+        // The start node may be reached again, around a cycle.
+        int[] queue = new int[numNodes + 1];
+        int tail = 0;
+        queue[tail++] = i;
+
+        for (int head = 0; head < tail; head++) {
+            for (int j = 0; j < numNodes; j++) {
+                if (arcs[queue[head]][j] && !reached[j]) {
+                    reached[j] = true;
+                    queue[tail++] = j;
+                }
+            }
+        }
+
+        return reached;
+    }
+
+    /**
+     * This method uses reflection to collect up all of the test methods from this class and return them to the test
+     * runner.
+     */
+    public static Test suite() {
+
+        // Edit the name of the class in the parens to match the name
+        // of this class.
+        return new TestSuite(TestReachabilityIndex.class);
+    }
+}
@@ -21,6 +21,7 @@
 
 package edu.cmu.tetrad.search;
 
+import edu.cmu.tetrad.data.ContingencyCounter;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DiscreteVariable;
 import edu.cmu.tetrad.util.ProbUtils;
@@ -32,6 +33,7 @@ import edu.cmu.tetrad.util.ProbUtils;
 public class BDeuScore implements LocalDiscreteScore {
     private final LocalScoreCache localScoreCache = new LocalScoreCache();
     private DataSet dataSet;
+    private final ContingencyCounter counter;
 
     private double samplePrior = 10;
     private double structurePrior = .001;
@@ -42,6 +44,7 @@ public class BDeuScore implements LocalDiscreteScore {
         }
 
         this.dataSet = dataSet;
+        this.counter = new ContingencyCounter(dataSet);
         this.samplePrior = samplePrior;
         this.structurePrior = structurePrior;
     }
@@ -56,56 +59,21 @@ public class BDeuScore implements LocalDiscreteScore {
         // Number of categories for i.
         int r = numCategories(i);
 
-        // Numbers of categories of parents.
-        int dims[] = new int[parents.length];
-
-        for (int p = 0; p < parents.length; p++) {
-            dims[p] = numCategories(parents[p]);
-        }
-
         // Number of parent states.
         int q = 1;
         for (int p = 0; p < parents.length; p++) {
-            q *= dims[p];
+            q *= numCategories(parents[p]);
         }
 
-        // Conditional cell coefs of data for i given parents(i).
-        int n_ijk[][] = new int[q][r];
-        int n_ij[] = new int[q];
-
-        int values[] = new int[parents.length];
-
-        for (int n = 0; n < sampleSize(); n++) {
-            for (int p = 0; p < parents.length; p++) {
-                int parentValue = dataSet().getInt(n, parents[p]);
-
-                if (parentValue == -99) {
-                    throw new IllegalStateException("Please remove or impute " +
-                            "missing values.");
-                }
-
-                values[p] = parentValue;
-            }
-
-            int childValue = dataSet().getInt(n, i);
-
-            if (childValue == -99) {
-                throw new IllegalStateException("Please remove or impute missing " +
-                        "values (record " + n + " column " + i + ")");
-
-            }
-
-            int rowIndex = getRowIndex(dims, values);
-
-            for (int m = 0; m < dataSet().getMultiplier(n); m++) {
-                n_ijk[rowIndex][childValue]++;
-            }
-        }
+        // Conditional cell coefs of data for i given parents(i), n_ijk[j * r + k], with
+        // the parents most significant.
+        long n_ijk[] = counter.count(familyColumns(i, parents));
+        long n_ij[] = new long[q];
 
         // Row sums.
         for (int j = 0; j < q; j++) {
             for (int k = 0; k < r; k++) {
-                n_ij[j] += n_ijk[j][k];
+                n_ij[j] += n_ijk[j * r + k];
             }
         }
 
@@ -115,7 +83,7 @@ public class BDeuScore implements LocalDiscreteScore {
         for (int j = 0; j < q; j++) {
             for (int k = 0; k < r; k++) {
                 score += ProbUtils.lngamma(
-                        getSamplePrior() / (r * q) + n_ijk[j][k]);
+                        getSamplePrior() / (r * q) + n_ijk[j * r + k]);
             }
 
             score -= ProbUtils.lngamma(getSamplePrior() / q + n_ij[j]);
@@ -134,17 +102,22 @@ public class BDeuScore implements LocalDiscreteScore {
         return dataSet;
     }
 
-    private int getRowIndex(int[] dim, int[] values) {
-        int rowIndex = 0;
-        for (int i = 0; i < dim.length; i++) {
-            rowIndex *= dim[i];
-            rowIndex += values[i];
+    /**
+     * Returns the columns parents..., i, checking that none of them has missing values.
+     */
+    private int[] familyColumns(int i, int[] parents) {
+        int[] columns = new int[parents.length + 1];
+        System.arraycopy(parents, 0, columns, 0, parents.length);
+        columns[parents.length] = i;
+
+        for (int column : columns) {
+            if (counter.hasMissingValues(column)) {
+                throw new IllegalStateException("Please remove or impute missing " +
+                        "values (column " + column + ")");
+            }
         }
-        return rowIndex;
-    }
 
-    private int sampleSize() {
-        return dataSet().getNumRows();
+        return columns;
     }
 
     private int numCategories(int i) {
@@ -22,6 +22,7 @@
 package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.CellTable;
+import edu.cmu.tetrad.data.ContingencyCounter;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DiscreteVariable;
 import edu.cmu.tetrad.util.CombinationIterator;
@@ -48,9 +49,20 @@ public class ChiSquareTest {
     private int[] dims;
 
     /**
-     * Stores the data in the form of a cell table.
+     * Counts the data, column by column, into the cell tables.
      */
-    private CellTable cellTable;
+    private final ContingencyCounter counter;
+
+    /**
+     * Stores the data in the form of a cell table, one per thread, so that tests may be run concurrently.
+     */
+    private final ThreadLocal<CellTable> cellTable = new ThreadLocal<CellTable>() {
+        protected CellTable initialValue() {
+            CellTable table = new CellTable(null);
+            table.setMissingValue(DiscreteVariable.MISSING_VALUE);
+            return table;
+        }
+    };
 
     /**
      * The significance level of the test.
@@ -80,9 +92,8 @@ public class ChiSquareTest {
         }
 
         this.dataSet = dataSet;
+        this.counter = new ContingencyCounter(dataSet);
         this.alpha = alpha;
-        this.cellTable = new CellTable(null);
-        this.getCellTable().setMissingValue(DiscreteVariable.MISSING_VALUE);
     }
 
     /**
@@ -94,7 +105,7 @@ public class ChiSquareTest {
 
         // Reset the cell table for the columns referred to in
         // 'testIndices.' Do cell coefs for those columns.
-        this.getCellTable().addToTable(getDataSet(), testIndices);
+        this.getCellTable().addToTable(getCounter(), testIndices);
 
         // Indicator arrays to tell the cell table which margins
         // to calculate. For x _||_ y | z1, z2, ..., we want to
@@ -204,7 +215,7 @@ public class ChiSquareTest {
 
         // Reset the cell table for the columns referred to in
         // 'testIndices.' Do cell coefs for those columns.
-        this.getCellTable().addToTable(getDataSet(), testIndices);
+        this.getCellTable().addToTable(getCounter(), testIndices);
 
         // Indicator arrays to tell the cell table which margins
         // to calculate. For x _||_ y | z1, z2, ..., we want to
@@ -264,7 +275,7 @@ public class ChiSquareTest {
 
         // Reset the cell table for the columns referred to in
         // 'testIndices.' Do cell coefs for those columns.
-        this.getCellTable().addToTable(getDataSet(), testIndices);
+        this.getCellTable().addToTable(getCounter(), testIndices);
 
         // Indicator arrays to tell the cell table which margins
         // to calculate. For x _||_ y | z1, z2, ..., we want to
@@ -374,7 +385,11 @@ public class ChiSquareTest {
     }
 
     public CellTable getCellTable() {
-        return cellTable;
+        return cellTable.get();
+    }
+
+    public ContingencyCounter getCounter() {
+        return counter;
     }
 
     //===============================CLASSES==============================//
@@ -0,0 +1,275 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.SubmatrixWorkspace;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import static java.lang.Math.sqrt;
+
+/**
+ * Calculates partial correlations r(x, y | z) and residual variances var(y | z) from a covariance matrix without
+ * inverting a submatrix for each z.
+ * <p/>
+ * Each thread keeps the Cholesky factor L of cov(z, z) for the last conditioning set it saw, on a primitive buffer. A
+ * new conditioning set reuses the rows of the factor for the longest prefix it shares with the last one; variables
+ * past that prefix are dropped and the new ones are appended one row at a time by forward substitution. Searches like
+ * PC walk conditioning sets in the order ChoiceGenerator produces them, which share long prefixes, and test many pairs
+ * against the same set, so most of the factor is usually reused; callers scoring sets of parents should sort them, so
+ * that sets differing by one variable share the prefix before it. The order of z is never changed, so the rows of L for
+ * a given z, and hence the results, are bit for bit the same whatever was factored before, on whichever thread.
+ * Given L, each quantity takes one or two triangular solves:
+ * <pre>
+ *     w_x = L^-1 cov(z, x),  w_y = L^-1 cov(z, y),
+ *     var(y | z) = var(y) - w_y.w_y,
+ *     r = (cov(x, y) - w_x.w_y) / sqrt(var(x | z) var(y | z)).
+ * </pre>
+ * Methods may be called concurrently.
+ *
+ * @author Joseph Ramsey
+ */
+public class CholeskyPartialCorrelation {
+
+    /**
+     * The number of variables.
+     */
+    private final int n;
+
+    /**
+     * The covariance matrix, row-major.
+     */
+    private final double[] cov;
+
+    /**
+     * The factor for each thread.
+     */
+    private final ThreadLocal<Factor> factor = new ThreadLocal<Factor>() {
+        protected Factor initialValue() {
+            return new Factor();
+        }
+    };
+
+    /**
+     * Constructs an engine for the given covariance (or correlation) matrix, which is copied.
+     */
+    public CholeskyPartialCorrelation(TetradMatrix cov) {
+        if (cov.rows() != cov.columns()) {
+            throw new IllegalArgumentException("Expecting a square matrix.");
+        }
+
+        this.n = cov.rows();
+        this.cov = new double[n * n];
+
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                this.cov[i * n + j] = cov.get(i, j);
+            }
+        }
+    }
+
+    /**
+     * Returns the partial correlation of x and y given z, variables given by index, or NaN if cov(z, z) is singular.
+     */
+    public double partialCorrelation(int x, int y, int[] z) {
+        if (z.length == 0) {
+            return cov[x * n + y] / sqrt(cov[x * n + x] * cov[y * n + y]);
+        }
+
+        Factor factor = this.factor.get();
+
+        if (!factor.condition(z)) {
+            return Double.NaN;
+        }
+
+        return factor.partialCorrelation(x, y);
+    }
+
+    /**
+     * Returns the variance of the residual of y regressed on z, variables given by index, or NaN if cov(z, z) is
+     * singular.
+     */
+    public double residualVariance(int y, int[] z) {
+        if (z.length == 0) {
+            return cov[y * n + y];
+        }
+
+        Factor factor = this.factor.get();
+
+        if (!factor.condition(z)) {
+            return Double.NaN;
+        }
+
+        return factor.residualVariance(y);
+    }
+
+    public int getNumVariables() {
+        return n;
+    }
+
+    /**
+     * A Cholesky factor of cov(z, z) for one thread.
+     */
+    private final class Factor {
+
+        /**
+         * The conditioning variables, in order; the first size are factored.
+         */
+        private int[] vars = new int[0];
+
+        /**
+         * Lower triangular L, row-major with row length capacity.
+         */
+        private double[] l = new double[0];
+
+        private int capacity;
+        private int size;
+
+        private double[] wx = new double[0];
+        private double[] wy = new double[0];
+
+        /**
+         * Makes this the factor of cov(z, z), returning false if it is singular, judged as in SubmatrixWorkspace.
+         */
+        boolean condition(int[] z) {
+            int common = 0;
+
+            while (common < size && common < z.length && vars[common] == z[common]) {
+                common++;
+            }
+
+            size = common;
+            ensureCapacity(z.length);
+
+            for (int k = common; k < z.length; k++) {
+                if (!append(z[k])) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        double residualVariance(int y) {
+            solve(y, wy);
+
+            double syy = cov[y * n + y];
+
+            for (int i = 0; i < size; i++) {
+                syy -= wy[i] * wy[i];
+            }
+
+            return syy;
+        }
+
+        double partialCorrelation(int x, int y) {
+            solve(x, wx);
+            solve(y, wy);
+
+            double sxx = cov[x * n + x];
+            double syy = cov[y * n + y];
+            double sxy = cov[x * n + y];
+
+            for (int i = 0; i < size; i++) {
+                sxx -= wx[i] * wx[i];
+                syy -= wy[i] * wy[i];
+                sxy -= wx[i] * wy[i];
+            }
+
+            return sxy / sqrt(sxx * syy);
+        }
+
+        /**
+         * Adds variable v as the last row of the factor.
+         */
+        private boolean append(int v) {
+            int k = size;
+            int row = k * capacity;
+            double sum = 0.0;
+
+            for (int i = 0; i < k; i++) {
+                double s = cov[vars[i] * n + v];
+
+                for (int j = 0; j < i; j++) {
+                    s -= l[i * capacity + j] * l[row + j];
+                }
+
+                double lki = s / l[i * capacity + i];
+                l[row + i] = lki;
+                sum += lki * lki;
+            }
+
+            double d = cov[v * n + v] - sum;
+
+            // Rounding leaves a small positive pivot when v is a linear combination of the rows before it.
+            if (!(d > SubmatrixWorkspace.PIVOT_TOLERANCE * cov[v * n + v])) {
+                return false;
+            }
+
+            l[row + k] = sqrt(d);
+            vars[k] = v;
+            size++;
+            return true;
+        }
+
+        /**
+         * Solves L w = cov(z, v) for w.
+         */
+        private void solve(int v, double[] w) {
+            for (int i = 0; i < size; i++) {
+                double s = cov[vars[i] * n + v];
+                int row = i * capacity;
+
+                for (int j = 0; j < i; j++) {
+                    s -= l[row + j] * w[j];
+                }
+
+                w[i] = s / l[row + i];
+            }
+        }
+
+        private void ensureCapacity(int required) {
+            if (required <= capacity) {
+                return;
+            }
+
+            int newCapacity = Math.max(required, 2 * capacity);
+            double[] newL = new double[newCapacity * newCapacity];
+
+            for (int i = 0; i < size; i++) {
+                System.arraycopy(l, i * capacity, newL, i * newCapacity, i + 1);
+            }
+
+            int[] newVars = new int[newCapacity];
+            System.arraycopy(vars, 0, newVars, 0, size);
+
+            l = newL;
+            vars = newVars;
+            capacity = newCapacity;
+            wx = new double[newCapacity];
+            wy = new double[newCapacity];
+        }
+    }
+}
+
+
+
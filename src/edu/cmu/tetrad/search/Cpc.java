@@ -112,6 +112,11 @@ public final class Cpc implements GraphSearch {
      */
     private boolean verbose = false;
 
+    /**
+     * True iff the adjacency search should be run in parallel, using FasForkJoin.
+     */
+    private boolean concurrentFas = false;
+
     //=============================CONSTRUCTORS==========================//
 
     /**
@@ -240,6 +245,10 @@ public final class Cpc implements GraphSearch {
 
 //        return search(new FasICov2(getIndependenceTest()), nodes);
 //        return search(new Fas3(getIndependenceTest()), nodes);
+        if (concurrentFas) {
+            return search(new FasForkJoin(new EdgeListGraph(nodes), getIndependenceTest()), nodes);
+        }
+
         return search(new Fas(getIndependenceTest()), nodes);
     }
 
@@ -542,4 +551,16 @@ public final class Cpc implements GraphSearch {
     public void setVerbose(boolean verbose) {
         this.verbose = verbose;
     }
+
+    /**
+     * True iff the adjacency search should be run in parallel, using FasForkJoin. The independence test will then be
+     * shared by several threads.
+     */
+    public boolean isConcurrentFas() {
+        return concurrentFas;
+    }
+
+    public void setConcurrentFas(boolean concurrentFas) {
+        this.concurrentFas = concurrentFas;
+    }
 }
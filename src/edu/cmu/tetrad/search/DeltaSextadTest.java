@@ -29,7 +29,7 @@ public class DeltaSextadTest implements IDeltaSextadTest {
     private ICovarianceMatrix cov;
     private int df;
     private double chisq;
-    private double[][][][] fourthMoment;
+    private FourthMomentCache fourthMoments;
     private int numVars;
     private double[] means;
     private List<Node> variables;
@@ -117,11 +117,6 @@ public class DeltaSextadTest implements IDeltaSextadTest {
         return new DeltaSextadTest(ColtDataSet.serializableInstance());
     }
 
-    private void initializeForthMomentMatrix(List<Node> variables) {
-        int n = variables.size();
-        fourthMoment = new double[n][n][n][n];
-    }
-
     /**
      * Takes a list of tetrads for the given data set and returns the chi square value for the test. We assume that the
      * tetrads are non-redundant; if not, a matrix exception will be thrown.
@@ -145,6 +140,10 @@ public class DeltaSextadTest implements IDeltaSextadTest {
             }
         }
 
+        if (dataSet != null && !(cov instanceof CorrelationMatrix)) {
+            prefetchFourthMoments(boldSigma);
+        }
+
         // Need a matrix of variances and covariances of sample covariances.
         Matrix sigma_ss = new Matrix(boldSigma.size(), boldSigma.size());
 
@@ -262,53 +261,45 @@ public class DeltaSextadTest implements IDeltaSextadTest {
         return getForthMoment(x, y, z, w);
     }
 
-    private void setForthMoment(int x, int y, int z, int w, double sxyzw) {
-        fourthMoment[x][y][z][w] = sxyzw;
-        fourthMoment[x][y][w][z] = sxyzw;
-        fourthMoment[x][w][z][y] = sxyzw;
-        fourthMoment[x][w][y][z] = sxyzw;
-        fourthMoment[x][z][y][w] = sxyzw;
-        fourthMoment[x][z][w][y] = sxyzw;
-
-        fourthMoment[y][x][z][w] = sxyzw;
-        fourthMoment[y][x][w][z] = sxyzw;
-        fourthMoment[y][z][x][w] = sxyzw;
-        fourthMoment[y][z][w][x] = sxyzw;
-        fourthMoment[y][w][x][z] = sxyzw;
-        fourthMoment[y][w][z][x] = sxyzw;
-
-        fourthMoment[z][x][y][w] = sxyzw;
-        fourthMoment[z][x][w][y] = sxyzw;
-        fourthMoment[z][y][x][w] = sxyzw;
-        fourthMoment[z][y][w][x] = sxyzw;
-        fourthMoment[z][w][x][y] = sxyzw;
-        fourthMoment[z][w][y][x] = sxyzw;
-
-        fourthMoment[w][x][y][z] = sxyzw;
-        fourthMoment[w][x][z][y] = sxyzw;
-        fourthMoment[w][y][x][z] = sxyzw;
-        fourthMoment[w][y][z][x] = sxyzw;
-        fourthMoment[w][z][x][y] = sxyzw;
-        fourthMoment[w][z][y][x] = sxyzw;
-    }
-
     private double getForthMoment(int x, int y, int z, int w) {
         if (cacheFourthMoments) {
-            if (fourthMoment == null) {
-                initializeForthMomentMatrix(dataSet.getVariables());
-            }
+            return fourthMoments().get(x, y, z, w);
+        } else {
+            return sxyzw(x, y, z, w);
+        }
+    }
+
+    /**
+     * Calculates the fourth moments needed for the variances and covariances of the given sample covariances all at
+     * once, so that they may be calculated in parallel.
+     */
+    private void prefetchFourthMoments(List<Sigma> boldSigma) {
+        if (!cacheFourthMoments) {
+            return;
+        }
 
-            double sxyzw = fourthMoment[x][y][z][w];
+        int[][] quadruples = new int[boldSigma.size() * (boldSigma.size() + 1) / 2][];
+        int k = 0;
+
+        for (int i = 0; i < boldSigma.size(); i++) {
+            for (int j = i; j < boldSigma.size(); j++) {
+                Sigma sigmaef = boldSigma.get(i);
+                Sigma sigmagh = boldSigma.get(j);
 
-            if (sxyzw == 0.0) {
-                sxyzw = sxyzw(x, y, z, w);
-                setForthMoment(x, y, z, w, sxyzw);
+                quadruples[k++] = new int[]{variablesHash.get(sigmaef.getA()), variablesHash.get(sigmaef.getB()),
+                        variablesHash.get(sigmagh.getA()), variablesHash.get(sigmagh.getB())};
             }
+        }
 
-            return sxyzw;
-        } else {
-            return sxyzw(x, y, z, w);
+        fourthMoments().prefetch(quadruples);
+    }
+
+    private FourthMomentCache fourthMoments() {
+        if (fourthMoments == null) {
+            fourthMoments = new FourthMomentCache(data);
         }
+
+        return fourthMoments;
     }
 
     /**
@@ -0,0 +1,578 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.IKnowledge;
+import edu.cmu.tetrad.data.Knowledge;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.util.ChoiceGenerator;
+import edu.cmu.tetrad.util.ParallelUtils;
+import edu.cmu.tetrad.util.TetradLogger;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Implements the "fast adjacency search" used in several causal algorithms in this package, in parallel. In the fast
+ * adjacency search, at a given stage of the search, an edge X*-*Y is removed from the graph if X _||_ Y | S, where S is
+ * a subset of size d either of adj(X) or of adj(Y), where d is the depth of the search. A mapping from {x, y} to
+ * S({x, y}) is returned for edges x *-* y that have been removed.
+ * <p/>
+ * This is the "stable" version of the search (as in FasStable)--at each depth the conditioning sets are drawn from the
+ * adjacencies as they stood at the beginning of that depth. That makes each edge independent of every other at a given
+ * depth, so the edges of a depth are split across the threads of a fork/join pool, and the removals are applied once
+ * all of them have been decided. The pool is the shared one from ParallelUtils for the search's parallelism, used for
+ * all depths. The result, including the sepsets, is the same as for FasStable regardless of the number of threads.
+ * <p/>
+ * The independence test is shared by all threads through IndependenceTest.checkIndependence, so it should be one
+ * whose checkIndependence method is re-entrant (e.g. IndTestFisherZ, IndTestChiSquare, IndTestGSquare).
+ *
+ * @author Joseph Ramsey.
+ * @see FasStable
+ */
+public class FasForkJoin implements IFas {
+
+    /**
+     * The search graph. It is assumed going in that all of the true adjacencies of x are in this graph for every node
+     * x. It is hoped (i.e. true in the large sample limit) that true adjacencies are never removed.
+     */
+    private Graph graph;
+
+    /**
+     * The independence test. This should be appropriate to the types
+     */
+    private IndependenceTest test;
+
+    /**
+     * Specification of which edges are forbidden or required.
+     */
+    private IKnowledge knowledge = new Knowledge();
+
+    /**
+     * The maximum number of variables conditioned on in any conditional independence test. If the depth is -1, it will
+     * be taken to be the maximum value, which is 1000. Otherwise, it should be set to a non-negative integer.
+     */
+    private int depth = 1000;
+
+    /**
+     * The number of threads to use; by default, the number of available processors.
+     */
+    private int parallelism = ParallelUtils.getDefaultParallelism();
+
+    /**
+     * The number of independence tests.
+     */
+    private AtomicInteger numIndependenceTests = new AtomicInteger();
+
+    /**
+     * The logger, by default the empty logger.
+     */
+    private TetradLogger logger = TetradLogger.getInstance();
+
+    /**
+     * The true graph, for purposes of comparison. Temporary.
+     */
+    private Graph trueGraph;
+
+    /**
+     * The sepsets found during the search.
+     */
+    private SepsetMap sepset = new SepsetMap();
+
+    /**
+     * The depth 0 graph, specified initially.
+     */
+    private Graph initialGraph;
+
+    /**
+     * Elapsed time of the most recent search, in milliseconds.
+     */
+    private long elapsedTime;
+
+    /**
+     * True iff verbose output should be printed.
+     */
+    private boolean verbose = false;
+
+    //==========================CONSTRUCTORS=============================//
+
+    /**
+     * Constructs a new FastAdjacencySearch.
+     */
+    public FasForkJoin(Graph graph, IndependenceTest test) {
+        this.graph = graph;
+        this.test = test;
+    }
+
+    public FasForkJoin(IndependenceTest test) {
+        this.graph = new EdgeListGraph(test.getVariables());
+        this.test = test;
+    }
+
+    //==========================PUBLIC METHODS===========================//
+
+    /**
+     * Discovers all adjacencies in data.  The procedure is to remove edges in the graph which connect pairs of
+     * variables which are independent conditional on some other set of variables in the graph (the "sepset"). These are
+     * removed in tiers.  First, edges which are independent conditional on zero other variables are removed, then edges
+     * which are independent conditional on one other variable are removed, then two, then three, and so on, until no
+     * more edges can be removed from the graph.  The edges which remain in the graph after this procedure are the
+     * adjacencies in the data.
+     *
+     * @return the graph of adjacencies remaining.
+     */
+    public Graph search() {
+        this.logger.log("info", "Starting Fast Adjacency Search (fork/join).");
+        long startTime = System.currentTimeMillis();
+
+        graph.removeEdges(graph.getEdges());
+        sepset = new SepsetMap();
+        numIndependenceTests.set(0);
+
+        int _depth = depth;
+
+        if (_depth == -1) {
+            _depth = 1000;
+        }
+
+        Map<Node, Set<Node>> adjacencies = new HashMap<Node, Set<Node>>();
+        List<Node> nodes = graph.getNodes();
+
+        for (Node node : nodes) {
+            adjacencies.put(node, new TreeSet<Node>());
+        }
+
+        ForkJoinPool pool = ParallelUtils.getPool(parallelism);
+
+        for (int d = 0; d <= _depth; d++) {
+            boolean more;
+
+            if (d == 0) {
+                more = searchAtDepth0(nodes, adjacencies, pool);
+            } else {
+                more = searchAtDepth(nodes, adjacencies, d, pool);
+            }
+
+            if (!more) {
+                break;
+            }
+        }
+
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = i + 1; j < nodes.size(); j++) {
+                Node x = nodes.get(i);
+                Node y = nodes.get(j);
+
+                if (adjacencies.get(x).contains(y)) {
+                    graph.addUndirectedEdge(x, y);
+                }
+            }
+        }
+
+        this.elapsedTime = System.currentTimeMillis() - startTime;
+        this.logger.log("info", "Finishing Fast Adjacency Search.");
+
+        return graph;
+    }
+
+    /**
+     * Runs the search over the given nodes, which must all be variables of the independence test.
+     */
+    public Graph search(List<Node> nodes) {
+        this.graph = new EdgeListGraph(nodes);
+        return search();
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public void setDepth(int depth) {
+        if (depth < -1) {
+            throw new IllegalArgumentException(
+                    "Depth must be -1 (unlimited) or >= 0.");
+        }
+
+        this.depth = depth;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used by the search. The result does not depend on this.
+     */
+    public void setParallelism(int parallelism) {
+        ParallelUtils.checkParallelism(parallelism);
+        this.parallelism = parallelism;
+    }
+
+    public IKnowledge getKnowledge() {
+        return knowledge;
+    }
+
+    public void setKnowledge(IKnowledge knowledge) {
+        if (knowledge == null) {
+            throw new NullPointerException("Cannot set knowledge to null");
+        }
+        this.knowledge = knowledge;
+    }
+
+    public int getNumIndependenceTests() {
+        return numIndependenceTests.get();
+    }
+
+    public void setTrueGraph(Graph trueGraph) {
+        this.trueGraph = trueGraph;
+    }
+
+    public int getNumFalseDependenceJudgments() {
+        return 0;
+    }
+
+    public int getNumDependenceJudgments() {
+        return 0;
+    }
+
+    public SepsetMap getSepsets() {
+        return sepset;
+    }
+
+    public void setInitialGraph(Graph initialGraph) {
+        this.initialGraph = initialGraph;
+    }
+
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    public boolean isAggressivelyPreventCycles() {
+        return false;
+    }
+
+    public void setAggressivelyPreventCycles(boolean aggressivelyPreventCycles) {
+    }
+
+    public IndependenceTest getIndependenceTest() {
+        return test;
+    }
+
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    public List<Node> getNodes() {
+        return test.getVariables();
+    }
+
+    public List<Triple> getAmbiguousTriples(Node node) {
+        return null;
+    }
+
+    //==============================PRIVATE METHODS======================/
+
+    private boolean searchAtDepth0(List<Node> nodes, Map<Node, Set<Node>> adjacencies, ForkJoinPool pool) {
+        if (verbose) {
+            System.out.println("Searching at depth 0.");
+        }
+
+        boolean[] missing = new boolean[nodes.size()];
+
+        for (int i = 0; i < nodes.size(); i++) {
+            missing[i] = missingCol(test.getData(), nodes.get(i));
+        }
+
+        List<Node> xs = new ArrayList<Node>();
+        List<Node> ys = new ArrayList<Node>();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            if (missing[i]) continue;
+
+            for (int j = i + 1; j < nodes.size(); j++) {
+                if (missing[j]) continue;
+
+                Node x = nodes.get(i);
+                Node y = nodes.get(j);
+
+                if (initialGraph != null) {
+                    Node x2 = initialGraph.getNode(x.getName());
+                    Node y2 = initialGraph.getNode(y.getName());
+
+                    if (!initialGraph.isAdjacentTo(x2, y2)) {
+                        continue;
+                    }
+                }
+
+                xs.add(x);
+                ys.add(y);
+            }
+        }
+
+        List<List<Node>> sepsets = new EdgeTask(xs, ys, null, 0).run(pool);
+
+        for (int k = 0; k < xs.size(); k++) {
+            Node x = xs.get(k);
+            Node y = ys.get(k);
+
+            if (sepsets.get(k) != null) {
+                getSepsets().set(x, y, sepsets.get(k));
+            } else if (!forbiddenEdge(x, y)) {
+                adjacencies.get(x).add(y);
+                adjacencies.get(y).add(x);
+            }
+        }
+
+        return freeDegreeGreaterThanDepth(adjacencies, 0);
+    }
+
+    private boolean searchAtDepth(List<Node> nodes, Map<Node, Set<Node>> adjacencies, int depth,
+                                  ForkJoinPool pool) {
+        if (verbose) {
+            System.out.println("Searching at depth " + depth);
+        }
+
+        // Conditioning sets are drawn from the adjacencies as they stand at the beginning of the depth. These are
+        // copied and iterated over in the same way as in FasStable, so that subsets are tried in the same order.
+        Map<Node, List<Node>> adjacenciesCopy = new HashMap<Node, List<Node>>();
+
+        for (Node node : adjacencies.keySet()) {
+            adjacenciesCopy.put(node, new ArrayList<Node>(new HashSet<Node>(adjacencies.get(node))));
+        }
+
+        List<Node> xs = new ArrayList<Node>();
+        List<Node> ys = new ArrayList<Node>();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = i + 1; j < nodes.size(); j++) {
+                Node x = nodes.get(i);
+                Node y = nodes.get(j);
+
+                if (adjacencies.get(x).contains(y)) {
+                    xs.add(x);
+                    ys.add(y);
+                }
+            }
+        }
+
+        List<List<Node>> sepsets = new EdgeTask(xs, ys, adjacenciesCopy, depth).run(pool);
+
+        for (int k = 0; k < xs.size(); k++) {
+            if (sepsets.get(k) != null) {
+                Node x = xs.get(k);
+                Node y = ys.get(k);
+
+                adjacencies.get(x).remove(y);
+                adjacencies.get(y).remove(x);
+                getSepsets().set(x, y, sepsets.get(k));
+            }
+        }
+
+        return freeDegreeGreaterThanDepth(adjacencies, depth);
+    }
+
+    /**
+     * Decides the edges x_k *-* y_k at a given depth, in parallel, recording for each either the sepset found or null
+     * if the edge stays. Ranges of edges are split in half until each task has a single edge; each task sets only its
+     * own elements of the list of sepsets, which is not resized.
+     */
+    private class EdgeTask extends RecursiveAction {
+        private final List<Node> xs;
+        private final List<Node> ys;
+        private final Map<Node, List<Node>> adjacencies;
+        private final int depth;
+        private final List<List<Node>> sepsets;
+        private final int from;
+        private final int to;
+
+        public EdgeTask(List<Node> xs, List<Node> ys, Map<Node, List<Node>> adjacencies, int depth) {
+            this(xs, ys, adjacencies, depth, new ArrayList<List<Node>>(Collections.<List<Node>>nCopies(xs.size(), null)),
+                    0, xs.size());
+        }
+
+        private EdgeTask(List<Node> xs, List<Node> ys, Map<Node, List<Node>> adjacencies, int depth,
+                         List<List<Node>> sepsets, int from, int to) {
+            this.xs = xs;
+            this.ys = ys;
+            this.adjacencies = adjacencies;
+            this.depth = depth;
+            this.sepsets = sepsets;
+            this.from = from;
+            this.to = to;
+        }
+
+        public List<List<Node>> run(ForkJoinPool pool) {
+            pool.invoke(this);
+            return sepsets;
+        }
+
+        protected void compute() {
+            if (to - from <= 1) {
+                for (int k = from; k < to; k++) {
+                    sepsets.set(k, findSepset(xs.get(k), ys.get(k)));
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new EdgeTask(xs, ys, adjacencies, depth, sepsets, from, mid),
+                        new EdgeTask(xs, ys, adjacencies, depth, sepsets, mid, to));
+            }
+        }
+
+        /**
+         * FasStable looks for a sepset from x's side and then from y's side, where x comes before y in the node list,
+         * and keeps the last one found. So y's side is tried first here.
+         */
+        private List<Node> findSepset(Node x, Node y) {
+            if (depth == 0) {
+                if (!knowledge.noEdgeRequired(x.getName(), y.getName())) {
+                    return null;
+                }
+
+                List<Node> empty = Collections.emptyList();
+                return independent(x, y, empty) ? empty : null;
+            }
+
+            List<Node> sepset = findSepsetFrom(y, x);
+
+            if (sepset == null) {
+                sepset = findSepsetFrom(x, y);
+            }
+
+            return sepset;
+        }
+
+        private List<Node> findSepsetFrom(Node x, Node y) {
+            if (!knowledge.noEdgeRequired(x.getName(), y.getName())) {
+                return null;
+            }
+
+            List<Node> _adjx = new ArrayList<Node>(adjacencies.get(x));
+            _adjx.remove(y);
+            List<Node> ppx = possibleParents(x, _adjx, knowledge);
+
+            if (ppx.size() >= depth) {
+                ChoiceGenerator cg = new ChoiceGenerator(ppx.size(), depth);
+                int[] choice;
+
+                while ((choice = cg.next()) != null) {
+                    List<Node> condSet = GraphUtils.asList(choice, ppx);
+
+                    if (independent(x, y, condSet)) {
+                        return condSet;
+                    }
+                }
+            }
+
+            return null;
+        }
+
+        private boolean independent(Node x, Node y, List<Node> condSet) {
+            numIndependenceTests.incrementAndGet();
+
+            try {
+                return test.checkIndependence(x, y, condSet).isIndependent();
+            } catch (Exception e) {
+                if (verbose) {
+                    System.out.println(e.getMessage());
+                }
+
+                return true;
+            }
+        }
+    }
+
+    // Returns true just in case there are no defined values in the column.
+    private boolean missingCol(DataModel data, Node x) {
+        if (data instanceof DataSet) {
+            DataSet dataSet = (DataSet) data;
+            int j = dataSet.getColumn(dataSet.getVariable(x.getName()));
+
+            for (int i = 0; i < dataSet.getNumRows(); i++) {
+                if (!Double.isNaN(dataSet.getDouble(i, j))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private boolean freeDegreeGreaterThanDepth(Map<Node, Set<Node>> adjacencies, int depth) {
+        for (Node x : adjacencies.keySet()) {
+            Set<Node> opposites = adjacencies.get(x);
+
+            if (opposites.size() - 1 > depth) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean forbiddenEdge(Node x, Node y) {
+        String name1 = x.getName();
+        String name2 = y.getName();
+
+        if (knowledge.edgeForbidden(name1, name2) &&
+                knowledge.edgeForbidden(name2, name1)) {
+            this.logger.log("edgeRemoved", "Removed " + Edges.undirectedEdge(x, y) + " because it was " +
+                    "forbidden by background knowledge.");
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private List<Node> possibleParents(Node x, List<Node> adjx,
+                                       IKnowledge knowledge) {
+        List<Node> possibleParents = new LinkedList<Node>();
+        String _x = x.getName();
+
+        for (Node z : adjx) {
+            String _z = z.getName();
+
+            if (possibleParentOf(_z, _x, knowledge)) {
+                possibleParents.add(z);
+            }
+        }
+
+        return possibleParents;
+    }
+
+    private boolean possibleParentOf(String z, String x, IKnowledge knowledge) {
+        return !knowledge.edgeForbidden(z, x) && !knowledge.edgeRequired(x, z);
+    }
+}
+
+
+
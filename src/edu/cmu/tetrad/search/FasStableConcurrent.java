@@ -321,7 +321,7 @@ public class FasStableConcurrent {
 
 
                         try {
-                            independent = test.isIndependent(x, y, empty);
+                            independent = test.checkIndependence(x, y, empty).isIndependent();
                         } catch (Exception e) {
                             e.printStackTrace();
                             independent = true;
@@ -526,7 +526,7 @@ public class FasStableConcurrent {
                                 boolean independent;
 
                                 try {
-                                    independent = test.isIndependent(x, y, condSet);
+                                    independent = test.checkIndependence(x, y, condSet).isIndependent();
                                 } catch (Exception e) {
                                     if (verbose) {
                                         System.out.println(e.getCause().getMessage());
@@ -114,6 +114,11 @@ public final class Fci implements GraphSearch {
      */
     private boolean verbose = false;
 
+    /**
+     * True iff the adjacency search should be run in parallel, using FasForkJoin.
+     */
+    private boolean concurrentFas = false;
+
 
     //============================CONSTRUCTORS============================//
 
@@ -182,6 +187,10 @@ public final class Fci implements GraphSearch {
     public Graph search(List<Node> nodes) {
 //        return search(new FasICov2(getIndependenceTest()), nodes);
 //
+        if (concurrentFas) {
+            return search(new FasForkJoin(new EdgeListGraph(nodes), getIndependenceTest()), nodes);
+        }
+
         return search(new Fas(getIndependenceTest()), nodes);
     }
 
@@ -235,7 +244,7 @@ public final class Fci implements GraphSearch {
         fas.setDepth(depth);
         fas.setVerbose(verbose);
 //        fas.setFci(true);
-        graph = fas.search();
+        graph = new IndexedGraph(fas.search());
         graph.reorientAllWith(Endpoint.CIRCLE);
         this.sepsets = fas.getSepsets();
 
@@ -301,7 +310,7 @@ public final class Fci implements GraphSearch {
         logger.log("info", "Elapsed time adjacency search = " + (stop1 - start1) / 1000L + "s");
         logger.log("info", "Elapsed time orientation search = " + (stop2 - start2) / 1000L + "s");
 
-        return graph;
+        return new EdgeListGraph(graph);
     }
 
     public SepsetMap getSepsets() {
@@ -1690,6 +1699,18 @@ public final class Fci implements GraphSearch {
         this.verbose = verbose;
     }
 
+    /**
+     * True iff the adjacency search should be run in parallel, using FasForkJoin. The independence test will then be
+     * shared by several threads.
+     */
+    public boolean isConcurrentFas() {
+        return concurrentFas;
+    }
+
+    public void setConcurrentFas(boolean concurrentFas) {
+        this.concurrentFas = concurrentFas;
+    }
+
     /**
      * The independence test.
      */
@@ -0,0 +1,281 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.util.ParallelUtils;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Caches the fourth moments s_xyzw = (1 / N) sum_i x_i y_i z_i w_i of centered data, as used by the distribution-free
+ * delta tests for tetrads and sextads.
+ * <p/>
+ * Since s_xyzw does not depend on the order of x, y, z and w, each unordered quadruple is stored once, at its index in
+ * the combinatorial number system: for a <= b <= c <= d,
+ * <pre>
+ *     index(a, b, c, d) = C(a, 1) + C(b + 1, 2) + C(c + 2, 3) + C(d + 3, 4),
+ * </pre>
+ * which numbers the C(n + 3, 4), or about n^4 / 24, quadruples of n variables consecutively. Values are stored in pages
+ * of 1024, found through a directory of pages, and pages and directory blocks are allocated only when a quadruple in them
+ * is first needed; memory grows with the quadruples used, not with n^4. Values are calculated when first asked for and
+ * may be asked for from several threads at once; two threads may both calculate a value, but they calculate it from
+ * the sorted quadruple, so they calculate the same one, and both return the one stored. Values needed together may be
+ * calculated in parallel with <code>prefetch</code>.
+ *
+ * @author Joseph Ramsey
+ * @see DeltaTetradTest
+ * @see DeltaSextadTest
+ */
+public final class FourthMomentCache {
+
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int BLOCK_BITS = 10;
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+
+    /**
+     * Marks an empty slot. A calculated value of 0.0, whose bits these are, is stored as -0.0.
+     */
+    private static final long EMPTY = 0L;
+
+    /**
+     * Below this many multiplications prefetch calculates on the calling thread.
+     */
+    private static final long MIN_PARALLEL_WORK = 1L << 22;
+
+    /**
+     * The centered data, columns[variable][case].
+     */
+    private final double[][] columns;
+
+    /**
+     * The number of cases.
+     */
+    private final int sampleSize;
+
+    /**
+     * Directory blocks of pages of values, as raw long bits, by index.
+     */
+    private final AtomicReferenceArray<AtomicReferenceArray<AtomicLongArray>> directory;
+
+    /**
+     * The number of values stored.
+     */
+    private final AtomicLong size = new AtomicLong();
+
+    private int parallelism = ParallelUtils.getDefaultParallelism();
+
+    /**
+     * Constructs a cache for the given centered data, with columns[variable][case]. The data are not copied.
+     */
+    public FourthMomentCache(double[][] columns) {
+        if (columns.length == 0) {
+            throw new IllegalArgumentException("Expecting at least one variable.");
+        }
+
+        this.columns = columns;
+        this.sampleSize = columns[0].length;
+
+        for (double[] column : columns) {
+            if (column.length != sampleSize) {
+                throw new IllegalArgumentException("All columns must have the same length.");
+            }
+        }
+
+        long numQuadruples = index(0, 0, 0, columns.length);
+        long numPages = (numQuadruples + PAGE_SIZE - 1) >> PAGE_BITS;
+        long numBlocks = (numPages + BLOCK_SIZE - 1) >> BLOCK_BITS;
+
+        if (numBlocks > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many variables: " + columns.length);
+        }
+
+        this.directory = new AtomicReferenceArray<AtomicReferenceArray<AtomicLongArray>>((int) numBlocks);
+    }
+
+    /**
+     * Returns s_xyzw for the given variables, by index, calculating and storing it if it has not been already.
+     */
+    public double get(int x, int y, int z, int w) {
+        int t;
+
+        // A sorting network for four values. The moment is calculated in sorted order too, so that every order of the
+        // same quadruple gets the same bits, whichever order calculated it first.
+        if (x > y) { t = x; x = y; y = t; }
+        if (z > w) { t = z; z = w; w = t; }
+        if (x > z) { t = x; x = z; z = t; }
+        if (y > w) { t = y; y = w; w = t; }
+        if (y > z) { t = y; y = z; z = t; }
+
+        long index = index(x, y, z, w);
+        AtomicLongArray page = page(index);
+        int slot = (int) (index & (PAGE_SIZE - 1));
+        long bits = page.get(slot);
+
+        if (bits == EMPTY) {
+            bits = store(page, slot, calculate(x, y, z, w));
+        }
+
+        // Adding 0.0 turns a stored -0.0 back into 0.0.
+        return Double.longBitsToDouble(bits) + 0.0;
+    }
+
+    /**
+     * Calculates any of the given quadruples not already stored, in parallel if there is enough work.
+     */
+    public void prefetch(int[][] quadruples) {
+        if (parallelism == 1 || (long) quadruples.length * sampleSize < MIN_PARALLEL_WORK) {
+            for (int[] q : quadruples) {
+                get(q[0], q[1], q[2], q[3]);
+            }
+
+            return;
+        }
+
+        ParallelUtils.invoke(new PrefetchTask(quadruples, 0, quadruples.length), parallelism);
+    }
+
+    /**
+     * Returns the number of values stored.
+     */
+    public long size() {
+        return size.get();
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads prefetch may use. Default is ParallelUtils.getDefaultParallelism().
+     */
+    public void setParallelism(int parallelism) {
+        ParallelUtils.checkParallelism(parallelism);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the index of the quadruple (a, b, c, d), which must be sorted in ascending order.
+     */
+    static long index(int a, int b, int c, int d) {
+        return a
+                + (long) (b + 1) * b / 2
+                + (long) (c + 2) * (c + 1) * c / 6
+                + (long) (d + 3) * (d + 2) * (d + 1) * d / 24;
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    private double calculate(int x, int y, int z, int w) {
+        double[] _x = columns[x];
+        double[] _y = columns[y];
+        double[] _z = columns[z];
+        double[] _w = columns[w];
+
+        double sum = 0.0;
+
+        for (int i = 0; i < sampleSize; i++) {
+            sum += _x[i] * _y[i] * _z[i] * _w[i];
+        }
+
+        return (1.0 / sampleSize) * sum;
+    }
+
+    /**
+     * Stores the value in the given slot unless another thread has stored one first, and returns the bits of whichever
+     * value is stored.
+     */
+    private long store(AtomicLongArray page, int slot, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+
+        if (bits == EMPTY) {
+            bits = Double.doubleToRawLongBits(-0.0);
+        }
+
+        if (page.compareAndSet(slot, EMPTY, bits)) {
+            size.incrementAndGet();
+            return bits;
+        }
+
+        return page.get(slot);
+    }
+
+    /**
+     * Returns the page holding the given index, allocating it (and its directory block) if need be.
+     */
+    private AtomicLongArray page(long index) {
+        long pageNumber = index >> PAGE_BITS;
+        int blockNumber = (int) (pageNumber >> BLOCK_BITS);
+        int pageInBlock = (int) (pageNumber & (BLOCK_SIZE - 1));
+
+        AtomicReferenceArray<AtomicLongArray> block = directory.get(blockNumber);
+
+        if (block == null) {
+            directory.compareAndSet(blockNumber, null, new AtomicReferenceArray<AtomicLongArray>(BLOCK_SIZE));
+            block = directory.get(blockNumber);
+        }
+
+        AtomicLongArray page = block.get(pageInBlock);
+
+        if (page == null) {
+            block.compareAndSet(pageInBlock, null, new AtomicLongArray(PAGE_SIZE));
+            page = block.get(pageInBlock);
+        }
+
+        return page;
+    }
+
+    /**
+     * Calculates a range of quadruples, splitting it in half until it is small.
+     */
+    private class PrefetchTask extends RecursiveAction {
+        private final int[][] quadruples;
+        private final int from;
+        private final int to;
+
+        private PrefetchTask(int[][] quadruples, int from, int to) {
+            this.quadruples = quadruples;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if ((long) (to - from) * sampleSize < MIN_PARALLEL_WORK / 16 || to - from == 1) {
+                for (int i = from; i < to; i++) {
+                    int[] q = quadruples[i];
+                    FourthMomentCache.this.get(q[0], q[1], q[2], q[3]);
+                }
+
+                return;
+            }
+
+            int mid = (from + to) / 2;
+            invokeAll(new PrefetchTask(quadruples, from, mid), new PrefetchTask(quadruples, mid, to));
+        }
+    }
+}
+
+
+
@@ -32,6 +32,9 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import static java.lang.Math.PI;
 import static java.lang.Math.log;
@@ -106,9 +109,9 @@ public final class Ges implements GraphSearch, GraphScorer {
     private final NumberFormat nf = NumberFormatUtil.getInstance().getNumberFormat();
 
     /**
-     * Caches scores for discrete search.
+     * Calculates and caches residual variances for the continuous score.
      */
-    private final LocalScoreCache localScoreCache = new LocalScoreCache();
+    private LocalSemScoreEngine semScoreEngine;
 
     /**
      * Elapsed time of the most recent search.
@@ -152,7 +155,7 @@ public final class Ges implements GraphSearch, GraphScorer {
     private int numPatternsToStore = 10;
 
     // Potential arrows sorted by bump high to low. The first one is a candidate for adding to the graph.
-    private SortedSet<Arrow> sortedArrows = new TreeSet<Arrow>();
+    private SortedSet<Arrow> sortedArrows = new ConcurrentSkipListSet<Arrow>();
 
     // Arrows added to sorted arrows for each <i, j>.
     private Set<Arrow>[][] lookupArrows;
@@ -168,6 +171,21 @@ public final class Ges implements GraphSearch, GraphScorer {
     private boolean log = true;
     private boolean verbose = false;
 
+    /**
+     * The number of threads used to score candidate arrows; 1 to score them on the calling thread.
+     */
+    private int parallelism = 1;
+
+    /**
+     * The pool scoring candidate arrows during a search, or null if they are scored on the calling thread.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * Candidates are scored on one thread in groups of at most this many.
+     */
+    private static final int MIN_SCORING_TASK_SIZE = 16;
+
     //===========================CONSTRUCTORS=============================//
 
     public Ges(DataSet dataSet) {
@@ -220,10 +238,10 @@ public final class Ges implements GraphSearch, GraphScorer {
         Graph graph;
 
         if (initialGraph == null) {
-            graph = new EdgeListGraph(getVariables());
+            graph = new IndexedGraph(getVariables());
         } else {
             initialGraph = GraphUtils.replaceNodes(initialGraph, variables);
-            graph = new EdgeListGraph(initialGraph);
+            graph = new IndexedGraph(initialGraph);
         }
 
         fireGraphChange(graph);
@@ -245,11 +263,18 @@ public final class Ges implements GraphSearch, GraphScorer {
         }
         long start = System.currentTimeMillis();
 
-        // Do forward search.
-        score = fes(graph, nodes, score);
+        startPool();
 
-        // Do backward search.
-        score = bes(graph, nodes, score);
+        try {
+
+            // Do forward search.
+            score = fes(graph, nodes, score);
+
+            // Do backward search.
+            score = bes(graph, nodes, score);
+        } finally {
+            stopPool();
+        }
 
         long endTime = System.currentTimeMillis();
         this.elapsedTime = endTime - start;
@@ -259,12 +284,11 @@ public final class Ges implements GraphSearch, GraphScorer {
         this.logger.log("info", "Elapsed time = " + (elapsedTime) / 1000. + " s");
         this.logger.flush();
 
-        return graph;
+        return new EdgeListGraph(graph);
     }
 
     public Graph search(List<Node> nodes) {
         long startTime = System.currentTimeMillis();
-        localScoreCache.clear();
 
         if (!dataSet().getVariables().containsAll(nodes)) {
             throw new IllegalArgumentException(
@@ -274,21 +298,28 @@ public final class Ges implements GraphSearch, GraphScorer {
         Graph graph;
 
         if (initialGraph == null) {
-            graph = new EdgeListGraph(nodes);
+            graph = new IndexedGraph(nodes);
         } else {
             initialGraph = GraphUtils.replaceNodes(initialGraph, variables);
-            graph = new EdgeListGraph(initialGraph);
+            graph = new IndexedGraph(initialGraph);
         }
 
         buildIndexing(graph);
         addRequiredEdges(graph);
         double score = 0; //scoreGraph(graph);
 
-        // Do forward search.
-        score = fes(graph, nodes, score);
+        startPool();
+
+        try {
+
+            // Do forward search.
+            score = fes(graph, nodes, score);
 
-        // Do backward search.
-        score = bes(graph, nodes, score);
+            // Do backward search.
+            score = bes(graph, nodes, score);
+        } finally {
+            stopPool();
+        }
 
         long endTime = System.currentTimeMillis();
         this.elapsedTime = endTime - startTime;
@@ -298,7 +329,7 @@ public final class Ges implements GraphSearch, GraphScorer {
         this.logger.log("info", "Elapsed time = " + (elapsedTime) / 1000. + " s");
         this.logger.flush();
 
-        return graph;
+        return new EdgeListGraph(graph);
     }
 
     public Knowledge getKnowledge() {
@@ -333,6 +364,38 @@ public final class Ges implements GraphSearch, GraphScorer {
         return elapsedTime;
     }
 
+    /**
+     * Returns the number of threads used to score candidate arrows.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to score candidate arrows in the forward and backward phases; 1 (the default)
+     * scores them on the calling thread. Arrows are scored concurrently but added to the search in the same order as
+     * they are sequentially, so the result does not depend on the number of threads. Discrete scores are always
+     * calculated on the calling thread.
+     */
+    public void setParallelism(int parallelism) {
+        ParallelUtils.checkParallelism(parallelism);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the number of continuous local scores calculated so far, as opposed to looked up in the cache.
+     */
+    public long getNumScoresComputed() {
+        return semScoreEngine == null ? 0 : semScoreEngine.getNumComputed();
+    }
+
+    /**
+     * Returns the number of continuous local scores looked up in the cache so far.
+     */
+    public long getNumScoresCached() {
+        return semScoreEngine == null ? 0 : semScoreEngine.getNumCached();
+    }
+
     public void addPropertyChangeListener(PropertyChangeListener l) {
         getListeners().add(l);
     }
@@ -444,15 +507,20 @@ public final class Ges implements GraphSearch, GraphScorer {
                 }
             }
 
+            List<ArrowCandidate> candidates = new ArrayList<ArrowCandidate>();
+
             for (Edge edge : graph.getEdges()) {
                 Node _x = edge.getNode1();
                 Node _y = edge.getNode2();
 
                 if (!edges.contains(edge)) {
-                    reevaluateForward(graph, nodes, nodesHash.get(_x), nodesHash.get(_y));
+                    reevaluateForward(graph, nodes, nodesHash.get(_x), nodesHash.get(_y), candidates);
                 }
             }
 
+            scoreCandidates(candidates);
+            addArrows(candidates, nodes);
+
             storeGraph(graph, score);
         }
 
@@ -497,6 +565,7 @@ public final class Ges implements GraphSearch, GraphScorer {
         lookupArrows = new HashSet[nodes.size()][nodes.size()];
         List<Node> emptyList = Collections.EMPTY_LIST;
         Set<Node> emptySet = Collections.EMPTY_SET;
+        List<ArrowCandidate> candidates = new ArrayList<ArrowCandidate>();
 
         for (int j = 0; j < nodes.size(); j++) {
             if (log && verbose) {
@@ -517,22 +586,19 @@ public final class Ges implements GraphSearch, GraphScorer {
                     continue;
                 }
 
-                double bump = scoreGraphChange(_y, Collections.singleton(_x), emptySet);
-
-                if (bump > 0.0) {
-                    Arrow arrow = new Arrow(bump, i, j, emptyList, emptyList, nodes);
-                    lookupArrows[i][j] = new HashSet<Arrow>();
-                    sortedArrows.add(arrow);
-                    lookupArrows[i][j].add(arrow);
-                }
+                candidates.add(new ArrowCandidate(i, j, _y, emptyList, emptyList, Collections.singleton(_x), emptySet));
             }
         }
+
+        scoreCandidates(candidates);
+        addArrows(candidates, nodes);
     }
 
     private void initializeArrowsBackward(Graph graph) {
         List<Node> nodes = graph.getNodes();
         sortedArrows.clear();
         lookupArrows = new HashSet[nodes.size()][nodes.size()];
+        List<ArrowCandidate> candidates = new ArrayList<ArrowCandidate>();
 
         for (Edge edge : graph.getEdges()) {
             Node x = edge.getNode1();
@@ -546,12 +612,15 @@ public final class Ges implements GraphSearch, GraphScorer {
             }
 
             if (Edges.isDirectedEdge(edge)) {
-                calculateArrowsBackward(i, j, nodes, graph);
+                calculateArrowsBackward(i, j, nodes, graph, candidates);
             } else {
-                calculateArrowsBackward(i, j, nodes, graph);
-                calculateArrowsBackward(j, i, nodes, graph);
+                calculateArrowsBackward(i, j, nodes, graph, candidates);
+                calculateArrowsBackward(j, i, nodes, graph, candidates);
             }
         }
+
+        scoreCandidates(candidates);
+        addArrows(candidates, nodes);
     }
 
     private void clearForward(Graph graph, List<Node> nodes, int i, int j) {
@@ -586,7 +655,7 @@ public final class Ges implements GraphSearch, GraphScorer {
         }
     }
 
-    private void reevaluateForward(Graph graph, List<Node> nodes, int i, int j) {
+    private void reevaluateForward(Graph graph, List<Node> nodes, int i, int j, List<ArrowCandidate> candidates) {
         Node x = nodes.get(i);
         Node y = nodes.get(j);
 
@@ -599,24 +668,24 @@ public final class Ges implements GraphSearch, GraphScorer {
 
             if (!graph.isAdjacentTo(w, x)) {
                 if (lookupArrows[_w][i] == null) {
-                    calculateArrowsForward(_w, i, nodes, graph);
+                    calculateArrowsForward(_w, i, nodes, graph, candidates);
                 }
 
                 if (graph.isAdjacentTo(w, y)) {
                     if (lookupArrows[i][_w] == null) {
-                        calculateArrowsForward(i, _w, nodes, graph);
+                        calculateArrowsForward(i, _w, nodes, graph, candidates);
                     }
                 }
             }
 
             if (!graph.isAdjacentTo(w, y)) {
                 if (lookupArrows[_w][j] == null) {
-                    calculateArrowsForward(_w, j, nodes, graph);
+                    calculateArrowsForward(_w, j, nodes, graph, candidates);
                 }
 
                 if (graph.isAdjacentTo(w, x)) {
                     if (lookupArrows[j][_w] == null) {
-                        calculateArrowsForward(j, _w, nodes, graph);
+                        calculateArrowsForward(j, _w, nodes, graph, candidates);
                     }
                 }
             }
@@ -635,7 +704,8 @@ public final class Ges implements GraphSearch, GraphScorer {
         }
     }
 
-    private void calculateArrowsForward(int i, int j, List<Node> nodes, Graph graph) {
+    private void calculateArrowsForward(int i, int j, List<Node> nodes, Graph graph,
+                                        List<ArrowCandidate> candidates) {
         if (i == j) {
             return;
         }
@@ -668,17 +738,12 @@ public final class Ges implements GraphSearch, GraphScorer {
                 continue;
             }
 
-            double bump = insertEval(x, y, t, naYX, graph);
-
-            if (bump > 0.0) {
-                Arrow arrow = new Arrow(bump, i, j, t, naYX, nodes);
-                sortedArrows.add(arrow);
-                lookupArrows[i][j].add(arrow);
-            }
+            candidates.add(insertEval(i, j, x, y, t, naYX, graph));
         }
     }
 
-    private void calculateArrowsBackward(int i, int j, List<Node> nodes, Graph graph) {
+    private void calculateArrowsBackward(int i, int j, List<Node> nodes, Graph graph,
+                                         List<ArrowCandidate> candidates) {
         if (i == j) {
             return;
         }
@@ -710,16 +775,54 @@ public final class Ges implements GraphSearch, GraphScorer {
                 continue;
             }
 
-            double bump = deleteEval(x, y, H, naYX, graph);
+            candidates.add(deleteEval(i, j, x, y, H, naYX, graph));
+        }
+    }
+
+    /**
+     * Scores the given candidates, concurrently if there is a pool.
+     */
+    private void scoreCandidates(List<ArrowCandidate> candidates) {
+        if (pool == null || candidates.size() <= MIN_SCORING_TASK_SIZE) {
+            for (ArrowCandidate candidate : candidates) {
+                candidate.score();
+            }
+        } else {
+            pool.invoke(new ScoringTask(candidates, 0, candidates.size()));
+        }
+    }
+
+    /**
+     * Adds arrows for the candidates with positive bumps, in order, so that arrows with equal bumps displace one
+     * another just as they would if they had been scored one at a time.
+     */
+    private void addArrows(List<ArrowCandidate> candidates, List<Node> nodes) {
+        for (ArrowCandidate candidate : candidates) {
+            if (candidate.bump > 0.0) {
+                int i = candidate.i;
+                int j = candidate.j;
+                Arrow arrow = new Arrow(candidate.bump, i, j, candidate.hOrT, candidate.naYX, nodes);
+
+                if (lookupArrows[i][j] == null) {
+                    lookupArrows[i][j] = new HashSet<Arrow>();
+                }
 
-            if (bump > 0.0) {
-                Arrow arrow = new Arrow(bump, i, j, H, naYX, nodes);
                 sortedArrows.add(arrow);
                 lookupArrows[i][j].add(arrow);
             }
         }
     }
 
+    private void startPool() {
+        if (parallelism > 1 && !isDiscrete()) {
+            pool = ParallelUtils.getPool(parallelism);
+        }
+    }
+
+    private void stopPool() {
+        pool = null;
+    }
+
     /**
      * True iff log output should be produced.
      */
@@ -796,6 +899,62 @@ public final class Ges implements GraphSearch, GraphScorer {
 
     }
 
+    /**
+     * An Insert or Delete operator waiting to be scored. Its bump is the score of y with parents1 less the score of y
+     * with parents2.
+     */
+    private class ArrowCandidate {
+        private final int i;
+        private final int j;
+        private final Node y;
+        private final List<Node> hOrT;
+        private final List<Node> naYX;
+        private final Set<Node> parents1;
+        private final Set<Node> parents2;
+        private double bump;
+
+        public ArrowCandidate(int i, int j, Node y, List<Node> hOrT, List<Node> naYX, Set<Node> parents1,
+                              Set<Node> parents2) {
+            this.i = i;
+            this.j = j;
+            this.y = y;
+            this.hOrT = hOrT;
+            this.naYX = naYX;
+            this.parents1 = parents1;
+            this.parents2 = parents2;
+        }
+
+        public void score() {
+            bump = scoreGraphChange(y, parents1, parents2);
+        }
+    }
+
+    /**
+     * Scores a range of candidates, splitting it in half until it is small.
+     */
+    private class ScoringTask extends RecursiveAction {
+        private final List<ArrowCandidate> candidates;
+        private final int from;
+        private final int to;
+
+        public ScoringTask(List<ArrowCandidate> candidates, int from, int to) {
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from <= MIN_SCORING_TASK_SIZE) {
+                for (int k = from; k < to; k++) {
+                    candidates.get(k).score();
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ScoringTask(candidates, from, mid), new ScoringTask(candidates, mid, to));
+            }
+        }
+    }
+
 
     /**
      * Get all nodes that are connected to Y by an undirected edge and not adjacent to X.
@@ -822,9 +981,9 @@ public final class Ges implements GraphSearch, GraphScorer {
     }
 
     /**
-     * Evaluate the Insert(X, Y, T) operator (Definition 12 from Chickering, 2002).
+     * Sets up the evaluation of the Insert(X, Y, T) operator (Definition 12 from Chickering, 2002).
      */
-    private double insertEval(Node x, Node y, List<Node> t, List<Node> naYX, Graph graph) {
+    private ArrowCandidate insertEval(int i, int j, Node x, Node y, List<Node> t, List<Node> naYX, Graph graph) {
         List<Node> paY = graph.getParents(y);
         Set<Node> paYPlusX = new HashSet<Node>(paY);
         paYPlusX.add(x);
@@ -837,13 +996,13 @@ public final class Ges implements GraphSearch, GraphScorer {
         set2.addAll(t);
         set2.addAll(paY);
 
-        return scoreGraphChange(y, set1, set2);
+        return new ArrowCandidate(i, j, y, t, naYX, set1, set2);
     }
 
     /**
-     * Evaluate the Delete(X, Y, T) operator (Definition 12 from Chickering, 2002).
+     * Sets up the evaluation of the Delete(X, Y, T) operator (Definition 12 from Chickering, 2002).
      */
-    private double deleteEval(Node x, Node y, List<Node> h, List<Node> naYX, Graph graph) {
+    private ArrowCandidate deleteEval(int i, int j, Node x, Node y, List<Node> h, List<Node> naYX, Graph graph) {
         List<Node> paY = graph.getParents(y);
         Set<Node> paYMinuxX = new HashSet<Node>(paY);
         paYMinuxX.remove(x);
@@ -856,7 +1015,7 @@ public final class Ges implements GraphSearch, GraphScorer {
         set2.removeAll(h);
         set2.addAll(paY);
 
-        return scoreGraphChange(y, set1, set2);
+        return new ArrowCandidate(i, j, y, h, naYX, set1, set2);
     }
 
     /*
@@ -1136,6 +1295,12 @@ public final class Ges implements GraphSearch, GraphScorer {
     }
 
     private boolean existsUnblockedSemiDirectedPath(Node from, Node to, List<Node> cond, Graph G) {
+
+        // If there is no semi-directed path at all, graphs that index their paths can say so without a search.
+        if (from != to && !G.existsSemiDirectedPathFromTo(from, Collections.singleton(to))) {
+            return false;
+        }
+
         Queue<Node> Q = new LinkedList<Node>();
         Set<Node> V = new HashSet<Node>();
         Q.offer(from);
@@ -1196,6 +1361,7 @@ public final class Ges implements GraphSearch, GraphScorer {
 
         if (!isDiscrete()) {
             this.covariances = dataSet.getCovarianceMatrix();
+            this.semScoreEngine = new LocalSemScoreEngine(covariances);
         }
 
         this.sampleSize = dataSet.getNumRows();
@@ -1203,6 +1369,7 @@ public final class Ges implements GraphSearch, GraphScorer {
 
     private void setCovMatrix(ICovarianceMatrix covarianceMatrix) {
         this.covariances = covarianceMatrix.getMatrix();
+        this.semScoreEngine = new LocalSemScoreEngine(covariances);
         List<String> _varNames = covarianceMatrix.getVariableNames();
 
         this.varNames = _varNames.toArray(new String[_varNames.size()]);
@@ -1307,20 +1474,19 @@ public final class Ges implements GraphSearch, GraphScorer {
     private double localSemScore(int i, int[] parents) {
         TetradMatrix cov = getCovMatrix();
         double varianceY = cov.get(i, i);
-        double residualVariance = varianceY;
         int n = sampleSize();
         int p = parents.length;
         int k = ((p + 1) * (p + 2)) / 2;
 
-        try {
-            TetradMatrix covxx = cov.getSelection(parents, parents);
-            TetradMatrix covxxInv = covxx.inverse();
-            TetradVector covxy = cov.getSelection(parents, new int[]{i}).getColumn(0);
-            TetradVector b = covxxInv.times(covxy);
-            residualVariance -= covxy.dotProduct(b);
-        } catch (Exception e) {
-            e.printStackTrace();
+        double residualVariance = semScoreEngine.residualVariance(i, parents);
+
+        // The parents are linearly dependent. Name the smallest dependent set found, or else all of them.
+        if (Double.isNaN(residualVariance)) {
             throwMinimalLinearDependentSet(parents, cov);
+
+            List<Node> _parents = new ArrayList<Node>();
+            for (int parent : parents) _parents.add(variables.get(parent));
+            throw new RuntimeException("Linear dependence among variables: " + _parents);
         }
 
         if (residualVariance <= 0 && verbose) {
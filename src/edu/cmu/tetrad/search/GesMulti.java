@@ -58,6 +58,11 @@ public final class GesMulti implements GraphSearch, GraphScorer {
      */
     private TetradMatrix covariances;
 
+    /**
+     * Calculates and caches residual variances for the continuous score.
+     */
+    private LocalSemScoreEngine semScoreEngine;
+
     /**
      * Sample size, either from the data set or from the variances.
      */
@@ -347,6 +352,20 @@ public final class GesMulti implements GraphSearch, GraphScorer {
         return elapsedTime;
     }
 
+    /**
+     * Returns the number of residual variances calculated so far, as opposed to looked up in the cache.
+     */
+    public long getNumScoresComputed() {
+        return semScoreEngine == null ? 0 : semScoreEngine.getNumComputed();
+    }
+
+    /**
+     * Returns the number of residual variances looked up in the cache so far.
+     */
+    public long getNumScoresCached() {
+        return semScoreEngine == null ? 0 : semScoreEngine.getNumCached();
+    }
+
     public void addPropertyChangeListener(PropertyChangeListener l) {
         getListeners().add(l);
     }
@@ -1184,6 +1203,7 @@ public final class GesMulti implements GraphSearch, GraphScorer {
 
     private void setCovMatrix(ICovarianceMatrix covarianceMatrix) {
         this.covariances = covarianceMatrix.getMatrix();
+        this.semScoreEngine = new LocalSemScoreEngine(covariances);
 //        List<String> _varNames = covarianceMatrix.getVariableNames();
 //
 //        this.varNames = _varNames.toArray(new String[_varNames.size()]);
@@ -1269,8 +1289,6 @@ public final class GesMulti implements GraphSearch, GraphScorer {
     private double localSemScore(int i, int[] parents) {
         int n = sampleSize();
 
-        TetradMatrix cov = getCovMatrix();
-
         List<Node> y = nodeMap.get(variables.get(i));
 
         List<Node> x = new ArrayList<Node>();
@@ -1282,48 +1300,28 @@ public final class GesMulti implements GraphSearch, GraphScorer {
         int p = x.size();
         int q = y.size();
 
-        try {
-            TetradMatrix Cxx = subMatrix(dataVars, cov, x, x);
-            TetradMatrix Cxy = subMatrix(dataVars, cov, x, y);
+        int[] indicesX = new int[p];
 
-            TetradMatrix V = Cxx.inverse().times(Cxy);
+        for (int l = 0; l < p; l++) {
+            indicesX[l] = dataVars.indexOf(x.get(l));
+        }
 
-            TetradVector W = new TetradVector(y.size());
+        double sumL = 0.;
 
-            for (int v = 0; v < y.size(); v++) {
-                W.set(v, V.getColumn(v).dotProduct(Cxy.getColumn(v)));
-            }
+        for (Node _y : y) {
+            double r = semScoreEngine.residualVariance(dataVars.indexOf(_y), indicesX);
 
-            int[] indicesY = new int[y.size()];
-
-            for (int l = 0; l < y.size(); l++) {
-                indicesY[l] = dataVars.indexOf(y.get(l));
+            if (Double.isNaN(r)) {
+                throw new RuntimeException("Could not invert matrix for variables: " + x);
             }
 
-            TetradVector D = cov.diag().viewSelection(indicesY);
-
-            TetradVector R = D.minus(W);
-
-            double maxL = Double.NEGATIVE_INFINITY;
-
-            double sumL = 0.;
-
-            for (int s = 0; s < y.size(); s++) {
-                double r = R.get(s);
-                double l = 0.5 * (-n * log(r));
-                sumL += l;
-                if (l > maxL) maxL = l;
-            }
+            sumL += 0.5 * (-n * log(r));
+        }
 
-            int k = p + 1;
-            double c = getPenaltyDiscount();
+        int k = p + 1;
+        double c = getPenaltyDiscount();
 
-            return 2 * (1.0 / q) * sumL - c * k * log(n);
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-            throw new RuntimeException(e);
-        }
+        return 2 * (1.0 / q) * sumL - c * k * log(n);
     }
 
 //    /**
@@ -0,0 +1,453 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Wraps an independence test and remembers its results, so that searches run one after another on the same data (PC,
+ * CPC, FCI, CCD, ...) do not repeat tests already done. Results are keyed by (x, y, z) with x and y unordered and z
+ * sorted, in an IndependenceResultCache, which may be bounded and may be shared by threads. The results may be saved to
+ * a file and loaded again in a later run. A saved file records the test, its significance level and a fingerprint of
+ * its data--the variable names, the sample size and a hash of the data or covariance matrix--and is only loaded by a
+ * test that matches all of them.
+ * <p/>
+ * Results depend on the significance level, so the cache is cleared when the significance level is changed.
+ *
+ * @author Joseph Ramsey
+ */
+public final class IndTestCached implements IndependenceTest {
+
+    /**
+     * The test whose results are cached.
+     */
+    private final IndependenceTest test;
+
+    /**
+     * The cached results.
+     */
+    private final IndependenceResultCache cache;
+
+    /**
+     * The variables of the test, in order.
+     */
+    private final List<Node> variables;
+
+    /**
+     * Index of each variable in the list of variables.
+     */
+    private final Map<Node, Integer> indices = new HashMap<Node, Integer>();
+
+    /**
+     * The p value of the most recently executed test.
+     */
+    private volatile double pValue = Double.NaN;
+
+    //==========================CONSTRUCTORS=============================//
+
+    /**
+     * Constructs a test that caches every result of the given test.
+     */
+    public IndTestCached(IndependenceTest test) {
+        this(test, new IndependenceResultCache());
+    }
+
+    /**
+     * Constructs a test that caches at most about <code>maxSize</code> results of the given test.
+     */
+    public IndTestCached(IndependenceTest test, int maxSize) {
+        this(test, new IndependenceResultCache(maxSize));
+    }
+
+    private IndTestCached(IndependenceTest test, IndependenceResultCache cache) {
+        if (test == null) {
+            throw new NullPointerException("Test must not be null.");
+        }
+
+        this.test = test;
+        this.cache = cache;
+        this.variables = Collections.unmodifiableList(new ArrayList<Node>(test.getVariables()));
+
+        for (int i = 0; i < variables.size(); i++) {
+            indices.put(variables.get(i), i);
+        }
+    }
+
+    //==========================PUBLIC METHODS=============================//
+
+    /**
+     * Returns a cached test for a subset of the variables. Its cache starts out empty.
+     */
+    public IndependenceTest indTestSubset(List<Node> vars) {
+        return new IndTestCached(test.indTestSubset(vars), new IndependenceResultCache(cache.getMaxSize()));
+    }
+
+    public boolean isIndependent(Node x, Node y, List<Node> z) {
+        IndependenceResult result = checkIndependence(x, y, z);
+        this.pValue = result.getPValue();
+        return result.isIndependent();
+    }
+
+    public boolean isIndependent(Node x, Node y, Node... z) {
+        return isIndependent(x, y, Arrays.asList(z));
+    }
+
+    public boolean isDependent(Node x, Node y, List<Node> z) {
+        return !isIndependent(x, y, z);
+    }
+
+    public boolean isDependent(Node x, Node y, Node... z) {
+        return isDependent(x, y, Arrays.asList(z));
+    }
+
+    /**
+     * Returns the cached result of x _||_ y | z, running the wrapped test if it is not in the cache. Questions involving
+     * variables not known to the test are passed through without being cached.
+     */
+    public IndependenceResult checkIndependence(Node x, Node y, List<Node> z) {
+        Integer _x = indices.get(x);
+        Integer _y = indices.get(y);
+        int[] _z = new int[z.size()];
+
+        for (int i = 0; i < z.size(); i++) {
+            Integer index = indices.get(z.get(i));
+
+            if (index == null) {
+                return test.checkIndependence(x, y, z);
+            }
+
+            _z[i] = index;
+        }
+
+        if (_x == null || _y == null) {
+            return test.checkIndependence(x, y, z);
+        }
+
+        IndependenceResult result = cache.get(_x, _y, _z);
+
+        if (result == null) {
+            result = test.checkIndependence(x, y, z);
+            cache.put(_x, _y, _z, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the p value of the most recently executed test, whether or not it came from the cache.
+     */
+    public double getPValue() {
+        return pValue;
+    }
+
+    public List<Node> getVariables() {
+        return variables;
+    }
+
+    public Node getVariable(String name) {
+        return test.getVariable(name);
+    }
+
+    public List<String> getVariableNames() {
+        return test.getVariableNames();
+    }
+
+    public boolean determines(List<Node> z, Node y) {
+        return test.determines(z, y);
+    }
+
+    public double getAlpha() {
+        return test.getAlpha();
+    }
+
+    /**
+     * Sets the significance level of the wrapped test, clearing the cache if it changes.
+     */
+    public void setAlpha(double alpha) {
+        if (alpha != test.getAlpha()) {
+            test.setAlpha(alpha);
+            cache.clear();
+        }
+    }
+
+    public DataModel getData() {
+        return test.getData();
+    }
+
+    public ICovarianceMatrix getCov() {
+        return test.getCov();
+    }
+
+    public List<DataSet> getDataSets() {
+        return test.getDataSets();
+    }
+
+    public int getSampleSize() {
+        return test.getSampleSize();
+    }
+
+    public List<TetradMatrix> getCovMatrices() {
+        return test.getCovMatrices();
+    }
+
+    /**
+     * Returns the wrapped test.
+     */
+    public IndependenceTest getTest() {
+        return test;
+    }
+
+    /**
+     * Returns the cache, for its size and hit rate.
+     */
+    public IndependenceResultCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Writes the cached results to the given file as tab-delimited text, one result per line, with variables given by
+     * name. The first line records the wrapped test, its significance level and a fingerprint of its data.
+     */
+    public void save(File file) throws IOException {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+
+        try {
+            out.println(header());
+
+            for (int[] key : cache.getKeys()) {
+                IndependenceResult result = cache.peek(key);
+
+                if (result == null) continue;
+
+                StringBuilder buf = new StringBuilder();
+                buf.append(variables.get(key[0]).getName()).append('\t');
+                buf.append(variables.get(key[1]).getName()).append('\t');
+
+                for (int i = 2; i < key.length; i++) {
+                    if (i > 2) buf.append(',');
+                    buf.append(variables.get(key[i]).getName());
+                }
+
+                buf.append('\t').append(result.isIndependent());
+                buf.append('\t').append(result.getPValue());
+                buf.append('\t').append(result.getStatistic());
+                buf.append('\t').append(result.getDf());
+                out.println(buf);
+            }
+        } finally {
+            out.close();
+        }
+
+        if (out.checkError()) {
+            throw new IOException("Could not write " + file);
+        }
+    }
+
+    /**
+     * Adds the results in the given file, written by save(), to the cache. Results mentioning variables this test
+     * does not know are skipped.
+     *
+     * @return the number of results added.
+     * @throws IllegalArgumentException if the file was written for a different test, significance level, sample size,
+     *                                  list of variables or data.
+     */
+    public int load(File file) throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        int numLoaded = 0;
+
+        try {
+            String header = in.readLine();
+
+            if (!header().equals(header)) {
+                throw new IllegalArgumentException("Cached results in " + file + " are for a different test, "
+                        + "significance level, sample size, list of variables or data set.");
+            }
+
+            String line;
+
+            LINES:
+            while ((line = in.readLine()) != null) {
+                if (line.length() == 0) continue;
+
+                String[] tokens = line.split("\t", -1);
+
+                if (tokens.length != 7) {
+                    throw new IllegalArgumentException("Expecting 7 fields: " + line);
+                }
+
+                Integer x = indexOf(tokens[0]);
+                Integer y = indexOf(tokens[1]);
+
+                if (x == null || y == null) continue;
+
+                String[] names = tokens[2].length() == 0 ? new String[0] : tokens[2].split(",");
+                int[] z = new int[names.length];
+
+                for (int i = 0; i < names.length; i++) {
+                    Integer index = indexOf(names[i]);
+                    if (index == null) continue LINES;
+                    z[i] = index;
+                }
+
+                try {
+                    IndependenceResult result = new IndependenceResult(Boolean.parseBoolean(tokens[3]),
+                            Double.parseDouble(tokens[4]), Double.parseDouble(tokens[5]),
+                            Integer.parseInt(tokens[6]));
+                    cache.put(x, y, z, result);
+                    numLoaded++;
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Could not parse: " + line, e);
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        return numLoaded;
+    }
+
+    /**
+     * Returns a string representation of this test.
+     */
+    public String toString() {
+        return test.toString() + " (cached)";
+    }
+
+    //==========================PRIVATE METHODS=============================//
+
+    /**
+     * The test class, significance level, sample size, a hash of the data and the variable names, tab-separated.
+     */
+    private String header() {
+        double alpha;
+
+        try {
+            alpha = test.getAlpha();
+        } catch (UnsupportedOperationException e) {
+            alpha = Double.NaN;
+        }
+
+        int sampleSize;
+
+        try {
+            sampleSize = test.getSampleSize();
+        } catch (UnsupportedOperationException e) {
+            sampleSize = -1;
+        }
+
+        StringBuilder buf = new StringBuilder();
+        buf.append(test.getClass().getName());
+        buf.append("\talpha = ").append(alpha);
+        buf.append("\tn = ").append(sampleSize);
+        buf.append("\tdata = ").append(Long.toHexString(dataHash()));
+        buf.append("\tvariables = ");
+
+        for (int i = 0; i < variables.size(); i++) {
+            if (i > 0) buf.append(',');
+            buf.append(variables.get(i).getName());
+        }
+
+        return buf.toString();
+    }
+
+    /**
+     * A hash of the values of the test's data set, or if it has none of its covariance matrix, or 0 if it has
+     * neither.
+     */
+    private long dataHash() {
+        DataModel data;
+
+        try {
+            data = test.getData();
+        } catch (UnsupportedOperationException e) {
+            data = null;
+        }
+
+        long hash = 0xcbf29ce484222325L;
+
+        if (data instanceof DataSet) {
+            DataSet dataSet = (DataSet) data;
+            hash = hash(hash, dataSet.getNumRows());
+            hash = hash(hash, dataSet.getNumColumns());
+
+            for (int j = 0; j < dataSet.getNumColumns(); j++) {
+                for (int i = 0; i < dataSet.getNumRows(); i++) {
+                    hash = hash(hash, Double.doubleToLongBits(dataSet.getDouble(i, j)));
+                }
+            }
+
+            return hash;
+        }
+
+        ICovarianceMatrix cov;
+
+        try {
+            cov = data instanceof ICovarianceMatrix ? (ICovarianceMatrix) data : test.getCov();
+        } catch (UnsupportedOperationException e) {
+            cov = null;
+        }
+
+        if (cov == null) {
+            return 0L;
+        }
+
+        TetradMatrix matrix = cov.getMatrix();
+        hash = hash(hash, cov.getSampleSize());
+        hash = hash(hash, matrix.rows());
+
+        for (int i = 0; i < matrix.rows(); i++) {
+            for (int j = 0; j < matrix.columns(); j++) {
+                hash = hash(hash, Double.doubleToLongBits(matrix.get(i, j)));
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * Folds the given value into the given hash (FNV-1a over the value's bytes).
+     */
+    private static long hash(long hash, long value) {
+        for (int k = 0; k < 8; k++) {
+            hash ^= (value >>> (8 * k)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
+
+    private Integer indexOf(String name) {
+        Node node = test.getVariable(name);
+        return node == null ? null : indices.get(node);
+    }
+}
+
+
+
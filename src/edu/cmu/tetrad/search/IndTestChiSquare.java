@@ -80,7 +80,12 @@ public final class IndTestChiSquare implements IndependenceTest {
      * values of conditioning variables, that coefs as 'determining."
      */
     private double determinationP = 0.99;
-    private HashSet<IndependenceFact> facts;
+
+    /**
+     * The facts tested since startRecordingFacts() was called, or null if they are not being recorded. Adds are
+     * synchronized on the set, since checkIndependence() may be called from several threads at once.
+     */
+    private volatile HashSet<IndependenceFact> facts;
 
     /**
      * Constructs a new independence checker to check conditional independence facts for discrete data using a g square
@@ -181,6 +186,19 @@ public final class IndTestChiSquare implements IndependenceTest {
      * @return true iff x _||_ y | z.
      */
     public boolean isIndependent(Node x, Node y, List<Node> z) {
+        IndependenceResult result = checkIndependence(x, y, z);
+        this.xSquare = result.getStatistic();
+        this.df = result.getDf();
+        this.pValue = result.getPValue();
+        return result.isIndependent();
+    }
+
+    /**
+     * Determines whether variable x is independent of variable y given a list of conditioning variables z, returning
+     * the statistic, p value and degrees of freedom along with the judgment. It may be called concurrently; the only
+     * state it changes is the set of recorded facts, if facts are being recorded, which is locked while a fact is added.
+     */
+    public IndependenceResult checkIndependence(Node x, Node y, List<Node> z) {
         NumberFormat nf = NumberFormatUtil.getInstance().getNumberFormat();
 
         if (z == null) {
@@ -213,9 +231,6 @@ public final class IndTestChiSquare implements IndependenceTest {
         }
 
         ChiSquareTest.Result result = chiSquareTest.calcChiSquare(testIndices);
-        this.xSquare = result.getXSquare();
-        this.df = result.getDf();
-        this.pValue = result.getPValue();
 
         if (result.isIndep()) {
             StringBuilder sb = new StringBuilder();
@@ -237,11 +252,15 @@ public final class IndTestChiSquare implements IndependenceTest {
 //            TetradLogger.getInstance().independenceDetails(sb.toString());
 //        }
 
+        HashSet<IndependenceFact> facts = this.facts;
+
         if (facts != null) {
-            this.facts.add(new IndependenceFact(x, y, z));
+            synchronized (facts) {
+                facts.add(new IndependenceFact(x, y, z));
+            }
         }
 
-        return result.isIndep();
+        return new IndependenceResult(result.isIndep(), result.getPValue(), result.getXSquare(), result.getDf());
     }
 
     public boolean isIndependent(Node x, Node y, Node... z) {
@@ -404,7 +423,6 @@ public final class IndTestChiSquare implements IndependenceTest {
 
     public void startRecordingFacts() {
         this.facts = new HashSet<IndependenceFact>();
-
     }
 
     public HashSet<IndependenceFact> getFacts() {
@@ -132,6 +132,11 @@ public final class IndTestConditionalCorrelation implements IndependenceTest {
         return independent;
     }
 
+    public synchronized IndependenceResult checkIndependence(Node x, Node y, List<Node> z) {
+        boolean independent = isIndependent(x, y, z);
+        return new IndependenceResult(independent, getPValue());
+    }
+
     public boolean isIndependent(Node x, Node y, Node... z) {
         return isIndependent(x, y, Arrays.asList(z));
     }
@@ -255,6 +255,11 @@ public final class IndTestCramerT implements IndependenceTest {
         return independent;
     }
 
+    public synchronized IndependenceResult checkIndependence(Node x, Node y, List<Node> z) {
+        boolean independent = isIndependent(x, y, z);
+        return new IndependenceResult(independent, getPValue());
+    }
+
     public boolean isIndependent(Node x, Node y, Node... z) {
         List<Node> zList = Arrays.asList(z);
         return isIndependent(x, y, zList);
@@ -23,6 +23,7 @@ package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.DSeparationOracle;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.IndependenceFact;
 import edu.cmu.tetrad.graph.Node;
@@ -34,7 +35,8 @@ import java.util.*;
 
 /**
  * Checks independence facts for variables associated with the nodes in a given graph by checking d-separation facts on
- * the underlying nodes.
+ * the underlying nodes. The facts are looked up in a DSeparationOracle for the graph, so the graph should not be
+ * changed once the test is in use.
  *
  * @author Joseph Ramsey
  */
@@ -59,6 +61,12 @@ public class IndTestDSep implements IndependenceTest {
      * The list of observed variables (i.e. variables for observed nodes).
      */
     private List<Node> observedVars;
+
+    /**
+     * Answers the d-separation queries; built from the graph when the first query is asked.
+     */
+    private volatile DSeparationOracle oracle;
+
     private HashSet<IndependenceFact> facts;
     private boolean verbose = false;
 
@@ -179,7 +187,7 @@ public class IndTestDSep implements IndependenceTest {
             nodesz.add(getNode(aZ));
         }
 
-        boolean dSeparated = getGraph().isDSeparatedFrom(nodex, nodey, nodesz);
+        boolean dSeparated = getOracle().isDSeparatedFrom(nodex, nodey, nodesz);
 
         if (verbose) {
             if (dSeparated) {
@@ -206,6 +214,13 @@ public class IndTestDSep implements IndependenceTest {
         return dSeparated;
     }
 
+    /**
+     * Checks the indicated d-separation fact. The p value is not meaningful here, so it is reported as Double.NaN.
+     */
+    public IndependenceResult checkIndependence(Node x, Node y, List<Node> z) {
+        return new IndependenceResult(isIndependent(x, y, z), Double.NaN);
+    }
+
     public boolean isIndependent(Node x, Node y, Node... z) {
         List<Node> zList = Arrays.asList(z);
         return isIndependent(x, y, zList);
@@ -240,7 +255,7 @@ public class IndTestDSep implements IndependenceTest {
 //            nodesz.add(node);
 //        }
 
-        return getGraph().isDSeparatedFrom(x, y, z);
+        return getOracle().isDSeparatedFrom(x, y, z);
     }
 
     /**
@@ -301,6 +316,27 @@ public class IndTestDSep implements IndependenceTest {
         return this.graph;
     }
 
+    /**
+     * Returns the d-separation oracle for the underlying graph. The graph is indexed when this is first called, so
+     * changes to the graph after that are not seen.
+     */
+    public DSeparationOracle getOracle() {
+        DSeparationOracle oracle = this.oracle;
+
+        if (oracle == null) {
+            synchronized (this) {
+                oracle = this.oracle;
+
+                if (oracle == null) {
+                    oracle = new DSeparationOracle(graph);
+                    this.oracle = oracle;
+                }
+            }
+        }
+
+        return oracle;
+    }
+
     /**
      * Returns the variable associated with the given node in the graph.
      */
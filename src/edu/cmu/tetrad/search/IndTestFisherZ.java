@@ -84,6 +84,11 @@ public final class IndTestFisherZ implements IndependenceTest {
     private Map<String, Node> nameMap;
     private TDistribution tDistribution;
 
+    /**
+     * Calculates partial correlations from the covariance matrix, reusing Cholesky factors between tests.
+     */
+    private final CholeskyPartialCorrelation partialCorrelation;
+
     //==========================CONSTRUCTORS=============================//
 
     /**
@@ -106,6 +111,7 @@ public final class IndTestFisherZ implements IndependenceTest {
         this.indexMap = indexMap(variables);
         this.nameMap = mapNames(variables);
         setAlpha(alpha);
+        this.partialCorrelation = new CholeskyPartialCorrelation(_covMatrix);
 
         this.dataSet = DataUtils.center(dataSet);
 
@@ -128,6 +134,7 @@ public final class IndTestFisherZ implements IndependenceTest {
         this.indexMap = indexMap(variables);
         this.nameMap = mapNames(variables);
         setAlpha(alpha);
+        this.partialCorrelation = new CholeskyPartialCorrelation(_covMatrix);
     }
 
     /**
@@ -141,6 +148,7 @@ public final class IndTestFisherZ implements IndependenceTest {
         this.indexMap = indexMap(variables);
         this.nameMap = mapNames(variables);
         setAlpha(alpha);
+        this.partialCorrelation = new CholeskyPartialCorrelation(_covMatrix);
     }
 
     //==========================PUBLIC METHODS=============================//
@@ -182,32 +190,31 @@ public final class IndTestFisherZ implements IndependenceTest {
      * @throws RuntimeException if a matrix singularity is encountered.
      */
     public boolean isIndependent(Node x, Node y, List<Node> z) {
-//        System.out.println("A");
+        IndependenceResult result = checkIndependence(x, y, z);
+        this.pValue = result.getPValue();
+        return result.isIndependent();
+    }
 
-        double r;
+    /**
+     * Determines whether variable x is independent of variable y given a list of conditioning variables z, returning
+     * the Fisher Z statistic and p value along with the judgment. Does not change the state of the test, so it may be
+     * called concurrently.
+     *
+     * @throws RuntimeException if a matrix singularity is encountered.
+     */
+    public IndependenceResult checkIndependence(Node x, Node y, List<Node> z) {
         int n = sampleSize();
+        int[] _z = new int[z.size()];
 
-        if (z.isEmpty()) {
-            Integer xi = indexMap.get(x);
-            Integer yi = indexMap.get(y);
-
-            if (xi == null || yi == null) {
-                xi = indexMap.get(nameMap.get(x.getName()));
-                yi = indexMap.get(nameMap.get(y.getName()));
-
-                if (xi == null || yi == null) {
-                    throw new IllegalArgumentException("Node not in map");
-                }
-            }
+        for (int i = 0; i < z.size(); i++) {
+            _z[i] = indexOf(z.get(i));
+        }
 
-            double a = _covMatrix.get(xi, xi);
-            double b = _covMatrix.get(xi, yi);
-            double d = _covMatrix.get(yi, yi);
+        double r = partialCorrelation.partialCorrelation(indexOf(x), indexOf(y), _z);
 
-            r = -b / sqrt(a * d);
-        } else {
-            TetradMatrix submatrix = DataUtils.subMatrix(_covMatrix, indexMap, x, y, z);
-            r = StatUtils.partialCorrelation(submatrix);
+        if (Double.isNaN(r)) {
+            throw new IllegalArgumentException("The partial correlation for independence fact " +
+                    SearchLogUtils.independenceFact(x, y, z) + " is undefined; the covariance matrix is singular.");
         }
 
         // Either dividing by a zero standard deviation (in which case it's dependent) or doing a regression
@@ -244,6 +251,8 @@ public final class IndTestFisherZ implements IndependenceTest {
 
         double fisherZ = Math.sqrt(n - 3 - z.size()) * 0.5 * (Math.log(1.0 + r) - Math.log(1.0 - r));
 
+        double pValue;
+
         if (Double.isInfinite(fisherZ)) {
             pValue = 0;
         }
@@ -262,14 +271,14 @@ public final class IndTestFisherZ implements IndependenceTest {
                     SearchLogUtils.independenceFactMsg(x, y, z, r)) ; //getPValue()));
         } else {
             if (pValueLogger != null) {
-                pValueLogger.println(getPValue());
+                pValueLogger.println(pValue);
             }
 
             TetradLogger.getInstance().log("dependencies",
-                    SearchLogUtils.dependenceFactMsg(x, y, z, getPValue()));
+                    SearchLogUtils.dependenceFactMsg(x, y, z, pValue));
         }
 
-        return independent;
+        return new IndependenceResult(independent, pValue, fisherZ, -1);
     }
 
     public boolean isIndependent(Node x, Node y, Node... z) {
@@ -410,6 +419,20 @@ public final class IndTestFisherZ implements IndependenceTest {
         return covMatrix;
     }
 
+    private int indexOf(Node node) {
+        Integer index = indexMap.get(node);
+
+        if (index == null) {
+            index = indexMap.get(nameMap.get(node.getName()));
+
+            if (index == null) {
+                throw new IllegalArgumentException("Node not in map: " + node);
+            }
+        }
+
+        return index;
+    }
+
     private Map<String, Node> mapNames(List<Node> variables) {
         Map<String, Node> nameMap = new ConcurrentHashMap<String, Node>();
 
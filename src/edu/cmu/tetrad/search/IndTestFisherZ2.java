@@ -22,7 +22,6 @@
 package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.*;
-import edu.cmu.tetrad.graph.GraphUtils;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.*;
 
@@ -30,7 +29,9 @@ import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Checks conditional independence of variable in a continuous data set using Fisher's Z test. See Spirtes, Glymour, and
@@ -53,6 +54,11 @@ public final class IndTestFisherZ2 implements IndependenceTest {
      */
     private List<Node> variables;
 
+    /**
+     * Map from variables to their indices in the covariance matrix.
+     */
+    private Map<Node, Integer> indexMap;
+
     /**
      * The significance level of the independence tests.
      */
@@ -102,6 +108,7 @@ public final class IndTestFisherZ2 implements IndependenceTest {
         List<Node> nodes = covMatrix.getVariables();
 
         this.variables = Collections.unmodifiableList(nodes);
+        this.indexMap = indexMap(covMatrix.getVariables());
         setAlpha(alpha);
 
         this.deterministicTest = new IndTestFisherZGeneralizedInverse(dataSet, alpha);
@@ -120,6 +127,7 @@ public final class IndTestFisherZ2 implements IndependenceTest {
         this.covMatrix = new CovarianceMatrix(dataSet);
 //        this._covMatrix = covMatrix.getMatrix();
         this.variables = Collections.unmodifiableList(variables);
+        this.indexMap = indexMap(covMatrix.getVariables());
         setAlpha(alpha);
 
         this.deterministicTest = new IndTestFisherZGeneralizedInverse(dataSet, alpha);
@@ -133,6 +141,7 @@ public final class IndTestFisherZ2 implements IndependenceTest {
         this.covMatrix = corrMatrix;
 //        this._covMatrix = corrMatrix.getMatrix();
         this.variables = Collections.unmodifiableList(corrMatrix.getVariables());
+        this.indexMap = indexMap(covMatrix.getVariables());
         setAlpha(alpha);
     }
 
@@ -175,83 +184,141 @@ public final class IndTestFisherZ2 implements IndependenceTest {
      * @throws RuntimeException if a matrix singularity is encountered.
      */
     public boolean isIndependent(Node x, Node y, List<Node> z) {
-        TetradMatrix submatrix = submatrix(x, y, z, covMatrix, variables);
-        double r = 0;
-
-        try {
-            r = StatUtils.partialCorrelation(submatrix);
-
-            if (Double.isNaN((r)) || r < -1. || r > 1.) throw new RuntimeException();
-        } catch (Exception e) {
-//            return false;
-            DepthChoiceGenerator gen = new DepthChoiceGenerator(z.size(), z.size());
-            int[] choice;
-
-            while ((choice = gen.next()) != null) {
-                try {
-                    List<Node> z2 = new ArrayList<Node>(z);
-                    z2.removeAll(GraphUtils.asList(choice, z));
-                    submatrix = DataUtils.subMatrix(covMatrix, x, y, z2);
-                    r = StatUtils.partialCorrelation(submatrix);
-                } catch (Exception e2) {
-                    continue;
-                }
-
-//                if (Double.isNaN(r)) continue;
-//
-//                if (r > 1.) r = 1.;
-//                 if (r < -1.) r = -1.;
-
-                if (Double.isNaN(r) || r < -1. || r > 1.) continue;
-
-                break;
-            }
-        }
+        double r = partialCorrelation(x, y, z);
 
         // Either dividing by a zero standard deviation (in which case it's dependent) or doing a regression
         // (effectively) with a multicolliarity
         if (Double.isNaN(r)) {
-            int[] _z = new int[z.size()];
-//            for (int i = 0; i < _z.length; i++) _z[i] = i + 2;
-//
-////            double varx = StatUtils.partialVariance(submatrix, 0, _z); // submatrix.get(0, 0);
-////            double vary = StatUtils.partialVariance(submatrix, 1, _z); //submatrix.get(1, 1);
-//
-//            double varx = submatrix.get(0, 0);
-//            double vary = submatrix.get(1, 1);
-//
-//            if (varx * vary == 0) {
             return false;
-//            }
         }
 
+        this.fisherZ = fisherZ(x, y, z, r);
+
+        boolean independent = getPValue() > alpha;
+        log(x, y, z, independent, getPValue());
+        return independent;
+    }
+
+    /**
+     * Like isIndependent, but returns the p value and Fisher's Z statistic along with the judgment and does not change
+     * the state of the test, so it may be called concurrently.
+     */
+    public IndependenceResult checkIndependence(Node x, Node y, List<Node> z) {
+        double r = partialCorrelation(x, y, z);
+
+        if (Double.isNaN(r)) {
+            return new IndependenceResult(false, Double.NaN);
+        }
+
+        double fisherZ = fisherZ(x, y, z, r);
+        double pValue = 2.0 * (1.0 - RandomUtil.getInstance().normalCdf(0, 1, Math.abs(fisherZ)));
+
+        boolean independent = pValue > alpha;
+        log(x, y, z, independent, pValue);
+        return new IndependenceResult(independent, pValue, fisherZ, -1);
+    }
+
+    /**
+     * Returns the partial correlation of x and y given z, calculated on this thread's submatrix workspace. If the
+     * submatrix for z is singular, successively smaller subsets of z are tried; if none works, NaN is returned.
+     */
+    private double partialCorrelation(Node x, Node y, List<Node> z) {
+        if (x == null || y == null || z == null) {
+            throw new NullPointerException();
+        }
+
+        int[] indices = new int[2 + z.size()];
+        indices[0] = indexOf(x);
+        indices[1] = indexOf(y);
+
+        for (int i = 0; i < z.size(); i++) {
+            indices[i + 2] = indexOf(z.get(i));
+        }
+
+        SubmatrixWorkspace workspace = SubmatrixWorkspace.getInstance();
+        workspace.subMatrix(covMatrix, indices);
+        double r = workspace.partialCorrelation();
+
+        if (!Double.isNaN(r) && r >= -1. && r <= 1.) {
+            return r;
+        }
+
+        DepthChoiceGenerator gen = new DepthChoiceGenerator(z.size(), z.size());
+        int[] choice;
+
+        while ((choice = gen.next()) != null) {
+            boolean[] removed = new boolean[z.size()];
+
+            for (int c : choice) {
+                removed[c] = true;
+            }
+
+            int[] indices2 = new int[2 + z.size() - choice.length];
+            indices2[0] = indices[0];
+            indices2[1] = indices[1];
+            int count = 2;
+
+            for (int i = 0; i < z.size(); i++) {
+                if (!removed[i]) {
+                    indices2[count++] = indices[i + 2];
+                }
+            }
+
+            workspace.subMatrix(covMatrix, indices2);
+            r = workspace.partialCorrelation();
+
+            if (Double.isNaN(r) || r < -1. || r > 1.) continue;
+
+            return r;
+        }
+
+        return Double.NaN;
+    }
+
+    private double fisherZ(Node x, Node y, List<Node> z, double r) {
         if (r > 1.) r = 1.;
         if (r < -1.) r = -1.;
 
-        this.fisherZ = Math.sqrt(sampleSize() - z.size() - 3.0) *
+        double fisherZ = Math.sqrt(sampleSize() - z.size() - 3.0) *
                 0.5 * (Math.log(1.0 + r) - Math.log(1.0 - r));
 
-        if (Double.isNaN(this.fisherZ)) {
+        if (Double.isNaN(fisherZ)) {
             throw new IllegalArgumentException("The Fisher's Z " +
                     "score for independence fact " + x + " _||_ " + y + " | " +
                     z + " is undefined. r = " + r);
         }
 
-        boolean independent = getPValue() > alpha;
+        return fisherZ;
+    }
 
+    private void log(Node x, Node y, List<Node> z, boolean independent, double pValue) {
         if (independent) {
             TetradLogger.getInstance().log("independencies",
-                    SearchLogUtils.independenceFactMsg(x, y, z, getPValue()));
+                    SearchLogUtils.independenceFactMsg(x, y, z, pValue));
         } else {
             TetradLogger.getInstance().log("dependencies",
-                    SearchLogUtils.dependenceFactMsg(x, y, z, getPValue()));
+                    SearchLogUtils.dependenceFactMsg(x, y, z, pValue));
+        }
+    }
+
+    private static Map<Node, Integer> indexMap(List<Node> variables) {
+        Map<Node, Integer> indexMap = new HashMap<Node, Integer>();
+
+        for (int i = 0; i < variables.size(); i++) {
+            indexMap.put(variables.get(i), i);
         }
 
-        return independent;
+        return indexMap;
     }
 
-    private TetradMatrix submatrix(Node x, Node y, List<Node> z, ICovarianceMatrix cov, List<Node> vars) {
-        return DataUtils2.subMatrix(cov, vars, x, y, z);
+    private int indexOf(Node node) {
+        Integer index = indexMap.get(node);
+
+        if (index == null) {
+            throw new IllegalArgumentException("Not a variable of this test: " + node);
+        }
+
+        return index;
     }
 
     public boolean isIndependent(Node x, Node y, Node... z) {
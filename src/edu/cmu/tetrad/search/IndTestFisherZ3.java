@@ -186,8 +186,15 @@ public final class IndTestFisherZ3 implements IndependenceTest {
      * @throws RuntimeException if a matrix singularity is encountered.
      */
     public boolean isIndependent(Node x, Node y, List<Node> z) {
-//        System.out.println("A");
+        return checkIndependence(x, y, z).isIndependent();
+    }
 
+    /**
+     * Determines whether variable x is independent of variable y given a list of conditioning variables z by the rank
+     * of the thresholded cross-covariance block. The rank test yields no single p value, so the result reports NaN.
+     * Does not change the state of the test, so it may be called concurrently.
+     */
+    public IndependenceResult checkIndependence(Node x, Node y, List<Node> z) {
         List<Node> aa = Collections.singletonList(x);
         List<Node> bb = Collections.singletonList(y);
         List<Node> cc = new ArrayList<Node>(z);
@@ -214,20 +221,13 @@ public final class IndTestFisherZ3 implements IndependenceTest {
                 double pValue = 2.0 * (1.0 - RandomUtil.getInstance().normalCdf(0, 1, abs(fisherZ)));
 
                 if (pValue > alpha) {
-                    System.out.println("Setting " + sub1.get(i, j) + " to zero");
                     sub1.set(i, j, 0);
                 }
             }
         }
 
-        System.out.println("sub1 = " + sub1);
-
         int rank = sub1.rank();
 
-        System.out.println("AUC = " + list1);
-        System.out.println("BUC = " + list2);
-        System.out.println("Rank = " + rank + " cc.size() = " + cc.size());
-
         boolean independent = rank == cc.size();
 
         if (independent) {
@@ -235,14 +235,14 @@ public final class IndTestFisherZ3 implements IndependenceTest {
                     SearchLogUtils.independenceFactMsg(x, y, z, 0)) ; //getPValue()));
         } else {
             if (pValueLogger != null) {
-                pValueLogger.println(getPValue());
+                pValueLogger.println(Double.NaN);
             }
 
             TetradLogger.getInstance().log("dependencies",
                     SearchLogUtils.dependenceFactMsg(x, y, z, 0));
         }
 
-        return independent;
+        return new IndependenceResult(independent, Double.NaN);
     }
 
     /**
@@ -250,7 +250,6 @@ public final class IndTestFisherZ3 implements IndependenceTest {
      */
     public static TetradMatrix subMatrix(ICovarianceMatrix m, List<Node> x, List<Node> y) {
         List<Node> variables = m.getVariables();
-        TetradMatrix _covMatrix = m.getMatrix();
 
         int[] indicesx = new int[x.size()];
         int count = 0;
@@ -266,7 +265,16 @@ public final class IndTestFisherZ3 implements IndependenceTest {
             indicesy[count++] = variables.indexOf(node);
         }
 
-        return _covMatrix.getSelection(indicesx, indicesy);
+        // Only the values needed are copied; getMatrix() would copy the whole matrix.
+        TetradMatrix submatrix = new TetradMatrix(indicesx.length, indicesy.length);
+
+        for (int i = 0; i < indicesx.length; i++) {
+            for (int j = 0; j < indicesy.length; j++) {
+                submatrix.set(i, j, m.getValue(indicesx[i], indicesy[j]));
+            }
+        }
+
+        return submatrix;
     }
 
     public boolean isIndependent(Node x, Node y, Node... z) {
@@ -80,10 +80,18 @@ public class IndTestFisherZBootstrap implements IndependenceTest {
     }
 
     public boolean isIndependent(Node x, Node y, List<Node> z) {
+        return checkIndependence(x, y, z).isIndependent();
+    }
+
+    /**
+     * Judges independence by majority vote of the Fisher Z tests on the bootstrap samples. Does not change the state
+     * of the test, so it may be called concurrently.
+     */
+    public IndependenceResult checkIndependence(Node x, Node y, List<Node> z) {
         int[] independentGuys = new int[numBootstrapSamples];
 
         for (int i = 0; i < numBootstrapSamples; i++) {
-            boolean independent = tests[i].isIndependent(x, y, z);
+            boolean independent = tests[i].checkIndependence(x, y, z).isIndependent();
             independentGuys[i] = independent ? 1 : 0;
         }
 
@@ -99,7 +107,7 @@ public class IndTestFisherZBootstrap implements IndependenceTest {
                     SearchLogUtils.dependenceFactMsg(x, y, z, getPValue()));
         }
 
-        return independent;
+        return new IndependenceResult(independent, getPValue());
     }
 
     public boolean isIndependent(Node x, Node y, Node... z) {
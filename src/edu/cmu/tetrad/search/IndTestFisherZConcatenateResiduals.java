@@ -109,6 +109,16 @@ public final class IndTestFisherZConcatenateResiduals implements IndependenceTes
      * @throws RuntimeException if a matrix singularity is encountered.
      */
     public boolean isIndependent(Node x, Node y, List<Node> z) {
+        IndependenceResult result = checkIndependence(x, y, z);
+        this.pValue = result.getPValue();
+        return result.isIndependent();
+    }
+
+    /**
+     * Tests x _||_ y | z by the Fisher Z test on the concatenated residuals of x and y regressed on z in each data
+     * set. The p value is computed locally, so this may be called concurrently.
+     */
+    public IndependenceResult checkIndependence(Node x, Node y, List<Node> z) {
 
         // Calculate the residual of x and y conditional on z for each data set and concatenate them.
         double[] residualsX = residuals(x, z);
@@ -148,26 +158,25 @@ public final class IndTestFisherZConcatenateResiduals implements IndependenceTes
                 0.5 * (Math.log(1.0 + r) - Math.log(1.0 - r));
 
         if (Double.isNaN(fisherZ)) {
-            return false;
+            return new IndependenceResult(false, Double.NaN);
 //            throw new IllegalArgumentException("The Fisher's Z " +
 //                    "score for independence fact " + x + " _||_ " + y + " | " +
 //                    z + " is undefined. r = " + r);
         }
 
         double pvalue = 2.0 * (1.0 - RandomUtil.getInstance().normalCdf(0, 1, Math.abs(fisherZ)));
-        this.pValue = pvalue;
         boolean independent = pvalue > alpha;
 
         if (independent) {
             TetradLogger.getInstance().log("independencies",
-                    SearchLogUtils.independenceFactMsg(x, y, z, getPValue()));
-            System.out.println(SearchLogUtils.independenceFactMsg(x, y, z, getPValue()));
+                    SearchLogUtils.independenceFactMsg(x, y, z, pvalue));
+            System.out.println(SearchLogUtils.independenceFactMsg(x, y, z, pvalue));
         } else {
             TetradLogger.getInstance().log("dependencies",
-                    SearchLogUtils.dependenceFactMsg(x, y, z, getPValue()));
+                    SearchLogUtils.dependenceFactMsg(x, y, z, pvalue));
         }
 
-        return independent;
+        return new IndependenceResult(independent, pvalue, fisherZ, -1);
 
     }
 
@@ -94,6 +94,16 @@ public final class IndTestFisherZFisherPValue implements IndependenceTest {
     }
 
     public boolean isIndependent(Node x, Node y, List<Node> z) {
+        IndependenceResult result = checkIndependence(x, y, z);
+        this.pValue = result.getPValue();
+        return result.isIndependent();
+    }
+
+    /**
+     * Combines the Fisher Z p values of x _||_ y | z in the data sets by Fisher's method. The p value is computed
+     * locally, so this may be called concurrently.
+     */
+    public IndependenceResult checkIndependence(Node x, Node y, List<Node> z) {
         int[] all = new int[z.size() + 2];
         all[0] = variablesMap.get(x);
         all[1] = variablesMap.get(y);
@@ -128,20 +138,19 @@ public final class IndTestFisherZFisherPValue implements IndependenceTest {
         }
 
         double p = 1.0 - ProbUtils.chisqCdf(tf, 2 * n);
-        this.pValue = p;
 
         boolean independent = p > alpha;
 
         if (independent) {
             TetradLogger.getInstance().log("independencies",
-                    SearchLogUtils.independenceFactMsg(x, y, z, getPValue()));
-            System.out.println(SearchLogUtils.independenceFactMsg(x, y, z, getPValue()));
+                    SearchLogUtils.independenceFactMsg(x, y, z, p));
+            System.out.println(SearchLogUtils.independenceFactMsg(x, y, z, p));
         } else {
             TetradLogger.getInstance().log("dependencies",
-                    SearchLogUtils.dependenceFactMsg(x, y, z, getPValue()));
+                    SearchLogUtils.dependenceFactMsg(x, y, z, p));
         }
 
-        return independent;
+        return new IndependenceResult(independent, p, tf, 2 * n);
     }
 
     private static List<Double> getAvailablePValues(List<IndependenceTest> independenceTests, Node x, Node y, List<Node> condSet) {
@@ -155,8 +164,9 @@ public final class IndTestFisherZFisherPValue implements IndependenceTest {
             }
 
             try {
-                test.isIndependent(test.getVariable(x.getName()), test.getVariable(y.getName()), localCondSet);
-                allPValues.add(test.getPValue());
+                IndependenceResult result = test.checkIndependence(test.getVariable(x.getName()),
+                        test.getVariable(y.getName()), localCondSet);
+                allPValues.add(result.getPValue());
             } catch (Exception e) {
                 // Skip that test.
             }
@@ -143,6 +143,19 @@ public final class IndTestFisherZGeneralizedInverse implements IndependenceTest
      * @throws RuntimeException if a matrix singularity is encountered.
      */
     public boolean isIndependent(Node xVar, Node yVar, List<Node> z) {
+        IndependenceResult result = checkIndependence(xVar, yVar, z);
+        this.fishersZ = result.getStatistic();
+        return result.isIndependent();
+    }
+
+    /**
+     * Determines whether variable x is independent of variable y given a list of conditioning variables z, returning
+     * the Fisher Z statistic and p value along with the judgment. Does not change the state of the test, so it may be
+     * called concurrently.
+     *
+     * @throws RuntimeException if a matrix singularity is encountered.
+     */
+    public IndependenceResult checkIndependence(Node xVar, Node yVar, List<Node> z) {
         if (z == null) {
             throw new NullPointerException();
         }
@@ -198,25 +211,26 @@ public final class IndTestFisherZGeneralizedInverse implements IndependenceTest
         }
 
         if (Double.isNaN(r)) {
-            TetradLogger.getInstance().log("independencies", SearchLogUtils.independenceFactMsg(xVar, yVar, z, getPValue()));
-            return true;
+            TetradLogger.getInstance().log("independencies", SearchLogUtils.independenceFactMsg(xVar, yVar, z, Double.NaN));
+            return new IndependenceResult(true, Double.NaN);
         }
 
         if (r > 1) r = 1;
         if (r < -1) r = -1;
 
-        this.fishersZ = Math.sqrt(sampleSize() - z.size() - 3.0) *
+        double fishersZ = Math.sqrt(sampleSize() - z.size() - 3.0) *
                 0.5 * (Math.log(1.0 + r) - Math.log(1.0 - r));
 
 //        this.fishersZ = 0.5 * Math.sqrt(sampleSize() - z.size() - 3.0) *
 //                Math.log(Math.abs(1.0 + r) / Math.abs(1.0 - r));
 
-        if (Double.isNaN(this.fishersZ)) {
+        if (Double.isNaN(fishersZ)) {
             throw new IllegalArgumentException("The Fisher's Z " +
                     "score for independence fact " + xVar + " _||_ " + yVar +
                     " | " + z + " is undefined.");
         }
 
+        double pValue = 2.0 * (1.0 - RandomUtil.getInstance().normalCdf(0, 1, Math.abs(fishersZ)));
         boolean indFisher = true;
 
         //System.out.println("thresh = " + thresh);
@@ -226,12 +240,12 @@ public final class IndTestFisherZGeneralizedInverse implements IndependenceTest
         }
 
         if (indFisher) {
-            TetradLogger.getInstance().log("independencies", SearchLogUtils.independenceFactMsg(xVar, yVar, z, getPValue()));
+            TetradLogger.getInstance().log("independencies", SearchLogUtils.independenceFactMsg(xVar, yVar, z, pValue));
         } else {
-            TetradLogger.getInstance().log("independencies", SearchLogUtils.independenceFactMsg(xVar, yVar, z, getPValue()));
+            TetradLogger.getInstance().log("independencies", SearchLogUtils.independenceFactMsg(xVar, yVar, z, pValue));
         }
 
-        return indFisher;
+        return new IndependenceResult(indFisher, pValue, fishersZ, -1);
     }
 
     public boolean isIndependent(Node x, Node y, Node... z) {
@@ -94,6 +94,16 @@ public final class IndTestFisherZPercentIndependent implements IndependenceTest
     }
 
     public boolean isIndependent(Node x, Node y, List<Node> z) {
+        IndependenceResult result = checkIndependence(x, y, z);
+        this.pValue = result.getPValue();
+        return result.isIndependent();
+    }
+
+    /**
+     * Takes the p value at the given percentile of the Fisher Z p values of x _||_ y | z in the data sets. The p value
+     * is computed locally, so this may be called concurrently.
+     */
+    public IndependenceResult checkIndependence(Node x, Node y, List<Node> z) {
         int[] all = new int[z.size() + 2];
         all[0] = variablesMap.get(x);
         all[1] = variablesMap.get(y);
@@ -130,24 +140,24 @@ public final class IndTestFisherZPercentIndependent implements IndependenceTest
 
         Collections.sort(pValues);
         int index = (int) round((1.0 - percent) * pValues.size());
-        this.pValue = pValues.get(index);
+        double pValue = pValues.get(index);
 
 //        if (this.pValue == 0) {
 //            System.out.println("Zero pvalue "+ SearchLogUtils.independenceFactMsg(x, y, z, getPValue()));
 //        }
 
-        boolean independent = this.pValue > _cutoff;
+        boolean independent = pValue > _cutoff;
 
         if (independent) {
             TetradLogger.getInstance().log("independencies",
-                    SearchLogUtils.independenceFactMsg(x, y, z, getPValue()));
+                    SearchLogUtils.independenceFactMsg(x, y, z, pValue));
 //            System.out.println(SearchLogUtils.independenceFactMsg(x, y, z, getPValue()));
         } else {
             TetradLogger.getInstance().log("dependencies",
-                    SearchLogUtils.dependenceFactMsg(x, y, z, getPValue()));
+                    SearchLogUtils.dependenceFactMsg(x, y, z, pValue));
         }
 
-        return independent;
+        return new IndependenceResult(independent, pValue);
     }
 
     public boolean isIndependent(Node x, Node y, Node... z) {
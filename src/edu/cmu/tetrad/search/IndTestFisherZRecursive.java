@@ -48,7 +48,11 @@ public final class IndTestFisherZRecursive implements IndependenceTest {
      * The matrix out of the cov matrix.
      */
     private final TetradMatrix _covMatrix;
-    private final RecursivePartialCorrelation recursivePartialCorrelation;
+
+    /**
+     * Calculates partial correlations from the covariance matrix, reusing Cholesky factors between tests.
+     */
+    private final CholeskyPartialCorrelation partialCorrelation;
 
     /**
      * The variables of the covariance matrix, in order. (Unmodifiable list.)
@@ -104,7 +108,7 @@ public final class IndTestFisherZRecursive implements IndependenceTest {
 
         this.dataSet = DataUtils.center(dataSet);
 
-        this.recursivePartialCorrelation = new RecursivePartialCorrelation(variables, _covMatrix);
+        this.partialCorrelation = new CholeskyPartialCorrelation(_covMatrix);
     }
 
     /**
@@ -123,7 +127,7 @@ public final class IndTestFisherZRecursive implements IndependenceTest {
         this.indexMap = indexMap(variables);
         this.nameMap = mapNames(variables);
         setAlpha(alpha);
-        this.recursivePartialCorrelation = new RecursivePartialCorrelation(variables, _covMatrix);
+        this.partialCorrelation = new CholeskyPartialCorrelation(_covMatrix);
     }
 
     /**
@@ -137,7 +141,7 @@ public final class IndTestFisherZRecursive implements IndependenceTest {
         this.indexMap = indexMap(variables);
         this.nameMap = mapNames(variables);
         setAlpha(alpha);
-        this.recursivePartialCorrelation = new RecursivePartialCorrelation(variables, _covMatrix);
+        this.partialCorrelation = new CholeskyPartialCorrelation(_covMatrix);
     }
 
     //==========================PUBLIC METHODS=============================//
@@ -179,6 +183,19 @@ public final class IndTestFisherZRecursive implements IndependenceTest {
      * @throws RuntimeException if a matrix singularity is encountered.
      */
     public boolean isIndependent(Node x, Node y, List<Node> z) {
+        IndependenceResult result = checkIndependence(x, y, z);
+        this.pValue = result.getPValue();
+        return result.isIndependent();
+    }
+
+    /**
+     * Determines whether variable x is independent of variable y given a list of conditioning variables z, returning
+     * the Fisher Z statistic and p value along with the judgment. Does not change the state of the test, so it may be
+     * called concurrently.
+     *
+     * @throws RuntimeException if a matrix singularity is encountered.
+     */
+    public IndependenceResult checkIndependence(Node x, Node y, List<Node> z) {
 //        System.out.println("A");
 
         double r;
@@ -207,7 +224,18 @@ public final class IndTestFisherZRecursive implements IndependenceTest {
 //            r = StatUtils.partialCorrelation(submatrix);
 //        }
 
-        r = recursivePartialCorrelation.corr(x, y, z);
+        int[] _z = new int[z.size()];
+
+        for (int i = 0; i < z.size(); i++) {
+            _z[i] = indexOf(z.get(i));
+        }
+
+        r = partialCorrelation.partialCorrelation(indexOf(x), indexOf(y), _z);
+
+        if (Double.isNaN(r)) {
+            throw new IllegalArgumentException("The partial correlation for independence fact " +
+                    SearchLogUtils.independenceFact(x, y, z) + " is undefined; the covariance matrix is singular.");
+        }
 
         // Either dividing by a zero standard deviation (in which case it's dependent) or doing a regression
 //        // (effectively) with a multicolliarity.. or missing values in the data!
@@ -246,23 +274,21 @@ public final class IndTestFisherZRecursive implements IndependenceTest {
 
         double pValue = 2.0 * (1.0 - RandomUtil.getInstance().normalCdf(0, 1, Math.abs(fisherZ)));
 
-        this.pValue = pValue;
-
         boolean independent = pValue > alpha;
 
         if (independent) {
             TetradLogger.getInstance().log("independencies",
-                    SearchLogUtils.independenceFactMsg(x, y, z, getPValue()));
+                    SearchLogUtils.independenceFactMsg(x, y, z, pValue));
         } else {
             if (pValueLogger != null) {
-                pValueLogger.println(getPValue());
+                pValueLogger.println(pValue);
             }
 
             TetradLogger.getInstance().log("dependencies",
-                    SearchLogUtils.dependenceFactMsg(x, y, z, getPValue()));
+                    SearchLogUtils.dependenceFactMsg(x, y, z, pValue));
         }
 
-        return independent;
+        return new IndependenceResult(independent, pValue, fisherZ, -1);
     }
 
     public boolean isIndependent(Node x, Node y, Node... z) {
@@ -403,6 +429,20 @@ public final class IndTestFisherZRecursive implements IndependenceTest {
         return covMatrix;
     }
 
+    private int indexOf(Node node) {
+        Integer index = indexMap.get(node);
+
+        if (index == null) {
+            index = indexMap.get(nameMap.get(node.getName()));
+
+            if (index == null) {
+                throw new IllegalArgumentException("Node not in map: " + node);
+            }
+        }
+
+        return index;
+    }
+
     private Map<String, Node> mapNames(List<Node> variables) {
         Map<String, Node> nameMap = new ConcurrentHashMap<String, Node>();
 
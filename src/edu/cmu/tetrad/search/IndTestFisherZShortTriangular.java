@@ -176,6 +176,19 @@ public final class IndTestFisherZShortTriangular implements IndependenceTest {
      * @throws RuntimeException if a matrix singularity is encountered.
      */
     public boolean isIndependent(Node x, Node y, List<Node> z) {
+        IndependenceResult result = checkIndependence(x, y, z);
+        this.fisherZ = result.getStatistic();
+        return result.isIndependent();
+    }
+
+    /**
+     * Determines whether variable x is independent of variable y given a list of conditioning variables z, returning
+     * the Fisher Z statistic and p value along with the judgment. Does not change the state of the test, so it may be
+     * called concurrently.
+     *
+     * @throws RuntimeException if a matrix singularity is encountered.
+     */
+    public IndependenceResult checkIndependence(Node x, Node y, List<Node> z) {
         TetradMatrix submatrix = subMatrix(x, y, z);
         double r = 0;
 
@@ -221,33 +234,34 @@ public final class IndTestFisherZShortTriangular implements IndependenceTest {
 //            double vary = submatrix.get(1, 1);
 //
 //            if (varx * vary == 0) {
-            return true;
+            return new IndependenceResult(true, Double.NaN);
 //            }
         }
 
         if (r > 1.) r = 1.;
         if (r < -1.) r = -1.;
 
-        this.fisherZ = Math.sqrt(sampleSize() - z.size() - 3.0) *
+        double fisherZ = Math.sqrt(sampleSize() - z.size() - 3.0) *
                 0.5 * (Math.log(1.0 + r) - Math.log(1.0 - r));
 
-        if (Double.isNaN(this.fisherZ)) {
+        if (Double.isNaN(fisherZ)) {
             throw new IllegalArgumentException("The Fisher's Z " +
                     "score for independence fact " + x + " _||_ " + y + " | " +
                     z + " is undefined. r = " + r);
         }
 
-        boolean independent = getPValue() > alpha;
+        double pValue = 2.0 * (1.0 - RandomUtil.getInstance().normalCdf(0, 1, Math.abs(fisherZ)));
+        boolean independent = pValue > alpha;
 
         if (independent) {
             TetradLogger.getInstance().log("independencies",
-                    SearchLogUtils.independenceFactMsg(x, y, z, getPValue()));
+                    SearchLogUtils.independenceFactMsg(x, y, z, pValue));
         } else {
             TetradLogger.getInstance().log("dependencies",
-                    SearchLogUtils.dependenceFactMsg(x, y, z, getPValue()));
+                    SearchLogUtils.dependenceFactMsg(x, y, z, pValue));
         }
 
-        return independent;
+        return new IndependenceResult(independent, pValue, fisherZ, -1);
     }
 
     private TetradMatrix subMatrix(Node x, Node y, List<Node> z) {
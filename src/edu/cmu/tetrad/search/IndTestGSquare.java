@@ -171,6 +171,18 @@ public final class IndTestGSquare implements IndependenceTest {
      * @return true iff x _||_ y | z.
      */
     public boolean isIndependent(Node x, Node y, List<Node> z) {
+        IndependenceResult result = checkIndependence(x, y, z);
+        this.gSquare = result.getStatistic();
+        this.pValue = result.getPValue();
+        return result.isIndependent();
+    }
+
+    /**
+     * Determines whether variable x is independent of variable y given a list of conditioning variables z, returning
+     * the statistic, p value and degrees of freedom along with the judgment. Does not change the state of the test, so
+     * it may be called concurrently.
+     */
+    public IndependenceResult checkIndependence(Node x, Node y, List<Node> z) {
         if (x == null) {
             throw new NullPointerException();
         }
@@ -211,8 +223,6 @@ public final class IndTestGSquare implements IndependenceTest {
         //        System.out.println("Testing " + x + " _||_ " + y + " | " + z);
 
         GSquareTest.Result result = gSquareTest.calcGSquare(testIndices);
-        this.gSquare = result.getGSquare();
-        this.pValue = result.getPValue();
 
         if (result.isIndep()) {
             StringBuilder sb = new StringBuilder();
@@ -232,7 +242,7 @@ public final class IndTestGSquare implements IndependenceTest {
             TetradLogger.getInstance().log("independencies", sb.toString());
         }
 
-        return result.isIndep();
+        return new IndependenceResult(result.isIndep(), result.getPValue(), result.getGSquare(), result.getDf());
     }
 
     public boolean isIndependent(Node x, Node y, Node... z) {
@@ -739,6 +739,11 @@ public final class IndTestHsic implements IndependenceTest {
         return empHSIC;
     }
 
+    public synchronized IndependenceResult checkIndependence(Node x, Node y, List<Node> z) {
+        boolean independent = isIndependent(x, y, z);
+        return new IndependenceResult(independent, getPValue());
+    }
+
     public boolean isIndependent(Node x, Node y, Node... z) {
         return isIndependent(x, y, Arrays.asList(z));
     }
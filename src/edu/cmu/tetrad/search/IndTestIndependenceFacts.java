@@ -76,6 +76,11 @@ public final class IndTestIndependenceFacts implements IndependenceTest {
         return independent;
     }
 
+    public synchronized IndependenceResult checkIndependence(Node x, Node y, List<Node> z) {
+        boolean independent = isIndependent(x, y, z);
+        return new IndependenceResult(independent, getPValue());
+    }
+
     public boolean isIndependent(Node x, Node y, Node... z) {
         List<Node> zz = new ArrayList<Node>();
 
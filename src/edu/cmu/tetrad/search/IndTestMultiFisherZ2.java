@@ -1154,6 +1154,13 @@ public final class IndTestMultiFisherZ2 implements IndependenceTest {
         return submatrix;
     }
 
+    /**
+     * The test computes no single p value, so the result reports NaN.
+     */
+    public IndependenceResult checkIndependence(Node x, Node y, List<Node> z) {
+        return new IndependenceResult(isIndependent(x, y, z), Double.NaN);
+    }
+
     public boolean isIndependent(Node x, Node y, Node... z) {
         return isIndependent(x, y, Arrays.asList(z));
     }
@@ -429,6 +429,14 @@ public final class IndTestMultiFisherZ4 implements IndependenceTest {
         return count;
     }
 
+    /**
+     * Synchronized because the test writes its trace to a shared output stream. The test computes no single p value,
+     * so the result reports NaN.
+     */
+    public synchronized IndependenceResult checkIndependence(Node x, Node y, List<Node> z) {
+        return new IndependenceResult(isIndependent(x, y, z), Double.NaN);
+    }
+
     public boolean isIndependent(Node x, Node y, Node... z) {
         return isIndependent(x, y, Arrays.asList(z));
     }
@@ -74,6 +74,16 @@ public final class IndTestPartialCorrelation implements IndependenceTest {
 
     CovarianceMatrix cov;
 
+    /**
+     * Index of each variable in the covariance matrix.
+     */
+    private final Map<Node, Integer> indexMap;
+
+    /**
+     * Calculates partial correlations from the covariance matrix, reusing Cholesky factors between tests.
+     */
+    private final CholeskyPartialCorrelation partialCorrelation;
+
 
     //==========================CONSTRUCTORS=============================//
 
@@ -83,6 +93,8 @@ public final class IndTestPartialCorrelation implements IndependenceTest {
         this.sampleSize = data.getNumRows();
         this.variables = new ArrayList<Node>(data.getVariables());
         this.cov = new CovarianceMatrix(data);
+        this.indexMap = indexMap(cov.getVariables());
+        this.partialCorrelation = new CholeskyPartialCorrelation(cov.getMatrix());
     }
 
     //==========================PUBLIC METHODS=============================//
@@ -95,34 +107,37 @@ public final class IndTestPartialCorrelation implements IndependenceTest {
     }
 
     public boolean isIndependent(Node x, Node y, List<Node> z) {
-        return indepCollection(x, y, alpha);
+        IndependenceResult result = checkIndependence(x, y, z);
+        this.pValue = result.getPValue();
+        return result.isIndependent();
     }
 
-    private boolean indepCollection(Node x, Node y, double alpha) {
-        TetradMatrix submatrix = cov.getMatrix();
-
-        TetradMatrix inverse;
+    /**
+     * Tests x _||_ y | z using the Fisher Z transform of the partial correlation of x and y given z. Does not change
+     * the state of the test, so it may be called concurrently.
+     *
+     * @throws IllegalArgumentException if the covariance matrix of x, y and z is singular.
+     */
+    public IndependenceResult checkIndependence(Node x, Node y, List<Node> z) {
+        int[] _z = new int[z.size()];
 
-        try {
-            inverse = submatrix.inverse();
-        } catch (Exception e) {
-            throw new IllegalArgumentException();
+        for (int i = 0; i < z.size(); i++) {
+            _z[i] = indexOf(z.get(i));
         }
 
-        int i = variables.indexOf(x);
-        int j = variables.indexOf(y);
+        double r = partialCorrelation.partialCorrelation(indexOf(x), indexOf(y), _z);
 
-        double a = -1.0 * inverse.get(i, j);
-        double v0 = inverse.get(i, i);
-        double v1 = inverse.get(j, j);
-        double b = Math.sqrt(v0 * v1);
+        if (Double.isNaN(r)) {
+            throw new IllegalArgumentException("The partial correlation for independence fact " +
+                    SearchLogUtils.independenceFact(x, y, z) + " is undefined; the covariance matrix is singular.");
+        }
 
-        double r = a / b;
+        if (r > 1.) r = 1.;
+        if (r < -1.) r = -1.;
 
-        double fisherZ = Math.sqrt(cov.getSampleSize() - 3 - (variables.size() - 2)) * 0.5 * (Math.log(1.0 + r) - Math.log(1.0 - r));
+        double fisherZ = Math.sqrt(sampleSize - 3 - z.size()) * 0.5 * (Math.log(1.0 + r) - Math.log(1.0 - r));
         double p = 2.0 * (1.0 - RandomUtil.getInstance().normalCdf(0, 1, abs(fisherZ)));
-        return p > alpha;
-
+        return new IndependenceResult(p > alpha, p, fisherZ, -1);
     }
 
     private List<Node> listVars(int[] indices, List<Node> vars) {
@@ -261,6 +276,16 @@ public final class IndTestPartialCorrelation implements IndependenceTest {
 
     //==========================PRIVATE METHODS============================//
 
+    private int indexOf(Node node) {
+        Integer index = indexMap.get(node);
+
+        if (index == null) {
+            throw new IllegalArgumentException("Node not in map: " + node);
+        }
+
+        return index;
+    }
+
     private Map<String, Node> mapNames(List<Node> variables) {
         Map<String, Node> nameMap = new ConcurrentHashMap<String, Node>();
 
@@ -0,0 +1,98 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+/**
+ * Stores the result of a single conditional independence test--whether independence was judged to hold, together with
+ * the p value, test statistic and degrees of freedom the judgment was based on. Results are immutable, so they may be
+ * handed between threads freely.
+ *
+ * @author Joseph Ramsey
+ * @see IndependenceTest#checkIndependence
+ */
+public final class IndependenceResult {
+
+    /**
+     * True iff independence was judged to hold.
+     */
+    private final boolean independent;
+
+    /**
+     * The p value of the test, or Double.NaN if a p value is not meaningful for the test.
+     */
+    private final double pValue;
+
+    /**
+     * The test statistic, or Double.NaN if not available.
+     */
+    private final double statistic;
+
+    /**
+     * The degrees of freedom of the test, or -1 if not available.
+     */
+    private final int df;
+
+    /**
+     * Constructs a result for a test that reports no statistic or degrees of freedom.
+     */
+    public IndependenceResult(boolean independent, double pValue) {
+        this(independent, pValue, Double.NaN, -1);
+    }
+
+    /**
+     * Constructs a result using the given parameters.
+     */
+    public IndependenceResult(boolean independent, double pValue, double statistic, int df) {
+        this.independent = independent;
+        this.pValue = pValue;
+        this.statistic = statistic;
+        this.df = df;
+    }
+
+    public boolean isIndependent() {
+        return independent;
+    }
+
+    public boolean isDependent() {
+        return !independent;
+    }
+
+    public double getPValue() {
+        return pValue;
+    }
+
+    public double getStatistic() {
+        return statistic;
+    }
+
+    public int getDf() {
+        return df;
+    }
+
+    public String toString() {
+        return (independent ? "Independent" : "Dependent") + " p = " + pValue + " statistic = " + statistic
+                + " df = " + df;
+    }
+}
+
+
+
@@ -0,0 +1,289 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stores a map from independence questions x _||_ y | z to their results, with variables given by index.
+ * <p/>
+ * Keys are stored in canonical form as primitive int arrays of the form [min(x, y), max(x, y), sorted z...] in open
+ * addressing (linear probing) tables--SortedKeyTables, as in LocalScoreCache--so x _||_ y | z and y _||_ x | z' share
+ * an entry when z' is a permutation of z. Conditioning arrays are assumed not to contain duplicates.
+ * <p/>
+ * The table is split into segments, each with its own lock, so that threads running tests concurrently mostly do not
+ * contend. The cache may be bounded in size, in which case entries are evicted segment by segment using the CLOCK
+ * (second chance) policy. Hits, misses and evictions are counted.
+ *
+ * @author Joseph Ramsey
+ * @see LocalScoreCache
+ */
+public class IndependenceResultCache {
+
+    /**
+     * Number of segments; a power of two.
+     */
+    private static final int NUM_SEGMENTS = 16;
+
+    /**
+     * Initial number of slots in each segment, for unbounded caches.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The maximum number of entries kept; Integer.MAX_VALUE if unbounded.
+     */
+    private final int maxSize;
+
+    private final Segment[] segments;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructs an unbounded cache.
+     */
+    public IndependenceResultCache() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a cache that holds at most about <code>maxSize</code> entries, evicting old entries when full. The
+     * bound is divided evenly among the segments.
+     */
+    public IndependenceResultCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Max size must be at least 1: " + maxSize);
+        }
+
+        this.maxSize = maxSize;
+        this.segments = new Segment[NUM_SEGMENTS];
+
+        int segmentMaxSize = maxSize == Integer.MAX_VALUE ? Integer.MAX_VALUE
+                : Math.max(1, (maxSize + NUM_SEGMENTS - 1) / NUM_SEGMENTS);
+
+        for (int i = 0; i < NUM_SEGMENTS; i++) {
+            segments[i] = new Segment(segmentMaxSize);
+        }
+    }
+
+    /**
+     * Stores the result of x _||_ y | z, replacing any result already stored for it.
+     */
+    public void put(int x, int y, int[] z, IndependenceResult result) {
+        if (result == null) {
+            throw new NullPointerException("Result must not be null.");
+        }
+
+        int hash = hash(x, y, z);
+        segmentFor(hash).put(hash, Math.min(x, y), Math.max(x, y), z, result);
+    }
+
+    /**
+     * Returns the stored result of x _||_ y | z, or null if it is not in the cache.
+     */
+    public IndependenceResult get(int x, int y, int[] z) {
+        int hash = hash(x, y, z);
+        IndependenceResult result = segmentFor(hash).get(hash, Math.min(x, y), Math.max(x, y), z);
+
+        if (result == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+
+        return result;
+    }
+
+    /**
+     * Removes all entries and resets the hit, miss and eviction counts.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+
+        hits.set(0);
+        misses.set(0);
+    }
+
+    public int size() {
+        int size = 0;
+
+        for (Segment segment : segments) {
+            size += segment.count();
+        }
+
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        long evictions = 0;
+
+        for (Segment segment : segments) {
+            evictions += segment.evictions();
+        }
+
+        return evictions;
+    }
+
+    /**
+     * Returns hits / (hits + misses), or NaN if there have been no lookups.
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return lookups == 0 ? Double.NaN : hits / (double) lookups;
+    }
+
+    public String toString() {
+        return "IndependenceResultCache size = " + size() + " hits = " + getHits() + " misses = " + getMisses()
+                + " evictions = " + getEvictions();
+    }
+
+    //==============================PACKAGE METHODS=========================//
+
+    /**
+     * Returns the keys, in canonical form [x, y, sorted z...], with x < y.
+     */
+    List<int[]> getKeys() {
+        List<int[]> keys = new ArrayList<int[]>();
+
+        for (Segment segment : segments) {
+            segment.keys(keys);
+        }
+
+        return keys;
+    }
+
+    /**
+     * Returns the result stored for a key in canonical form, or null, without counting a hit or miss.
+     */
+    IndependenceResult peek(int[] key) {
+        int[] z = Arrays.copyOfRange(key, 2, key.length);
+        int hash = hash(key[0], key[1], z);
+        return segmentFor(hash).get(hash, key[0], key[1], z);
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    private Segment segmentFor(int hash) {
+        return segments[(hash >>> 28) & (NUM_SEGMENTS - 1)];
+    }
+
+    /**
+     * A hash of {x, y} and z that depends neither on the order of x and y nor on the order of z.
+     */
+    private static int hash(int x, int y, int[] z) {
+        int sum = 0;
+
+        for (int _z : z) {
+            sum += SortedKeyTable.mix(_z + 0x61c88647);
+        }
+
+        return SortedKeyTable.mix(31 * (SortedKeyTable.mix(x) + SortedKeyTable.mix(y)) + sum + z.length);
+    }
+
+    /**
+     * One lock-protected table, with the result of each key, indexed by slot.
+     */
+    private static final class Segment extends SortedKeyTable {
+        private IndependenceResult[] results;
+
+        Segment(int maxSize) {
+            super(maxSize, 2);
+            allocate(INITIAL_CAPACITY);
+        }
+
+        synchronized void put(int hash, int x, int y, int[] z, IndependenceResult result) {
+            int slot = find(hash, x, y, z);
+
+            if (slot < 0) {
+                slot = insert(hash, x, y, z);
+            }
+
+            results[slot] = result;
+        }
+
+        synchronized IndependenceResult get(int hash, int x, int y, int[] z) {
+            int slot = find(hash, x, y, z);
+            return slot < 0 ? null : results[slot];
+        }
+
+        synchronized void clear() {
+            clearKeys();
+        }
+
+        synchronized int count() {
+            return size();
+        }
+
+        synchronized long evictions() {
+            return getEvictions();
+        }
+
+        synchronized void keys(List<int[]> list) {
+            copyKeys(list);
+        }
+
+        void allocateValues(int capacity, int[] newSlots) {
+            IndependenceResult[] oldResults = results;
+            results = new IndependenceResult[capacity];
+
+            if (newSlots == null) {
+                return;
+            }
+
+            for (int i = 0; i < newSlots.length; i++) {
+                if (newSlots[i] != -1) {
+                    results[newSlots[i]] = oldResults[i];
+                }
+            }
+        }
+
+        void moveValue(int from, int to) {
+            results[to] = results[from];
+        }
+
+        void clearValue(int slot) {
+            results[slot] = null;
+        }
+    }
+}
+
+
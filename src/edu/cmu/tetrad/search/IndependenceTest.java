@@ -72,6 +72,13 @@ public interface IndependenceTest {
      */
     boolean isDependent(Node x, Node y, Node... z);
 
+    /**
+     * Returns the result of the given independence test, x _||_ y | z, as an immutable object. Unlike isIndependent
+     * followed by getPValue, this does not depend on the most recently executed test, so one test object may be shared
+     * by several threads. Tests that are not re-entrant synchronize on the test object.
+     */
+    IndependenceResult checkIndependence(Node x, Node y, List<Node> z);
+
     /**
      * Returns the probability associated with the most recently executed independence test, of Double.NaN if p value is
      * not meaningful for tis test.
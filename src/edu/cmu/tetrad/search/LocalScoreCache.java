@@ -21,46 +21,157 @@
 
 package edu.cmu.tetrad.search;
 
-import org.apache.commons.collections.map.MultiKeyMap;
-
-import java.util.HashSet;
-import java.util.Set;
-
 /**
  * Stores a map from (variable, parents) to score.
+ * <p/>
+ * Keys are stored in canonical form as primitive int arrays of the form [variable, sorted parents...] in an open
+ * addressing (linear probing) table, a SortedKeyTable. The hash of a key does not depend on the order of the parents,
+ * so lookups can be done directly on the parent array passed in, without sorting, copying or boxing it. Parent arrays
+ * are assumed not to contain duplicates. Scores are kept in a primitive array alongside the keys.
+ * <p/>
+ * The cache may be bounded in size, in which case entries are evicted using the CLOCK (second chance) policy once the
+ * bound is reached. Hits, misses and evictions are counted. All methods are synchronized, so one cache may be shared
+ * by threads scoring concurrently.
  *
  * @author Joseph Ramsey
  */
 public class LocalScoreCache {
-    private MultiKeyMap map;
 
+    /**
+     * Initial number of slots in the table, for unbounded caches.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The keys and scores.
+     */
+    private final ScoreTable table;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * Constructs an unbounded cache.
+     */
     public LocalScoreCache() {
-        map = new MultiKeyMap();
+        this(Integer.MAX_VALUE);
     }
 
-    public void add(int variable, int[] parents, double score) {
-        Set<Integer> _parents = new HashSet<Integer>(parents.length);
+    /**
+     * Constructs a cache that holds at most <code>maxSize</code> entries, evicting old entries when full.
+     */
+    public LocalScoreCache(int maxSize) {
+        this.table = new ScoreTable(maxSize);
+    }
 
-        for (int parent : parents) {
-            _parents.add(parent);
+    public synchronized void add(int variable, int[] parents, double score) {
+        int hash = hash(variable, parents);
+        int slot = table.find(hash, variable, 0, parents);
+
+        if (slot < 0) {
+            slot = table.insert(hash, variable, 0, parents);
+        }
+
+        table.scores[slot] = score;
+    }
+
+    /**
+     * Returns the cached score for (variable, parents), or NaN if it is not in the cache.
+     */
+    public synchronized double get(int variable, int[] parents) {
+        int slot = table.find(hash(variable, parents), variable, 0, parents);
+
+        if (slot < 0) {
+            misses++;
+            return Double.NaN;
         }
 
-        map.put(variable, _parents, score);
+        hits++;
+        return table.scores[slot];
+    }
+
+    /**
+     * Removes all entries and resets the hit, miss and eviction counts.
+     */
+    public synchronized void clear() {
+        table.clearKeys();
+        hits = 0;
+        misses = 0;
     }
 
-    public double get(int variable, int[] parents) {
-        Set<Integer> _parents = new HashSet<Integer>(parents.length);
+    public synchronized int size() {
+        return table.size();
+    }
+
+    public int getMaxSize() {
+        return table.getMaxSize();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return table.getEvictions();
+    }
+
+    public synchronized String toString() {
+        return "LocalScoreCache size = " + size() + " hits = " + hits + " misses = " + misses
+                + " evictions = " + getEvictions();
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    /**
+     * A hash of (variable, parents) that does not depend on the order of the parents.
+     */
+    private static int hash(int variable, int[] parents) {
+        int sum = 0;
 
         for (int parent : parents) {
-            _parents.add(parent);
+            sum += SortedKeyTable.mix(parent + 0x61c88647);
         }
 
-        Double _score = (Double) map.get(variable, _parents);
-        return _score == null ? Double.NaN : (_score);
+        return SortedKeyTable.mix(31 * SortedKeyTable.mix(variable) + sum + parents.length);
     }
 
-    public void clear() {
-        map.clear();
+    /**
+     * The table, with the score of each key, indexed by slot.
+     */
+    private static final class ScoreTable extends SortedKeyTable {
+        private double[] scores;
+
+        ScoreTable(int maxSize) {
+            super(maxSize, 1);
+            allocate(INITIAL_CAPACITY);
+        }
+
+        void allocateValues(int capacity, int[] newSlots) {
+            double[] oldScores = scores;
+            scores = new double[capacity];
+
+            if (newSlots == null) {
+                return;
+            }
+
+            for (int i = 0; i < newSlots.length; i++) {
+                if (newSlots[i] != -1) {
+                    scores[newSlots[i]] = oldScores[i];
+                }
+            }
+        }
+
+        void moveValue(int from, int to) {
+            scores[to] = scores[from];
+        }
+
+        void clearValue(int slot) {
+        }
     }
 }
 
+
@@ -0,0 +1,116 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Supplies the residual variances that the linear Gaussian BIC scores in Ges, StagedGes and GesMulti are computed
+ * from. The variance of a variable given a set of parents is calculated once from incrementally updated Cholesky
+ * factors (see CholeskyPartialCorrelation), without allocating matrices, and is then kept in a LocalScoreCache, so a
+ * family scored again later in the search is looked up. The residual variance does not depend on the penalty discount,
+ * so cached values stay good when the penalty changes. May be used by several threads at once.
+ *
+ * @author Joseph Ramsey
+ */
+public class LocalSemScoreEngine {
+
+    private final CholeskyPartialCorrelation cholesky;
+
+    /**
+     * Residual variances by (variable, parents).
+     */
+    private final LocalScoreCache cache;
+
+    /**
+     * Constructs an engine over the given covariance matrix, caching every residual variance calculated.
+     */
+    public LocalSemScoreEngine(TetradMatrix cov) {
+        this(cov, new LocalScoreCache());
+    }
+
+    /**
+     * Constructs an engine over the given covariance matrix, caching at most <code>maxCacheSize</code> residual
+     * variances.
+     */
+    public LocalSemScoreEngine(TetradMatrix cov, int maxCacheSize) {
+        this(cov, new LocalScoreCache(maxCacheSize));
+    }
+
+    private LocalSemScoreEngine(TetradMatrix cov, LocalScoreCache cache) {
+        this.cholesky = new CholeskyPartialCorrelation(cov);
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the variance of the residual of variable i regressed on the given parents, or NaN if the covariance
+     * matrix of the parents is not positive definite.
+     */
+    public double residualVariance(int i, int[] parents) {
+        double variance = cache.get(i, parents);
+
+        if (Double.isNaN(variance)) {
+
+            // Sorted, so that the value does not depend on the order of the parents or on what was scored before.
+            int[] sorted = parents.clone();
+            Arrays.sort(sorted);
+            variance = cholesky.residualVariance(i, sorted);
+
+            if (!Double.isNaN(variance)) {
+                cache.add(i, parents, variance);
+            }
+        }
+
+        return variance;
+    }
+
+    /**
+     * Returns the number of residual variances that had to be calculated.
+     */
+    public long getNumComputed() {
+        return cache.getMisses();
+    }
+
+    /**
+     * Returns the number of residual variances found in the cache.
+     */
+    public long getNumCached() {
+        return cache.getHits();
+    }
+
+    /**
+     * Empties the cache and resets the counts.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    public String toString() {
+        return "LocalSemScoreEngine computed = " + getNumComputed() + " cached = " + getNumCached();
+    }
+}
+
+
+
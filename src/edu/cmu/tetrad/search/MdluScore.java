@@ -21,6 +21,7 @@
 
 package edu.cmu.tetrad.search;
 
+import edu.cmu.tetrad.data.ContingencyCounter;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DiscreteVariable;
 
@@ -31,12 +32,14 @@ import edu.cmu.tetrad.data.DiscreteVariable;
 public class MdluScore implements LocalDiscreteScore {
     private final LocalScoreCache localScoreCache = new LocalScoreCache();
     private DataSet dataSet;
+    private final ContingencyCounter counter;
 
     private double samplePrior = 10;
     private double structurePrior = .001;
 
     public MdluScore(DataSet dataSet, double structurePrior) {
         this.dataSet = dataSet;
+        this.counter = new ContingencyCounter(dataSet);
         this.structurePrior = structurePrior;
     }
 
@@ -50,52 +53,21 @@ public class MdluScore implements LocalDiscreteScore {
         // Number of categories for i.
         int r = numCategories(i);
 
-        // Numbers of categories of parents.
-        int dims[] = new int[parents.length];
-
-        for (int p = 0; p < parents.length; p++) {
-            dims[p] = numCategories(parents[p]);
-        }
-
         // Number of parent states.
         int q = 1;
         for (int p = 0; p < parents.length; p++) {
-            q *= dims[p];
+            q *= numCategories(parents[p]);
         }
 
-        // Conditional cell coefs of data for i given parents(i).
-        int n_ijk[][] = new int[q][r];
-        int n_ij[] = new int[q];
-
-        int values[] = new int[parents.length];
-
-        for (int n = 0; n < sampleSize(); n++) {
-            for (int p = 0; p < parents.length; p++) {
-                int parentValue = dataSet().getInt(n, parents[p]);
-
-                if (parentValue == -99) {
-                    throw new IllegalStateException("Please remove or impute " +
-                            "missing values.");
-                }
-
-                values[p] = parentValue;
-            }
-
-            int childValue = dataSet().getInt(n, i);
-
-            if (childValue == -99) {
-                throw new IllegalStateException("Please remove or impute missing " +
-                        "values (record " + n + " column " + i + ")");
-
-            }
-
-            n_ijk[getRowIndex(dims, values)][childValue]++;
-        }
+        // Conditional cell coefs of data for i given parents(i), n_ijk[j * r + k], with
+        // the parents most significant.
+        long n_ijk[] = counter.count(familyColumns(i, parents));
+        long n_ij[] = new long[q];
 
         // Row sums.
         for (int j = 0; j < q; j++) {
             for (int k = 0; k < r; k++) {
-                n_ij[j] += n_ijk[j][k];
+                n_ij[j] += n_ijk[j * r + k];
             }
         }
 
@@ -107,13 +79,17 @@ public class MdluScore implements LocalDiscreteScore {
         }
 
         double alpha = getStructurePrior();
-        int n = dataSet().getNumRows();
+        long n = 0;
+
+        for (int j = 0; j < q; j++) {
+            n += n_ij[j];
+        }
 
         double score = 0.0;
 
         for (int j = 0; j < q; j++) {
             for (int k = 0; k < r; k++) {
-                double top = (alpha / ((double) r * (double) q)) + (double) n_ijk[j][k];
+                double top = (alpha / ((double) r * (double) q)) + (double) n_ijk[j * r + k];
                 double bottom = (alpha / (double) q) + (double) n_ij[j];
                 double product = top * log2(top / bottom);
                 score += product;
@@ -135,17 +111,22 @@ public class MdluScore implements LocalDiscreteScore {
         return Math.log(x) / Math.log(2);
     }
 
-    private int getRowIndex(int[] dim, int[] values) {
-        int rowIndex = 0;
-        for (int i = 0; i < dim.length; i++) {
-            rowIndex *= dim[i];
-            rowIndex += values[i];
+    /**
+     * Returns the columns parents..., i, checking that none of them has missing values.
+     */
+    private int[] familyColumns(int i, int[] parents) {
+        int[] columns = new int[parents.length + 1];
+        System.arraycopy(parents, 0, columns, 0, parents.length);
+        columns[parents.length] = i;
+
+        for (int column : columns) {
+            if (counter.hasMissingValues(column)) {
+                throw new IllegalStateException("Please remove or impute missing " +
+                        "values (column " + column + ")");
+            }
         }
-        return rowIndex;
-    }
 
-    private int sampleSize() {
-        return dataSet().getNumRows();
+        return columns;
     }
 
     private int numCategories(int i) {
@@ -0,0 +1,687 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.util.ParallelUtils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <p>Enumerates the DAGs in a pattern--that is, the ways of directing its undirected edges that make neither a cycle
+ * nor a new unshielded collider--without keeping them, or copies of the pattern, around. Optionally new colliders may
+ * be allowed, in which case every acyclic way of directing the undirected edges is enumerated, as by DagIterator.</p>
+ *
+ * <p>A single working graph is kept, as bitsets of parents, children and undirected neighbors. An undirected edge is
+ * picked and directed one way, the orientations that follows from that by Meek's rules 1 to 3 (just rule 2, which
+ * prevents cycles, if new colliders are allowed) are made, and so on until every edge is directed; then the
+ * orientations are undone back to the last choice and the other direction is tried. Choices that lead to a cycle or
+ * new collider are dropped at once. Cycles are checked against a ReachabilityIndex of the directed edges.</p>
+ *
+ * <p>The DAGs may be had one at a time with hasNext() and next(), each as a new graph, or passed to a DagVisitor, in
+ * which case the top of the tree of choices may be split over a fork/join pool. count() counts them without making any
+ * graphs.</p>
+ *
+ * @author Joseph Ramsey
+ * @see DagInPatternIterator
+ * @see DagIterator
+ */
+public final class PatternDagEnumerator {
+
+    /**
+     * Receives the DAGs of an enumeration.
+     */
+    public interface DagVisitor {
+
+        /**
+         * Called once for each DAG. If the enumeration is run in parallel, this is called from several threads at
+         * once.
+         */
+        void visit(Graph dag);
+    }
+
+    /**
+     * The pattern.
+     */
+    private final Graph pattern;
+
+    /**
+     * True iff new unshielded colliders may be made.
+     */
+    private final boolean allowNewColliders;
+
+    /**
+     * The working state for hasNext() and next(), made on the first call to either.
+     */
+    private Walk walk;
+
+    /**
+     * True iff the walk is at a DAG that next() has not yet returned.
+     */
+    private boolean atDag = false;
+
+    /**
+     * The number of threads used by count() and visitAll().
+     */
+    private int parallelism = ParallelUtils.getDefaultParallelism();
+
+    //==============================CONSTRUCTORS=========================//
+
+    /**
+     * Enumerates the DAGs in the given pattern.
+     *
+     * @throws IllegalArgumentException if the pattern has an edge that is neither directed nor undirected.
+     */
+    public PatternDagEnumerator(Graph pattern) {
+        this(pattern, false);
+    }
+
+    /**
+     * Enumerates the DAGs got by directing the undirected edges in the given graph, allowing new unshielded colliders
+     * or not.
+     *
+     * @throws IllegalArgumentException if the graph has an edge that is neither directed nor undirected.
+     */
+    public PatternDagEnumerator(Graph pattern, boolean allowNewColliders) {
+        if (pattern == null) {
+            throw new NullPointerException("Pattern must not be null.");
+        }
+
+        for (Edge edge : pattern.getEdges()) {
+            if (!Edges.isDirectedEdge(edge) && !Edges.isUndirectedEdge(edge)) {
+                throw new IllegalArgumentException("The graph may consist only of " +
+                        "directed and undirected edges: " + edge);
+            }
+        }
+
+        this.pattern = pattern;
+        this.allowNewColliders = allowNewColliders;
+    }
+
+    //==============================PUBLIC METHODS=======================//
+
+    /**
+     * Returns true just in case there is still a DAG remaining in the enumeration.
+     */
+    public boolean hasNext() {
+        if (walk == null) {
+            walk = new Walk(new State(this));
+        }
+
+        if (!atDag) {
+            atDag = walk.advance();
+        }
+
+        return atDag;
+    }
+
+    /**
+     * Returns the next DAG in the enumeration, as a new graph over the nodes of the pattern, or null if there are no
+     * more.
+     */
+    public Graph next() {
+        if (!hasNext()) {
+            return null;
+        }
+
+        atDag = false;
+        return walk.state.toGraph();
+    }
+
+    /**
+     * Returns the number of DAGs, without making them.
+     */
+    public long count() {
+        return enumerate(null);
+    }
+
+    /**
+     * Passes each DAG to the given visitor, as a new graph, and returns the number of DAGs. The order in which they
+     * are passed is only that of hasNext() and next() if the parallelism is 1.
+     */
+    public long visitAll(DagVisitor visitor) {
+        if (visitor == null) {
+            throw new NullPointerException("Visitor must not be null.");
+        }
+
+        return enumerate(visitor);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used by count() and visitAll(). The DAGs found do not depend on this.
+     */
+    public void setParallelism(int parallelism) {
+        ParallelUtils.checkParallelism(parallelism);
+        this.parallelism = parallelism;
+    }
+
+    //==============================PRIVATE METHODS======================//
+
+    private long enumerate(DagVisitor visitor) {
+        State state = new State(this);
+
+        if (parallelism == 1) {
+            return new Walk(state).walk(visitor);
+        }
+
+        // Enough subtrees to keep the threads busy if the tree is lopsided.
+        int splitDepth = 4;
+
+        for (int p = parallelism; p > 1; p >>>= 1) {
+            splitDepth++;
+        }
+
+        return ParallelUtils.invoke(new EnumerationTask(state, visitor, splitDepth), parallelism);
+    }
+
+    //==============================CLASSES==============================//
+
+    /**
+     * Enumerates the DAGs below a state, splitting on the choice of direction for the first few levels.
+     */
+    private static class EnumerationTask extends RecursiveTask<Long> {
+        private final State state;
+        private final DagVisitor visitor;
+        private final int splitDepth;
+
+        public EnumerationTask(State state, DagVisitor visitor, int splitDepth) {
+            this.state = state;
+            this.visitor = visitor;
+            this.splitDepth = splitDepth;
+        }
+
+        protected Long compute() {
+            if (!state.consistent) {
+                return 0L;
+            }
+
+            if (splitDepth == 0) {
+                return new Walk(state).walk(visitor);
+            }
+
+            int[] edge = state.undirectedEdge();
+
+            if (edge == null) {
+                if (visitor != null) visitor.visit(state.toGraph());
+                return 1L;
+            }
+
+            State other = state.copy();
+            state.orient(edge[0], edge[1]);
+            other.orient(edge[1], edge[0]);
+
+            EnumerationTask left = new EnumerationTask(state, visitor, splitDepth - 1);
+            EnumerationTask right = new EnumerationTask(other, visitor, splitDepth - 1);
+            right.fork();
+            return left.compute() + right.join();
+        }
+    }
+
+    /**
+     * Walks depth first over the DAGs below a state, undoing orientations to backtrack.
+     */
+    private static class Walk {
+        private final State state;
+
+        /**
+         * For each choice on the current branch, the trail length before it and the edge chosen, directed first
+         * as u --> v and then v --> u.
+         */
+        private int[] marks = new int[16];
+        private int[] us = new int[16];
+        private int[] vs = new int[16];
+        private boolean[] reversed = new boolean[16];
+        private int depth = 0;
+
+        /**
+         * True iff the walk should go on down from the state rather than back up.
+         */
+        private boolean descending;
+
+        public Walk(State state) {
+            this.state = state;
+            this.descending = state.consistent;
+        }
+
+        /**
+         * Moves to the next DAG.
+         *
+         * @return false if there are no more.
+         */
+        public boolean advance() {
+            while (true) {
+                if (descending) {
+                    int[] edge = state.undirectedEdge();
+
+                    if (edge == null) {
+                        descending = false;
+                        return true;
+                    }
+
+                    push(edge[0], edge[1]);
+
+                    if (!state.orient(edge[0], edge[1])) {
+                        descending = false;
+                    }
+
+                    continue;
+                }
+
+                if (depth == 0) {
+                    return false;
+                }
+
+                int top = depth - 1;
+                state.undo(marks[top]);
+
+                if (!reversed[top]) {
+                    reversed[top] = true;
+
+                    if (state.orient(vs[top], us[top])) {
+                        descending = true;
+                    }
+                } else {
+                    depth--;
+                }
+            }
+        }
+
+        /**
+         * Walks over all of the DAGs, passing them to the visitor if there is one, and returns the number of them.
+         */
+        public long walk(DagVisitor visitor) {
+            long count = 0;
+
+            while (advance()) {
+                if (visitor != null) visitor.visit(state.toGraph());
+                count++;
+            }
+
+            return count;
+        }
+
+        private void push(int u, int v) {
+            if (depth == marks.length) {
+                int length = 2 * depth;
+                marks = Arrays.copyOf(marks, length);
+                us = Arrays.copyOf(us, length);
+                vs = Arrays.copyOf(vs, length);
+                reversed = Arrays.copyOf(reversed, length);
+            }
+
+            marks[depth] = state.trailLength;
+            us[depth] = u;
+            vs[depth] = v;
+            reversed[depth] = false;
+            depth++;
+        }
+    }
+
+    /**
+     * The working graph: the pattern with some of its undirected edges directed, and a trail of the edges directed so
+     * far, so that they can be undone.
+     */
+    private static class State {
+        private final Graph pattern;
+        private final List<Node> nodes;
+        private final Map<Node, Integer> indices;
+        private final boolean allowNewColliders;
+        private final int words;
+
+        /**
+         * Adjacency in the pattern, which does not change.
+         */
+        private final long[][] adjacent;
+
+        private final long[][] parents;
+        private final long[][] children;
+        private final long[][] undirected;
+        private final ReachabilityIndex directedPaths;
+
+        /**
+         * The edges directed since the start, from[k] --> to[k] for k < trailLength.
+         */
+        private int[] from;
+        private int[] to;
+        private int trailLength = 0;
+
+        /**
+         * False if the pattern itself has a cycle or forces a new collider, in which case there are no DAGs.
+         */
+        private boolean consistent;
+
+        /**
+         * Nodes whose undirected edges are to be checked for implied orientations.
+         */
+        private int[] pending;
+        private int numPending = 0;
+
+        public State(PatternDagEnumerator enumerator) {
+            this.pattern = enumerator.pattern;
+            this.nodes = pattern.getNodes();
+            this.allowNewColliders = enumerator.allowNewColliders;
+
+            int numNodes = nodes.size();
+            this.words = (numNodes + 63) >>> 6;
+            this.adjacent = new long[numNodes][words];
+            this.parents = new long[numNodes][words];
+            this.children = new long[numNodes][words];
+            this.undirected = new long[numNodes][words];
+            this.directedPaths = new ReachabilityIndex(numNodes);
+            this.from = new int[16];
+            this.to = new int[16];
+            this.pending = new int[16];
+
+            this.indices = new HashMap<Node, Integer>();
+
+            for (int i = 0; i < numNodes; i++) {
+                indices.put(nodes.get(i), i);
+            }
+
+            for (Edge edge : pattern.getEdges()) {
+                int a = indices.get(edge.getNode1());
+                int b = indices.get(edge.getNode2());
+                set(adjacent[a], b);
+                set(adjacent[b], a);
+
+                if (Edges.isUndirectedEdge(edge)) {
+                    set(undirected[a], b);
+                    set(undirected[b], a);
+                } else if (edge.getEndpoint2() == Endpoint.ARROW) {
+                    direct(a, b);
+                } else {
+                    direct(b, a);
+                }
+            }
+
+            // The pattern's own directed edges are not undone.
+            trailLength = 0;
+            consistent = !directedPaths.isCyclic();
+
+            if (consistent) {
+                for (int i = 0; i < numNodes; i++) {
+                    addPending(i);
+                }
+
+                consistent = propagate();
+                trailLength = 0;
+            }
+        }
+
+        private State(State state) {
+            this.pattern = state.pattern;
+            this.nodes = state.nodes;
+            this.indices = state.indices;
+            this.allowNewColliders = state.allowNewColliders;
+            this.words = state.words;
+            this.adjacent = state.adjacent;
+            this.parents = copy(state.parents);
+            this.children = copy(state.children);
+            this.undirected = copy(state.undirected);
+            this.directedPaths = new ReachabilityIndex(nodes.size());
+            this.from = new int[16];
+            this.to = new int[16];
+            this.pending = new int[16];
+            this.consistent = state.consistent;
+
+            for (int b = 0; b < nodes.size(); b++) {
+                for (int w = 0; w < words; w++) {
+                    for (long bits = parents[b][w]; bits != 0; bits &= bits - 1) {
+                        directedPaths.addArc((w << 6) + Long.numberOfTrailingZeros(bits), b);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns a copy of this state, to be searched separately. The copy's trail starts empty.
+         */
+        public State copy() {
+            return new State(this);
+        }
+
+        /**
+         * Returns an undirected edge, as {u, v}, or null if there are none.
+         */
+        public int[] undirectedEdge() {
+            for (int u = 0; u < nodes.size(); u++) {
+                for (int w = 0; w < words; w++) {
+                    if (undirected[u][w] != 0) {
+                        return new int[]{u, (w << 6) + Long.numberOfTrailingZeros(undirected[u][w])};
+                    }
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Directs the undirected edge u--v as u --> v, together with the orientations that follow.
+         *
+         * @return false if that makes a cycle or new collider or forces one; the state must then be undone.
+         */
+        public boolean orient(int u, int v) {
+            if (!consistent || !canDirect(u, v)) {
+                consistent = false;
+                return false;
+            }
+
+            direct(u, v);
+            addPending(u);
+            addPending(v);
+
+            if (!propagate()) {
+                consistent = false;
+                return false;
+            }
+
+            return true;
+        }
+
+        /**
+         * Undirects the edges directed since the trail had the given length.
+         */
+        public void undo(int mark) {
+            while (trailLength > mark) {
+                trailLength--;
+                int a = from[trailLength];
+                int b = to[trailLength];
+                clear(parents[b], a);
+                clear(children[a], b);
+                set(undirected[a], b);
+                set(undirected[b], a);
+                directedPaths.removeArc(a, b);
+            }
+
+            numPending = 0;
+            consistent = true;
+        }
+
+        /**
+         * Returns the DAG as a new graph, with the pattern's nodes and its edges in its order.
+         */
+        public Graph toGraph() {
+            Graph graph = new EdgeListGraph(nodes);
+
+            for (Edge edge : pattern.getEdges()) {
+                Node a = edge.getNode1();
+                Node b = edge.getNode2();
+
+                if (get(parents[indices.get(b)], indices.get(a))) {
+                    graph.addDirectedEdge(a, b);
+                } else {
+                    graph.addDirectedEdge(b, a);
+                }
+            }
+
+            return graph;
+        }
+
+        /**
+         * True iff u --> v would make neither a cycle nor, unless they are allowed, a new unshielded collider.
+         */
+        private boolean canDirect(int u, int v) {
+            if (directedPaths.reaches(v, u)) {
+                return false;
+            }
+
+            if (!allowNewColliders) {
+                for (int w = 0; w < words; w++) {
+                    long unshielded = parents[v][w] & ~adjacent[u][w];
+
+                    if (unshielded != 0) {
+                        return false;
+                    }
+                }
+            }
+
+            return true;
+        }
+
+        private void direct(int a, int b) {
+            clear(undirected[a], b);
+            clear(undirected[b], a);
+            set(parents[b], a);
+            set(children[a], b);
+            directedPaths.addArc(a, b);
+
+            if (trailLength == from.length) {
+                from = Arrays.copyOf(from, 2 * trailLength);
+                to = Arrays.copyOf(to, 2 * trailLength);
+            }
+
+            from[trailLength] = a;
+            to[trailLength] = b;
+            trailLength++;
+        }
+
+        /**
+         * Makes the orientations implied for the undirected edges at pending nodes, and at the nodes of the edges
+         * so directed, until there are none left.
+         *
+         * @return false if some edge would have to be directed both ways or could be directed neither way.
+         */
+        private boolean propagate() {
+            while (numPending > 0) {
+                int x = pending[--numPending];
+                long[] neighbors = undirected[x].clone();
+
+                for (int w = 0; w < words; w++) {
+                    for (long bits = neighbors[w]; bits != 0; bits &= bits - 1) {
+                        int y = (w << 6) + Long.numberOfTrailingZeros(bits);
+
+                        if (!get(undirected[x], y)) continue;
+
+                        boolean xy = implied(x, y);
+                        boolean yx = implied(y, x);
+
+                        if (xy && yx) return false;
+                        if (!xy && !yx) continue;
+
+                        int a = xy ? x : y;
+                        int b = xy ? y : x;
+
+                        if (!canDirect(a, b)) return false;
+
+                        direct(a, b);
+                        addPending(a);
+                        addPending(b);
+                    }
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * True iff the undirected edge u--v must be directed u --> v: by rule 2, because u --> w --> v for some w;
+         * or, unless new colliders are allowed, by rule 1, because p --> u for some p not adjacent to v, or by rule
+         * 3, because c --> v <-- d for some nonadjacent c and d with u--c and u--d.
+         */
+        private boolean implied(int u, int v) {
+            for (int w = 0; w < words; w++) {
+                if ((children[u][w] & parents[v][w]) != 0) return true;
+            }
+
+            if (allowNewColliders) {
+                return false;
+            }
+
+            for (int w = 0; w < words; w++) {
+                long unshielded = parents[u][w] & ~adjacent[v][w];
+                if (unshielded != 0) return true;
+            }
+
+            for (int w = 0; w < words; w++) {
+                for (long bits = parents[v][w] & undirected[u][w]; bits != 0; bits &= bits - 1) {
+                    int c = (w << 6) + Long.numberOfTrailingZeros(bits);
+
+                    for (int z = 0; z < words; z++) {
+                        long others = parents[v][z] & undirected[u][z] & ~adjacent[c][z];
+                        if (z == (c >>> 6)) others &= ~(1L << c);
+                        if (others != 0) return true;
+                    }
+                }
+            }
+
+            return false;
+        }
+
+        private void addPending(int i) {
+            if (numPending == pending.length) {
+                pending = Arrays.copyOf(pending, 2 * numPending);
+            }
+
+            pending[numPending++] = i;
+        }
+
+        private static long[][] copy(long[][] bits) {
+            long[][] copy = new long[bits.length][];
+
+            for (int i = 0; i < bits.length; i++) {
+                copy[i] = bits[i].clone();
+            }
+
+            return copy;
+        }
+    }
+
+    private static void set(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    private static void clear(long[] bits, int i) {
+        bits[i >>> 6] &= ~(1L << i);
+    }
+
+    private static boolean get(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+}
@@ -23,7 +23,9 @@ package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge;
+import edu.cmu.tetrad.graph.EdgeListGraph;
 import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.IndexedGraph;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.graph.Triple;
 import edu.cmu.tetrad.util.ChoiceGenerator;
@@ -120,6 +122,11 @@ public class Pc implements GraphSearch {
 
     private boolean verbose = false;
 
+    /**
+     * True iff the adjacency search should be run in parallel, using FasForkJoin.
+     */
+    private boolean concurrentFas = false;
+
     private boolean fdr = false;
 
     //=============================CONSTRUCTORS==========================//
@@ -241,6 +248,10 @@ public class Pc implements GraphSearch {
 //        }
 
 //        return search(new Fas3(getIndependenceTest()), nodes);
+        if (concurrentFas) {
+            return search(new FasForkJoin(new EdgeListGraph(nodes), getIndependenceTest()), nodes);
+        }
+
         return search(new Fas(getIndependenceTest()), nodes);
     }
 
@@ -268,7 +279,7 @@ public class Pc implements GraphSearch {
         fas.setDepth(getDepth());
         fas.setVerbose(verbose);
 
-        graph = fas.search();
+        graph = new IndexedGraph(fas.search());
         sepsets = fas.getSepsets();
 
         this.numIndependenceTests = fas.getNumIndependenceTests();
@@ -293,7 +304,7 @@ public class Pc implements GraphSearch {
         this.logger.log("info", "Finishing PC Algorithm.");
         this.logger.flush();
 
-        return graph;
+        return new EdgeListGraph(graph);
     }
 
     /**
@@ -408,6 +419,18 @@ public class Pc implements GraphSearch {
         this.verbose = verbose;
     }
 
+    /**
+     * True iff the adjacency search should be run in parallel, using FasForkJoin. The independence test will then be
+     * shared by several threads.
+     */
+    public boolean isConcurrentFas() {
+        return concurrentFas;
+    }
+
+    public void setConcurrentFas(boolean concurrentFas) {
+        this.concurrentFas = concurrentFas;
+    }
+
     /**
      * True iff the algorithm should be run with False Discovery Rate tests.
      */
@@ -124,6 +124,11 @@ public class PcStable implements GraphSearch {
      */
     private boolean verbose = false;
 
+    /**
+     * True iff the adjacency search should be run in parallel, using FasForkJoin.
+     */
+    private boolean concurrentFas = false;
+
     //=============================CONSTRUCTORS==========================//
 
     /**
@@ -257,21 +262,34 @@ public class PcStable implements GraphSearch {
         graph = new EdgeListGraph(nodes);
 //        graph.fullyConnect(Endpoint.TAIL);
 
-//        FasStable fas = new FasStable(graph, getIndependenceTest());
-        FasStableConcurrent fas = new FasStableConcurrent(graph, getIndependenceTest());
-//        Fas6 fas = new Fas6(graph, getIndependenceTest());
-        fas.setInitialGraph(initialGraph);
-        fas.setKnowledge(getKnowledge());
-        fas.setDepth(getDepth());
-
-        // Note that we are ignoring the sepset map returned by this method
-        // on purpose; it is not used in this search.
-        graph = fas.search();
-        sepsets = fas.getSepsets();
-
-        this.numIndependenceTests = fas.getNumIndependenceTests();
-        this.numFalseDependenceJudgements = fas.getNumFalseDependenceJudgments();
-        this.numDependenceJudgements = fas.getNumDependenceJudgments();
+        if (concurrentFas) {
+            FasForkJoin fas = new FasForkJoin(graph, getIndependenceTest());
+            fas.setInitialGraph(initialGraph);
+            fas.setKnowledge(getKnowledge());
+            fas.setDepth(getDepth());
+            fas.setVerbose(verbose);
+
+            graph = fas.search();
+            sepsets = fas.getSepsets();
+
+            this.numIndependenceTests = fas.getNumIndependenceTests();
+        } else {
+//            FasStable fas = new FasStable(graph, getIndependenceTest());
+            FasStableConcurrent fas = new FasStableConcurrent(graph, getIndependenceTest());
+//            Fas6 fas = new Fas6(graph, getIndependenceTest());
+            fas.setInitialGraph(initialGraph);
+            fas.setKnowledge(getKnowledge());
+            fas.setDepth(getDepth());
+
+            // Note that we are ignoring the sepset map returned by this method
+            // on purpose; it is not used in this search.
+            graph = fas.search();
+            sepsets = fas.getSepsets();
+
+            this.numIndependenceTests = fas.getNumIndependenceTests();
+            this.numFalseDependenceJudgements = fas.getNumFalseDependenceJudgments();
+            this.numDependenceJudgements = fas.getNumDependenceJudgments();
+        }
 
         enumerateTriples();
 
@@ -402,6 +420,18 @@ public class PcStable implements GraphSearch {
     public void setVerbose(boolean verbose) {
         this.verbose = verbose;
     }
+
+    /**
+     * True iff the adjacency search should be run in parallel, using FasForkJoin. The independence test will then be
+     * shared by several threads.
+     */
+    public boolean isConcurrentFas() {
+        return concurrentFas;
+    }
+
+    public void setConcurrentFas(boolean concurrentFas) {
+        this.concurrentFas = concurrentFas;
+    }
 }
 
 
@@ -1265,11 +1265,12 @@ public final class SearchGraphUtils {
     }
 
     /**
-     * Get a graph and direct only the unshielded colliders.
-     * @return the child nodes of unshielded colliders.
+     * Get a graph and direct only the unshielded colliders. The edges made
+     * undirected are re-added in the order of graph.getEdges(), so the edge
+     * order of the result does not depend on hash codes.
      */
     public static void basicPattern(Graph graph) {
-        Set<Edge> undirectedEdges = new HashSet<Edge>();
+        Set<Edge> undirectedEdges = new LinkedHashSet<Edge>();
 
         NEXT_EDGE:
         for (Edge edge : graph.getEdges()) {
@@ -1731,39 +1732,16 @@ public final class SearchGraphUtils {
 
     public static List<Dag> getAllDagsInUndirectedGraph(Graph graph) {
         Graph undirected = GraphUtils.undirectedGraph(graph);
-
-        DagIterator iterator = new DagIterator(undirected);
-        List<Dag> dags = new ArrayList<Dag>();
-
-        while (iterator.hasNext()) {
-            Graph _graph = iterator.next();
-
-            try {
-                Dag dag = new Dag(_graph);
-                dags.add(dag);
-            } catch (IllegalArgumentException e) {
-                //
-            }
-        }
-
-        return dags;
+        return getAllDagsByDirectingUndirectedEdges(undirected);
     }
 
     public static List<Dag> getAllDagsByDirectingUndirectedEdges(Graph graph) {
-//        Graph undirected = undirectedGraph(graph);
-
-        DagIterator iterator = new DagIterator(graph);
+        // Only acyclic orientations are generated, so none needs to be thrown out here.
+        PatternDagEnumerator enumerator = new PatternDagEnumerator(graph, true);
         List<Dag> dags = new ArrayList<Dag>();
 
-        while (iterator.hasNext()) {
-            Graph _graph = iterator.next();
-
-            try {
-                Dag dag = new Dag(_graph);
-                dags.add(dag);
-            } catch (IllegalArgumentException e) {
-                //
-            }
+        while (enumerator.hasNext()) {
+            dags.add(new Dag(enumerator.next()));
         }
 
         return dags;
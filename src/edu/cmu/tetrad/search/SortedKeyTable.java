@@ -0,0 +1,353 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The open addressing (linear probing) table shared by LocalScoreCache and IndependenceResultCache. Keys are primitive
+ * int arrays made of a fixed number of leading elements--one, the variable, for local scores; two, the unordered pair
+ * x, y, for independence questions--followed by a set of further elements, stored sorted. A key is looked up by its
+ * leading elements and the rest in any order, without sorting or copying; the rest are assumed not to contain
+ * duplicates. The hash of a key is supplied by the caller and must not depend on the order of the rest.
+ * <p/>
+ * The table may be bounded in size, in which case entries are evicted using the CLOCK (second chance) policy once the
+ * bound is reached. Values are kept by subclasses in arrays indexed by slot, which they move when told to. The table is
+ * not synchronized.
+ *
+ * @author Joseph Ramsey
+ * @see LocalScoreCache
+ * @see IndependenceResultCache
+ */
+abstract class SortedKeyTable {
+
+    /**
+     * The maximum number of entries kept; Integer.MAX_VALUE if unbounded.
+     */
+    private final int maxSize;
+
+    /**
+     * The number of leading key elements, 1 or 2, that are compared in place rather than as a set.
+     */
+    private final int head;
+
+    /**
+     * Keys, in canonical form [leading elements..., sorted rest...], indexed by slot; null for empty slots.
+     */
+    private int[][] keys;
+
+    /**
+     * Hash codes of the keys, indexed by slot.
+     */
+    private int[] hashes;
+
+    /**
+     * CLOCK reference bits, indexed by slot.
+     */
+    private boolean[] referenced;
+
+    /**
+     * Number of entries stored.
+     */
+    private int size;
+
+    /**
+     * CLOCK hand--the next slot to be considered for eviction.
+     */
+    private int hand;
+
+    private long evictions;
+
+    /**
+     * Constructs a table holding at most maxSize entries, with keys having the given number (1 or 2) of leading
+     * elements. Unbounded tables start with the given number of slots, a power of two. Subclasses must call
+     * allocate() from their constructors, once their own fields are set.
+     */
+    SortedKeyTable(int maxSize, int head) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Max size must be at least 1: " + maxSize);
+        }
+
+        if (head != 1 && head != 2) {
+            throw new IllegalArgumentException("Expecting 1 or 2 leading key elements: " + head);
+        }
+
+        this.maxSize = maxSize;
+        this.head = head;
+    }
+
+    //==============================PACKAGE METHODS=========================//
+
+    /**
+     * Makes the initial table: enough slots for maxSize entries, or initialCapacity (a power of two) slots if that is
+     * fewer.
+     */
+    final void allocate(int initialCapacity) {
+        allocateSlots(maxSize < initialCapacity / 2 ? tableSizeFor(maxSize) : initialCapacity);
+    }
+
+    /**
+     * Returns the slot of the key [first, (second,) rest...], marking it as referenced, or -1 if it is not in the
+     * table. For one leading element, second is ignored.
+     */
+    final int find(int hash, int first, int second, int[] rest) {
+        int mask = keys.length - 1;
+        int slot = hash & mask;
+
+        while (keys[slot] != null) {
+            if (hashes[slot] == hash && matches(keys[slot], first, second, rest)) {
+                referenced[slot] = true;
+                return slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Adds the key [first, (second,) rest...], which must not be in the table, evicting an entry or growing the table
+     * first if need be, and returns its slot. The caller sets the value.
+     */
+    final int insert(int hash, int first, int second, int[] rest) {
+        if (size >= maxSize) {
+            evict();
+        } else if (2 * (size + 1) > keys.length) {
+            allocateSlots(keys.length * 2);
+        }
+
+        int[] key = new int[rest.length + head];
+        key[0] = first;
+        if (head == 2) key[1] = second;
+        System.arraycopy(rest, 0, key, head, rest.length);
+        Arrays.sort(key, head, key.length);
+
+        int mask = keys.length - 1;
+        int slot = hash & mask;
+
+        while (keys[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        hashes[slot] = hash;
+        referenced[slot] = true;
+        size++;
+        return slot;
+    }
+
+    /**
+     * Removes all entries and resets the eviction count.
+     */
+    final void clearKeys() {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != null) {
+                keys[slot] = null;
+                clearValue(slot);
+            }
+        }
+
+        size = 0;
+        hand = 0;
+        evictions = 0;
+    }
+
+    final int size() {
+        return size;
+    }
+
+    final int getMaxSize() {
+        return maxSize;
+    }
+
+    final long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Adds copies of the keys, in canonical form, to the given list.
+     */
+    final void copyKeys(List<int[]> list) {
+        for (int[] key : keys) {
+            if (key != null) {
+                list.add(key.clone());
+            }
+        }
+    }
+
+    static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Makes value arrays with the given number of slots. If newSlots is not null, the old values are to be copied, the
+     * value at old slot i going to slot newSlots[i] if that is not -1.
+     */
+    abstract void allocateValues(int capacity, int[] newSlots);
+
+    /**
+     * Moves the value at one slot to another.
+     */
+    abstract void moveValue(int from, int to);
+
+    /**
+     * Clears the value at the given slot, which has been emptied.
+     */
+    abstract void clearValue(int slot);
+
+    //==============================PRIVATE METHODS=========================//
+
+    private boolean matches(int[] key, int first, int second, int[] rest) {
+        if (key[0] != first || (head == 2 && key[1] != second) || key.length != rest.length + head) {
+            return false;
+        }
+
+        // Same length and no duplicates, so containment implies equality.
+        for (int r : rest) {
+            if (Arrays.binarySearch(key, head, key.length, r) < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Evicts one entry using the CLOCK policy.
+     */
+    private void evict() {
+        int mask = keys.length - 1;
+
+        while (true) {
+            if (keys[hand] != null) {
+                if (referenced[hand]) {
+                    referenced[hand] = false;
+                } else {
+                    remove(hand);
+                    evictions++;
+                    return;
+                }
+            }
+
+            hand = (hand + 1) & mask;
+        }
+    }
+
+    /**
+     * Removes the entry at the given slot, shifting later entries in its probe run back so that lookups still find
+     * them.
+     */
+    private void remove(int slot) {
+        int mask = keys.length - 1;
+        int empty = slot;
+        int next = slot;
+
+        while (true) {
+            next = (next + 1) & mask;
+
+            if (keys[next] == null) {
+                break;
+            }
+
+            int home = hashes[next] & mask;
+
+            // The entry at next may move to empty only if its home slot is not cyclically in (empty, next].
+            boolean stays = empty <= next ? (empty < home && home <= next) : (empty < home || home <= next);
+
+            if (!stays) {
+                keys[empty] = keys[next];
+                hashes[empty] = hashes[next];
+                referenced[empty] = referenced[next];
+                moveValue(next, empty);
+                empty = next;
+            }
+        }
+
+        keys[empty] = null;
+        clearValue(empty);
+        size--;
+    }
+
+    /**
+     * Allocates a table with the given number of slots (a power of two), rehashing any existing entries.
+     */
+    private void allocateSlots(int capacity) {
+        int[][] oldKeys = keys;
+        int[] oldHashes = hashes;
+        boolean[] oldReferenced = referenced;
+
+        keys = new int[capacity][];
+        hashes = new int[capacity];
+        referenced = new boolean[capacity];
+        hand = 0;
+
+        if (oldKeys == null) {
+            allocateValues(capacity, null);
+            return;
+        }
+
+        int mask = capacity - 1;
+        int[] newSlots = new int[oldKeys.length];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null) {
+                newSlots[i] = -1;
+                continue;
+            }
+
+            int slot = oldHashes[i] & mask;
+
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+
+            keys[slot] = oldKeys[i];
+            hashes[slot] = oldHashes[i];
+            referenced[slot] = oldReferenced[i];
+            newSlots[i] = slot;
+        }
+
+        allocateValues(capacity, newSlots);
+    }
+
+    /**
+     * The smallest power of two holding maxSize entries at a load factor of at most one half.
+     */
+    private static int tableSizeFor(int maxSize) {
+        int capacity = 2;
+
+        while (capacity < 2 * maxSize) {
+            capacity <<= 1;
+        }
+
+        return capacity;
+    }
+}
+
+
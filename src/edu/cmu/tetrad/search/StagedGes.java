@@ -115,6 +115,11 @@ public final class StagedGes implements GraphSearch, GraphScorer {
      */
     private final LocalScoreCache localScoreCache = new LocalScoreCache();
 
+    /**
+     * Calculates and caches residual variances for the continuous score.
+     */
+    private LocalSemScoreEngine semScoreEngine;
+
     /**
      * Elapsed time of the most recent search.
      */
@@ -330,6 +335,20 @@ public final class StagedGes implements GraphSearch, GraphScorer {
         return elapsedTime;
     }
 
+    /**
+     * Returns the number of continuous local scores calculated so far, as opposed to looked up in the cache.
+     */
+    public long getNumScoresComputed() {
+        return semScoreEngine == null ? 0 : semScoreEngine.getNumComputed();
+    }
+
+    /**
+     * Returns the number of continuous local scores looked up in the cache so far.
+     */
+    public long getNumScoresCached() {
+        return semScoreEngine == null ? 0 : semScoreEngine.getNumCached();
+    }
+
     public void setElapsedTime(long elapsedTime) {
         this.elapsedTime = elapsedTime;
     }
@@ -975,6 +994,7 @@ public final class StagedGes implements GraphSearch, GraphScorer {
         if (!isDiscrete()) {
 //            this.variances = dataSet.getCovarianceMatrix();
             this.variances = dataSet.getCovarianceMatrix();
+            this.semScoreEngine = new LocalSemScoreEngine(variances);
         }
 
         this.sampleSize = dataSet.getNumRows();
@@ -982,6 +1002,7 @@ public final class StagedGes implements GraphSearch, GraphScorer {
 
     private void setCorrMatrix(ICovarianceMatrix covarianceMatrix) {
         this.variances = covarianceMatrix.getMatrix();
+        this.semScoreEngine = new LocalSemScoreEngine(variances);
         List<String> _varNames = covarianceMatrix.getVariableNames();
 
         this.varNames = _varNames.toArray(new String[0]);
@@ -1256,15 +1277,10 @@ public final class StagedGes implements GraphSearch, GraphScorer {
 
         if (parents.length > 0) {
 
-            // Regress z onto i, yielding regression coefficients b.
-            TetradMatrix Czz =
-                    getCovMatrix().getSelection(parents, parents);
-            TetradMatrix inverse;
-            try {
-                inverse = Czz.inverse();
-//                inverse = MatrixUtils.ginverse(Czz);
-            }
-            catch (Exception e) {
+            // Regress z onto i; the residual variance is var(i) - Cyz' inverse(Czz) Cyz.
+            variance = semScoreEngine.residualVariance(i, parents);
+
+            if (Double.isNaN(variance)) {
                 StringBuilder buf = new StringBuilder();
                 buf.append("Could not invert matrix for variables: ");
 
@@ -1278,12 +1294,6 @@ public final class StagedGes implements GraphSearch, GraphScorer {
 
                 throw new IllegalArgumentException(buf.toString());
             }
-
-            TetradVector Cyz = getCovMatrix().getColumn(i);
-            Cyz = Cyz.viewSelection(parents);
-            TetradVector b = inverse.times(Cyz);
-
-            variance -= Cyz.dotProduct(b);
         }
 
         double penalty = getPenaltyDiscount();
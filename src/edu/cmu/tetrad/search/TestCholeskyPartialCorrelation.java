@@ -0,0 +1,124 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.ChoiceGenerator;
+import edu.cmu.tetrad.util.StatUtils;
+import edu.cmu.tetrad.util.TetradMatrix;
+import edu.cmu.tetrad.util.TetradVector;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the CholeskyPartialCorrelation class.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestCholeskyPartialCorrelation extends TestCase {
+
+    public TestCholeskyPartialCorrelation(String name) {
+        super(name);
+    }
+
+    /**
+     * Walks conditioning sets in ChoiceGenerator order, as the adjacency searches do, and compares with inverting the
+     * submatrix.
+     */
+    public void testAgainstInverse() {
+        Graph graph = GraphUtils.randomDag(12, 0, 20, 5, 5, 5, false);
+        SemIm im = new SemIm(new SemPm(graph));
+        DataSet data = im.simulateData(500, false);
+        TetradMatrix cov = new CovarianceMatrix(data).getMatrix();
+
+        CholeskyPartialCorrelation engine = new CholeskyPartialCorrelation(cov);
+        int[] rest = {2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+
+        for (int depth = 0; depth <= 6; depth++) {
+            ChoiceGenerator gen = new ChoiceGenerator(rest.length, depth);
+            int[] choice;
+
+            while ((choice = gen.next()) != null) {
+                int[] z = new int[depth];
+                for (int i = 0; i < depth; i++) z[i] = rest[choice[i]];
+
+                double expected = StatUtils.partialCorrelation(cov, 0, 1, z);
+                assertEquals(expected, engine.partialCorrelation(0, 1, z), 1e-10);
+
+                // Same conditioning set, different pair.
+                expected = StatUtils.partialCorrelation(cov, 1, 0, z);
+                assertEquals(expected, engine.partialCorrelation(1, 0, z), 1e-10);
+            }
+        }
+    }
+
+    /**
+     * Adds and drops one parent at a time, as GES does, and compares with regressing on the parents directly.
+     */
+    public void testResidualVariance() {
+        Graph graph = GraphUtils.randomDag(8, 0, 12, 5, 5, 5, false);
+        SemIm im = new SemIm(new SemPm(graph));
+        DataSet data = im.simulateData(500, false);
+        TetradMatrix cov = new CovarianceMatrix(data).getMatrix();
+
+        CholeskyPartialCorrelation engine = new CholeskyPartialCorrelation(cov);
+
+        int[][] parentSets = {{}, {3}, {3, 5}, {3, 5, 1}, {5, 1}, {1, 5, 7}, {7, 6, 5, 1}, {6}, {1, 2, 3, 4, 5, 6, 7}};
+
+        for (int[] parents : parentSets) {
+            double expected = cov.get(0, 0);
+
+            if (parents.length > 0) {
+                TetradMatrix czz = cov.getSelection(parents, parents);
+                TetradVector czy = cov.getSelection(parents, new int[]{0}).getColumn(0);
+                expected -= czy.dotProduct(czz.inverse().times(czy));
+            }
+
+            assertEquals(expected, engine.residualVariance(0, parents), 1e-10);
+        }
+    }
+
+    public void testSingular() {
+        TetradMatrix cov = new TetradMatrix(new double[][]{
+                {1.0, 0.5, 0.2, 0.2},
+                {0.5, 1.0, 0.3, 0.3},
+                {0.2, 0.3, 1.0, 1.0},
+                {0.2, 0.3, 1.0, 1.0}
+        });
+
+        CholeskyPartialCorrelation engine = new CholeskyPartialCorrelation(cov);
+
+        assertTrue(Double.isNaN(engine.partialCorrelation(0, 1, new int[]{2, 3})));
+        assertEquals(StatUtils.partialCorrelation(cov, 0, 1, 2), engine.partialCorrelation(0, 1, new int[]{2}), 1e-10);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestCholeskyPartialCorrelation.class);
+    }
+}
@@ -0,0 +1,100 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.Knowledge;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Tests the FasForkJoin class.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestFasForkJoin extends TestCase {
+
+    public TestFasForkJoin(String name) {
+        super(name);
+    }
+
+    /**
+     * The fork/join search should give the same adjacencies and sepsets as FasStable, whatever the number of threads.
+     */
+    public void testSameAsFasStable() {
+        Graph graph = GraphUtils.randomDag(20, 0, 30, 5, 5, 5, false);
+        SemIm im = new SemIm(new SemPm(graph));
+        DataSet data = im.simulateData(1000, false);
+        IndependenceTest test = new IndTestFisherZ(data, 0.05);
+
+        FasStable fasStable = new FasStable(new EdgeListGraph(test.getVariables()), test);
+        Graph expected = fasStable.search();
+        SepsetMap expectedSepsets = fasStable.getSepsets();
+
+        for (int parallelism : new int[]{1, 4}) {
+            FasForkJoin fas = new FasForkJoin(test);
+            fas.setParallelism(parallelism);
+            Graph found = fas.search();
+
+            assertEquals(new HashSet<Edge>(expected.getEdges()), new HashSet<Edge>(found.getEdges()));
+
+            List<Node> nodes = test.getVariables();
+
+            for (int i = 0; i < nodes.size(); i++) {
+                for (int j = i + 1; j < nodes.size(); j++) {
+                    assertEquals(expectedSepsets.get(nodes.get(i), nodes.get(j)),
+                            fas.getSepsets().get(nodes.get(i), nodes.get(j)));
+                }
+            }
+        }
+    }
+
+    public void testKnowledge() {
+        Graph graph = GraphUtils.randomDag(10, 0, 15, 5, 5, 5, false);
+        SemIm im = new SemIm(new SemPm(graph));
+        DataSet data = im.simulateData(500, false);
+        IndependenceTest test = new IndTestFisherZ(data, 0.05);
+        List<Node> nodes = test.getVariables();
+
+        Knowledge knowledge = new Knowledge();
+        knowledge.setEdgeForbidden(nodes.get(0).getName(), nodes.get(1).getName(), true);
+        knowledge.setEdgeForbidden(nodes.get(1).getName(), nodes.get(0).getName(), true);
+
+        FasForkJoin fas = new FasForkJoin(test);
+        fas.setKnowledge(knowledge);
+        Graph found = fas.search();
+
+        assertFalse(found.isAdjacentTo(nodes.get(0), nodes.get(1)));
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestFasForkJoin.class);
+    }
+}
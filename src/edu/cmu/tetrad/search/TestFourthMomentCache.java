@@ -0,0 +1,196 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.util.RandomUtil;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests the FourthMomentCache class.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestFourthMomentCache extends TestCase {
+
+    /**
+     * Standard constructor for JUnit test cases.
+     */
+    public TestFourthMomentCache(String name) {
+        super(name);
+    }
+
+    public void testIndex() {
+        int n = 9;
+        long expected = 0;
+
+        for (int d = 0; d < n; d++) {
+            for (int c = 0; c <= d; c++) {
+                for (int b = 0; b <= c; b++) {
+                    for (int a = 0; a <= b; a++) {
+                        assertEquals(expected++, FourthMomentCache.index(a, b, c, d));
+                    }
+                }
+            }
+        }
+
+        // C(n + 3, 4) quadruples in all.
+        assertEquals((long) (n + 3) * (n + 2) * (n + 1) * n / 24, expected);
+        assertEquals(expected, FourthMomentCache.index(0, 0, 0, n));
+    }
+
+    public void testValues() {
+        double[][] columns = randomColumns(8, 500);
+        FourthMomentCache cache = new FourthMomentCache(columns);
+        RandomUtil random = RandomUtil.getInstance();
+
+        for (int k = 0; k < 300; k++) {
+            int x = random.nextInt(8);
+            int y = random.nextInt(8);
+            int z = random.nextInt(8);
+            int w = random.nextInt(8);
+
+            double expected = sxyzw(columns, x, y, z, w);
+
+            assertEquals(expected, cache.get(x, y, z, w), 1e-12);
+            assertEquals(cache.get(x, y, z, w), cache.get(w, z, y, x));
+            assertEquals(cache.get(x, y, z, w), cache.get(z, x, w, y));
+        }
+
+        assertTrue(cache.size() <= FourthMomentCache.index(0, 0, 0, 8));
+
+        // Zero is a value like any other.
+        double[][] zeros = new double[3][10];
+        FourthMomentCache zeroCache = new FourthMomentCache(zeros);
+        assertEquals(0.0, zeroCache.get(0, 1, 2, 2));
+        assertEquals(0.0, zeroCache.get(2, 1, 2, 0));
+        assertEquals(1, zeroCache.size());
+    }
+
+    /**
+     * Whatever order a quadruple is first asked for in, the stored value is the same, to the bit.
+     */
+    public void testOrder() {
+        double[][] columns = randomColumns(6, 300);
+        int[][] orders = {{0, 1, 2, 3}, {3, 2, 1, 0}, {2, 0, 3, 1}, {1, 3, 0, 2}};
+        RandomUtil random = RandomUtil.getInstance();
+
+        for (int k = 0; k < 50; k++) {
+            int[] q = {random.nextInt(6), random.nextInt(6), random.nextInt(6), random.nextInt(6)};
+            int[] sorted = q.clone();
+            Arrays.sort(sorted);
+
+            double expected = new FourthMomentCache(columns).get(sorted[0], sorted[1], sorted[2], sorted[3]);
+
+            for (int[] order : orders) {
+                FourthMomentCache cache = new FourthMomentCache(columns);
+                double value = cache.get(q[order[0]], q[order[1]], q[order[2]], q[order[3]]);
+                assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(value));
+                assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(cache.get(q[0], q[1], q[2], q[3])));
+            }
+        }
+    }
+
+    public void testPrefetch() throws InterruptedException {
+        final double[][] columns = randomColumns(20, 2000);
+        final FourthMomentCache cache = new FourthMomentCache(columns);
+        cache.setParallelism(4);
+
+        RandomUtil random = RandomUtil.getInstance();
+        final int[][] quadruples = new int[4000][];
+
+        for (int k = 0; k < quadruples.length; k++) {
+            quadruples[k] = new int[]{random.nextInt(20), random.nextInt(20), random.nextInt(20), random.nextInt(20)};
+        }
+
+        final List<String> failures = new ArrayList<String>();
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int t = 0; t < 4; t++) {
+            final int offset = t;
+
+            threads.add(new Thread() {
+                public void run() {
+                    for (int k = offset; k < quadruples.length; k += 4) {
+                        int[] q = quadruples[k];
+
+                        if (Math.abs(cache.get(q[3], q[2], q[1], q[0]) - sxyzw(columns, q[0], q[1], q[2], q[3])) > 1e-12) {
+                            synchronized (failures) {
+                                failures.add(q[0] + " " + q[1] + " " + q[2] + " " + q[3]);
+                            }
+                        }
+                    }
+                }
+            });
+        }
+
+        for (Thread thread : threads) thread.start();
+        cache.prefetch(quadruples);
+        for (Thread thread : threads) thread.join();
+
+        assertTrue(failures.toString(), failures.isEmpty());
+
+        for (int[] q : quadruples) {
+            assertEquals(sxyzw(columns, q[0], q[1], q[2], q[3]), cache.get(q[0], q[1], q[2], q[3]), 1e-12);
+        }
+    }
+
+    private static double[][] randomColumns(int numVars, int sampleSize) {
+        RandomUtil random = RandomUtil.getInstance();
+        double[][] columns = new double[numVars][sampleSize];
+
+        for (int i = 0; i < numVars; i++) {
+            for (int j = 0; j < sampleSize; j++) {
+                columns[i][j] = random.nextNormal(0, 1);
+            }
+        }
+
+        return columns;
+    }
+
+    private static double sxyzw(double[][] columns, int x, int y, int z, int w) {
+        double sum = 0.0;
+        int N = columns[x].length;
+
+        for (int j = 0; j < N; j++) {
+            sum += columns[x][j] * columns[y][j] * columns[z][j] * columns[w][j];
+        }
+
+        return (1.0 / N) * sum;
+    }
+
+    /**
+     * This method uses reflection to collect up all of the test methods from
+     * this class and return them to the test runner.
+     */
+    public static Test suite() {
+        return new TestSuite(TestFourthMomentCache.class);
+    }
+}
+
+
+
@@ -21,6 +21,8 @@
 
 package edu.cmu.tetrad.search;
 
+import edu.cmu.tetrad.data.ColtDataSet;
+import edu.cmu.tetrad.data.ContinuousVariable;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.Knowledge;
 import edu.cmu.tetrad.graph.*;
@@ -29,6 +31,7 @@ import edu.cmu.tetrad.sem.SemIm;
 import edu.cmu.tetrad.sem.SemImInitializationParams;
 import edu.cmu.tetrad.sem.SemPm;
 import edu.cmu.tetrad.util.ProbUtils;
+import edu.cmu.tetrad.util.RandomUtil;
 import edu.cmu.tetrad.util.TetradLogger;
 import junit.framework.Test;
 import junit.framework.TestCase;
@@ -253,6 +256,104 @@ public class TestGes extends TestCase {
         System.out.println(resultGraph);
     }
 
+    /**
+     * A second search over the same data should find every local score it needs in the cache.
+     */
+    public void testScoreCache() {
+        Dag trueGraph = GraphUtils.randomDag(10, 10, false);
+
+        SemPm semPm = new SemPm(trueGraph);
+        SemIm semIm = new SemIm(semPm);
+        DataSet dataSet = semIm.simulateData(1000, false);
+
+        Ges ges = new Ges(dataSet);
+
+        Graph pattern1 = ges.search();
+        long computed = ges.getNumScoresComputed();
+        long cached = ges.getNumScoresCached();
+
+        assertTrue(computed > 0);
+
+        Graph pattern2 = ges.search();
+
+        assertEquals(pattern1, pattern2);
+        assertEquals(computed, ges.getNumScoresComputed());
+        assertTrue(ges.getNumScoresCached() > cached);
+    }
+
+    /**
+     * A family whose parents are exactly collinear should stop the search with a linear dependence error, not be
+     * scored as if the variable had no parents. X3 = X1 + X2, and X4 depends on X1 and X2.
+     */
+    public void testCollinear() {
+        for (long seed = 1; seed <= 10; seed++) {
+            DataSet dataSet = collinearData(seed);
+            Ges ges = new Ges(dataSet);
+
+            Graph dag = new EdgeListGraph(dataSet.getVariables());
+            dag.addDirectedEdge(dataSet.getVariable("X1"), dataSet.getVariable("X4"));
+            dag.addDirectedEdge(dataSet.getVariable("X2"), dataSet.getVariable("X4"));
+            dag.addDirectedEdge(dataSet.getVariable("X3"), dataSet.getVariable("X4"));
+
+            try {
+                ges.getScore(dag);
+                fail("Expected a linear dependence error for seed " + seed);
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Linear dependence among variables"));
+            }
+        }
+
+        // With this seed the search itself scores X4 on X1, X2 and X3.
+        try {
+            new Ges(collinearData(1)).search();
+            fail("Expected a linear dependence error from the search.");
+        } catch (RuntimeException e) {
+            assertEquals("Linear dependence among variables: [X1, X2, X3]", e.getMessage());
+        }
+    }
+
+    private DataSet collinearData(long seed) {
+        List<Node> variables = new ArrayList<Node>();
+
+        for (int j = 1; j <= 5; j++) {
+            variables.add(new ContinuousVariable("X" + j));
+        }
+
+        RandomUtil.getInstance().setSeed(seed);
+        DataSet dataSet = new ColtDataSet(500, variables);
+
+        for (int i = 0; i < 500; i++) {
+            for (int j = 0; j < 5; j++) {
+                dataSet.setDouble(i, j, RandomUtil.getInstance().nextNormal(0, 1));
+            }
+
+            dataSet.setDouble(i, 2, dataSet.getDouble(i, 0) + dataSet.getDouble(i, 1));
+            dataSet.setDouble(i, 3, dataSet.getDouble(i, 3) + dataSet.getDouble(i, 0) + 2 * dataSet.getDouble(i, 1));
+        }
+
+        return dataSet;
+    }
+
+    /**
+     * Scoring arrows on several threads should give the same pattern as scoring them on one.
+     */
+    public void testParallelSameAsSequential() {
+        Dag trueGraph = GraphUtils.randomDag(30, 40, false);
+
+        SemPm semPm = new SemPm(trueGraph);
+        SemIm semIm = new SemIm(semPm);
+        DataSet dataSet = semIm.simulateData(1000, false);
+
+        Ges ges1 = new Ges(dataSet);
+        Graph pattern1 = ges1.search();
+
+        Ges ges2 = new Ges(dataSet);
+        ges2.setParallelism(4);
+        Graph pattern2 = ges2.search();
+
+        assertEquals(pattern1, pattern2);
+    }
+
     public void testSearch6() {
         Dag trueGraph = GraphUtils.randomDag(10, 10, false);
 
@@ -0,0 +1,176 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests the IndTestCached class.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestIndTestCached extends TestCase {
+
+    public TestIndTestCached(String name) {
+        super(name);
+    }
+
+    public void testSymmetricKeys() {
+        IndependenceTest test = new IndTestFisherZ(simulate(), 0.05);
+        IndTestCached cached = new IndTestCached(test);
+        List<Node> nodes = test.getVariables();
+
+        Node x = nodes.get(0);
+        Node y = nodes.get(1);
+        Node z1 = nodes.get(2);
+        Node z2 = nodes.get(3);
+
+        IndependenceResult result = cached.checkIndependence(x, y, Arrays.asList(z1, z2));
+        assertEquals(test.checkIndependence(x, y, Arrays.asList(z1, z2)).getPValue(), result.getPValue(), 0.0);
+        assertEquals(0, cached.getCache().getHits());
+
+        assertSame(result, cached.checkIndependence(y, x, Arrays.asList(z2, z1)));
+        assertEquals(result.isIndependent(), cached.isIndependent(x, y, z2, z1));
+        assertEquals(result.getPValue(), cached.getPValue(), 0.0);
+        assertEquals(2, cached.getCache().getHits());
+        assertEquals(1, cached.getCache().getMisses());
+        assertEquals(1, cached.getCache().size());
+
+        cached.checkIndependence(x, y, Arrays.asList(z1));
+        assertEquals(2, cached.getCache().size());
+
+        cached.setAlpha(0.01);
+        assertEquals(0, cached.getCache().size());
+        assertEquals(0.01, test.getAlpha(), 0.0);
+    }
+
+    public void testSameResultsAsUncached() {
+        IndependenceTest test = new IndTestFisherZ(simulate(), 0.05);
+        IndTestCached cached = new IndTestCached(test);
+
+        Pc pc = new Pc(test);
+        Graph expected = pc.search();
+
+        Graph first = new Pc(cached).search();
+        long misses = cached.getCache().getMisses();
+
+        Graph second = new Pc(cached).search();
+
+        assertEquals(expected, first);
+        assertEquals(expected, second);
+        assertEquals(misses, cached.getCache().getMisses());
+        assertTrue(cached.getCache().getHits() > 0);
+    }
+
+    public void testSaveAndLoad() throws Exception {
+        IndependenceTest test = new IndTestFisherZ(simulate(), 0.05);
+        IndTestCached cached = new IndTestCached(test);
+        new Pc(cached).search();
+
+        File file = File.createTempFile("indtests", ".txt");
+        file.deleteOnExit();
+        cached.save(file);
+
+        IndTestCached loaded = new IndTestCached(test);
+        assertEquals(cached.getCache().size(), loaded.load(file));
+        assertEquals(cached.getCache().size(), loaded.getCache().size());
+
+        new Pc(loaded).search();
+        assertEquals(0, loaded.getCache().getMisses());
+
+        IndTestCached otherAlpha = new IndTestCached(new IndTestFisherZ((DataSet) test.getData(), 0.01));
+
+        try {
+            otherAlpha.load(file);
+            fail("Results for a different alpha should not be loaded.");
+        } catch (IllegalArgumentException e) {
+            // Succeeded.
+        }
+
+        // Same test class, alpha, variables and sample size, but different data.
+        DataSet other = simulate(test.getVariables());
+        IndTestCached otherData = new IndTestCached(new IndTestFisherZ(other, 0.05));
+
+        try {
+            otherData.load(file);
+            fail("Results for different data should not be loaded.");
+        } catch (IllegalArgumentException e) {
+            // Succeeded.
+        }
+    }
+
+    public void testBounded() {
+        IndependenceTest test = new IndTestFisherZ(simulate(), 0.05);
+        IndTestCached cached = new IndTestCached(test, 32);
+        List<Node> nodes = test.getVariables();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = i + 1; j < nodes.size(); j++) {
+                for (int k = 0; k < nodes.size(); k++) {
+                    if (k == i || k == j) continue;
+                    List<Node> z = new ArrayList<Node>();
+                    z.add(nodes.get(k));
+                    cached.checkIndependence(nodes.get(i), nodes.get(j), z);
+                }
+            }
+        }
+
+        assertTrue(cached.getCache().size() <= 32);
+        assertTrue(cached.getCache().getEvictions() > 0);
+    }
+
+    private DataSet simulate() {
+        Graph graph = GraphUtils.randomDag(10, 0, 15, 5, 5, 5, false);
+        SemIm im = new SemIm(new SemPm(graph));
+        return im.simulateData(500, false);
+    }
+
+    /**
+     * Simulates data over the given variables, by name.
+     */
+    private DataSet simulate(List<Node> variables) {
+        Graph graph = new EdgeListGraph();
+
+        for (Node variable : variables) {
+            graph.addNode(new GraphNode(variable.getName()));
+        }
+
+        SemIm im = new SemIm(new SemPm(graph));
+        return im.simulateData(500, false);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestIndTestCached.class);
+    }
+}
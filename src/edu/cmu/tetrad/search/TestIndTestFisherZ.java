@@ -21,14 +21,20 @@
 
 package edu.cmu.tetrad.search;
 
+import edu.cmu.tetrad.data.ColtDataSet;
+import edu.cmu.tetrad.data.ContinuousVariable;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.sem.SemIm;
 import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
+import java.util.ArrayList;
+import java.util.List;
+
 
 /**
  * Tests the IndTestTimeSeries class.
@@ -104,6 +110,117 @@ public class TestIndTestFisherZ extends TestCase {
     }
 
 
+    /**
+     * One test object shared by several threads should give the same results as the same tests run one at a time.
+     */
+    public void testCheckIndependenceConcurrently() throws InterruptedException {
+        Graph graph = GraphUtils.randomDag(10, 0, 15, 5, 5, 5, false);
+        SemIm im = new SemIm(new SemPm(graph));
+        DataSet data = im.simulateData(500, false);
+
+        final IndependenceTest test = new IndTestFisherZ(data, 0.05);
+        final List<Node> variables = test.getVariables();
+        final int numVars = variables.size();
+
+        final double[][] expected = new double[numVars][numVars];
+
+        for (int i = 0; i < numVars; i++) {
+            for (int j = 0; j < numVars; j++) {
+                if (i == j) continue;
+                List<Node> z = conditioningSet(variables, i, j);
+                boolean independent = test.isIndependent(variables.get(i), variables.get(j), z);
+                expected[i][j] = test.getPValue();
+
+                IndependenceResult result = test.checkIndependence(variables.get(i), variables.get(j), z);
+                assertEquals(independent, result.isIndependent());
+                assertEquals(expected[i][j], result.getPValue(), 0.0);
+            }
+        }
+
+        final boolean[] failed = new boolean[1];
+        Thread[] threads = new Thread[4];
+
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < numVars; i++) {
+                        for (int j = 0; j < numVars; j++) {
+                            if (i == j) continue;
+                            List<Node> z = conditioningSet(variables, i, j);
+                            IndependenceResult result = test.checkIndependence(variables.get(i), variables.get(j), z);
+
+                            if (result.getPValue() != expected[i][j]) {
+                                failed[0] = true;
+                            }
+                        }
+                    }
+                }
+            };
+
+            threads[t].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertFalse(failed[0]);
+    }
+
+    /**
+     * A collinear conditioning set should be reported as singular, the same way, by each test that factors cov(z, z).
+     */
+    public void testSingularConditioningSet() {
+        List<Node> variables = new ArrayList<Node>();
+
+        for (int j = 1; j <= 5; j++) {
+            variables.add(new ContinuousVariable("X" + j));
+        }
+
+        for (long seed = 1; seed <= 10; seed++) {
+            RandomUtil.getInstance().setSeed(seed);
+            DataSet data = new ColtDataSet(500, variables);
+
+            for (int i = 0; i < 500; i++) {
+                for (int j = 0; j < 5; j++) {
+                    data.setDouble(i, j, RandomUtil.getInstance().nextNormal(0, 1));
+                }
+
+                data.setDouble(i, 2, data.getDouble(i, 0) + data.getDouble(i, 1));
+            }
+
+            IndependenceTest[] tests = {
+                    new IndTestFisherZ(data, 0.05),
+                    new IndTestFisherZRecursive(data, 0.05),
+                    new IndTestPartialCorrelation(data, 0.05)
+            };
+
+            for (IndependenceTest test : tests) {
+                List<Node> z = new ArrayList<Node>();
+                z.add(data.getVariable("X1"));
+                z.add(data.getVariable("X2"));
+                z.add(data.getVariable("X3"));
+
+                try {
+                    test.isIndependent(data.getVariable("X4"), data.getVariable("X5"), z);
+                    fail(test + " accepted a singular conditioning set for seed " + seed);
+                } catch (IllegalArgumentException e) {
+                    // Expected.
+                }
+            }
+        }
+    }
+
+    private static List<Node> conditioningSet(List<Node> variables, int i, int j) {
+        List<Node> z = new ArrayList<Node>();
+
+        for (int k = 0; k < variables.size() && z.size() < (i + j) % 3; k++) {
+            if (k != i && k != j) z.add(variables.get(k));
+        }
+
+        return z;
+    }
+
     public static Test suite() {
         return new TestSuite(TestIndTestFisherZ.class);
     }
@@ -0,0 +1,112 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the LocalScoreCache class.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestLocalScoreCache extends TestCase {
+
+    public TestLocalScoreCache(String name) {
+        super(name);
+    }
+
+    public void testParentOrderDoesNotMatter() {
+        LocalScoreCache cache = new LocalScoreCache();
+
+        cache.add(3, new int[]{5, 1, 9}, -12.5);
+
+        assertEquals(-12.5, cache.get(3, new int[]{9, 5, 1}), 0.0);
+        assertEquals(-12.5, cache.get(3, new int[]{1, 5, 9}), 0.0);
+        assertTrue(Double.isNaN(cache.get(4, new int[]{1, 5, 9})));
+        assertTrue(Double.isNaN(cache.get(3, new int[]{1, 5})));
+        assertTrue(Double.isNaN(cache.get(3, new int[]{1, 5, 8})));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    public void testManyEntries() {
+        LocalScoreCache cache = new LocalScoreCache();
+
+        for (int i = 0; i < 200; i++) {
+            for (int j = 0; j < 50; j++) {
+                cache.add(i, new int[]{j, j + 100}, i * 1000 + j);
+            }
+        }
+
+        assertEquals(10000, cache.size());
+
+        for (int i = 0; i < 200; i++) {
+            for (int j = 0; j < 50; j++) {
+                assertEquals(i * 1000 + j, cache.get(i, new int[]{j + 100, j}), 0.0);
+            }
+        }
+
+        cache.add(0, new int[]{100, 0}, 7.0);
+        assertEquals(7.0, cache.get(0, new int[]{0, 100}), 0.0);
+        assertEquals(10000, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertTrue(Double.isNaN(cache.get(0, new int[]{0, 100})));
+    }
+
+    public void testEviction() {
+        LocalScoreCache cache = new LocalScoreCache(100);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.add(i, new int[]{i + 1}, i);
+
+            // Keep touching entry 0 so that the CLOCK policy keeps it.
+            assertEquals(0.0, cache.get(0, new int[]{1}), 0.0);
+        }
+
+        assertEquals(100, cache.size());
+        assertEquals(900, cache.getEvictions());
+
+        int found = 0;
+
+        for (int i = 0; i < 1000; i++) {
+            double score = cache.get(i, new int[]{i + 1});
+
+            if (!Double.isNaN(score)) {
+                assertEquals((double) i, score, 0.0);
+                found++;
+            }
+        }
+
+        assertEquals(100, found);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestLocalScoreCache.class);
+    }
+}
+
+
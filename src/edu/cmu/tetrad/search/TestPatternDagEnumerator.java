@@ -0,0 +1,199 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.graph.*;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tests the PatternDagEnumerator class against DagInPatternIterator and DagIterator.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestPatternDagEnumerator extends TestCase {
+
+    /**
+     * Standard constructor for JUnit test cases.
+     */
+    public TestPatternDagEnumerator(String name) {
+        super(name);
+    }
+
+    public void testPatterns() {
+        for (int i = 0; i < 20; i++) {
+            Dag dag = GraphUtils.randomDag(10, 0, 12, 3, 3, 3, false);
+            Graph pattern = SearchGraphUtils.patternFromDag(dag);
+
+            Set<Set<Edge>> expected = new HashSet<Set<Edge>>();
+            DagInPatternIterator iterator = new DagInPatternIterator(pattern);
+
+            while (iterator.hasNext()) {
+                expected.add(new HashSet<Edge>(iterator.next().getEdges()));
+            }
+
+            assertTrue(expected.contains(new HashSet<Edge>(dag.getEdges())));
+
+            Set<Set<Edge>> found = new HashSet<Set<Edge>>();
+            PatternDagEnumerator enumerator = new PatternDagEnumerator(pattern);
+            int count = 0;
+
+            while (enumerator.hasNext()) {
+                Graph next = enumerator.next();
+                assertEquals(pattern.getNodes(), next.getNodes());
+                assertEquals(new HashSet<Edge>(pattern.getEdges()),
+                        new HashSet<Edge>(SearchGraphUtils.patternFromDag(next).getEdges()));
+                found.add(new HashSet<Edge>(next.getEdges()));
+                count++;
+            }
+
+            assertEquals(expected, found);
+            assertEquals(expected.size(), count);
+            assertNull(enumerator.next());
+
+            assertEquals(count, new PatternDagEnumerator(pattern).count());
+        }
+    }
+
+    public void testParallel() {
+        for (int i = 0; i < 5; i++) {
+            Dag dag = GraphUtils.randomDag(20, 0, 25, 4, 4, 4, false);
+            Graph pattern = SearchGraphUtils.patternFromDag(dag);
+
+            PatternDagEnumerator enumerator = new PatternDagEnumerator(pattern);
+            enumerator.setParallelism(1);
+            final Set<Set<Edge>> sequential = new HashSet<Set<Edge>>();
+
+            long count = enumerator.visitAll(new PatternDagEnumerator.DagVisitor() {
+                public void visit(Graph dag) {
+                    sequential.add(new HashSet<Edge>(dag.getEdges()));
+                }
+            });
+
+            assertEquals(sequential.size(), count);
+
+            enumerator.setParallelism(3);
+            final Set<Set<Edge>> parallel = Collections.synchronizedSet(new HashSet<Set<Edge>>());
+
+            assertEquals(count, enumerator.visitAll(new PatternDagEnumerator.DagVisitor() {
+                public void visit(Graph dag) {
+                    parallel.add(new HashSet<Edge>(dag.getEdges()));
+                }
+            }));
+
+            assertEquals(sequential, parallel);
+            assertEquals(count, enumerator.count());
+        }
+    }
+
+    public void testNewColliders() {
+        for (int i = 0; i < 10; i++) {
+            Dag dag = GraphUtils.randomDag(7, 0, 8, 3, 3, 3, false);
+            Graph graph = new EdgeListGraph(dag);
+
+            // Make all but a few edges undirected.
+            int k = 0;
+
+            for (Edge edge : dag.getEdges()) {
+                if (k++ % 3 != 0) {
+                    graph.removeEdge(edge);
+                    graph.addUndirectedEdge(edge.getNode1(), edge.getNode2());
+                }
+            }
+
+            Set<Set<Edge>> expected = new HashSet<Set<Edge>>();
+            DagIterator iterator = new DagIterator(graph);
+
+            while (iterator.hasNext()) {
+                Graph next = iterator.next();
+
+                if (!next.existsDirectedCycle()) {
+                    expected.add(new HashSet<Edge>(next.getEdges()));
+                }
+            }
+
+            Set<Set<Edge>> found = new HashSet<Set<Edge>>();
+            PatternDagEnumerator enumerator = new PatternDagEnumerator(graph, true);
+
+            while (enumerator.hasNext()) {
+                found.add(new HashSet<Edge>(enumerator.next().getEdges()));
+            }
+
+            assertEquals(expected, found);
+            assertEquals(found.size(), enumerator.count());
+        }
+    }
+
+    public void testNoDags() {
+        Node x = new GraphNode("X");
+        Node y = new GraphNode("Y");
+        Node z = new GraphNode("Z");
+
+        Graph graph = new EdgeListGraph();
+        graph.addNode(x);
+        graph.addNode(y);
+        graph.addNode(z);
+        graph.addDirectedEdge(x, y);
+        graph.addDirectedEdge(y, z);
+        graph.addUndirectedEdge(z, x);
+
+        assertEquals(1, new PatternDagEnumerator(graph, true).count());
+
+        graph.removeEdge(z, x);
+        graph.addDirectedEdge(z, x);
+
+        assertEquals(0, new PatternDagEnumerator(graph).count());
+        assertFalse(new PatternDagEnumerator(graph).hasNext());
+    }
+
+    public void testBidirected() {
+        Graph graph = new EdgeListGraph();
+        Node x = new GraphNode("X");
+        Node y = new GraphNode("Y");
+        graph.addNode(x);
+        graph.addNode(y);
+        graph.addBidirectedEdge(x, y);
+
+        try {
+            new PatternDagEnumerator(graph);
+            fail("Should not accept bidirected edges.");
+        } catch (IllegalArgumentException e) {
+            // Succeed.
+        }
+    }
+
+    /**
+     * This method uses reflection to collect up all of the test methods from
+     * this class and return them to the test runner.
+     */
+    public static Test suite() {
+
+        // Edit the name of the class in the parens to match the name
+        // of this class.
+        return new TestSuite(TestPatternDagEnumerator.class);
+    }
+}
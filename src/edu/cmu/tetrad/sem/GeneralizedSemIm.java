@@ -27,16 +27,20 @@ import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DataUtils;
 import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.util.*;
+import edu.cmu.tetradapp.model.calculator.expression.CompiledExpression;
 import edu.cmu.tetradapp.model.calculator.expression.Context;
 import edu.cmu.tetradapp.model.calculator.expression.Expression;
 import edu.cmu.tetradapp.model.calculator.parser.ExpressionLexer;
 import edu.cmu.tetradapp.model.calculator.parser.Token;
 import pal.math.ConjugateDirectionSearch;
 import pal.math.MultivariateFunction;
+import org.apache.commons.math3.random.RandomDataGenerator;
+import org.apache.commons.math3.random.Well44497b;
 import pal.math.OrthogonalHints;
 
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.RecursiveAction;
 
 import static java.lang.Math.*;
 
@@ -46,6 +50,16 @@ import static java.lang.Math.*;
 public class GeneralizedSemIm implements IM, TetradSerializable {
     static final long serialVersionUID = 23L;
 
+    /**
+     * The number of rows in a chunk of a simulation. Part of the definition of the simulated data for a seed.
+     */
+    private static final int CHUNK = 4096;
+
+    /**
+     * Below this many rows times variables simulations are done on the calling thread.
+     */
+    private static final long MIN_PARALLEL_WORK = 1L << 16;
+
     /**
      * The wrapped PM, that holds all of the expressions and structure for the model.
      */
@@ -67,6 +81,11 @@ public class GeneralizedSemIm implements IM, TetradSerializable {
      */
     private double selfLoopCoef = Double.NaN;
 
+    /**
+     * The number of threads simulations are split among, or 0 for ParallelUtils.getDefaultParallelism().
+     */
+    private transient int parallelism;
+
 
     /**
      * Constructs a new GeneralizedSemIm from the given GeneralizedSemPm by picking values for each of
@@ -404,26 +423,6 @@ public class GeneralizedSemIm implements IM, TetradSerializable {
      * @return the simulated data set.
      */
     public DataSet simulateDataRecursive(int sampleSize, boolean latentDataSaved) {
-        final Map<String, Double> variableValues = new HashMap<String, Double>();
-
-        Context context = new Context() {
-            public Double getValue(String term) {
-                Double value = parameterValues.get(term);
-
-                if (value != null) {
-                    return value;
-                }
-
-                value = variableValues.get(term);
-
-                if (value != null) {
-                    return value;
-                }
-
-                throw new IllegalArgumentException("No value recorded for '" + term + "'");
-            }
-        };
-
         List<Node> variables = pm.getNodes();
         List<Node> continuousVariables = new LinkedList<Node>();
         List<Node> nonErrorVariables = pm.getVariableNodes();
@@ -444,58 +443,64 @@ public class GeneralizedSemIm implements IM, TetradSerializable {
         SemGraph graph = pm.getGraph();
         List<Node> tierOrdering = graph.getFullTierOrdering();
 
-        int[] tierIndices = new int[variables.size()];
+        final int[] tierIndices = new int[variables.size()];
 
         for (int i = 0; i < tierIndices.length; i++) {
             tierIndices[i] = nonErrorVariables.indexOf(tierOrdering.get(i));
         }
 
-        int[][] _parents = new int[variables.size()][];
+        // Compile the expressions, with the parameters as constants and the nodes, in tier order, as slots.
+        List<String> slots = new ArrayList<String>();
 
-        for (int i = 0; i < variables.size(); i++) {
-            Node node = variables.get(i);
-            List<Node> parents = graph.getParents(node);
+        for (Node node : tierOrdering) {
+            slots.add(node.getName());
+        }
 
-            _parents[i] = new int[parents.size()];
+        final CompiledExpression[] expressions = new CompiledExpression[tierOrdering.size()];
+        boolean threadSafe = true;
 
-            for (int j = 0; j < parents.size(); j++) {
-                Node _parent = parents.get(j);
-                _parents[i][j] = variables.indexOf(_parent);
-            }
+        for (int tier = 0; tier < tierOrdering.size(); tier++) {
+            Expression expression = pm.getNodeExpression(tierOrdering.get(tier));
+            expressions[tier] = new CompiledExpression(expression, slots, parameterValues);
+            threadSafe &= expressions[tier].isThreadSafe();
         }
 
-        // Do the simulation.
-        ROW:
-        for (int row = 0; row < sampleSize; row++) {
-            variableValues.clear();
-
-            for (int tier = 0; tier < tierOrdering.size(); tier++) {
-                Node node = tierOrdering.get(tier);
-                Expression expression = pm.getNodeExpression(node);
-                double value = expression.evaluate(context);
-                variableValues.put(node.getName(), value);
+        // Do the simulation, a chunk of rows at a time, a node at a time.
+        final TetradMatrix data = ((ColtDataSet) fullDataSet).getDoubleDataNoCopy();
+        long seed = RandomUtil.getInstance().nextLong();
+        List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
 
-                int col = tierIndices[tier];
+        for (int chunk = 0; (long) chunk * CHUNK < sampleSize; chunk++) {
+            final int from = chunk * CHUNK;
+            final int to = Math.min(from + CHUNK, sampleSize);
+            final long chunkSeed = ParallelUtils.chunkSeed(seed, chunk);
 
-                if (col == -1) {
-                    continue;
-                }
+            tasks.add(new RecursiveAction() {
+                protected void compute() {
+                    int size = to - from;
+                    RandomDataGenerator random = new RandomDataGenerator(new Well44497b(chunkSeed));
+                    double[][] values = new double[expressions.length][size];
 
-//                if (isSimulatePositiveDataOnly() && value < 0) {
-//                    row--;
-//                    continue ROW;
-//                }
+                    for (int tier = 0; tier < expressions.length; tier++) {
+                        double[] _values = values[tier];
+                        expressions[tier].evaluate(values, 0, size, _values, random);
 
-//                if (!Double.isNaN(selfLoopCoef) && row > 0) {
-//                    value += selfLoopCoef * fullDataSet.getDouble(row - 1, col);
-//                }
+                        int col = tierIndices[tier];
 
-//                value = min(max(value, -5.), 5.);
+                        if (col == -1) {
+                            continue;
+                        }
 
-                fullDataSet.setDouble(row, col, value);
-            }
+                        for (int k = 0; k < size; k++) {
+                            data.set(from + k, col, _values[k]);
+                        }
+                    }
+                }
+            });
         }
 
+        runChunks(tasks, threadSafe && (long) sampleSize * expressions.length >= MIN_PARALLEL_WORK);
+
         if (latentDataSaved) {
             return fullDataSet;
         } else {
@@ -668,8 +673,6 @@ public class GeneralizedSemIm implements IM, TetradSerializable {
     }
 
     public DataSet simulateDataAvoidInfinity(int sampleSize, boolean latentDataSaved) {
-        final Map<String, Double> variableValues = new HashMap<String, Double>();
-
         List<Node> continuousVariables = new LinkedList<Node>();
         final List<Node> variableNodes = pm.getVariableNodes();
 
@@ -685,136 +688,55 @@ public class GeneralizedSemIm implements IM, TetradSerializable {
 
         DataSet fullDataSet = new ColtDataSet(sampleSize, continuousVariables);
 
-        final Context context = new Context() {
-            public Double getValue(String term) {
-                Double value = parameterValues.get(term);
-
-                if (value != null) {
-                    return value;
-                }
-
-                value = variableValues.get(term);
-
-                if (value != null) {
-                    return value;
-                }
-
-                throw new IllegalArgumentException("No value recorded for '" + term + "'");
-            }
-        };
-
-        boolean allInRange = true;
-
-        // Do the simulation.
-        ROW:
-        for (int row = 0; row < sampleSize; row++) {
-
-            // Take random draws from error distributions.
-            for (Node variable : variableNodes) {
-                Node error = pm.getErrorNode(variable);
-
-                Expression expression = pm.getNodeExpression(error);
-                double value = expression.evaluate(context);
-
-                if (Double.isNaN(value)) {
-                    throw new IllegalArgumentException("Undefined value for expression: " + expression);
-                }
-
-                variableValues.put(error.getName(), value);
-            }
-
-            // Set the variable nodes to zero.
-            for (Node variable : variableNodes) {
-                Node error = pm.getErrorNode(variable);
-
-                Expression expression = pm.getNodeExpression(error);
-                double value = expression.evaluate(context);
-
-                if (Double.isNaN(value)) {
-                    throw new IllegalArgumentException("Undefined value for expression: " + expression);
-                }
-
-                variableValues.put(variable.getName(), value); //0.0; //RandomUtil.getInstance().nextUniform(-1, 1));
-            }
-
-            // Repeatedly update variable values until one of them hits infinity or negative infinity or
-            // convergence within delta.
-
-            double delta = 1e-10;
-            int count = -1;
-
-            while (++count < 5000) {
-                double[] values = new double[variableNodes.size()];
-
-                for (int i = 0; i < values.length; i++) {
-                    Node node = variableNodes.get(i);
-                    Expression expression = pm.getNodeExpression(node);
-                    double value = expression.evaluate(context);
-                    values[i] = value;
-                }
-
-                allInRange = true;
-
-                for (int i = 0; i < values.length; i++) {
-                    Node node = variableNodes.get(i);
-
-                    // If any of the variables hasn't converged or if any of the variable values has gone
-                    // outside of the bound (-1e6, 1e6), judge nonconvergence and pick another random starting point.
-                    if (!(Math.abs(variableValues.get(node.getName()) - values[i]) < delta)) {
-                        if (!(Math.abs(variableValues.get(node.getName())) < 1e6)) {
-                            if (count < 1000) {
-                                row--;
-                                continue ROW;
-                            }
-                        }
-
-                        allInRange = false;
-                        break;
-                    }
-
-                }
-
-                for (int i = 0; i < variableNodes.size(); i++) {
-                    variableValues.put(variableNodes.get(i).getName(), values[i]);
-                }
-
-                if (allInRange) {
-                    break;
-                }
-            }
-
-            if (!allInRange) {
-                if (count < 10000) {
-                    row--;
-                    System.out.println("Trying another starting point...");
-                    continue ROW;
-                } else {
-                    System.out.println("Couldn't converge in simulation.");
+        // Compile the expressions, with the parameters as constants and the variables, then their errors, as slots.
+        int numVars = variableNodes.size();
+        List<String> slots = new ArrayList<String>();
 
-                    for (int i = 0; i < variableNodes.size(); i++) {
-                        fullDataSet.setDouble(row, i, Double.NaN);
-//                    continue ROW;
-                        return fullDataSet;
-                    }
-                }
-            }
+        for (Node variable : variableNodes) {
+            slots.add(variable.getName());
+        }
 
-            for (int i = 0; i < variableNodes.size(); i++) {
-                double value = variableValues.get(variableNodes.get(i).getName());
+        for (Node variable : variableNodes) {
+            slots.add(pm.getErrorNode(variable).getName());
+        }
 
-                if (isSimulatePositiveDataOnly() && value < 0) {
-                    row--;
-                    continue ROW;
-                }
+        final Expression[] errorExpressions = new Expression[numVars];
+        final CompiledExpression[] compiledErrors = new CompiledExpression[numVars];
+        final CompiledExpression[] compiledVariables = new CompiledExpression[numVars];
+        boolean threadSafe = true;
+
+        for (int i = 0; i < numVars; i++) {
+            errorExpressions[i] = pm.getNodeExpression(pm.getErrorNode(variableNodes.get(i)));
+            compiledErrors[i] = new CompiledExpression(errorExpressions[i], slots, parameterValues);
+            compiledVariables[i] = new CompiledExpression(pm.getNodeExpression(variableNodes.get(i)), slots,
+                    parameterValues);
+            threadSafe &= compiledErrors[i].isThreadSafe() && compiledVariables[i].isThreadSafe();
+        }
 
-                if (!Double.isNaN(selfLoopCoef) && row > 0) {
-                    value += selfLoopCoef * fullDataSet.getDouble(row - 1, i);
+        // Rows are simulated independently, a chunk at a time, unless there is a self loop, which adds in the
+        // previous row.
+        final TetradMatrix data = ((ColtDataSet) fullDataSet).getDoubleDataNoCopy();
+        boolean independentRows = Double.isNaN(selfLoopCoef);
+        int chunkSize = independentRows ? CHUNK : Math.max(sampleSize, 1);
+        long seed = RandomUtil.getInstance().nextLong();
+        List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+
+        for (int chunk = 0; (long) chunk * chunkSize < sampleSize; chunk++) {
+            final int from = chunk * chunkSize;
+            final int to = Math.min(from + chunkSize, sampleSize);
+            final long chunkSeed = ParallelUtils.chunkSeed(seed, chunk);
+
+            tasks.add(new RecursiveAction() {
+                protected void compute() {
+                    RandomDataGenerator random = new RandomDataGenerator(new Well44497b(chunkSeed));
+                    simulateRowsAvoidInfinity(data, from, to, errorExpressions, compiledErrors, compiledVariables,
+                            random);
                 }
-
-                fullDataSet.setDouble(row, i, value);
-            }
+            });
         }
 
+        runChunks(tasks, threadSafe && independentRows && (long) sampleSize * numVars >= MIN_PARALLEL_WORK);
+
         if (latentDataSaved) {
             return fullDataSet;
         } else {
@@ -823,6 +745,19 @@ public class GeneralizedSemIm implements IM, TetradSerializable {
 
     }
 
+    public int getParallelism() {
+        return parallelism == 0 ? ParallelUtils.getDefaultParallelism() : parallelism;
+    }
+
+    /**
+     * Sets the number of threads that simulateDataRecursive and simulateDataAvoidInfinity use. Default is
+     * ParallelUtils.getDefaultParallelism(). Does not affect the data simulated.
+     */
+    public void setParallelism(int parallelism) {
+        ParallelUtils.checkParallelism(parallelism);
+        this.parallelism = parallelism;
+    }
+
     public DataSet simulateDataSpecial1(int sampleSize, boolean latentDataSaved, int timeStepsPerSecond) {
 
         final Map<String, Double> variableValues = new HashMap<String, Double>();
@@ -1367,5 +1302,111 @@ public class GeneralizedSemIm implements IM, TetradSerializable {
     public void setSelfLoop(double selfLoop) {
         this.selfLoopCoef = selfLoop;
     }
+
+    //==============================PRIVATE METHODS=========================//
+
+    /**
+     * Simulates the rows from, inclusive, to to, exclusive, for simulateDataAvoidInfinity. The slots are the
+     * variables followed by their errors.
+     */
+    private void simulateRowsAvoidInfinity(TetradMatrix data, int from, int to, Expression[] errorExpressions,
+                                           CompiledExpression[] compiledErrors,
+                                           CompiledExpression[] compiledVariables, RandomDataGenerator random) {
+        int numVars = compiledVariables.length;
+        double[] values = new double[2 * numVars];
+        double[] next = new double[numVars];
+        boolean allInRange;
+
+        ROW:
+        for (int row = from; row < to; row++) {
+
+            // Take random draws from error distributions.
+            for (int i = 0; i < numVars; i++) {
+                double value = compiledErrors[i].evaluate(values, random);
+
+                if (Double.isNaN(value)) {
+                    throw new IllegalArgumentException("Undefined value for expression: " + errorExpressions[i]);
+                }
+
+                values[numVars + i] = value;
+            }
+
+            // Start the variables off at further draws from their error distributions.
+            for (int i = 0; i < numVars; i++) {
+                double value = compiledErrors[i].evaluate(values, random);
+
+                if (Double.isNaN(value)) {
+                    throw new IllegalArgumentException("Undefined value for expression: " + errorExpressions[i]);
+                }
+
+                values[i] = value;
+            }
+
+            // Repeatedly update variable values until one of them hits infinity or negative infinity or
+            // convergence within delta.
+            double delta = 1e-10;
+            int count = -1;
+            allInRange = true;
+
+            while (++count < 5000) {
+                for (int i = 0; i < numVars; i++) {
+                    next[i] = compiledVariables[i].evaluate(values, random);
+                }
+
+                allInRange = true;
+
+                for (int i = 0; i < numVars; i++) {
+
+                    // If any of the variables hasn't converged or if any of the variable values has gone
+                    // outside of the bound (-1e6, 1e6), judge nonconvergence and pick another random starting point.
+                    if (!(Math.abs(values[i] - next[i]) < delta)) {
+                        if (!(Math.abs(values[i]) < 1e6)) {
+                            if (count < 1000) {
+                                row--;
+                                continue ROW;
+                            }
+                        }
+
+                        allInRange = false;
+                        break;
+                    }
+                }
+
+                System.arraycopy(next, 0, values, 0, numVars);
+
+                if (allInRange) {
+                    break;
+                }
+            }
+
+            if (!allInRange) {
+                row--;
+                continue ROW;
+            }
+
+            for (int i = 0; i < numVars; i++) {
+                double value = values[i];
+
+                if (isSimulatePositiveDataOnly() && value < 0) {
+                    row--;
+                    continue ROW;
+                }
+
+                if (!Double.isNaN(selfLoopCoef) && row > 0) {
+                    value += selfLoopCoef * data.get(row - 1, i);
+                }
+
+                data.set(row, i, value);
+            }
+        }
+    }
+
+    /**
+     * Runs the given chunks of a simulation, on the shared fork/join pool if parallel.
+     */
+    private void runChunks(List<RecursiveAction> tasks, boolean parallel) {
+        ParallelUtils.runAll(tasks, parallel ? getParallelism() : 1);
+    }
 }
 
+
@@ -32,7 +32,6 @@ import edu.cmu.tetrad.util.dist.Distribution;
 import edu.cmu.tetrad.util.dist.Split;
 import edu.cmu.tetrad.util.dist.Uniform;
 
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -74,11 +73,47 @@ public final class LargeSemSimulator {
     /**
      * This simulates data by picking random values for the exogenous terms and
      * percolating this information down through the SEM, assuming it is
-     * acyclic. Works, but will hang for cyclic models, and is very slow for
-     * large numbers of variables (probably due to the heavyweight lookups of
-     * various values--could be improved).
+     * acyclic. Will hang for cyclic models. New parameters are picked, using
+     * RandomUtil, for each call.
      */
     public DataSet simulateDataAcyclic(int sampleSize) {
+        pickParameters();
+        return simulateDataAcyclic(new ColtDataSet(sampleSize, makeVariables()),
+                RandomUtil.getInstance().nextLong());
+    }
+
+    /**
+     * Like simulateDataAcyclic(int), but the data are simulated in parallel
+     * from the given seed, and for given parameters are the same for a given
+     * seed, however many threads are used. The parameters are still picked
+     * using RandomUtil.
+     *
+     * @see ParallelSemSimulator
+     */
+    public DataSet simulateDataAcyclic(int sampleSize, long seed) {
+        pickParameters();
+        return simulateDataAcyclic(new ColtDataSet(sampleSize, makeVariables()), seed);
+    }
+
+    /**
+     * Fills the given data set, whose variables must be those of the graph,
+     * in order, with data simulated using the parameters picked by the last
+     * call to simulateDataAcyclic(int).
+     */
+    public DataSet simulateDataAcyclic(DataSet dataSet) {
+        return simulateDataAcyclic(dataSet, RandomUtil.getInstance().nextLong());
+    }
+
+    /**
+     * Like simulateDataAcyclic(DataSet), but the data are simulated from the
+     * given seed.
+     */
+    public DataSet simulateDataAcyclic(DataSet dataSet, long seed) {
+        constructSimulation(getVariableNodes(), dataSet, seed);
+        return dataSet;
+    }
+
+    private void pickParameters() {
         int size = variableNodes.size();
 
         this.edgeCoef = new TetradMatrix(size, size);
@@ -108,101 +143,46 @@ public final class LargeSemSimulator {
             this.errCovar.set(i, i, errorCovarDist.nextRandom());
             this.variableMeans[i] = meanDist.nextRandom();
         }
+    }
 
+    private List<Node> makeVariables() {
         List<Node> variables = new LinkedList<Node>();
-        List<Node> variableNodes = getVariableNodes();
 
-        // Make an empty data set.
-        for (Node node : variableNodes) {
+        for (Node node : getVariableNodes()) {
             ContinuousVariable var = new ContinuousVariable(node.getName());
             var.setNodeType(node.getNodeType());
             variables.add(var);
         }
 
-//        System.out.println("Creating data set.");
-
-        DataSet dataSet = new ColtDataSet(sampleSize, variables);
-        constructSimulation(variableNodes, variables, sampleSize, dataSet);
-        return dataSet;
-    }
-
-    public DataSet simulateDataAcyclic(DataSet dataSet) {
-        List<Node> variables = new LinkedList<Node>();
-        List<Node> variableNodes = getVariableNodes();
-
-        for (int i = 0; i < dataSet.getNumColumns(); i++) {
-            ContinuousVariable var = (ContinuousVariable) dataSet.getVariable(i);
-            variables.add(var);
-
-        }
-
-        constructSimulation(variableNodes, variables, dataSet.getNumRows(), dataSet);
-        return dataSet;
+        return variables;
     }
 
-    private void constructSimulation(List<Node> variableNodes,
-                                     List<Node> variables, int sampleSize,
-                                     DataSet dataSet) {
-        // Create some index arrays to hopefully speed up the simulation.
+    /**
+     * Simulates the data in parallel from the given seed. The error
+     * "covariances" are used as standard deviations, and the means as
+     * intercepts.
+     */
+    private void constructSimulation(List<Node> variableNodes, DataSet dataSet,
+                                     long seed) {
         Graph graph = getGraph();
         List<Node> tierOrdering = graph.getTierOrdering();
 
         int[] tierIndices = new int[variableNodes.size()];
-                                                                             
+
         for (int i = 0; i < tierIndices.length; i++) {
             tierIndices[i] = variableNodes.indexOf(tierOrdering.get(i));
         }
 
-        int[][] _parents = new int[variables.size()][];
-
-        for (int i = 0; i < variableNodes.size(); i++) {
-            Node node = variableNodes.get(i);
-            List parents = graph.getParents(node);
-
-            for (Iterator j = parents.iterator(); j.hasNext();) {
-                Node _node = (Node) j.next();
-
-                if (_node.getNodeType() == NodeType.ERROR) {
-                    j.remove();
-                }
-            }
-
-            _parents[i] = new int[parents.size()];
+        int size = variableNodes.size();
+        TetradMatrix errorFactor = new TetradMatrix(size, size);
 
-            for (int j = 0; j < parents.size(); j++) {
-                Node _parent = (Node) parents.get(j);
-                _parents[i][j] = variableNodes.indexOf(_parent);
-            }
+        for (int i = 0; i < size; i++) {
+            errorFactor.set(i, i, errCovar.get(i, i));
         }
 
-//        System.out.println("Starting simulation.");
-
-        TetradMatrix _data = ((ColtDataSet) dataSet).getDoubleDataNoCopy();
-
-        // Do the simulation.
-        for (int row = 0; row < sampleSize; row++) {
-            if (row % 100 == 0) System.out.println("Row " + row);
-
-            for (int i = 0; i < tierOrdering.size(); i++) {
-                int col = tierIndices[i];
-                double value = RandomUtil.getInstance().nextNormal(0, 1) *
-                                errCovar.get(col, col);
-
-                for (int j = 0; j < _parents[col].length; j++) {
-                    int parent = _parents[col][j];
-//                    value += dataSet.getDouble(row, parent) *
-//                            edgeCoef.get(parent, col);
-
-                    value += _data.get(row, parent) *
-                            edgeCoef.get(parent, col);
-                }
-
-                value += variableMeans[col];
-//                dataSet.setDouble(row, col, value);
-
-                _data.set(row, col, value);
-            }
-        }
+        ParallelSemSimulator simulator = new ParallelSemSimulator(edgeCoef,
+                errorFactor, variableMeans, tierIndices);
+        simulator.simulate(((ColtDataSet) dataSet).getDoubleDataNoCopy(), seed);
     }
 
     public TetradAlgebra getAlgebra() {
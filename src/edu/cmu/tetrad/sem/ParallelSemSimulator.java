@@ -0,0 +1,282 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.sem;
+
+import edu.cmu.tetrad.util.ParallelUtils;
+import edu.cmu.tetrad.util.TetradMatrix;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well44497b;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Simulates data from a recursive (acyclic) linear SEM, in parallel and reproducibly.
+ * <p/>
+ * The rows are split into chunks of a fixed size. Each chunk draws its errors from its own random number generator,
+ * seeded from the seed of the simulation and the number of the chunk, so no generator is shared and the data depend
+ * only on the seed--not on the number of threads, nor on the state of <code>RandomUtil</code>. Within a chunk the model
+ * is evaluated a variable at a time, in causal order, over arrays holding the chunk's values of each variable, and the
+ * finished chunk is written into the data matrix. Chunks are run on a fork/join pool.
+ * <p/>
+ * Each variable is the sum of its intercept, its error and its parents times their coefficients. The errors are
+ * <code>L z</code>, where z is standard normal and L is a given factor of the error covariance matrix--its Cholesky
+ * factor, say, or for independent errors a diagonal matrix of standard deviations.
+ *
+ * @author Joseph Ramsey
+ * @see SemIm#simulateDataParallel
+ * @see LargeSemSimulator
+ */
+public final class ParallelSemSimulator {
+
+    /**
+     * The number of rows in a chunk. Part of the definition of the simulated data for a seed; changing it changes the
+     * data.
+     */
+    private static final int CHUNK = 4096;
+
+    /**
+     * Below this many rows times variables the work is done on the calling thread.
+     */
+    private static final long MIN_PARALLEL_WORK = 1L << 18;
+
+    /**
+     * The variables in causal order.
+     */
+    private final int[] order;
+
+    /**
+     * For each variable its parents, and their coefficients.
+     */
+    private final int[][] parents;
+    private final double[][] coefs;
+
+    /**
+     * For each variable the columns, and values, of the nonzero entries of its row of the error factor.
+     */
+    private final int[][] factorColumns;
+    private final double[][] factorValues;
+
+    private final double[] intercepts;
+
+    private int parallelism = ParallelUtils.getDefaultParallelism();
+
+    /**
+     * Constructs a simulator.
+     *
+     * @param edgeCoef    edgeCoef.get(i, j) is the coefficient of the edge from variable i to variable j, or 0.0 if
+     *                    there is no such edge. Must be acyclic.
+     * @param errorFactor A matrix L such that L L' is the covariance matrix of the errors.
+     * @param intercepts  The intercepts of the variables, or null if they are all zero.
+     * @param order       The variables in an order in which parents come before their children.
+     */
+    public ParallelSemSimulator(TetradMatrix edgeCoef, TetradMatrix errorFactor, double[] intercepts, int[] order) {
+        int n = edgeCoef.rows();
+
+        if (edgeCoef.columns() != n || errorFactor.rows() != n || errorFactor.columns() != n) {
+            throw new IllegalArgumentException("Expecting square matrices over " + n + " variables.");
+        }
+
+        if (order.length != n || (intercepts != null && intercepts.length != n)) {
+            throw new IllegalArgumentException("Expecting an intercept and a place in the order for each variable.");
+        }
+
+        this.order = order.clone();
+        this.intercepts = intercepts == null ? new double[n] : intercepts.clone();
+        this.parents = new int[n][];
+        this.coefs = new double[n][];
+        this.factorColumns = new int[n][];
+        this.factorValues = new double[n][];
+
+        boolean[] done = new boolean[n];
+
+        for (int v : order) {
+            List<Integer> _parents = new ArrayList<Integer>();
+
+            for (int u = 0; u < n; u++) {
+                if (edgeCoef.get(u, v) != 0.0) {
+                    if (!done[u]) {
+                        throw new IllegalArgumentException("Parent " + u + " of " + v + " comes after it in the order.");
+                    }
+
+                    _parents.add(u);
+                }
+            }
+
+            parents[v] = new int[_parents.size()];
+            coefs[v] = new double[_parents.size()];
+
+            for (int k = 0; k < _parents.size(); k++) {
+                parents[v][k] = _parents.get(k);
+                coefs[v][k] = edgeCoef.get(_parents.get(k), v);
+            }
+
+            done[v] = true;
+        }
+
+        for (int v = 0; v < n; v++) {
+            List<Integer> columns = new ArrayList<Integer>();
+
+            for (int u = 0; u < n; u++) {
+                if (errorFactor.get(v, u) != 0.0) columns.add(u);
+            }
+
+            factorColumns[v] = new int[columns.size()];
+            factorValues[v] = new double[columns.size()];
+
+            for (int k = 0; k < columns.size(); k++) {
+                factorColumns[v][k] = columns.get(k);
+                factorValues[v][k] = errorFactor.get(v, columns.get(k));
+            }
+        }
+    }
+
+    /**
+     * Simulates the given number of rows from the given seed.
+     *
+     * @return the data, with rows as cases and columns as variables.
+     */
+    public TetradMatrix simulate(int sampleSize, long seed) {
+        TetradMatrix data = new TetradMatrix(sampleSize, order.length);
+        simulate(data, seed);
+        return data;
+    }
+
+    /**
+     * Fills the given matrix, whose columns are the variables, with simulated rows.
+     */
+    public void simulate(TetradMatrix data, long seed) {
+        if (data.columns() != order.length) {
+            throw new IllegalArgumentException("Expecting " + order.length + " columns.");
+        }
+
+        int sampleSize = data.rows();
+        List<ChunkTask> tasks = new ArrayList<ChunkTask>();
+
+        for (int chunk = 0; (long) chunk * CHUNK < sampleSize; chunk++) {
+            int from = chunk * CHUNK;
+            long chunkSeed = ParallelUtils.chunkSeed(seed, chunk);
+            tasks.add(new ChunkTask(data, from, Math.min(from + CHUNK, sampleSize), chunkSeed));
+        }
+
+        boolean parallel = (long) sampleSize * order.length >= MIN_PARALLEL_WORK;
+        ParallelUtils.runAll(tasks, parallel ? parallelism : 1);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used. Default is ParallelUtils.getDefaultParallelism(). Does not affect the data
+     * simulated.
+     */
+    public void setParallelism(int parallelism) {
+        ParallelUtils.checkParallelism(parallelism);
+        this.parallelism = parallelism;
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    /**
+     * Simulates the rows from, inclusive, to to, exclusive.
+     */
+    private class ChunkTask extends RecursiveAction {
+        private final TetradMatrix data;
+        private final int from;
+        private final int to;
+        private final long seed;
+
+        private ChunkTask(TetradMatrix data, int from, int to, long seed) {
+            this.data = data;
+            this.from = from;
+            this.to = to;
+            this.seed = seed;
+        }
+
+        protected void compute() {
+            int n = order.length;
+            int size = to - from;
+            RandomGenerator random = new Well44497b(seed);
+
+            // Standard normal draws, variable by variable.
+            double[][] z = new double[n][size];
+
+            for (int v = 0; v < n; v++) {
+                double[] _z = z[v];
+
+                for (int k = 0; k < size; k++) {
+                    _z[k] = random.nextGaussian();
+                }
+            }
+
+            double[][] values = new double[n][];
+
+            for (int v : order) {
+                double[] value = new double[size];
+                int[] _columns = factorColumns[v];
+                double[] _factor = factorValues[v];
+
+                for (int l = 0; l < _columns.length; l++) {
+                    double f = _factor[l];
+                    double[] _z = z[_columns[l]];
+
+                    for (int k = 0; k < size; k++) {
+                        value[k] += f * _z[k];
+                    }
+                }
+
+                int[] _parents = parents[v];
+                double[] _coefs = coefs[v];
+
+                for (int p = 0; p < _parents.length; p++) {
+                    double c = _coefs[p];
+                    double[] parent = values[_parents[p]];
+
+                    for (int k = 0; k < size; k++) {
+                        value[k] += c * parent[k];
+                    }
+                }
+
+                double intercept = intercepts[v];
+
+                if (intercept != 0.0) {
+                    for (int k = 0; k < size; k++) {
+                        value[k] += intercept;
+                    }
+                }
+
+                values[v] = value;
+            }
+
+            for (int k = 0; k < size; k++) {
+                for (int v = 0; v < n; v++) {
+                    data.set(from + k, v, values[v][k]);
+                }
+            }
+        }
+    }
+}
+
+
+
@@ -1680,6 +1680,79 @@ public final class SemIm implements IM, ISemIm, TetradSerializable, Optimization
         }
     }
 
+    /**
+     * Simulates data recursively, like simulateDataRecursive, but in parallel
+     * and from the given seed alone: for a given seed the data are the same, bit
+     * for bit, however many threads are used, and RandomUtil is not used.
+     * Models with connection functions, non-normal error distributions or
+     * positive-only simulation are simulated by simulateDataRecursive instead,
+     * with RandomUtil seeded from the given seed.
+     * <p/>
+     * The model simulated is the same as simulateDataRecursive's. In both the
+     * errors are the Cholesky factor of the full error covariance matrix times
+     * standard normal draws, so error covariances (bidirected edges) are kept,
+     * not just the error variances. Only the random draws differ, so the two
+     * methods give different data sets from the same distribution.
+     *
+     * @param sampleSize > 0.
+     * @param seed       the seed for the simulation.
+     * @return the simulated data set.
+     * @see ParallelSemSimulator
+     */
+    public DataSet simulateDataParallel(int sampleSize, long seed,
+                                        boolean latentDataSaved) {
+        if ((functions != null && !functions.isEmpty())
+                || (distributions != null && !distributions.isEmpty())
+                || isSimulatedPositiveDataOnly()) {
+            RandomUtil random = RandomUtil.getInstance();
+            random.setSeed(seed);
+            DataSet dataSet = simulateDataRecursive(sampleSize, latentDataSaved);
+            random.setSeed(new Date().getTime());
+            return dataSet;
+        }
+
+        List<Node> variables = new LinkedList<Node>();
+        List<Node> variableNodes = getVariableNodes();
+
+        for (Node node : variableNodes) {
+            ContinuousVariable var = new ContinuousVariable(node.getName());
+            var.setNodeType(node.getNodeType());
+            variables.add(var);
+        }
+
+        int[] order = new int[variableNodes.size()];
+        int numOrdered = 0;
+
+        for (Node node : getSemPm().getGraph().getTierOrdering()) {
+            int index = variableNodes.indexOf(node);
+            if (index != -1) order[numOrdered++] = index;
+        }
+
+        // The means are not propagated to children, so the intercepts are
+        // the means less the parents' contributions to them.
+        double[] intercepts = new double[variableNodes.size()];
+
+        for (int j = 0; j < intercepts.length; j++) {
+            intercepts[j] = variableMeans[j];
+
+            for (int i = 0; i < intercepts.length; i++) {
+                intercepts[j] -= edgeCoef.get(i, j) * variableMeans[i];
+            }
+        }
+
+        ParallelSemSimulator simulator = new ParallelSemSimulator(edgeCoef,
+                MatrixUtils.choleskyC(errCovar()), intercepts, order);
+
+        DataSet fullDataSet = new ColtDataSet(sampleSize, variables);
+        simulator.simulate(((ColtDataSet) fullDataSet).getDoubleDataNoCopy(), seed);
+
+        if (latentDataSaved) {
+            return fullDataSet;
+        } else {
+            return DataUtils.restrictToMeasured(fullDataSet);
+        }
+    }
+
     /**
      * This simulates data by picking random values for the exogenous terms and
      * percolating this information down through the SEM, assuming it is
@@ -0,0 +1,670 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.sem;
+
+import edu.cmu.tetrad.data.DataUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.graph.SemGraph;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.TetradLogger;
+import edu.cmu.tetrad.util.TetradMatrix;
+import optimization.Uncmin_methods;
+
+import java.util.List;
+
+/**
+ * Minimizes the maximum likelihood fitting function using the closed form gradient of FML with respect to the edge
+ * coefficients B and the error covariances Omega, with quasi-Newton (BFGS) steps from Uncmin.
+ * <p/>
+ * With Sigma = G (I - B')^-1 Omega (I - B')^-T G' the implied covariance over the measured variables, and S the sample
+ * covariance,
+ * <pre>
+ *     FML = log|Sigma| + tr(S Sigma^-1) - log|S| - p,
+ *     Delta = Sigma^-1 - Sigma^-1 S Sigma^-1,
+ *     M = P' Delta P, with P = G (I - B')^-1,
+ *     dFML / dOmega = M (each off-diagonal parameter counted twice),
+ *     dFML / dB = 2 (I - B')^-1 Omega M.
+ * </pre>
+ * Each evaluation of the function and its gradient costs a fixed number of n x n matrix products, however many free
+ * parameters there are, where finite differences cost one evaluation of the function per parameter. All matrices are
+ * held in arrays allocated once per optimization.
+ *
+ * @author Joseph Ramsey
+ */
+public class SemOptimizerGradient implements SemOptimizer {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The number of times the optimization is restarted from perturbed copies of the starting values.
+     */
+    private static final int NUM_RESTARTS = 3;
+
+    //============================CONSTRUCTORS=========================//
+
+    /**
+     * Blank constructor.
+     */
+    public SemOptimizerGradient() {
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     *
+     * @see edu.cmu.TestSerialization
+     * @see edu.cmu.tetradapp.util.TetradSerializableUtils
+     */
+    public static SemOptimizerGradient serializableInstance() {
+        return new SemOptimizerGradient();
+    }
+
+    //============================PUBLIC METHODS=========================//
+
+    public void optimize(SemIm semIm) {
+        if (semIm == null) {
+            throw new NullPointerException("SemIm must not be null.");
+        }
+
+        if (DataUtils.containsMissingValue(semIm.getSampleCovar())) {
+            throw new IllegalArgumentException("Please remove or impute missing values.");
+        }
+
+        int numParams = semIm.getNumFreeParams();
+
+        if (numParams == 0) {
+            return;
+        }
+
+        GradientFittingFunction fittingFunction = new GradientFittingFunction(semIm);
+        List<Parameter> freeParameters = semIm.getFreeParameters();
+
+        double[] init = semIm.getFreeParamValues();
+        minimize(fittingFunction, init);
+
+        // With latent variables BFGS can wander off to a degenerate region (negative error variances, huge
+        // coefficients) and crawl there until the iteration limit. Restart from perturbed copies of the starting
+        // values, as the other optimizers restart from random ones, keeping the best parameters over all runs.
+        for (int restart = 0; restart < NUM_RESTARTS; restart++) {
+            double[] start = init.clone();
+
+            for (int k = 0; k < numParams; k++) {
+                if (freeParameters.get(k).getType() == ParamType.VAR) {
+                    start[k] *= RandomUtil.getInstance().nextUniform(0.5, 1.5);
+                } else {
+                    start[k] += RandomUtil.getInstance().nextUniform(-0.5, 0.5);
+                }
+            }
+
+            minimize(fittingFunction, start);
+        }
+
+        semIm.setFreeParamValues(fittingFunction.getBestParams());
+    }
+
+    public String toString() {
+        return "Sem Optimizer Gradient";
+    }
+
+    //============================PRIVATE METHODS=========================//
+
+    /**
+     * Runs Uncmin with the analytic gradient from the given parameters, indexed from 0. The fitting function keeps
+     * the best parameters it has evaluated.
+     */
+    private void minimize(GradientFittingFunction fittingFunction, double[] start) {
+        int numParams = start.length;
+        double[] init1Ind = new double[numParams + 1];
+        double[] finalEst = new double[numParams + 1];
+        double[] g = new double[numParams + 1];
+        double[][] hessian = new double[numParams + 1][numParams + 1];
+        double[] hessianDiag = new double[numParams + 1];
+
+        System.arraycopy(start, 0, init1Ind, 1, numParams);
+
+        double[] f = new double[2];
+        int[] info = {0, 1};
+        double[] typsiz = new double[numParams + 1];
+        double[] fscale = new double[2];
+        int[] method = {0, 1};      // Line search.
+        int[] iexp = {0, 1};        // Secant (BFGS) updates of the Hessian.
+        int[] msg = {0, 2};         // Don't check the analytic gradient.
+        int[] ndigit = {0, 15};
+        int[] itnlim = {0, 1500};
+        int[] iagflg = {0, 1};      // Analytic gradient.
+        int[] iahflg = {0, 0};
+        double[] dlt = new double[2];
+        double[] gradtl = {0., 1e-6};
+        double[] stepmx = new double[2];
+        double[] steptl = new double[2];
+
+        try {
+            optimization.Uncmin_f77.optif9_f77(numParams, init1Ind, fittingFunction,
+                    typsiz, fscale, method, iexp, msg, ndigit, itnlim, iagflg,
+                    iahflg, dlt, gradtl, stepmx, steptl, finalEst, f, g, info,
+                    hessian, hessianDiag);
+        } catch (UndefinedStepException e) {
+            TetradLogger.getInstance().log("optimization", "Stopping: " + e.getMessage());
+        }
+    }
+
+    //============================PRIVATE CLASSES=========================//
+
+    /**
+     * The FML fitting function and its gradient, over free parameters indexed from 1, as Uncmin expects.
+     */
+    static class GradientFittingFunction implements Uncmin_methods {
+
+        /**
+         * Returned for parameters at which the implied covariance matrix is not positive definite.
+         */
+        private static final double INFEASIBLE = 1e10;
+
+        private final int n;
+        private final int p;
+        private final int numParams;
+
+        /**
+         * For each free parameter, its type and the (i, j) of the matrix element it sets.
+         */
+        private final ParamType[] types;
+        private final int[] paramI;
+        private final int[] paramJ;
+
+        /**
+         * Indices of the measured variables among all variables.
+         */
+        private final int[] measured;
+
+        private final double[][] sample;
+        private final double logDetSample;
+
+        // Workspaces.
+        private final double[][] edgeCoef;      // B; edgeCoef[i][j] is the coefficient of i --> j.
+        private final double[][] errCovar;      // Omega.
+        private final double[][] lu;            // LU decomposition of I - B'.
+        private final int[] pivot;
+        private final double[][] inverse;       // (I - B')^-1.
+        private final double[][] aOmega;        // (I - B')^-1 Omega.
+        private final double[][] pOmega;        // P Omega.
+        private final double[][] sigma;         // Sigma, then its Cholesky factor.
+        private final double[][] sigmaInv;      // Sigma^-1.
+        private final double[][] sigmaInvS;     // Sigma^-1 S.
+        private final double[][] delta;         // Sigma^-1 - Sigma^-1 S Sigma^-1.
+        private final double[][] deltaP;        // Delta P.
+        private final double[][] m;             // P' Delta P.
+        private final double[] column;
+
+        /**
+         * The parameters of the last evaluation, its value and whether the implied covariance matrix was positive
+         * definite.
+         */
+        private final double[] lastParams;
+        private double lastValue;
+        private boolean lastFeasible;
+        private boolean evaluated;
+
+        private final double[] bestParams;
+        private double bestValue = Double.POSITIVE_INFINITY;
+
+        GradientFittingFunction(SemIm semIm) {
+            List<Node> variableNodes = semIm.getVariableNodes();
+            List<Node> measuredNodes = semIm.getMeasuredNodes();
+            List<Parameter> freeParameters = semIm.getFreeParameters();
+            SemGraph graph = semIm.getSemPm().getGraph();
+
+            this.n = variableNodes.size();
+            this.p = measuredNodes.size();
+            this.numParams = freeParameters.size();
+
+            this.types = new ParamType[numParams];
+            this.paramI = new int[numParams];
+            this.paramJ = new int[numParams];
+
+            // Same as SemIm.createMappings.
+            for (int k = 0; k < numParams; k++) {
+                Parameter parameter = freeParameters.get(k);
+                types[k] = parameter.getType();
+                paramI[k] = variableNodes.indexOf(graph.getVarNode(parameter.getNodeA()));
+                paramJ[k] = types[k] == ParamType.VAR ? paramI[k]
+                        : variableNodes.indexOf(graph.getVarNode(parameter.getNodeB()));
+            }
+
+            this.measured = new int[p];
+
+            for (int i = 0; i < p; i++) {
+                measured[i] = variableNodes.indexOf(measuredNodes.get(i));
+            }
+
+            // The fixed parameters stay as they are in these.
+            this.edgeCoef = semIm.getEdgeCoef().toArray();
+            this.errCovar = semIm.getErrCovar().toArray();
+
+            TetradMatrix sampleCovar = semIm.getSampleCovar();
+            this.sample = sampleCovar.toArray();
+            this.logDetSample = Math.log(sampleCovar.det());
+
+            this.lu = new double[n][n];
+            this.pivot = new int[n];
+            this.inverse = new double[n][n];
+            this.aOmega = new double[n][n];
+            this.pOmega = new double[p][n];
+            this.sigma = new double[p][p];
+            this.sigmaInv = new double[p][p];
+            this.sigmaInvS = new double[p][p];
+            this.delta = new double[p][p];
+            this.deltaP = new double[p][n];
+            this.m = new double[n][n];
+            this.column = new double[Math.max(n, p)];
+            this.lastParams = new double[numParams];
+            this.bestParams = semIm.getFreeParamValues();
+        }
+
+        public double f_to_minimize(double[] params1Ind) {
+
+            // Uncmin can loop without end once a degenerate secant update puts NaN in a step.
+            for (int k = 1; k <= numParams; k++) {
+                if (Double.isNaN(params1Ind[k])) {
+                    throw new UndefinedStepException("undefined step");
+                }
+            }
+
+            double fml = evaluate1Ind(params1Ind);
+            TetradLogger.getInstance().log("optimization", "FML = " + fml);
+            return fml;
+        }
+
+        public void gradient(double[] params1Ind, double[] g) {
+            evaluate1Ind(params1Ind);
+
+            if (!lastFeasible) {
+                for (int k = 1; k <= numParams; k++) g[k] = 0.0;
+                return;
+            }
+
+            computeM();
+
+            for (int k = 0; k < numParams; k++) {
+                int i = paramI[k];
+                int j = paramJ[k];
+
+                if (types[k] == ParamType.COEF) {
+
+                    // 2 ((I - B')^-1 Omega M)[i][j]
+                    double sum = 0.0;
+                    double[] row = aOmega[i];
+
+                    for (int l = 0; l < n; l++) {
+                        sum += row[l] * m[l][j];
+                    }
+
+                    g[k + 1] = 2.0 * sum;
+                } else if (i == j) {
+                    g[k + 1] = m[i][i];
+                } else {
+                    g[k + 1] = 2.0 * m[i][j];
+                }
+            }
+        }
+
+        public void hessian(double[] x, double[][] h) {
+        }
+
+        /**
+         * Returns the parameters, indexed from 0, with the lowest FML evaluated so far.
+         */
+        double[] getBestParams() {
+            return bestParams.clone();
+        }
+
+        //============================PRIVATE METHODS=========================//
+
+        private double evaluate1Ind(double[] params1Ind) {
+            if (evaluated && sameParams(params1Ind)) {
+                return lastValue;
+            }
+
+            for (int k = 0; k < numParams; k++) {
+                lastParams[k] = params1Ind[k + 1];
+            }
+
+            evaluated = true;
+            lastFeasible = computeSigma();
+
+            if (!lastFeasible) {
+                lastValue = INFEASIBLE;
+                return lastValue;
+            }
+
+            // log|Sigma| from the Cholesky factor, left in sigma.
+            double logDetSigma = 0.0;
+
+            for (int i = 0; i < p; i++) {
+                logDetSigma += 2.0 * Math.log(sigma[i][i]);
+            }
+
+            // tr(S Sigma^-1)
+            double trace = 0.0;
+
+            for (int i = 0; i < p; i++) {
+                for (int j = 0; j < p; j++) {
+                    trace += sample[i][j] * sigmaInv[j][i];
+                }
+            }
+
+            double fml = logDetSigma + trace - logDetSample - p;
+
+            if (Math.abs(fml) < 1e-14) {
+                fml = 0.0;
+            }
+
+            lastValue = Double.isNaN(fml) ? INFEASIBLE : fml;
+
+            if (lastValue < bestValue) {
+                bestValue = lastValue;
+                System.arraycopy(lastParams, 0, bestParams, 0, numParams);
+            }
+
+            return lastValue;
+        }
+
+        private boolean sameParams(double[] params1Ind) {
+            for (int k = 0; k < numParams; k++) {
+                if (lastParams[k] != params1Ind[k + 1]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Sets the free parameters from lastParams and computes (I - B')^-1, (I - B')^-1 Omega, Sigma and Sigma^-1.
+         * Returns false if I - B' is singular or Sigma is not positive definite.
+         */
+        private boolean computeSigma() {
+            for (int k = 0; k < numParams; k++) {
+                int i = paramI[k];
+                int j = paramJ[k];
+
+                if (types[k] == ParamType.COEF) {
+                    edgeCoef[i][j] = lastParams[k];
+                } else {
+                    errCovar[i][j] = lastParams[k];
+                    errCovar[j][i] = lastParams[k];
+                }
+            }
+
+            if (!invertIMinusBTranspose()) {
+                return false;
+            }
+
+            // (I - B')^-1 Omega
+            for (int i = 0; i < n; i++) {
+                double[] row = inverse[i];
+                double[] out = aOmega[i];
+
+                for (int j = 0; j < n; j++) {
+                    double sum = 0.0;
+
+                    for (int l = 0; l < n; l++) {
+                        sum += row[l] * errCovar[l][j];
+                    }
+
+                    out[j] = sum;
+                }
+            }
+
+            // P Omega P' = Sigma, where the rows of P are the measured rows of (I - B')^-1.
+            for (int i = 0; i < p; i++) {
+                System.arraycopy(aOmega[measured[i]], 0, pOmega[i], 0, n);
+            }
+
+            for (int i = 0; i < p; i++) {
+                for (int j = 0; j <= i; j++) {
+                    double[] a = pOmega[i];
+                    double[] b = inverse[measured[j]];
+                    double sum = 0.0;
+
+                    for (int l = 0; l < n; l++) {
+                        sum += a[l] * b[l];
+                    }
+
+                    sigma[i][j] = sum;
+                    sigma[j][i] = sum;
+                }
+            }
+
+            return choleskyInvert();
+        }
+
+        /**
+         * Inverts I - B' into inverse by LU decomposition with partial pivoting.
+         */
+        private boolean invertIMinusBTranspose() {
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    lu[i][j] = (i == j ? 1.0 : 0.0) - edgeCoef[j][i];
+                }
+
+                pivot[i] = i;
+            }
+
+            for (int k = 0; k < n; k++) {
+                int max = k;
+
+                for (int i = k + 1; i < n; i++) {
+                    if (Math.abs(lu[i][k]) > Math.abs(lu[max][k])) max = i;
+                }
+
+                if (Math.abs(lu[max][k]) < 1e-14) {
+                    return false;
+                }
+
+                if (max != k) {
+                    double[] t = lu[k];
+                    lu[k] = lu[max];
+                    lu[max] = t;
+                    int s = pivot[k];
+                    pivot[k] = pivot[max];
+                    pivot[max] = s;
+                }
+
+                for (int i = k + 1; i < n; i++) {
+                    double factor = lu[i][k] / lu[k][k];
+                    lu[i][k] = factor;
+
+                    if (factor == 0.0) continue;
+
+                    for (int j = k + 1; j < n; j++) {
+                        lu[i][j] -= factor * lu[k][j];
+                    }
+                }
+            }
+
+            for (int c = 0; c < n; c++) {
+                for (int i = 0; i < n; i++) {
+                    double sum = pivot[i] == c ? 1.0 : 0.0;
+
+                    for (int j = 0; j < i; j++) {
+                        sum -= lu[i][j] * column[j];
+                    }
+
+                    column[i] = sum;
+                }
+
+                for (int i = n - 1; i >= 0; i--) {
+                    double sum = column[i];
+
+                    for (int j = i + 1; j < n; j++) {
+                        sum -= lu[i][j] * column[j];
+                    }
+
+                    column[i] = sum / lu[i][i];
+                }
+
+                for (int i = 0; i < n; i++) {
+                    inverse[i][c] = column[i];
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Replaces sigma by its lower Cholesky factor L and puts Sigma^-1 = L^-T L^-1 in sigmaInv.
+         */
+        private boolean choleskyInvert() {
+            for (int j = 0; j < p; j++) {
+                double d = sigma[j][j];
+
+                for (int k = 0; k < j; k++) {
+                    d -= sigma[j][k] * sigma[j][k];
+                }
+
+                if (!(d > 0.0)) {
+                    return false;
+                }
+
+                double ljj = Math.sqrt(d);
+                sigma[j][j] = ljj;
+
+                for (int i = j + 1; i < p; i++) {
+                    double s = sigma[i][j];
+
+                    for (int k = 0; k < j; k++) {
+                        s -= sigma[i][k] * sigma[j][k];
+                    }
+
+                    sigma[i][j] = s / ljj;
+                }
+            }
+
+            // Column c of Sigma^-1 solves L L' x = e_c.
+            for (int c = 0; c < p; c++) {
+                for (int i = 0; i < p; i++) {
+                    double sum = i == c ? 1.0 : 0.0;
+
+                    for (int k = 0; k < i; k++) {
+                        sum -= sigma[i][k] * column[k];
+                    }
+
+                    column[i] = sum / sigma[i][i];
+                }
+
+                for (int i = p - 1; i >= 0; i--) {
+                    double sum = column[i];
+
+                    for (int k = i + 1; k < p; k++) {
+                        sum -= sigma[k][i] * column[k];
+                    }
+
+                    column[i] = sum / sigma[i][i];
+                }
+
+                for (int i = 0; i < p; i++) {
+                    sigmaInv[i][c] = column[i];
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Computes M = P' Delta P, with Delta = Sigma^-1 - Sigma^-1 S Sigma^-1, for the last evaluation.
+         */
+        private void computeM() {
+            for (int i = 0; i < p; i++) {
+                for (int j = 0; j < p; j++) {
+                    double sum = 0.0;
+
+                    for (int l = 0; l < p; l++) {
+                        sum += sigmaInv[i][l] * sample[l][j];
+                    }
+
+                    sigmaInvS[i][j] = sum;
+                }
+            }
+
+            for (int i = 0; i < p; i++) {
+                for (int j = 0; j <= i; j++) {
+                    double sum = 0.0;
+
+                    for (int l = 0; l < p; l++) {
+                        sum += sigmaInvS[i][l] * sigmaInv[l][j];
+                    }
+
+                    delta[i][j] = sigmaInv[i][j] - sum;
+                    delta[j][i] = delta[i][j];
+                }
+            }
+
+            for (int i = 0; i < p; i++) {
+                double[] out = deltaP[i];
+
+                for (int j = 0; j < n; j++) out[j] = 0.0;
+
+                for (int l = 0; l < p; l++) {
+                    double d = delta[i][l];
+                    double[] b = inverse[measured[l]];
+
+                    for (int j = 0; j < n; j++) {
+                        out[j] += d * b[j];
+                    }
+                }
+            }
+
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    m[i][j] = 0.0;
+                }
+            }
+
+            for (int l = 0; l < p; l++) {
+                double[] a = inverse[measured[l]];
+                double[] b = deltaP[l];
+
+                for (int i = 0; i < n; i++) {
+                    double ai = a[i];
+
+                    if (ai == 0.0) continue;
+
+                    double[] out = m[i];
+
+                    for (int j = 0; j < n; j++) {
+                        out[j] += ai * b[j];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Thrown to stop Uncmin when it proposes undefined parameter values.
+     */
+    private static class UndefinedStepException extends RuntimeException {
+        UndefinedStepException(String message) {
+            super(message);
+        }
+    }
+}
+
+
+
@@ -377,6 +377,35 @@ public class TestGeneralizedSem extends TestCase {
         assertEquals(record1, record2);
     }
 
+    /**
+     * Simulations are cut into chunks with their own generators, so the data for a seed should not depend on how many
+     * threads the chunks are run on.
+     */
+    public void testParallelSimulation() {
+        GeneralizedSemPm pm = makeTypicalPm();
+        GeneralizedSemIm im = new GeneralizedSemIm(pm);
+
+        RandomUtil.getInstance().setSeed(48292L);
+        im.setParallelism(1);
+        DataSet data1 = im.simulateDataRecursive(20000, false);
+        DataSet avoid1 = im.simulateDataAvoidInfinity(20000, false);
+
+        RandomUtil.getInstance().setSeed(48292L);
+        im.setParallelism(3);
+        DataSet data2 = im.simulateDataRecursive(20000, false);
+        DataSet avoid2 = im.simulateDataAvoidInfinity(20000, false);
+
+        assertTrue(data1.getDoubleData().equals(data2.getDoubleData(), 0.0));
+        assertTrue(avoid1.getDoubleData().equals(avoid2.getDoubleData(), 0.0));
+
+        try {
+            im.setParallelism(0);
+            fail("Parallelism must be at least 1.");
+        } catch (IllegalArgumentException e) {
+            // Succeeds.
+        }
+    }
+
     private GeneralizedSemPm makeTypicalPm() {
         List<Node> variableNodes = new ArrayList<Node>();
         ContinuousVariable x1 = new ContinuousVariable("X1");
@@ -0,0 +1,167 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.sem;
+
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.GraphNode;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.graph.SemGraph;
+import edu.cmu.tetrad.util.TetradMatrix;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the ParallelSemSimulator class.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestParallelSemSimulator extends TestCase {
+
+    /**
+     * Standard constructor for JUnit test cases.
+     */
+    public TestParallelSemSimulator(String name) {
+        super(name);
+    }
+
+    public void testReproducible() {
+        Dag dag = GraphUtils.randomDag(20, 30, false);
+        SemIm im = new SemIm(new SemPm(dag));
+
+        TetradMatrix edgeCoef = im.getEdgeCoef();
+        TetradMatrix errorFactor = new TetradMatrix(20, 20);
+        int[] order = new int[20];
+
+        for (int i = 0; i < 20; i++) {
+            errorFactor.set(i, i, Math.sqrt(im.getErrCovar().get(i, i)));
+            order[i] = im.getVariableNodes().indexOf(dag.getTierOrdering().get(i));
+        }
+
+        ParallelSemSimulator simulator = new ParallelSemSimulator(edgeCoef, errorFactor, null, order);
+
+        simulator.setParallelism(1);
+        TetradMatrix data1 = simulator.simulate(50000, 42L);
+
+        simulator.setParallelism(4);
+        TetradMatrix data2 = simulator.simulate(50000, 42L);
+        TetradMatrix data3 = simulator.simulate(50000, 43L);
+
+        int different = 0;
+
+        for (int i = 0; i < 50000; i++) {
+            for (int j = 0; j < 20; j++) {
+                assertEquals(Double.doubleToLongBits(data1.get(i, j)), Double.doubleToLongBits(data2.get(i, j)));
+                if (data1.get(i, j) != data3.get(i, j)) different++;
+            }
+        }
+
+        assertEquals(50000 * 20, different);
+    }
+
+    public void testSemImCovariance() {
+        Dag dag = GraphUtils.randomDag(10, 2, 15, 30, 15, 15, false);
+        SemIm im = new SemIm(new SemPm(dag));
+
+        for (int i = 0; i < im.getVariableNodes().size(); i++) {
+            im.setMean(im.getVariableNodes().get(i), i - 5);
+        }
+
+        DataSet data = im.simulateDataParallel(100000, 7L, true);
+        assertEquals(100000, data.getNumRows());
+        assertEquals(im.getVariableNodes().size(), data.getNumColumns());
+
+        TetradMatrix implied = im.getImplCovar();
+        TetradMatrix sample = new CovarianceMatrix(data).getMatrix();
+
+        for (int i = 0; i < implied.rows(); i++) {
+            double mean = 0.0;
+
+            for (int k = 0; k < data.getNumRows(); k++) {
+                mean += data.getDouble(k, i);
+            }
+
+            mean /= data.getNumRows();
+            double sd = Math.sqrt(implied.get(i, i));
+
+            assertEquals(i - 5, mean, 0.02 * sd);
+
+            for (int j = 0; j < implied.columns(); j++) {
+                double scale = Math.sqrt(implied.get(i, i) * implied.get(j, j));
+                assertEquals(implied.get(i, j) / scale, sample.get(i, j) / scale, 0.02);
+            }
+        }
+
+        DataSet data2 = im.simulateDataParallel(100000, 7L, false);
+        assertEquals(im.getMeasuredNodes().size(), data2.getNumColumns());
+    }
+
+    /**
+     * Error covariances, not just error variances, should carry over to the
+     * simulated data, as they do in simulateDataRecursive.
+     */
+    public void testCorrelatedErrors() {
+        Node x1 = new GraphNode("X1");
+        Node x2 = new GraphNode("X2");
+        Node x3 = new GraphNode("X3");
+
+        SemGraph graph = new SemGraph();
+        graph.addNode(x1);
+        graph.addNode(x2);
+        graph.addNode(x3);
+        graph.addDirectedEdge(x1, x3);
+        graph.addDirectedEdge(x2, x3);
+        graph.addBidirectedEdge(x1, x2);
+
+        SemIm im = new SemIm(new SemPm(graph));
+        im.setErrVar(x1, 1.0);
+        im.setErrVar(x2, 1.0);
+        im.setErrCovar(x1, x2, 0.6);
+
+        DataSet data = im.simulateDataParallel(100000, 11L, false);
+        TetradMatrix implied = im.getImplCovar();
+        TetradMatrix sample = new CovarianceMatrix(data).getMatrix();
+
+        assertEquals(0.6, sample.get(0, 1), 0.02);
+
+        for (int i = 0; i < implied.rows(); i++) {
+            for (int j = 0; j < implied.columns(); j++) {
+                double scale = Math.sqrt(implied.get(i, i) * implied.get(j, j));
+                assertEquals(implied.get(i, j) / scale, sample.get(i, j) / scale, 0.02);
+            }
+        }
+    }
+
+    /**
+     * This method uses reflection to collect up all of the test methods from
+     * this class and return them to the test runner.
+     */
+    public static Test suite() {
+        return new TestSuite(TestParallelSemSimulator.class);
+    }
+}
+
+
+
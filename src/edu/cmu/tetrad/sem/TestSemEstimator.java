@@ -27,6 +27,7 @@ import edu.cmu.tetrad.data.DataUtils;
 import edu.cmu.tetrad.data.ICovarianceMatrix;
 import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.util.MatrixUtils;
+import edu.cmu.tetrad.util.RandomUtil;
 import edu.cmu.tetrad.util.TetradMatrix;
 import junit.framework.Test;
 import junit.framework.TestCase;
@@ -35,6 +36,7 @@ import junit.framework.TestSuite;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -442,6 +444,135 @@ public class TestSemEstimator extends TestCase {
         System.out.println(im);
     }
 
+    public void testOptimizerGradient() {
+        Graph graph = GraphUtils.randomDag(10, 12, false);
+        SemPm pm = new SemPm(graph);
+        SemIm im = new SemIm(pm);
+
+        DataSet data = im.simulateData(1000, false);
+
+        // For a DAG without latents, regression gives the maximum likelihood estimates.
+        SemIm est1 = new SemEstimator(data, pm, new SemOptimizerRegression()).estimate();
+        SemIm est2 = new SemEstimator(data, pm, new SemOptimizerGradient()).estimate();
+
+        assertEquals(est1.getFml(), est2.getFml(), 1e-6);
+
+        // At the minimum FML should be flat in every free parameter.
+        double[] params = est2.getFreeParamValues();
+        double fml = est2.getFml();
+
+        for (int i = 0; i < params.length; i++) {
+            double[] perturbed = params.clone();
+            perturbed[i] += 1e-4;
+            est2.setFreeParamValues(perturbed);
+            assertTrue(est2.getFml() > fml - 1e-9);
+        }
+    }
+
+    /**
+     * With latent variables the gradient optimizer should do at least as well as Uncmin. The latents are picked here
+     * rather than by randomDag, which shuffles with a generator RandomUtil does not seed. Seed 1 used to stop at FML
+     * 0.43 against 0.045 for Uncmin.
+     */
+    public void testOptimizerGradientLatents() {
+        for (long seed = 1; seed <= 4; seed++) {
+            RandomUtil.getInstance().setSeed(seed);
+            Graph graph = GraphUtils.randomDag(12, 0, 14, 30, 15, 15, false);
+            int numLatents = 0;
+
+            for (Node node : graph.getNodes()) {
+                if (numLatents < 2 && graph.getChildren(node).size() >= 2) {
+                    node.setNodeType(NodeType.LATENT);
+                    numLatents++;
+                }
+            }
+
+            SemPm pm = new SemPm(graph);
+            SemIm im = new SemIm(pm);
+
+            DataSet data = im.simulateData(1000, false);
+
+            SemIm est1 = new SemEstimator(data, pm, new SemOptimizerUncmin()).estimate();
+            SemIm est2 = new SemEstimator(data, pm, new SemOptimizerGradient()).estimate();
+
+            assertTrue("Seed " + seed + ": " + est2.getFml() + " > " + est1.getFml(),
+                    est2.getFml() < est1.getFml() + 1e-4);
+        }
+    }
+
+    /**
+     * The analytic gradient of FML should match central differences at random
+     * parameter values, for edge coefficients, error variances and error
+     * covariances alike.
+     */
+    public void testOptimizerGradientCentralDifferences() {
+        SemGraph graph = new SemGraph(GraphUtils.randomDag(10, 2, 14, 30, 15, 15, false));
+        List<Node> measured = graph.getNodes();
+
+        for (Iterator<Node> i = measured.iterator(); i.hasNext(); ) {
+            if (i.next().getNodeType() != NodeType.MEASURED) i.remove();
+        }
+
+        // Some error covariances.
+        for (int k = 0; k < 3; k++) {
+            Node x = measured.get(RandomUtil.getInstance().nextInt(measured.size()));
+            Node y = measured.get(RandomUtil.getInstance().nextInt(measured.size()));
+
+            if (x != y && !graph.isAdjacentTo(x, y)) {
+                graph.addBidirectedEdge(x, y);
+            }
+        }
+
+        SemPm pm = new SemPm(graph);
+        DataSet data = new SemIm(pm).simulateData(1000, false);
+        SemIm im = new SemIm(pm, new CovarianceMatrix(data));
+
+        List<Parameter> parameters = im.getFreeParameters();
+        int numParams = parameters.size();
+        double[] start = im.getFreeParamValues();
+        SemOptimizerGradient.GradientFittingFunction function =
+                new SemOptimizerGradient.GradientFittingFunction(im);
+
+        double[] params = new double[numParams + 1];
+        double[] g = new double[numParams + 1];
+        int numPoints = 0;
+
+        for (int trial = 0; trial < 50 && numPoints < 10; trial++) {
+            for (int k = 0; k < numParams; k++) {
+                double noise = RandomUtil.getInstance().nextNormal(0, 0.2);
+
+                if (parameters.get(k).getType() == ParamType.VAR) {
+                    params[k + 1] = start[k] * Math.exp(noise);
+                } else {
+                    params[k + 1] = start[k] + noise;
+                }
+            }
+
+            // Skip points where the implied covariance matrix is not positive definite.
+            if (function.f_to_minimize(params) >= 1e10) continue;
+
+            function.gradient(params, g);
+            numPoints++;
+
+            for (int k = 1; k <= numParams; k++) {
+                double value = params[k];
+                double h = 1e-6 * Math.max(1.0, Math.abs(value));
+
+                params[k] = value + h;
+                double up = function.f_to_minimize(params);
+                params[k] = value - h;
+                double down = function.f_to_minimize(params);
+                params[k] = value;
+
+                double estimate = (up - down) / (2 * h);
+                assertEquals(parameters.get(k - 1).toString(), estimate, g[k],
+                        1e-5 * Math.max(1.0, Math.abs(estimate)));
+            }
+        }
+
+        assertTrue(numPoints > 0);
+    }
+
     private ICovarianceMatrix constructCovMatrix2() {
         String[] vars = new String[]{"X1", "X2", "X3", "X4", "X5", "X6"};
 
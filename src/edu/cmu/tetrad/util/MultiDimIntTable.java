@@ -21,8 +21,7 @@
 
 package edu.cmu.tetrad.util;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * <p>Stores a table of cells with int values of arbitrary dimension. The
@@ -32,21 +31,61 @@ import java.util.Map;
  * the dimensionality is set to null, the table cannot be used until a non-null
  * dimensionality is set.</p>
  *
+ * <p>Tables of up to DENSE_LIMIT cells are stored densely in a long[] array,
+ * indexed by cell index. Larger tables, which for contingency tables over
+ * several variables are usually mostly empty, store only their nonzero cells,
+ * in a primitive open addressing hash table from cell index to value. The
+ * arrays are reused from one reset() to the next where possible.</p>
+ *
  * @author Joseph Ramsey
  */
 public class MultiDimIntTable {
 
     /**
-     * A single-dimension array containing all of the cells of the table. Must
-     * be at least long enough to contain data for each cell allowed for by the
-     * given dimension array--in other words, the length must be greater than or
-     * equal to dims[0] & dims[1] ... * dims[dims.length - 1].
+     * The largest number of cells stored densely.
+     */
+    private static final int DENSE_LIMIT = 1 << 16;
+
+    /**
+     * Initial number of slots in the sparse table.
+     */
+    private static final int INITIAL_SPARSE_CAPACITY = 64;
+
+    /**
+     * Marks an empty slot in the sparse table; cell indices are nonnegative.
+     */
+    private static final int EMPTY = -1;
+
+    /**
+     * The values of the cells, indexed by cell index, if the table is dense;
+     * otherwise null. May be longer than the number of cells.
+     */
+    private long[] dense;
+
+    /**
+     * The cell indices of the nonzero cells, indexed by slot, if the table is
+     * sparse; EMPTY for empty slots.
+     */
+    private int[] sparseKeys;
+
+    /**
+     * The values of the nonzero cells, indexed by slot, if the table is sparse.
      */
-    private Map<Integer, Long> cells;
+    private long[] sparseValues;
+
+    /**
+     * The number of cells stored in the sparse table.
+     */
+    private int sparseSize;
+
+    /**
+     * True if the table is stored sparsely.
+     */
+    private boolean sparse;
 
     /**
      * The number of cells in the table. (May be different from the length of
-     * cells[].
+     * dense[].
      */
     private int numCells;
 
@@ -120,14 +159,33 @@ public class MultiDimIntTable {
      * @return the new value at that table cell.
      */
     public long increment(int[] coords, int value) {
-        int cellIndex = getCellIndex(coords);
+        return incrementCell(getCellIndex(coords), value);
+    }
+
+    /**
+     * Increments the value of the cell with the given index by the specified
+     * amount, returning the new value.
+     *
+     * @param cellIndex The index of the cell, as returned by getCellIndex().
+     * @param value     The amount by which the cell should be incremented.
+     * @return the new value at that table cell.
+     */
+    public long incrementCell(int cellIndex, long value) {
+        if (!sparse) {
+            return dense[cellIndex] += value;
+        }
+
+        int slot = findSlot(cellIndex);
 
-        if (!cells.containsKey(cellIndex)) {
-            cells.put(cellIndex, 0L);
+        if (sparseKeys[slot] == EMPTY) {
+            if (value == 0) {
+                return 0L;
+            }
+
+            slot = insert(slot, cellIndex);
         }
 
-        cells.put(cellIndex, cells.get(cellIndex) + value);
-        return cells.get(cellIndex);
+        return sparseValues[slot] += value;
     }
 
     /**
@@ -142,8 +200,18 @@ public class MultiDimIntTable {
     @SuppressWarnings({"UnusedDeclaration"})
     public long setValue(int[] coords, int value) {
         int cellIndex = getCellIndex(coords);
-        cells.put(cellIndex, (long) value);
-        return cells.get(cellIndex);
+
+        if (!sparse) {
+            return dense[cellIndex] = value;
+        }
+
+        int slot = findSlot(cellIndex);
+
+        if (sparseKeys[slot] == EMPTY) {
+            slot = insert(slot, cellIndex);
+        }
+
+        return sparseValues[slot] = value;
     }
 
     /**
@@ -153,13 +221,52 @@ public class MultiDimIntTable {
      * @return the new value at that table cell.
      */
     public long getValue(int[] coords) {
-        int cellIndex = getCellIndex(coords);
+        return getCellValue(getCellIndex(coords));
+    }
 
-        if (cells == null || !cells.containsKey(cellIndex)) {
-            return 0L;
-        } else {
-            return cells.get(cellIndex);
+    /**
+     * Returns the value of the cell with the given index.
+     *
+     * @param cellIndex The index of the cell, as returned by getCellIndex().
+     * @return the value at that table cell.
+     */
+    public long getCellValue(int cellIndex) {
+        if (!sparse) {
+            return dense == null ? 0L : dense[cellIndex];
         }
+
+        int slot = findSlot(cellIndex);
+        return sparseKeys[slot] == EMPTY ? 0L : sparseValues[slot];
+    }
+
+    /**
+     * Returns the sum of the values of the cells matching the given
+     * coordinates, where a coordinate of -1 matches any value of that
+     * dimension. For instance, [1, -1, 2] sums the cells [1, j, 2] over all j.
+     *
+     * @param coords The coordinates, with -1 for the dimensions summed over.
+     * @return the marginal sum.
+     */
+    public long getMargin(int[] coords) {
+        int numFree = 0;
+        long numMatching = 1;
+
+        for (int i = 0; i < dims.length; i++) {
+            if (coords[i] == -1) {
+                numFree++;
+                numMatching *= dims[i];
+            }
+        }
+
+        if (numFree == 0) {
+            return getValue(coords);
+        }
+
+        if (sparse && numMatching > sparseSize) {
+            return sumMatchingStoredCells(coords);
+        }
+
+        return sumMatchingCells(coords, numFree);
     }
 
     /**
@@ -208,7 +315,10 @@ public class MultiDimIntTable {
      */
     public final void reset(int[] dims) {
         if (dims == null) {
-            cells = null;
+            dense = null;
+            sparseKeys = null;
+            sparseValues = null;
+            sparse = false;
         } else {
             if (dims.length < 1) {
                 throw new IllegalArgumentException(
@@ -222,15 +332,40 @@ public class MultiDimIntTable {
                 }
             }
 
-            // Calculate length of cells[] array.
-            this.numCells = 1;
+            // Calculate the number of cells.
+            long numCells = 1;
 
             for (int dim : dims) {
-                this.numCells *= dim;
+                numCells *= dim;
+
+                if (numCells > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Table has too many " +
+                            "cells: " + Arrays.toString(dims));
+                }
             }
 
-            // Construct (or reset) cells array.
-            cells = new HashMap<Integer, Long>();
+            this.numCells = (int) numCells;
+
+            // Construct (or reset) the cell storage.
+            if (this.numCells <= DENSE_LIMIT) {
+                sparse = false;
+
+                if (dense == null || dense.length < this.numCells) {
+                    dense = new long[this.numCells];
+                } else {
+                    Arrays.fill(dense, 0, this.numCells, 0L);
+                }
+            } else {
+                sparse = true;
+                sparseSize = 0;
+
+                if (sparseKeys == null) {
+                    sparseKeys = new int[INITIAL_SPARSE_CAPACITY];
+                    sparseValues = new long[INITIAL_SPARSE_CAPACITY];
+                }
+
+                Arrays.fill(sparseKeys, EMPTY);
+            }
 
             // Store the dimensions, making a copy for security.
             this.dims = new int[dims.length];
@@ -242,5 +377,140 @@ public class MultiDimIntTable {
     public int getDims(int varIndex) {
         return dims[varIndex];
     }
+
+    //==============================PRIVATE METHODS=========================//
+
+    /**
+     * Sums the cells matching the given coordinates by stepping through the
+     * free dimensions like an odometer, last dimension fastest.
+     */
+    private long sumMatchingCells(int[] coords, int numFree) {
+        int[] freeDims = new int[numFree];
+        int[] strides = new int[numFree];
+        int base = 0;
+        int stride = 1;
+
+        for (int i = dims.length - 1, f = numFree; i >= 0; i--) {
+            if (coords[i] == -1) {
+                f--;
+                freeDims[f] = i;
+                strides[f] = stride;
+            } else {
+                base += coords[i] * stride;
+            }
+
+            stride *= dims[i];
+        }
+
+        int[] counter = new int[numFree];
+        int cellIndex = base;
+        long sum = 0;
+
+        while (true) {
+            sum += getCellValue(cellIndex);
+
+            int f = numFree - 1;
+
+            while (f >= 0 && ++counter[f] == dims[freeDims[f]]) {
+                cellIndex -= (dims[freeDims[f]] - 1) * strides[f];
+                counter[f] = 0;
+                f--;
+            }
+
+            if (f < 0) {
+                return sum;
+            }
+
+            cellIndex += strides[f];
+        }
+    }
+
+    /**
+     * Sums the stored cells of a sparse table that match the given
+     * coordinates, for margins spanning more cells than are stored.
+     */
+    private long sumMatchingStoredCells(int[] coords) {
+        long sum = 0;
+
+        slots:
+        for (int slot = 0; slot < sparseKeys.length; slot++) {
+            int cellIndex = sparseKeys[slot];
+
+            if (cellIndex == EMPTY) {
+                continue;
+            }
+
+            for (int i = dims.length - 1; i >= 0; i--) {
+                if (coords[i] != -1 && cellIndex % dims[i] != coords[i]) {
+                    continue slots;
+                }
+
+                cellIndex /= dims[i];
+            }
+
+            sum += sparseValues[slot];
+        }
+
+        return sum;
+    }
+
+    /**
+     * Returns the slot of the given cell in the sparse table, or the empty
+     * slot where it would go.
+     */
+    private int findSlot(int cellIndex) {
+        int mask = sparseKeys.length - 1;
+        int slot = mix(cellIndex) & mask;
+
+        while (sparseKeys[slot] != EMPTY && sparseKeys[slot] != cellIndex) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Stores the given cell, with value zero, in the given empty slot, growing
+     * the table if necessary, and returns its slot.
+     */
+    private int insert(int slot, int cellIndex) {
+        if (2 * (sparseSize + 1) > sparseKeys.length) {
+            grow();
+            slot = findSlot(cellIndex);
+        }
+
+        sparseKeys[slot] = cellIndex;
+        sparseValues[slot] = 0L;
+        sparseSize++;
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = sparseKeys;
+        long[] oldValues = sparseValues;
+
+        sparseKeys = new int[oldKeys.length * 2];
+        sparseValues = new long[oldKeys.length * 2];
+        Arrays.fill(sparseKeys, EMPTY);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = findSlot(oldKeys[i]);
+                sparseKeys[slot] = oldKeys[i];
+                sparseValues[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
 }
 
+
+
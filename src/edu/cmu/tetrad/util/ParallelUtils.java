@@ -0,0 +1,158 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.util;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Shared support for the classes that split their work into fork/join tasks: the default number of threads, the
+ * fork/join pools, which are shared and kept for the life of the program instead of being made for every call, running
+ * a list of independent tasks, and seeding the random number generators of chunks of a simulation.
+ * <p/>
+ * The pools' threads are daemon threads, so keeping the pools does not keep the program from exiting.
+ *
+ * @author Joseph Ramsey
+ */
+public final class ParallelUtils {
+
+    /**
+     * The shared pools, by parallelism.
+     */
+    private static final Map<Integer, ForkJoinPool> POOLS = new HashMap<Integer, ForkJoinPool>();
+
+    /**
+     * The number of threads used by classes whose parallelism has not been set.
+     */
+    private static volatile int defaultParallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Don't instantiate.
+     */
+    private ParallelUtils() {
+    }
+
+    /**
+     * Returns the number of threads used by classes whose parallelism has not been set. Default is the number of
+     * available processors.
+     */
+    public static int getDefaultParallelism() {
+        return defaultParallelism;
+    }
+
+    /**
+     * Sets the number of threads used by classes whose parallelism has not been set. Affects objects made afterward,
+     * and Transformation.
+     */
+    public static void setDefaultParallelism(int parallelism) {
+        checkParallelism(parallelism);
+        defaultParallelism = parallelism;
+    }
+
+    /**
+     * Throws an IllegalArgumentException unless the given parallelism is at least 1.
+     */
+    public static void checkParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+    }
+
+    /**
+     * Returns the shared pool with the given parallelism, making it the first time it is asked for.
+     */
+    public static synchronized ForkJoinPool getPool(int parallelism) {
+        checkParallelism(parallelism);
+        ForkJoinPool pool = POOLS.get(parallelism);
+
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+            POOLS.put(parallelism, pool);
+        }
+
+        return pool;
+    }
+
+    /**
+     * Runs the given task with the given parallelism and returns its result--on the calling thread if the parallelism
+     * is 1, and otherwise on the shared pool.
+     */
+    public static <T> T invoke(ForkJoinTask<T> task, int parallelism) {
+        if (parallelism == 1) {
+            return task.invoke();
+        }
+
+        ForkJoinPool pool = getPool(parallelism);
+
+        if (ForkJoinTask.getPool() == pool) {
+            return task.invoke();
+        }
+
+        return pool.invoke(task);
+    }
+
+    /**
+     * Runs the given independent tasks and waits for them all to finish--one after another on the calling thread if
+     * the parallelism is 1 or there is only one task, and otherwise concurrently on the shared pool.
+     */
+    public static void runAll(List<? extends ForkJoinTask<?>> tasks, int parallelism) {
+        if (parallelism == 1 || tasks.size() <= 1) {
+            for (ForkJoinTask<?> task : tasks) {
+                task.invoke();
+            }
+
+            return;
+        }
+
+        ForkJoinPool pool = getPool(parallelism);
+
+        if (ForkJoinTask.getPool() == pool) {
+            ForkJoinTask.invokeAll(tasks);
+            return;
+        }
+
+        for (ForkJoinTask<?> task : tasks) {
+            pool.execute(task);
+        }
+
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+
+    /**
+     * Returns the seed for the random number generator of the given chunk of a simulation with the given seed: the
+     * chunk's term of a SplitMix64 sequence starting at the seed, so that nearby seeds and chunks get unrelated
+     * streams.
+     */
+    public static long chunkSeed(long seed, int chunk) {
+        long z = seed + (chunk + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
+
+
@@ -112,6 +112,10 @@ public class RandomUtil {
         return apacheGen.nextDouble();
     }
 
+    public long nextLong() {
+        return apacheGen.nextLong();
+    }
+
     /**
      * 
      * Returns a random double from U(low, high).
@@ -1846,7 +1846,7 @@ public final class StatUtils {
      *
      * @return the given partial correlation.
      */
-    public static synchronized double partialCorrelation(TetradMatrix submatrix) {
+    public static double partialCorrelation(TetradMatrix submatrix) {
 //        double cov = partialCovariance(submatrix);
 //
 //        int[] selection1 = new int[submatrix.rows()];
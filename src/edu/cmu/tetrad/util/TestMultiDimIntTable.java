@@ -87,6 +87,59 @@ public class TestMultiDimIntTable extends TestCase {
         assertEquals(4, table.getNumDimensions());
     }
 
+    public void testMargin() {
+        table.increment(new int[]{0, 1, 2, 3}, 2);
+        table.increment(new int[]{0, 2, 2, 3}, 3);
+        table.increment(new int[]{1, 1, 2, 3}, 5);
+        table.increment(new int[]{0, 1, 0, 4}, 7);
+
+        assertEquals(5, table.getMargin(new int[]{0, -1, 2, 3}));
+        assertEquals(7, table.getMargin(new int[]{-1, 1, 2, 3}));
+        assertEquals(9, table.getMargin(new int[]{0, 1, -1, -1}));
+        assertEquals(17, table.getMargin(new int[]{-1, -1, -1, -1}));
+        assertEquals(0, table.getMargin(new int[]{1, -1, 0, -1}));
+    }
+
+    public void testSparse() {
+        int[] dims = new int[]{10, 20, 30, 40};
+        MultiDimIntTable sparse = new MultiDimIntTable(dims);
+        long[] values = new long[sparse.getNumCells()];
+        RandomUtil random = RandomUtil.getInstance();
+
+        for (int k = 0; k < 5000; k++) {
+            int cellIndex = random.nextInt(sparse.getNumCells());
+            sparse.increment(sparse.getCoordinates(cellIndex), 1);
+            values[cellIndex]++;
+        }
+
+        for (int k = 0; k < 100; k++) {
+            int cellIndex = random.nextInt(sparse.getNumCells());
+            assertEquals(values[cellIndex], sparse.getCellValue(cellIndex));
+        }
+
+        int[][] margins = {{3, -1, 7, -1}, {-1, -1, -1, 5}, {-1, -1, -1, -1}, {2, 4, 6, -1}};
+
+        for (int[] margin : margins) {
+            long expected = 0;
+
+            for (int cellIndex = 0; cellIndex < values.length; cellIndex++) {
+                int[] coords = sparse.getCoordinates(cellIndex);
+                boolean matches = true;
+
+                for (int i = 0; i < coords.length; i++) {
+                    if (margin[i] != -1 && margin[i] != coords[i]) matches = false;
+                }
+
+                if (matches) expected += values[cellIndex];
+            }
+
+            assertEquals(expected, sparse.getMargin(margin));
+        }
+
+        sparse.reset(dims);
+        assertEquals(0, sparse.getMargin(new int[]{-1, -1, -1, -1}));
+    }
+
     /**
      * This method uses reflection to collect up all of the test methods from
      * this class and return them to the test runner.
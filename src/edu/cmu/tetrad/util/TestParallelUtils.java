@@ -0,0 +1,139 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.util;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Tests the ParallelUtils class.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestParallelUtils extends TestCase {
+
+    /**
+     * Standard constructor for JUnit test cases.
+     */
+    public TestParallelUtils(String name) {
+        super(name);
+    }
+
+    public void testRunAll() {
+        for (int parallelism = 1; parallelism <= 4; parallelism++) {
+            final AtomicIntegerArray runs = new AtomicIntegerArray(100);
+            List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+
+            for (int i = 0; i < runs.length(); i++) {
+                final int index = i;
+
+                tasks.add(new RecursiveAction() {
+                    protected void compute() {
+                        runs.incrementAndGet(index);
+                    }
+                });
+            }
+
+            ParallelUtils.runAll(tasks, parallelism);
+
+            for (int i = 0; i < runs.length(); i++) {
+                assertEquals(1, runs.get(i));
+            }
+        }
+    }
+
+    public void testInvoke() {
+        assertEquals(5050L, (long) ParallelUtils.invoke(new SumTask(1, 101), 1));
+        assertEquals(5050L, (long) ParallelUtils.invoke(new SumTask(1, 101), 3));
+    }
+
+    public void testSharedPool() {
+        assertSame(ParallelUtils.getPool(2), ParallelUtils.getPool(2));
+        assertEquals(3, ParallelUtils.getPool(3).getParallelism());
+
+        try {
+            ParallelUtils.getPool(0);
+            fail("Parallelism must be at least 1.");
+        } catch (IllegalArgumentException e) {
+            // Succeed.
+        }
+    }
+
+    public void testChunkSeed() {
+        assertEquals(ParallelUtils.chunkSeed(42L, 7), ParallelUtils.chunkSeed(42L, 7));
+
+        Set<Long> seeds = new HashSet<Long>();
+
+        for (long seed = 0; seed < 10; seed++) {
+            for (int chunk = 0; chunk < 100; chunk++) {
+                seeds.add(ParallelUtils.chunkSeed(seed, chunk));
+            }
+        }
+
+        assertEquals(1000, seeds.size());
+    }
+
+    /**
+     * Sums the integers from, inclusive, to to, exclusive, splitting the range in half until it is small.
+     */
+    private static class SumTask extends RecursiveTask<Long> {
+        private final int from;
+        private final int to;
+
+        private SumTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        protected Long compute() {
+            if (to - from <= 10) {
+                long sum = 0;
+                for (int i = from; i < to; i++) sum += i;
+                return sum;
+            }
+
+            int mid = (from + to) >>> 1;
+            SumTask left = new SumTask(from, mid);
+            left.fork();
+            return new SumTask(mid, to).compute() + left.join();
+        }
+    }
+
+    /**
+     * This method uses reflection to collect up all of the test methods from this class and return them to the test
+     * runner.
+     */
+    public static Test suite() {
+        return new TestSuite(TestParallelUtils.class);
+    }
+}
+
+
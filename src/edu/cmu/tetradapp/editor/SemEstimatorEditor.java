@@ -74,6 +74,7 @@ public final class SemEstimatorEditor extends JPanel {
         optimizerCombo.addItem("CDS");
         optimizerCombo.addItem("Random Search");
         optimizerCombo.addItem("RICF");
+        optimizerCombo.addItem("Gradient");
 //        optimizerCombo.addItem("Powell");
 //        optimizerCombo.addItem("Uncmin");
 
@@ -322,6 +323,9 @@ public final class SemEstimatorEditor extends JPanel {
         else if ("Uncmin".equals(type)) {
             optimizer = new SemOptimizerUncmin();
         }
+        else if ("Gradient".equals(type)) {
+            optimizer = new SemOptimizerGradient();
+        }
         else {
             throw new IllegalArgumentException("Unexpected optimizer " +
                     "type: " + type);
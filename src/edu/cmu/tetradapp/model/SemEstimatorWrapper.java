@@ -322,6 +322,8 @@ public class SemEstimatorWrapper implements SessionModel, GraphSource, Unmarshal
             optimizer = new SemOptimizerNrPowell();
         } else if ("Uncmin".equals(type)) {
             optimizer = new SemOptimizerUncmin();
+        } else if ("Gradient".equals(type)) {
+            optimizer = new SemOptimizerGradient();
         } else {
             optimizer = null;
 //            throw new IllegalArgumentException("Unexpected optimizer " +
@@ -0,0 +1,183 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetradapp.model.calculator;
+
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetradapp.model.calculator.expression.CompiledExpression;
+import edu.cmu.tetradapp.model.calculator.expression.Context;
+import edu.cmu.tetradapp.model.calculator.expression.Expression;
+import edu.cmu.tetradapp.model.calculator.parser.ExpressionParser;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.commons.math3.random.RandomDataGenerator;
+import org.apache.commons.math3.random.Well44497b;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests CompiledExpression.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestCompiledExpression extends TestCase {
+
+    /**
+     * Standard constructor for JUnit test cases.
+     */
+    public TestCompiledExpression(String name) {
+        super(name);
+    }
+
+    /**
+     * Compiled expressions without random draws should give exactly the values of the expressions they were compiled
+     * from, row by row and in batches.
+     */
+    public void testDeterministic() throws ParseException {
+        String[] formulas = {
+                "b1 * X + sin(Y) + b2 * Y * Y - X / Y",
+                "-X + (X ^ 2) + pow(abs(Y), 0.5) + exp(-Y) + sqrt(abs(X))",
+                "cos(X) + tan(Y) + cosh(X) + sinh(Y) + tanh(X) + atan(Y) + acos(X / 10) + asin(Y / 10)",
+                "logistic(X) + ln(abs(Y)) + log10(abs(X)) + round(Y) + ceil(X) + floor(Y) + signum(X)",
+                "max(X, Y, b1) + min(X, Y, b2) + X",
+                "IF(X > Y, X, Y) + IF(X >= 0, 1, 2) + (X < Y) + (X <= Y) + (X = X)",
+                "AND(X > 0, Y > 0) + OR(X > 0, Y > 0) + XOR(X > 0, Y > 0) + 1 AND 0 OR 1 XOR 1 + 1",
+                "b1 * b2 + 3 * 4"
+        };
+
+        final Map<String, Double> parameters = new HashMap<String, Double>();
+        parameters.put("b1", 0.7);
+        parameters.put("b2", -1.3);
+
+        List<String> slots = Arrays.asList("X", "Y");
+        int numRows = 200;
+        double[][] columns = new double[2][numRows];
+        RandomUtil random = RandomUtil.getInstance();
+        random.setSeed(28193L);
+
+        for (int k = 0; k < numRows; k++) {
+            columns[0][k] = random.nextUniform(-5, 5);
+            columns[1][k] = random.nextUniform(-5, 5);
+        }
+
+        final double[] row = new double[2];
+
+        Context context = new Context() {
+            public Double getValue(String var) {
+                if (parameters.containsKey(var)) return parameters.get(var);
+                if ("X".equals(var)) return row[0];
+                if ("Y".equals(var)) return row[1];
+                return null;
+            }
+        };
+
+        ExpressionParser parser = new ExpressionParser();
+
+        for (String formula : formulas) {
+            Expression expression = parser.parseExpression(formula);
+            CompiledExpression compiled = new CompiledExpression(expression, slots, parameters);
+            assertTrue(compiled.isThreadSafe());
+
+            double[] batch = new double[numRows];
+            compiled.evaluate(columns, 0, numRows, batch, null);
+
+            for (int k = 0; k < numRows; k++) {
+                row[0] = columns[0][k];
+                row[1] = columns[1][k];
+
+                double expected = expression.evaluate(context);
+                assertEquals(formula, expected, compiled.evaluate(row, null), 0.0);
+                assertEquals(formula, expected, batch[k], 0.0);
+            }
+        }
+
+        assertTrue(new CompiledExpression(parser.parseExpression("b1 * b2 + 3 * 4"), slots, parameters).isConstant());
+        assertFalse(new CompiledExpression(parser.parseExpression("b1 * X"), slots, parameters).isConstant());
+    }
+
+    /**
+     * A batch should draw as evaluating row by row does when there is a single random term, and the draws should
+     * have the right distribution. Operators drawing from colt are left to the original expression.
+     */
+    public void testRandom() throws ParseException {
+        ExpressionParser parser = new ExpressionParser();
+        List<String> slots = Arrays.asList("X");
+        int numRows = 10000;
+        double[][] columns = new double[1][numRows];
+
+        for (int k = 0; k < numRows; k++) {
+            columns[0][k] = k % 7;
+        }
+
+        CompiledExpression compiled = new CompiledExpression(parser.parseExpression("2 * X + N(1, 3)"), slots, null);
+        assertTrue(compiled.isThreadSafe());
+        assertFalse(compiled.isConstant());
+
+        double[] batch = new double[numRows];
+        compiled.evaluate(columns, 0, numRows, batch, new RandomDataGenerator(new Well44497b(373L)));
+        RandomDataGenerator random = new RandomDataGenerator(new Well44497b(373L));
+        double sum = 0.0;
+        double sumSquares = 0.0;
+
+        for (int k = 0; k < numRows; k++) {
+            double value = compiled.evaluate(new double[]{columns[0][k]}, random);
+            assertEquals(value, batch[k], 0.0);
+
+            double error = value - 2 * columns[0][k] - 1;
+            sum += error;
+            sumSquares += error * error;
+        }
+
+        assertEquals(0.0, sum / numRows, 0.1);
+        assertEquals(9.0, sumSquares / numRows, 0.5);
+
+        CompiledExpression uniform = new CompiledExpression(parser.parseExpression("U(X, X + 1)"), slots, null);
+        uniform.evaluate(columns, 0, numRows, batch, new RandomDataGenerator(new Well44497b(11L)));
+
+        for (int k = 0; k < numRows; k++) {
+            assertTrue(batch[k] >= columns[0][k] && batch[k] <= columns[0][k] + 1);
+        }
+
+        CompiledExpression vonMises = new CompiledExpression(parser.parseExpression("X + VonMises(1)"), slots, null);
+        assertFalse(vonMises.isThreadSafe());
+        vonMises.evaluate(columns, 0, numRows, batch, null);
+
+        for (int k = 0; k < numRows; k++) {
+            assertTrue(Math.abs(batch[k] - columns[0][k]) <= Math.PI);
+        }
+    }
+
+    /**
+     * This method uses reflection to collect up all of the test methods from
+     * this class and return them to the test runner.
+     */
+    public static Test suite() {
+
+        // Edit the name of the class in the parens to match the name
+        // of this class.
+        return new TestSuite(TestCompiledExpression.class);
+    }
+}
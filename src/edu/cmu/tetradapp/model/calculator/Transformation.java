@@ -24,14 +24,17 @@ package edu.cmu.tetradapp.model.calculator;
 import edu.cmu.tetrad.data.ContinuousVariable;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ParallelUtils;
+import edu.cmu.tetrad.util.RandomUtil;
 import edu.cmu.tetradapp.model.calculator.expression.*;
 import edu.cmu.tetradapp.model.calculator.parser.ExpressionParser;
+import org.apache.commons.math3.random.RandomDataGenerator;
+import org.apache.commons.math3.random.Well44497b;
 
 import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Represents a transformation on some dataset.
@@ -40,6 +43,16 @@ import java.util.Map;
  */
 public class Transformation {
 
+    /**
+     * The number of rows evaluated at a time. Part of the definition of the random draws for a seed.
+     */
+    private static final int CHUNK = 4096;
+
+    /**
+     * Data with fewer rows than this are transformed on the calling thread.
+     */
+    private static final int MIN_PARALLEL_ROWS = 1 << 16;
+
     /**
      * Don't instantiate.
      */
@@ -84,17 +97,60 @@ public class Transformation {
             throw new IllegalStateException("Unknown variable " + variable);
         }
         int column = data.getColumn(variable);
-        // build the context pairs.
-        List<String> contextVars = getContextVariables(expression);
-        // now do the transformation row by row.
-        DataBackedContext context = new DataBackedContext(data, contextVars);
+        // evaluate the expression for every row, then write the new values.
+        double[] newValues = evaluate(data, expression);
         int rows = data.getNumRows();
         for (int row = 0; row < rows; row++) {
-            // build the context
-            context.setRow(row);
-            double newValue = expression.evaluate(context);
-            data.setDouble(row, column, newValue);
+            data.setDouble(row, column, newValues[row]);
+        }
+    }
+
+    /**
+     * Returns the value of the given expression for each row of the given data. The expression is compiled, with its
+     * variables as slots, and evaluated a chunk of rows at a time, on ParallelUtils.getDefaultParallelism() threads if
+     * the data are large. Random draws for each chunk come from a generator seeded from RandomUtil.
+     */
+    private static double[] evaluate(final DataSet data, Expression expression) {
+        List<String> contextVars = getContextVariables(expression);
+        final int[] columns = new int[contextVars.size()];
+
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = data.getColumn(data.getVariable(contextVars.get(i)));
+        }
+
+        final CompiledExpression compiled = new CompiledExpression(expression, contextVars, null);
+        int rows = data.getNumRows();
+        final double[] newValues = new double[rows];
+        long seed = RandomUtil.getInstance().nextLong();
+        List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+
+        for (int chunk = 0; (long) chunk * CHUNK < rows; chunk++) {
+            final int from = chunk * CHUNK;
+            final int to = Math.min(from + CHUNK, rows);
+            final long chunkSeed = ParallelUtils.chunkSeed(seed, chunk);
+
+            tasks.add(new RecursiveAction() {
+                protected void compute() {
+                    int size = to - from;
+                    double[][] values = new double[columns.length][size];
+
+                    for (int i = 0; i < columns.length; i++) {
+                        for (int k = 0; k < size; k++) {
+                            values[i][k] = data.getDouble(from + k, columns[i]);
+                        }
+                    }
+
+                    double[] result = new double[size];
+                    compiled.evaluate(values, 0, size, result, new RandomDataGenerator(new Well44497b(chunkSeed)));
+                    System.arraycopy(result, 0, newValues, from, size);
+                }
+            });
         }
+
+        boolean parallel = compiled.isThreadSafe() && rows >= MIN_PARALLEL_ROWS;
+        ParallelUtils.runAll(tasks, parallel ? ParallelUtils.getDefaultParallelism() : 1);
+
+        return newValues;
     }
 
     /**
@@ -114,6 +170,11 @@ public class Transformation {
     private static List<String> getContextVariables(Expression exp) {
         List<String> variables = new ArrayList<String>();
 
+        if (exp instanceof VariableExpression) {
+            variables.add(((VariableExpression) exp).getVariable());
+            return variables;
+        }
+
         for (Expression sub : exp.getExpressions()) {
             if (sub instanceof VariableExpression) {
                 variables.add(((VariableExpression) sub).getVariable());
@@ -124,49 +185,6 @@ public class Transformation {
 
         return variables;
     }
-
-    //============================== Inner Class ==============================//
-
-    private static class DataBackedContext implements Context {
-
-
-        /**
-         * The data.
-         */
-        private DataSet data;
-
-
-        /**
-         * Var -> index mapping.
-         */
-        private Map<String, Integer> indexes = new HashMap<String, Integer>();
-
-
-        /**
-         * The getModel row.
-         */
-        private int row;
-
-
-        public DataBackedContext(DataSet data, List<String> vars){
-            this.data = data;
-            for(String v : vars){
-                Node n = data.getVariable(v);
-                indexes.put(v, data.getColumn(n));
-            }
-        }
-
-        public void setRow(int row){
-            this.row = row;
-        }
-
-        public Double getValue(String var) {
-            Integer i = indexes.get(var);
-            if(i != null){
-               return data.getDouble(row, i);
-            }
-            return null;
-        }
-    }
 }
 
+
@@ -0,0 +1,938 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010 by Peter Spirtes, Richard Scheines, Joseph Ramsey, //
+// and Clark Glymour.                                                        //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetradapp.model.calculator.expression;
+
+import org.apache.commons.math3.random.RandomDataGenerator;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An expression compiled for fast evaluation, row by row or over whole columns of rows at a time.
+ * <p/>
+ * Evaluating an Expression looks up each variable by name in a Context and boxes its value, for every row. Compiling
+ * resolves each variable once: to a constant, if it is given one (parameters, say), or else to a slot--an index into
+ * the array of values for a row, or into the array of columns for a batch of rows. Operations with only constant
+ * arguments are folded into constants, except for random draws. The operators of ExpressionManager are evaluated
+ * directly on doubles, so nothing is boxed.
+ * <p/>
+ * Random draws come from the RandomDataGenerator passed in, so that threads can each use their own. All arguments of
+ * an operator are evaluated before it is applied; for a batch the draws for one term are taken over all of the rows
+ * before those of the next term, and every component of a Mixture is drawn. Anything not known here--operators drawing
+ * from colt distributions, say--is left to the original expression, through a context over the slots that belongs to
+ * the compiled expression; an expression with any such part is not thread safe (see isThreadSafe()).
+ *
+ * @author Joseph Ramsey
+ * @see Expression
+ */
+public final class CompiledExpression {
+
+    /**
+     * The compiled form of the expression.
+     */
+    private final Op root;
+
+    /**
+     * The number of operations compiled, each of which has its own buffer for batches.
+     */
+    private final int numOps;
+
+    /**
+     * False if any part of the expression is left to the original expression.
+     */
+    private final boolean threadSafe;
+
+    /**
+     * Per-thread buffers for the values of the operations over a batch.
+     */
+    private final ThreadLocal<double[][]> buffers = new ThreadLocal<double[][]>() {
+        protected double[][] initialValue() {
+            return new double[0][0];
+        }
+    };
+
+    //=============================CONSTRUCTORS============================//
+
+    /**
+     * Compiles the given expression.
+     *
+     * @param expression The expression, as from ExpressionParser.
+     * @param slots      The names of the variables whose values are given at evaluation, in slot order.
+     * @param constants  Values for variables that do not change, such as parameters, or null. A name here is taken as
+     *                   a constant even if it is also a slot. Variables in neither are errors when evaluated.
+     */
+    public CompiledExpression(Expression expression, List<String> slots, Map<String, Double> constants) {
+        if (expression == null) {
+            throw new NullPointerException();
+        }
+
+        Map<String, Integer> slotIndices = new HashMap<String, Integer>();
+
+        for (int i = 0; i < slots.size(); i++) {
+            if (!slotIndices.containsKey(slots.get(i))) {
+                slotIndices.put(slots.get(i), i);
+            }
+        }
+
+        Compiler compiler = new Compiler(slotIndices,
+                constants == null ? new HashMap<String, Double>() : new HashMap<String, Double>(constants));
+        this.root = compiler.compile(expression);
+        this.numOps = compiler.numOps;
+        this.threadSafe = compiler.threadSafe;
+    }
+
+    //=============================PUBLIC METHODS==========================//
+
+    /**
+     * Evaluates the expression for one row.
+     *
+     * @param values The values of the slots for the row.
+     * @param random The generator for any random draws.
+     */
+    public double evaluate(double[] values, RandomDataGenerator random) {
+        return root.evaluate(values, random);
+    }
+
+    /**
+     * Evaluates the expression for the rows from, inclusive, to to, exclusive, putting the value for each row into
+     * the same row of result.
+     *
+     * @param columns The values of the slots, indexed [slot][row]. Result may be one of these columns.
+     * @param random  The generator for any random draws.
+     */
+    public void evaluate(double[][] columns, int from, int to, double[] result, RandomDataGenerator random) {
+        int n = to - from;
+
+        if (n <= 0) {
+            return;
+        }
+
+        double[][] _buffers = buffers.get();
+
+        if (_buffers.length < numOps || _buffers[0].length < n) {
+            _buffers = new double[numOps][n];
+            buffers.set(_buffers);
+        }
+
+        root.evaluate(new Batch(columns, from, n, _buffers, random), result, from);
+    }
+
+    /**
+     * True if the expression was folded to a constant.
+     */
+    public boolean isConstant() {
+        return root instanceof Constant;
+    }
+
+    /**
+     * True if the expression may be evaluated on several threads at once, each with its own generator--that is, if no
+     * part of it is left to the original expression.
+     */
+    public boolean isThreadSafe() {
+        return threadSafe;
+    }
+
+    //==============================PRIVATE CLASSES========================//
+
+    /**
+     * The arguments of a batch evaluation.
+     */
+    private static final class Batch {
+        final double[][] columns;
+        final int from;
+        final int n;
+        final double[][] buffers;
+        final RandomDataGenerator random;
+
+        Batch(double[][] columns, int from, int n, double[][] buffers, RandomDataGenerator random) {
+            this.columns = columns;
+            this.from = from;
+            this.n = n;
+            this.buffers = buffers;
+            this.random = random;
+        }
+    }
+
+    /**
+     * Turns expressions into operations.
+     */
+    private static final class Compiler {
+        private final Map<String, Integer> slots;
+        private final Map<String, Double> constants;
+        private int numOps = 0;
+        private boolean threadSafe = true;
+
+        Compiler(Map<String, Integer> slots, Map<String, Double> constants) {
+            this.slots = slots;
+            this.constants = constants;
+        }
+
+        Op compile(Expression expression) {
+            if (expression instanceof ConstantExpression) {
+                return new Constant(numOps++, expression.evaluate(null));
+            }
+
+            if (expression instanceof VariableExpression) {
+                return variable(((VariableExpression) expression).getVariable());
+            }
+
+            if (expression instanceof EvaluationExpression) {
+                return fallback(expression);
+            }
+
+            String token = expression.getToken();
+            List<Expression> expressions = expression.getExpressions();
+            int numArgs = expressions.size();
+
+            if (token == null) {
+                return fallback(expression);
+            }
+
+            int kind = Deterministic.kind(token, numArgs);
+            boolean random = false;
+
+            if (kind == -1) {
+                kind = Draw.kind(token, numArgs);
+                random = true;
+            }
+
+            if (kind == -1) {
+                return Deterministic.isTemplate(token) ? new Constant(numOps++, Double.NaN) : fallback(expression);
+            }
+
+            Op[] args = new Op[numArgs];
+            boolean allConstant = true;
+
+            for (int i = 0; i < numArgs; i++) {
+                args[i] = compile(expressions.get(i));
+                allConstant &= args[i] instanceof Constant;
+            }
+
+            Op op = random ? new Draw(numOps++, kind, args) : new Deterministic(numOps++, kind, args);
+
+            if (!random && allConstant) {
+                return new Constant(numOps++, op.evaluate(null, null));
+            }
+
+            return op;
+        }
+
+        private Op variable(String name) {
+            Double value = constants.get(name);
+
+            if (value != null) {
+                return new Constant(numOps++, value);
+            }
+
+            Integer slot = slots.get(name);
+
+            if (slot != null) {
+                return new Slot(numOps++, slot);
+            }
+
+            return new Unassigned(numOps++, name);
+        }
+
+        private Op fallback(Expression expression) {
+            threadSafe = false;
+            return new Fallback(numOps++, expression, slots, constants);
+        }
+    }
+
+    /**
+     * A compiled operation. Each has its own buffer, indexed by its id, for its values over a batch.
+     */
+    private static abstract class Op {
+        final int id;
+
+        Op(int id) {
+            this.id = id;
+        }
+
+        abstract double evaluate(double[] values, RandomDataGenerator random);
+
+        /**
+         * Puts the values of the operation for the rows of the batch into result, starting at the given offset.
+         */
+        abstract void evaluate(Batch batch, double[] result, int offset);
+
+        /**
+         * Evaluates the operation over the batch into its own buffer and returns the buffer.
+         */
+        final double[] evaluate(Batch batch) {
+            double[] buffer = batch.buffers[id];
+            evaluate(batch, buffer, 0);
+            return buffer;
+        }
+    }
+
+    private static final class Constant extends Op {
+        private final double value;
+
+        Constant(int id, double value) {
+            super(id);
+            this.value = value;
+        }
+
+        double evaluate(double[] values, RandomDataGenerator random) {
+            return value;
+        }
+
+        void evaluate(Batch batch, double[] result, int offset) {
+            for (int k = 0; k < batch.n; k++) {
+                result[offset + k] = value;
+            }
+        }
+    }
+
+    private static final class Slot extends Op {
+        private final int slot;
+
+        Slot(int id, int slot) {
+            super(id);
+            this.slot = slot;
+        }
+
+        double evaluate(double[] values, RandomDataGenerator random) {
+            return values[slot];
+        }
+
+        void evaluate(Batch batch, double[] result, int offset) {
+            System.arraycopy(batch.columns[slot], batch.from, result, offset, batch.n);
+        }
+    }
+
+    /**
+     * A variable with no value, which is an error only if evaluated, as for VariableExpression.
+     */
+    private static final class Unassigned extends Op {
+        private final String name;
+
+        Unassigned(int id, String name) {
+            super(id);
+            this.name = name;
+        }
+
+        double evaluate(double[] values, RandomDataGenerator random) {
+            throw new IllegalArgumentException(name + " was not assigned a value.");
+        }
+
+        void evaluate(Batch batch, double[] result, int offset) {
+            throw new IllegalArgumentException(name + " was not assigned a value.");
+        }
+    }
+
+    /**
+     * The operators of ExpressionManager that draw nothing at random.
+     */
+    private static final class Deterministic extends Op {
+        private static final int ADD = 0, MUL = 1, MAX = 2, MIN = 3, AND = 4, OR = 5;
+        private static final int NEG = 10, EXP = 11, SQRT = 12, COS = 13, SIN = 14, TAN = 15, COSH = 16, SINH = 17,
+                TANH = 18, ACOS = 19, ASIN = 20, ATAN = 21, LOGISTIC = 22, LN = 23, LOG10 = 24, ROUND = 25,
+                CEIL = 26, FLOOR = 27, ABS = 28, SIGNUM = 29;
+        private static final int SUB = 40, DIV = 41, POW = 42, LT = 43, LE = 44, EQ = 45, GT = 46, GE = 47,
+                XOR = 48;
+        private static final int IF = 60;
+
+        private final int kind;
+        private final Op[] args;
+
+        Deterministic(int id, int kind, Op[] args) {
+            super(id);
+            this.kind = kind;
+            this.args = args;
+        }
+
+        /**
+         * The kind of operation for the given token and number of arguments, or -1.
+         */
+        static int kind(String token, int numArgs) {
+            if (numArgs == 1) {
+                if ("-".equals(token)) return NEG;
+                if ("exp".equals(token)) return EXP;
+                if ("sqrt".equals(token)) return SQRT;
+                if ("cos".equals(token)) return COS;
+                if ("sin".equals(token)) return SIN;
+                if ("tan".equals(token)) return TAN;
+                if ("cosh".equals(token)) return COSH;
+                if ("sinh".equals(token)) return SINH;
+                if ("tanh".equals(token)) return TANH;
+                if ("acos".equals(token)) return ACOS;
+                if ("asin".equals(token)) return ASIN;
+                if ("atan".equals(token)) return ATAN;
+                if ("logistic".equals(token)) return LOGISTIC;
+                if ("ln".equals(token)) return LN;
+                if ("log10".equals(token)) return LOG10;
+                if ("round".equals(token)) return ROUND;
+                if ("ceil".equals(token)) return CEIL;
+                if ("floor".equals(token)) return FLOOR;
+                if ("abs".equals(token)) return ABS;
+                if ("signum".equals(token)) return SIGNUM;
+            }
+
+            if (numArgs == 2) {
+                if ("-".equals(token)) return SUB;
+                if ("/".equals(token)) return DIV;
+                if ("^".equals(token) || "pow".equals(token)) return POW;
+                if ("<".equals(token)) return LT;
+                if ("<=".equals(token)) return LE;
+                if ("=".equals(token)) return EQ;
+                if (">".equals(token)) return GT;
+                if (">=".equals(token)) return GE;
+                if ("XOR".equals(token)) return XOR;
+            }
+
+            if (numArgs == 3 && "IF".equals(token)) return IF;
+
+            if (numArgs >= 1) {
+                if ("+".equals(token)) return ADD;
+                if ("*".equals(token)) return MUL;
+                if ("max".equals(token)) return MAX;
+                if ("min".equals(token)) return MIN;
+                if ("AND".equals(token)) return AND;
+                if ("OR".equals(token)) return OR;
+            }
+
+            return -1;
+        }
+
+        /**
+         * True for the tokens of the templating operators, which evaluate to NaN.
+         */
+        static boolean isTemplate(String token) {
+            return "NEW".equals(token) || "TSUM".equals(token) || "TPROD".equals(token);
+        }
+
+        double evaluate(double[] values, RandomDataGenerator random) {
+            if (kind < NEG) {
+                double value = first(args[0].evaluate(values, random));
+
+                for (int i = 1; i < args.length; i++) {
+                    value = accumulate(value, args[i].evaluate(values, random));
+                }
+
+                return value;
+            } else if (kind < SUB) {
+                return unary(kind, args[0].evaluate(values, random));
+            } else if (kind < IF) {
+                return binary(kind, args[0].evaluate(values, random), args[1].evaluate(values, random));
+            } else {
+                double a = args[0].evaluate(values, random);
+                double b = args[1].evaluate(values, random);
+                double c = args[2].evaluate(values, random);
+                return a == 1.0 ? b : c;
+            }
+        }
+
+        void evaluate(Batch batch, double[] result, int offset) {
+            int n = batch.n;
+
+            if (kind < NEG) {
+                args[0].evaluate(batch, result, offset);
+
+                if (kind == ADD || kind == AND || kind == OR) {
+                    for (int k = 0; k < n; k++) {
+                        result[offset + k] = first(result[offset + k]);
+                    }
+                }
+
+                for (int i = 1; i < args.length; i++) {
+                    double[] b = args[i].evaluate(batch);
+
+                    switch (kind) {
+                        case ADD:
+                            for (int k = 0; k < n; k++) result[offset + k] += b[k];
+                            break;
+                        case MUL:
+                            for (int k = 0; k < n; k++) result[offset + k] *= b[k];
+                            break;
+                        default:
+                            for (int k = 0; k < n; k++) {
+                                result[offset + k] = accumulate(result[offset + k], b[k]);
+                            }
+                    }
+                }
+            } else if (kind < SUB) {
+                double[] a = args[0].evaluate(batch);
+
+                for (int k = 0; k < n; k++) {
+                    result[offset + k] = unary(kind, a[k]);
+                }
+            } else if (kind < IF) {
+                double[] a = args[0].evaluate(batch);
+                double[] b = args[1].evaluate(batch);
+
+                switch (kind) {
+                    case SUB:
+                        for (int k = 0; k < n; k++) result[offset + k] = a[k] - b[k];
+                        break;
+                    case DIV:
+                        for (int k = 0; k < n; k++) result[offset + k] = a[k] / b[k];
+                        break;
+                    default:
+                        for (int k = 0; k < n; k++) result[offset + k] = binary(kind, a[k], b[k]);
+                }
+            } else {
+                double[] a = args[0].evaluate(batch);
+                double[] b = args[1].evaluate(batch);
+                double[] c = args[2].evaluate(batch);
+
+                for (int k = 0; k < n; k++) {
+                    result[offset + k] = a[k] == 1.0 ? b[k] : c[k];
+                }
+            }
+        }
+
+        /**
+         * Combines the value so far of an n-ary operator with that of its next argument. For AND and OR the value so
+         * far is 1.0 for true and 0.0 for false.
+         */
+        private double accumulate(double value, double next) {
+            switch (kind) {
+                case ADD:
+                    return value + next;
+                case MUL:
+                    return value * next;
+                case MAX:
+                    return value < next ? next : value;
+                case MIN:
+                    return next < value ? next : value;
+                case AND:
+                    return value == 1.0 && next == 1.0 ? 1.0 : 0.0;
+                case OR:
+                    return value == 1.0 || next == 1.0 ? 1.0 : 0.0;
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+
+        /**
+         * The value of an n-ary operator over its first argument alone: a sum starts from 0.0, as in
+         * ExpressionManager, and AND and OR from 1.0 for true or 0.0 for false.
+         */
+        private double first(double value) {
+            if (kind == ADD) return 0.0 + value;
+            if (kind == AND || kind == OR) return value == 1.0 ? 1.0 : 0.0;
+            return value;
+        }
+
+        private static double unary(int kind, double a) {
+            switch (kind) {
+                case NEG:
+                    return -a;
+                case EXP:
+                    return Math.exp(a);
+                case SQRT:
+                    return Math.sqrt(a);
+                case COS:
+                    return Math.cos(a);
+                case SIN:
+                    return Math.sin(a);
+                case TAN:
+                    return Math.tan(a);
+                case COSH:
+                    return Math.cosh(a);
+                case SINH:
+                    return Math.sinh(a);
+                case TANH:
+                    return Math.tanh(a);
+                case ACOS:
+                    return Math.acos(a);
+                case ASIN:
+                    return Math.asin(a);
+                case ATAN:
+                    return Math.atan(a);
+                case LOGISTIC:
+                    return 1.0 / (1.0 + Math.exp(-a));
+                case LN:
+                    return Math.log(a);
+                case LOG10:
+                    return Math.log10(a);
+                case ROUND:
+                    return Math.round(a);
+                case CEIL:
+                    return Math.ceil(a);
+                case FLOOR:
+                    return Math.floor(a);
+                case ABS:
+                    return Math.abs(a);
+                case SIGNUM:
+                    return Math.signum(a);
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+
+        private static double binary(int kind, double a, double b) {
+            switch (kind) {
+                case SUB:
+                    return a - b;
+                case DIV:
+                    return a / b;
+                case POW:
+                    return Math.pow(a, b);
+                case LT:
+                    return a < b ? 1.0 : 0.0;
+                case LE:
+                    return a <= b ? 1.0 : 0.0;
+                case EQ:
+                    return a == b ? 1.0 : 0.0;
+                case GT:
+                    return a > b ? 1.0 : 0.0;
+                case GE:
+                    return a >= b ? 1.0 : 0.0;
+                case XOR:
+                    return (a == 1.0) != (b == 1.0) ? 1.0 : 0.0;
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+    }
+
+    /**
+     * The operators of ExpressionManager that draw from RandomUtil's RandomDataGenerator, drawing instead from the one
+     * passed in.
+     */
+    private static final class Draw extends Op {
+        private static final int RANDOM = 0, NORMAL = 1, UNIFORM = 2, TRUNC_NORMAL = 3, INDICATOR = 4,
+                CHI_SQUARE = 5, GAMMA = 6, BETA = 7, POISSON = 8, EXPONENTIAL = 9, STUDENT_T = 10, DISCRETE = 11,
+                MIXTURE = 12, SPLIT = 13;
+
+        private final int kind;
+        private final Op[] args;
+
+        Draw(int id, int kind, Op[] args) {
+            super(id);
+            this.kind = kind;
+            this.args = args;
+        }
+
+        /**
+         * The kind of draw for the given token and number of arguments, or -1.
+         */
+        static int kind(String token, int numArgs) {
+            if (numArgs == 0 && "random".equals(token)) return RANDOM;
+
+            if (numArgs == 1) {
+                if ("Indicator".equals(token)) return INDICATOR;
+                if ("ChiSquare".equals(token)) return CHI_SQUARE;
+                if ("Poisson".equals(token)) return POISSON;
+                if ("Exponential".equals(token)) return EXPONENTIAL;
+                if ("StudentT".equals(token)) return STUDENT_T;
+            }
+
+            if (numArgs == 2) {
+                if ("N".equals(token) || "Normal".equals(token)) return NORMAL;
+                if ("U".equals(token) || "Uniform".equals(token)) return UNIFORM;
+                if ("Gamma".equals(token)) return GAMMA;
+                if ("Beta".equals(token)) return BETA;
+            }
+
+            if (numArgs == 4 && "TruncNormal".equals(token)) return TRUNC_NORMAL;
+            if (numArgs >= 1 && "Discrete".equals(token)) return DISCRETE;
+            if (numArgs > 0 && numArgs % 2 == 0 && "Mixture".equals(token)) return MIXTURE;
+            if (numArgs % 2 == 0 && "Split".equals(token)) return SPLIT;
+
+            return -1;
+        }
+
+        double evaluate(double[] values, RandomDataGenerator random) {
+            switch (kind) {
+                case RANDOM:
+                    return random.getRandomGenerator().nextDouble();
+                case NORMAL:
+                case UNIFORM:
+                case GAMMA:
+                case BETA:
+                    return draw(args[0].evaluate(values, random), args[1].evaluate(values, random), random);
+                case INDICATOR:
+                case CHI_SQUARE:
+                case POISSON:
+                case EXPONENTIAL:
+                case STUDENT_T:
+                    return draw(args[0].evaluate(values, random), Double.NaN, random);
+                case MIXTURE:
+                    int numMixed = args.length / 2;
+                    double[] a = new double[numMixed];
+
+                    for (int i = 0; i < numMixed; i++) {
+                        a[i] = args[2 * i].evaluate(values, random);
+                    }
+
+                    return args[2 * mixtureComponent(a, random) + 1].evaluate(values, random);
+                default:
+                    double[] _args = new double[args.length];
+
+                    for (int i = 0; i < args.length; i++) {
+                        _args[i] = args[i].evaluate(values, random);
+                    }
+
+                    return draw(_args, random);
+            }
+        }
+
+        void evaluate(Batch batch, double[] result, int offset) {
+            int n = batch.n;
+            RandomDataGenerator random = batch.random;
+
+            switch (kind) {
+                case RANDOM:
+                    for (int k = 0; k < n; k++) {
+                        result[offset + k] = random.getRandomGenerator().nextDouble();
+                    }
+
+                    break;
+                case NORMAL:
+                case UNIFORM:
+                case GAMMA:
+                case BETA:
+                    double[] a = args[0].evaluate(batch);
+                    double[] b = args[1].evaluate(batch);
+
+                    for (int k = 0; k < n; k++) {
+                        result[offset + k] = draw(a[k], b[k], random);
+                    }
+
+                    break;
+                case INDICATOR:
+                case CHI_SQUARE:
+                case POISSON:
+                case EXPONENTIAL:
+                case STUDENT_T:
+                    double[] p = args[0].evaluate(batch);
+
+                    for (int k = 0; k < n; k++) {
+                        result[offset + k] = draw(p[k], Double.NaN, random);
+                    }
+
+                    break;
+                default:
+                    double[][] _args = new double[args.length][];
+
+                    for (int i = 0; i < args.length; i++) {
+                        _args[i] = args[i].evaluate(batch);
+                    }
+
+                    double[] row = new double[args.length];
+                    double[] coefs = new double[args.length / 2];
+
+                    for (int k = 0; k < n; k++) {
+                        for (int i = 0; i < args.length; i++) {
+                            row[i] = _args[i][k];
+                        }
+
+                        if (kind == MIXTURE) {
+                            for (int i = 0; i < coefs.length; i++) {
+                                coefs[i] = row[2 * i];
+                            }
+
+                            result[offset + k] = row[2 * mixtureComponent(coefs, random) + 1];
+                        } else {
+                            result[offset + k] = draw(row, random);
+                        }
+                    }
+            }
+        }
+
+        /**
+         * Draws for the operators of one or two arguments; b is ignored for those of one.
+         */
+        private double draw(double a, double b, RandomDataGenerator random) {
+            switch (kind) {
+                case NORMAL:
+                    return b < 0 ? Double.NaN : random.nextGaussian(a, b);
+                case UNIFORM:
+                    return a >= b ? Double.NaN : random.nextUniform(a, b);
+                case GAMMA:
+                    return random.nextGamma(a, b);
+                case BETA:
+                    return random.nextBeta(a, b);
+                case INDICATOR:
+                    if (a < 0 || a > 1) throw new IllegalArgumentException("p must be in [0, 1]: " + a);
+                    return random.getRandomGenerator().nextDouble() < a ? 1 : 0;
+                case CHI_SQUARE:
+                    return random.nextChiSquare(a);
+                case POISSON:
+                    return random.nextPoisson(a);
+                case EXPONENTIAL:
+                    return random.nextExponential(a);
+                case STUDENT_T:
+                    return random.nextT(a);
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+
+        /**
+         * Draws for the operators of several arguments, other than Mixture.
+         */
+        private double draw(double[] args, RandomDataGenerator random) {
+            switch (kind) {
+                case TRUNC_NORMAL:
+                    double mean = args[0];
+                    double sd = args[1];
+                    double low = args[2];
+                    double high = args[3];
+
+                    if (sd < 0 || low >= high) {
+                        return Double.NaN;
+                    }
+
+                    while (true) {
+                        double d = random.nextGaussian(mean, sd);
+                        if (d >= low && d <= high) return d;
+                    }
+                case DISCRETE:
+                    double sum = 0.0;
+
+                    for (double p : args) {
+                        if (p < 0) throw new IllegalArgumentException("All arguments must be >= 0: " + p);
+                        sum += p;
+                    }
+
+                    double r = random.getRandomGenerator().nextDouble();
+                    double cumulative = 0.0;
+
+                    for (int i = 0; i < args.length; i++) {
+                        cumulative += args[i] / sum;
+                        if (r < cumulative) return i;
+                    }
+
+                    throw new IllegalArgumentException();
+                case SPLIT:
+                    if (args.length < 2) {
+                        throw new IllegalArgumentException("Split must have at least two arguments, Split(a, b).");
+                    }
+
+                    double[] lengths = new double[args.length / 2];
+                    double totalLength = 0;
+
+                    for (int i = 0; i < args.length / 2; i++) {
+                        if (args[2 * i] >= args[2 * i + 1]) {
+                            throw new IllegalArgumentException("For Split, a must be less than b for each pair.");
+                        }
+
+                        lengths[i] = args[2 * i + 1] - args[2 * i];
+                        totalLength += lengths[i];
+                    }
+
+                    double s = random.getRandomGenerator().nextDouble() * totalLength;
+
+                    for (int i = 0; i < args.length / 2; i++) {
+                        if (s < lengths[i]) {
+                            return args[2 * i] + s;
+                        }
+
+                        s -= lengths[i];
+                    }
+
+                    return Double.NaN;
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+
+        /**
+         * Picks a component of a Mixture with probability proportional to its coefficient.
+         */
+        private static int mixtureComponent(double[] a, RandomDataGenerator random) {
+            double totalA = 0;
+
+            for (double _a : a) {
+                if (_a <= 0) throw new IllegalArgumentException("Coefficients must be > 0: " + _a);
+                totalA += _a;
+            }
+
+            if (Math.abs(totalA - 1.0) > 1e-2) {
+                throw new IllegalArgumentException("Coefficients must sum to 1.0: " + totalA);
+            }
+
+            double r = random.getRandomGenerator().nextDouble();
+            double sum = 0.0;
+
+            for (int i = 0; i < a.length; i++) {
+                sum += a[i] / totalA;
+
+                if (r < sum) {
+                    return i;
+                }
+            }
+
+            throw new IllegalStateException("Random expr did not choose one of the options: " + r);
+        }
+    }
+
+    /**
+     * Leaves the evaluation to the original expression, with a context that looks up the constants and slots.
+     */
+    private static final class Fallback extends Op implements Context {
+        private final Expression expression;
+        private final Map<String, Integer> slots;
+        private final Map<String, Double> constants;
+        private double[] values;
+        private double[][] columns;
+        private int row;
+
+        Fallback(int id, Expression expression, Map<String, Integer> slots, Map<String, Double> constants) {
+            super(id);
+            this.expression = expression;
+            this.slots = slots;
+            this.constants = constants;
+        }
+
+        double evaluate(double[] values, RandomDataGenerator random) {
+            this.values = values;
+            this.columns = null;
+            return expression.evaluate(this);
+        }
+
+        void evaluate(Batch batch, double[] result, int offset) {
+            this.values = null;
+            this.columns = batch.columns;
+
+            for (int k = 0; k < batch.n; k++) {
+                row = batch.from + k;
+                result[offset + k] = expression.evaluate(this);
+            }
+        }
+
+        public Double getValue(String var) {
+            Double value = constants.get(var);
+
+            if (value != null) {
+                return value;
+            }
+
+            Integer slot = slots.get(var);
+
+            if (slot == null) {
+                return null;
+            }
+
+            return values != null ? values[slot] : columns[slot][row];
+        }
+    }
+}
+
+
+
@@ -1095,7 +1095,7 @@ public class ExpressionManager {
                 throw new ExpressionInitializationException("Exp must have one argument.");
             }
 
-            return new AbstractExpression("ExponentialPower", Position.PREFIX, expressions) {
+            return new AbstractExpression("Exponential", Position.PREFIX, expressions) {
                 static final long serialVersionUID = 23L;
                 public double evaluate(Context context) {
                     Expression exp1 = getExpressions().get(0);
@@ -1785,7 +1785,7 @@ public class ExpressionManager {
                 throw new ExpressionInitializationException("Must have two arguments.");
             }
 
-            return new AbstractExpression("<", Position.BOTH, expressions) {
+            return new AbstractExpression(">", Position.BOTH, expressions) {
                 static final long serialVersionUID = 23L;
                 public double evaluate(Context context) {
                     List<Expression> expressions = getExpressions();
@@ -1809,7 +1809,7 @@ public class ExpressionManager {
                 throw new ExpressionInitializationException("Must have two arguments.");
             }
 
-            return new AbstractExpression("<", Position.BOTH, expressions) {
+            return new AbstractExpression(">=", Position.BOTH, expressions) {
                 static final long serialVersionUID = 23L;
                 public double evaluate(Context context) {
                     List<Expression> expressions = getExpressions();